@@ -1460,6 +1460,37 @@ CREATE SEQUENCE avglaborcostcalcfororder_avglaborcostcalcfororder_id_seq
 ALTER SEQUENCE avglaborcostcalcfororder_avglaborcostcalcfororder_id_seq OWNED BY avglaborcostcalcfororder_avglaborcostcalcfororder.id;
 
 
+--
+-- Name: basic_activity; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE basic_activity (
+    id bigint NOT NULL,
+    createtime timestamp without time zone,
+    logtype character varying(255),
+    message text
+);
+
+
+--
+-- Name: basic_activity_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE basic_activity_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: basic_activity_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE basic_activity_id_seq OWNED BY basic_activity.id;
+
+
 --
 -- Name: basic_additionalcode; Type: TABLE; Schema: public; Owner: -
 --
@@ -2415,7 +2446,10 @@ CREATE TABLE basic_parameter (
     seteffectivedatefromoninprogress boolean DEFAULT false,
     seteffectivedatetooncompleted boolean DEFAULT false,
     copydescription boolean DEFAULT false,
-    exporttopdfonlyvisiblecolumns boolean DEFAULT false
+    exporttopdfonlyvisiblecolumns boolean DEFAULT false,
+    batchsavecoverage boolean,
+    incrementalcoverage boolean,
+    createwarehousedocumentsasynchronously boolean DEFAULT false
 );
 
 
@@ -3047,7 +3081,8 @@ CREATE SEQUENCE basic_timetableexceptionpershiftdto_id_seq
 CREATE TABLE basic_viewedactivity (
     id bigint NOT NULL,
     user_id bigint,
-    log_id bigint
+    log_id bigint,
+    activity_id bigint
 );
 
 
@@ -9845,7 +9880,10 @@ CREATE SEQUENCE materialflowresources_resourcedto_id_seq
 CREATE TABLE materialflowresources_resourcestock (
     id bigint NOT NULL,
     location_id bigint,
-    product_id bigint
+    product_id bigint,
+    quantity numeric(12,5) DEFAULT (0)::numeric,
+    reservedquantity numeric(12,5) DEFAULT (0)::numeric,
+    availablequantity numeric(12,5) DEFAULT (0)::numeric
 );
 
 
@@ -10964,10 +11002,10 @@ CREATE TABLE repairs_repairorder (
 
 
 --
--- Name: orders_orderlistdto; Type: VIEW; Schema: public; Owner: -
+-- Name: orders_orderlistdtosource; Type: VIEW; Schema: public; Owner: -
 --
 
-CREATE VIEW orders_orderlistdto AS
+CREATE VIEW orders_orderlistdtosource AS
  SELECT ordersorder.id,
     ordersorder.active,
     ordersorder.number,
@@ -11013,6 +11051,13 @@ CREATE VIEW orders_orderlistdto AS
      LEFT JOIN basic_division division ON ((division.id = technology.division_id)));
 
 
+--
+-- Name: orders_orderlistdto; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE orders_orderlistdto AS SELECT * FROM orders_orderlistdtosource WITH NO DATA;
+
+
 --
 -- Name: orders_orderlistdto_id_seq; Type: SEQUENCE; Schema: public; Owner: -
 --
@@ -11553,7 +11598,9 @@ CREATE TABLE technologiesgenerator_generatorcontext (
     entityversion bigint DEFAULT 0,
     saved boolean DEFAULT true,
     generationinprogress boolean DEFAULT false,
-    number character varying(255)
+    number character varying(255),
+    generatednodesnumber integer,
+    generationtime integer
 );
 
 
@@ -12656,6 +12703,42 @@ CREATE SEQUENCE productflowthrudivision_productandquantityhelper_id_seq
 ALTER SEQUENCE productflowthrudivision_productandquantityhelper_id_seq OWNED BY productflowthrudivision_productandquantityhelper.id;
 
 
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE productflowthrudivision_productiontrackingdocumentsrequest (
+    id bigint NOT NULL,
+    productiontracking_id bigint,
+    order_id bigint,
+    state character varying(255) DEFAULT '01pending'::character varying,
+    createdate timestamp without time zone,
+    processeddate timestamp without time zone,
+    attempts integer DEFAULT 0,
+    errormessage text,
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE productflowthrudivision_productiontrackingdocumentsrequest_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE productflowthrudivision_productiontrackingdocumentsrequest_id_seq OWNED BY productflowthrudivision_productiontrackingdocumentsrequest.id;
+
+
 --
 -- Name: productflowthrudivision_productstoissue; Type: TABLE; Schema: public; Owner: -
 --
@@ -13549,12 +13632,11 @@ CREATE VIEW productioncounting_performanceanalysisdto_helper AS
 
 
 --
--- Name: productioncounting_performanceanalysisdto; Type: VIEW; Schema: public; Owner: -
+-- Name: productioncounting_performanceanalysisdtosource; Type: VIEW; Schema: public; Owner: -
 --
 
-CREATE VIEW productioncounting_performanceanalysisdto AS
- SELECT row_number() OVER () AS id,
-    bool_or(performanceanalysisdetaildto.active) AS active,
+CREATE VIEW productioncounting_performanceanalysisdtosource AS
+ SELECT bool_or(performanceanalysisdetaildto.active) AS active,
     performanceanalysisdetaildto.productionline_id,
     performanceanalysisdetaildto.productionlinenumber,
     performanceanalysisdetaildto.staff_id,
@@ -13585,6 +13667,17 @@ CREATE VIEW productioncounting_performanceanalysisdto AS
   GROUP BY performanceanalysisdetaildto.productionline_id, performanceanalysisdetaildto.productionlinenumber, performanceanalysisdetaildto.staff_id, performanceanalysisdetaildto.staffname, performanceanalysisdetaildto.shift_id, performanceanalysisdetaildto.shiftname, performanceanalysisdetaildto.timerangefromwithouttime, performanceanalysisdetaildto.timerangetowithouttime;
 
 
+--
+-- Name: productioncounting_performanceanalysisdto; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE productioncounting_performanceanalysisdto AS
+ SELECT (0)::bigint AS id,
+    performanceanalysisdtosource.*
+   FROM productioncounting_performanceanalysisdtosource performanceanalysisdtosource
+  WITH NO DATA;
+
+
 --
 -- Name: productioncounting_performanceanalysisdto_id_seq; Type: SEQUENCE; Schema: public; Owner: -
 --
@@ -13632,8 +13725,6 @@ CREATE TABLE productioncounting_productionanalysisdto (
     technologygroupnumber character varying(255)
 );
 
-ALTER TABLE ONLY productioncounting_productionanalysisdto REPLICA IDENTITY NOTHING;
-
 
 --
 -- Name: productioncounting_productionanalysisdto_id_seq; Type: SEQUENCE; Schema: public; Owner: -
@@ -13761,10 +13852,10 @@ CREATE SEQUENCE productioncounting_productiontracking_number_seq
 
 
 --
--- Name: productioncounting_productiontrackingdto; Type: VIEW; Schema: public; Owner: -
+-- Name: productioncounting_productiontrackingdtosource; Type: VIEW; Schema: public; Owner: -
 --
 
-CREATE VIEW productioncounting_productiontrackingdto AS
+CREATE VIEW productioncounting_productiontrackingdtosource AS
  SELECT productiontracking.id,
     productiontracking.number,
     productiontracking.state,
@@ -13817,6 +13908,13 @@ CREATE VIEW productioncounting_productiontrackingdto AS
      LEFT JOIN productioncounting_trackingoperationproductoutcomponent outcomponent ON ((((outcomponent.product_id = outproduct.id) OR (outcomponent.product_id = product.id)) AND (productiontracking.id = outcomponent.productiontracking_id))));
 
 
+--
+-- Name: productioncounting_productiontrackingdto; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE productioncounting_productiontrackingdto AS SELECT * FROM productioncounting_productiontrackingdtosource WITH NO DATA;
+
+
 --
 -- Name: productioncounting_productiontrackingdto_id_seq; Type: SEQUENCE; Schema: public; Owner: -
 --
@@ -13952,7 +14050,7 @@ CREATE VIEW productioncounting_productiontrackingforproductdto AS
     trackingoperationproductcomponentdto.batchnumber,
     trackingoperationproductcomponentdto.typeofrecord
    FROM (productioncounting_trackingoperationproductcomponentdto trackingoperationproductcomponentdto
-     LEFT JOIN productioncounting_productiontrackingdto productiontrackingdto ON ((productiontrackingdto.id = trackingoperationproductcomponentdto.productiontracking_id)));
+     LEFT JOIN productioncounting_productiontrackingdtosource productiontrackingdto ON ((productiontrackingdto.id = trackingoperationproductcomponentdto.productiontracking_id)));
 
 
 --
@@ -17914,6 +18012,13 @@ ALTER TABLE ONLY avglaborcostcalcfororder_assignmentworkertoshift ALTER COLUMN i
 ALTER TABLE ONLY avglaborcostcalcfororder_avglaborcostcalcfororder ALTER COLUMN id SET DEFAULT nextval('avglaborcostcalcfororder_avglaborcostcalcfororder_id_seq'::regclass);
 
 
+--
+-- Name: basic_activity id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY basic_activity ALTER COLUMN id SET DEFAULT nextval('basic_activity_id_seq'::regclass);
+
+
 --
 -- Name: basic_additionalcode id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -19356,6 +19461,13 @@ ALTER TABLE ONLY productflowthrudivision_materialavailability ALTER COLUMN id SE
 ALTER TABLE ONLY productflowthrudivision_productandquantityhelper ALTER COLUMN id SET DEFAULT nextval('productflowthrudivision_productandquantityhelper_id_seq'::regclass);
 
 
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsrequest ALTER COLUMN id SET DEFAULT nextval('productflowthrudivision_productiontrackingdocumentsrequest_id_seq'::regclass);
+
+
 --
 -- Name: productflowthrudivision_productstoissue id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -20449,6 +20561,21 @@ COPY avglaborcostcalcfororder_avglaborcostcalcfororder (id, startdate, finishdat
 SELECT pg_catalog.setval('avglaborcostcalcfororder_avglaborcostcalcfororder_id_seq', 1, false);
 
 
+--
+-- Data for Name: basic_activity; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY basic_activity (id, createtime, logtype, message) FROM stdin;
+\.
+
+
+--
+-- Name: basic_activity_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('basic_activity_id_seq', 1, false);
+
+
 --
 -- Data for Name: basic_additionalcode; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -21322,7 +21449,7 @@ SELECT pg_catalog.setval('basic_timetableexceptionpershiftdto_id_seq', 1, false)
 -- Data for Name: basic_viewedactivity; Type: TABLE DATA; Schema: public; Owner: -
 --
 
-COPY basic_viewedactivity (id, user_id, log_id) FROM stdin;
+COPY basic_viewedactivity (id, user_id, log_id, activity_id) FROM stdin;
 \.
 
 
@@ -23813,7 +23940,7 @@ SELECT pg_catalog.setval('materialflowresources_resourcedto_id_seq', 1, false);
 -- Data for Name: materialflowresources_resourcestock; Type: TABLE DATA; Schema: public; Owner: -
 --
 
-COPY materialflowresources_resourcestock (id, location_id, product_id) FROM stdin;
+COPY materialflowresources_resourcestock (id, location_id, product_id, quantity, reservedquantity, availablequantity) FROM stdin;
 \.
 
 
@@ -24873,6 +25000,21 @@ COPY productflowthrudivision_productandquantityhelper (id, product_id, location_
 SELECT pg_catalog.setval('productflowthrudivision_productandquantityhelper_id_seq', 1, false);
 
 
+--
+-- Data for Name: productflowthrudivision_productiontrackingdocumentsrequest; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY productflowthrudivision_productiontrackingdocumentsrequest (id, productiontracking_id, order_id, state, createdate, processeddate, attempts, errormessage, entityversion) FROM stdin;
+\.
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('productflowthrudivision_productiontrackingdocumentsrequest_id_seq', 1, false);
+
+
 --
 -- Data for Name: productflowthrudivision_productstoissue; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -27673,6 +27815,14 @@ ALTER TABLE ONLY avglaborcostcalcfororder_avglaborcostcalcfororder
     ADD CONSTRAINT avglaborcostcalcfororder_avglaborcostcalcfororder_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: basic_activity basic_activity_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY basic_activity
+    ADD CONSTRAINT basic_activity_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: basic_additionalcode basic_additionalcode_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -29209,6 +29359,14 @@ ALTER TABLE ONLY materialflowresources_resourcestock
     ADD CONSTRAINT materialflowresources_resourcestock_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: materialflowresources_resourcestock resourcestock_location_product_key; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY materialflowresources_resourcestock
+    ADD CONSTRAINT resourcestock_location_product_key UNIQUE (location_id, product_id);
+
+
 --
 -- Name: materialflowresources_stocktaking materialflowresources_stocktaking_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -29713,6 +29871,14 @@ ALTER TABLE ONLY productflowthrudivision_productandquantityhelper
     ADD CONSTRAINT productflowthrudivision_productandquantityhelper_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest productflowthrudivision_productiontrackingdocumentsrequest_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsrequest
+    ADD CONSTRAINT productflowthrudivision_productiontrackingdocumentsrequest_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: productflowthrudivision_productstoissue productflowthrudivision_productstoissue_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -30840,12 +31006,11 @@ CREATE RULE "_RETURN" AS
 
 
 --
--- Name: productioncounting_productionanalysisdto _RETURN; Type: RULE; Schema: public; Owner: -
+-- Name: productioncounting_productionanalysisdtosource; Type: VIEW; Schema: public; Owner: -
 --
 
-CREATE RULE "_RETURN" AS
-    ON SELECT TO productioncounting_productionanalysisdto DO INSTEAD  SELECT row_number() OVER () AS id,
-    bool_or(productiontracking.active) AS active,
+CREATE VIEW productioncounting_productionanalysisdtosource AS
+ SELECT bool_or(productiontracking.active) AS active,
     (productionline.id)::integer AS productionline_id,
     productionline.number AS productionlinenumber,
     (basiccompany.id)::integer AS company_id,
@@ -36004,6 +36169,22 @@ ALTER TABLE ONLY productioncounting_productiontracking
     ADD CONSTRAINT productiontracking_workstation_fkey FOREIGN KEY (workstation_id) REFERENCES basic_workstation(id) DEFERRABLE;
 
 
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest productiontrackingdocumentsrequest_order_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsrequest
+    ADD CONSTRAINT productiontrackingdocumentsrequest_order_fkey FOREIGN KEY (order_id) REFERENCES orders_order(id) DEFERRABLE;
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsrequest productiontrackingdocumentsrequest_productiontracking_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsrequest
+    ADD CONSTRAINT productiontrackingdocumentsrequest_productiontracking_fkey FOREIGN KEY (productiontracking_id) REFERENCES productioncounting_productiontracking(id) DEFERRABLE;
+
+
 --
 -- Name: basicproductioncounting_productioncountingquantity productsinputlocation_productioncountingquantity_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
@@ -37716,6 +37897,14 @@ ALTER TABLE ONLY materialflow_userlocation
     ADD CONSTRAINT userlocation_user_fkey FOREIGN KEY (user_id) REFERENCES qcadoosecurity_user(id) DEFERRABLE;
 
 
+--
+-- Name: basic_viewedactivity viewedactivity_activity_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY basic_viewedactivity
+    ADD CONSTRAINT viewedactivity_activity_fkey FOREIGN KEY (activity_id) REFERENCES basic_activity(id) DEFERRABLE;
+
+
 --
 -- Name: basic_viewedactivity viewedactivity_log_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
@@ -37956,6 +38145,71 @@ ALTER TABLE ONLY basic_workstationattachment
     ADD CONSTRAINT workstationattachment_workstation_fkey FOREIGN KEY (workstation_id) REFERENCES basic_workstation(id) DEFERRABLE;
 
 
+--
+-- Name: orders_orderlistdto; Type: MATERIALIZED DTO DATA; Schema: public; Owner: -
+--
+
+INSERT INTO orders_orderlistdto SELECT * FROM orders_orderlistdtosource;
+
+CREATE UNIQUE INDEX orders_orderlistdto_id_idx ON orders_orderlistdto USING btree (id);
+
+CREATE INDEX orders_orderlistdto_number_idx ON orders_orderlistdto USING btree (number);
+
+
+--
+-- Name: productioncounting_productiontrackingdto; Type: MATERIALIZED DTO DATA; Schema: public; Owner: -
+--
+
+INSERT INTO productioncounting_productiontrackingdto SELECT * FROM productioncounting_productiontrackingdtosource;
+
+CREATE UNIQUE INDEX productioncounting_productiontrackingdto_id_idx ON productioncounting_productiontrackingdto USING btree (id);
+
+CREATE INDEX productioncounting_productiontrackingdto_number_idx ON productioncounting_productiontrackingdto USING btree (number);
+
+CREATE INDEX productioncounting_productiontrackingdto_orderid_idx ON productioncounting_productiontrackingdto USING btree (order_id);
+
+
+--
+-- Name: productioncounting_productionanalysisdto; Type: MATERIALIZED DTO DATA; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_productionanalysisdto ALTER COLUMN id SET DEFAULT nextval('productioncounting_productionanalysisdto_id_seq'::regclass);
+
+INSERT INTO productioncounting_productionanalysisdto (active, productionline_id, productionlinenumber, company_id, companynumber, staff_id, staffname, assortment_id, assortmentname, product_id, productnumber, productname, productunit, size, usedquantity, wastesquantity, donequantity, shift_id, shiftname, timerangefrom, timerangeto, generator_id, generatorname, order_id, ordernumber, obtainedmasterordernumber, technologygroupnumber)
+ SELECT active, productionline_id, productionlinenumber, company_id, companynumber, staff_id, staffname, assortment_id, assortmentname, product_id, productnumber, productname, productunit, size, usedquantity, wastesquantity, donequantity, shift_id, shiftname, timerangefrom, timerangeto, generator_id, generatorname, order_id, ordernumber, obtainedmasterordernumber, technologygroupnumber
+   FROM productioncounting_productionanalysisdtosource;
+
+CREATE UNIQUE INDEX productioncounting_productionanalysisdto_id_idx ON productioncounting_productionanalysisdto USING btree (id);
+
+CREATE INDEX productioncounting_productionanalysisdto_orderid_idx ON productioncounting_productionanalysisdto USING btree (order_id);
+
+CREATE INDEX productioncounting_productionanalysisdto_dimensions_idx ON productioncounting_productionanalysisdto USING btree (timerangefrom, shift_id, productionline_id, staff_id, product_id);
+
+
+--
+-- Name: productioncounting_performanceanalysisdto; Type: MATERIALIZED DTO DATA; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productioncounting_performanceanalysisdto ALTER COLUMN id SET DEFAULT nextval('productioncounting_performanceanalysisdto_id_seq'::regclass);
+
+INSERT INTO productioncounting_performanceanalysisdto (active, productionline_id, productionlinenumber, staff_id, staffname, timebasedonnormssum, labortimesum, timedeviation, performance, shift_id, shiftname, timerangefrom, timerangeto, donequantity, productionlinequantity, assortmentquantity, dailyperformance)
+ SELECT active, productionline_id, productionlinenumber, staff_id, staffname, timebasedonnormssum, labortimesum, timedeviation, performance, shift_id, shiftname, timerangefrom, timerangeto, donequantity, productionlinequantity, assortmentquantity, dailyperformance
+   FROM productioncounting_performanceanalysisdtosource;
+
+CREATE UNIQUE INDEX productioncounting_performanceanalysisdto_id_idx ON productioncounting_performanceanalysisdto USING btree (id);
+
+CREATE INDEX productioncounting_performanceanalysisdto_timerangefrom_idx ON productioncounting_performanceanalysisdto USING btree (timerangefrom);
+
+CREATE INDEX productioncounting_performanceanalysisdto_dimensions_idx ON productioncounting_performanceanalysisdto USING btree (timerangefrom, shift_id, productionline_id, staff_id);
+
+
+--
+-- Name: productioncounting_productiontracking productiontracking_analysisday_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX productiontracking_analysisday_idx ON productioncounting_productiontracking USING btree ((COALESCE(shiftstartday, (timerangefrom)::date)));
+
+
 --
 -- Name: public; Type: ACL; Schema: -; Owner: -
 --
@@ -0,0 +1,32 @@
+-- Activity stream: activities kept in basic_activity instead of being read from basic_log.
+-- Run once on databases created from dumps older than the activity table; existing activities are copied on startup.
+
+BEGIN;
+
+CREATE TABLE basic_activity (
+    id bigint NOT NULL,
+    createtime timestamp without time zone,
+    logtype character varying(255),
+    message text
+);
+
+CREATE SEQUENCE basic_activity_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+ALTER SEQUENCE basic_activity_id_seq OWNED BY basic_activity.id;
+
+ALTER TABLE ONLY basic_activity ALTER COLUMN id SET DEFAULT nextval('basic_activity_id_seq'::regclass);
+
+ALTER TABLE ONLY basic_activity
+    ADD CONSTRAINT basic_activity_pkey PRIMARY KEY (id);
+
+ALTER TABLE basic_viewedactivity ADD COLUMN activity_id bigint;
+
+ALTER TABLE ONLY basic_viewedactivity
+    ADD CONSTRAINT viewedactivity_activity_fkey FOREIGN KEY (activity_id) REFERENCES basic_activity(id) DEFERRABLE;
+
+COMMIT;
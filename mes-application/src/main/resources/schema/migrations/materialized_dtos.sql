@@ -0,0 +1,24 @@
+-- Materialized DTOs: order and production tracking lists read from tables kept up to date by MaterializedDtoService.
+-- Run once on databases created from dumps in which those lists are plain views; views depending on them follow the rename.
+
+BEGIN;
+
+ALTER VIEW orders_orderlistdto RENAME TO orders_orderlistdtosource;
+
+CREATE TABLE orders_orderlistdto AS SELECT * FROM orders_orderlistdtosource;
+
+CREATE UNIQUE INDEX orders_orderlistdto_id_idx ON orders_orderlistdto USING btree (id);
+
+CREATE INDEX orders_orderlistdto_number_idx ON orders_orderlistdto USING btree (number);
+
+ALTER VIEW productioncounting_productiontrackingdto RENAME TO productioncounting_productiontrackingdtosource;
+
+CREATE TABLE productioncounting_productiontrackingdto AS SELECT * FROM productioncounting_productiontrackingdtosource;
+
+CREATE UNIQUE INDEX productioncounting_productiontrackingdto_id_idx ON productioncounting_productiontrackingdto USING btree (id);
+
+CREATE INDEX productioncounting_productiontrackingdto_number_idx ON productioncounting_productiontrackingdto USING btree (number);
+
+CREATE INDEX productioncounting_productiontrackingdto_orderid_idx ON productioncounting_productiontrackingdto USING btree (order_id);
+
+COMMIT;
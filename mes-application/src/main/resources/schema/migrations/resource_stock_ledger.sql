@@ -0,0 +1,21 @@
+-- Resource stock ledger: quantities kept in materialflowresources_resourcestock, one row per location and product.
+-- Run once on databases created from dumps older than the ledger.
+
+BEGIN;
+
+ALTER TABLE materialflowresources_resourcestock ADD COLUMN quantity numeric(12,5) DEFAULT (0)::numeric;
+ALTER TABLE materialflowresources_resourcestock ADD COLUMN reservedquantity numeric(12,5) DEFAULT (0)::numeric;
+ALTER TABLE materialflowresources_resourcestock ADD COLUMN availablequantity numeric(12,5) DEFAULT (0)::numeric;
+
+DELETE FROM materialflowresources_resourcestock duplicate
+    USING materialflowresources_resourcestock kept
+    WHERE duplicate.location_id = kept.location_id AND duplicate.product_id = kept.product_id AND duplicate.id > kept.id;
+
+ALTER TABLE ONLY materialflowresources_resourcestock
+    ADD CONSTRAINT resourcestock_location_product_key UNIQUE (location_id, product_id);
+
+UPDATE materialflowresources_resourcestock rs
+    SET quantity = dto.quantity, reservedquantity = dto.reservedquantity, availablequantity = dto.availablequantity
+    FROM materialflowresources_resourcestockdto dto WHERE dto.id = rs.id;
+
+COMMIT;
@@ -27,6 +27,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.qcadoo.mes.basic.activityStream.ActivityStreamService;
 import com.qcadoo.plugin.api.Module;
 
 @Component
@@ -56,6 +57,9 @@ public class BasicOnStartupService extends Module {
     @Autowired
     private ExchangeRatesUpdateService exchangeRatesUpdateService;
 
+    @Autowired
+    private ActivityStreamService activityStreamService;
+
     @Override
     @Transactional
     public void multiTenantEnable() {
@@ -67,6 +71,8 @@ public class BasicOnStartupService extends Module {
         addressTypeLoader.loadAddressTypes();
         colorLoader.loadColors();
 
+        activityStreamService.migrateActivitiesFromLog();
+
         exchangeRatesUpdateService.update();
     }
 
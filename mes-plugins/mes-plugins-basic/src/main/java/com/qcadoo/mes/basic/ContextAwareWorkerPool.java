@@ -0,0 +1,120 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Bounded pool running independent tasks and waiting for all of them. Workers see the tenant, security and locale context of
+ * the thread which submitted the tasks. Request attributes aren't passed on, request scoped beans aren't meant to be used by
+ * several threads at once. Tasks submitted from a worker of any pool run in place to avoid waiting on a busy pool.
+ */
+public abstract class ContextAwareWorkerPool {
+
+    private static final int L_WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadLocal<Boolean> IN_WORKER = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ExecutorService executorService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    protected ContextAwareWorkerPool(final String threadNamePrefix) {
+        executorService = Executors.newFixedThreadPool(L_WORKERS, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    public void runAll(final Collection<Runnable> tasks) {
+        if (tasks.size() <= 1 || IN_WORKER.get()) {
+            tasks.forEach(Runnable::run);
+
+            return;
+        }
+
+        int tenantId = multiTenantService.getCurrentTenantId();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+
+        List<Future<?>> futures = tasks.stream()
+                .map(task -> executorService.submit(() -> runInContext(task, tenantId, securityContext, localeContext)))
+                .collect(Collectors.toList());
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException("Worker task interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Worker task failed", e.getCause());
+            }
+        }
+    }
+
+    private void runInContext(final Runnable task, final int tenantId, final SecurityContext securityContext,
+            final LocaleContext localeContext) {
+        IN_WORKER.set(Boolean.TRUE);
+        SecurityContextHolder.setContext(securityContext);
+        LocaleContextHolder.setLocaleContext(localeContext);
+
+        try {
+            multiTenantService.doInMultiTenantContext(tenantId, task::run);
+        } finally {
+            LocaleContextHolder.resetLocaleContext();
+            SecurityContextHolder.clearContext();
+            IN_WORKER.remove();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+}
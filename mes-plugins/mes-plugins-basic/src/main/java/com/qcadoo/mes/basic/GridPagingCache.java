@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Short living cache of grid total counts and page boundaries, keyed by tenant, query and its parameters. Entries are not invalidated
+ * on data changes, they just expire after few seconds - callers check the cached count against the fetched page.
+ */
+@Service
+public class GridPagingCache {
+
+    private static final long L_TIME_TO_LIVE_MILLIS = 15000L;
+
+    private static final int L_MAX_ENTRIES = 1000;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final ConcurrentMap<String, CachedValue<Integer>> counts = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CachedValue<PageBoundary>> boundaries = new ConcurrentHashMap<>();
+
+    public Optional<Integer> getCount(final String query, final Map<String, Object> parameters) {
+        return get(counts, buildKey(query, parameters));
+    }
+
+    public void putCount(final String query, final Map<String, Object> parameters, final int count) {
+        put(counts, buildKey(query, parameters), count);
+    }
+
+    public Optional<PageBoundary> getBoundary(final String query, final Map<String, Object> parameters, final int page) {
+        return get(boundaries, buildKey(query, parameters) + "#" + page);
+    }
+
+    public void putBoundary(final String query, final Map<String, Object> parameters, final int page,
+            final PageBoundary boundary) {
+        put(boundaries, buildKey(query, parameters) + "#" + page, boundary);
+    }
+
+    public void clear() {
+        counts.clear();
+        boundaries.clear();
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private String buildKey(final String query, final Map<String, Object> parameters) {
+        return multiTenantService.getCurrentTenantId() + ":" + query + new TreeMap<>(parameters);
+    }
+
+    private <T> Optional<T> get(final ConcurrentMap<String, CachedValue<T>> cache, final String key) {
+        CachedValue<T> cachedValue = cache.get(key);
+        if (cachedValue == null) {
+            return Optional.empty();
+        }
+        if (cachedValue.isExpired(currentTimeMillis())) {
+            cache.remove(key, cachedValue);
+            return Optional.empty();
+        }
+        return Optional.of(cachedValue.value);
+    }
+
+    private <T> void put(final ConcurrentMap<String, CachedValue<T>> cache, final String key, final T value) {
+        long now = currentTimeMillis();
+        if (cache.size() >= L_MAX_ENTRIES) {
+            cache.values().removeIf(cachedValue -> cachedValue.isExpired(now));
+            if (cache.size() >= L_MAX_ENTRIES) {
+                cache.clear();
+            }
+        }
+        cache.put(key, new CachedValue<>(value, now + L_TIME_TO_LIVE_MILLIS));
+    }
+
+    public static final class PageBoundary {
+
+        private final Object sortValue;
+
+        private final Object id;
+
+        public PageBoundary(final Object sortValue, final Object id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+
+        public Object getSortValue() {
+            return sortValue;
+        }
+
+        public Object getId() {
+            return id;
+        }
+    }
+
+    private static final class CachedValue<T> {
+
+        private final T value;
+
+        private final long expiresAt;
+
+        private CachedValue(final T value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(final long now) {
+            return now >= expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Query for {@link LookupUtils#getGridResponse(GridQuery, String, String, Integer, int, Object, java.util.Map)}.
+ * <p>
+ * The query has the same form as the one passed to the plain lookup - "SELECT %s FROM (...) q" - and must expose an unique
+ * id column used as a tie breaker in ordering. Sorting on one of keyset columns allows seeking the next page from the last
+ * row of the previous one instead of skipping rows with OFFSET. Page columns are computed only for rows of the returned
+ * page, they can refer to the page row through "page." prefix. Page columns can't be used as sort keys, because the page is
+ * chosen before they are computed.
+ */
+public class GridQuery {
+
+    private static final String L_ID = "id";
+
+    private final String query;
+
+    private final Set<String> keysetColumns;
+
+    private final Map<String, String> pageColumns;
+
+    private GridQuery(final String query, final Set<String> keysetColumns, final Map<String, String> pageColumns) {
+        this.query = query;
+        this.keysetColumns = keysetColumns;
+        this.pageColumns = pageColumns;
+    }
+
+    public static GridQuery of(final String query) {
+        return new GridQuery(query, Collections.emptySet(), Collections.emptyMap());
+    }
+
+    public GridQuery withKeysetColumns(final String... columns) {
+        return new GridQuery(query, Arrays.stream(columns).map(String::toLowerCase).collect(Collectors.toSet()),
+                pageColumns);
+    }
+
+    public GridQuery withPageColumn(final String column, final String expression) {
+        Map<String, String> columns = new LinkedHashMap<>(pageColumns);
+
+        columns.put(column.toLowerCase(), expression);
+
+        return new GridQuery(query, keysetColumns, columns);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public String getIdColumn() {
+        return L_ID;
+    }
+
+    public boolean isKeysetColumn(final String column) {
+        return keysetColumns.contains(column.toLowerCase());
+    }
+
+    public String getPageColumns() {
+        return pageColumns.entrySet().stream().map(column -> column.getValue() + " AS " + column.getKey())
+                .collect(Collectors.joining(", "));
+    }
+
+    public boolean hasPageColumns() {
+        return !pageColumns.isEmpty();
+    }
+
+    public boolean isPageColumn(final String column) {
+        return pageColumns.containsKey(column.toLowerCase());
+    }
+
+}
@@ -11,6 +11,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.activityStream.ActivityStreamService;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.LogFields;
 import com.qcadoo.mes.basic.constants.LogLevel;
@@ -41,6 +42,9 @@ public class LogService {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ActivityStreamService activityStreamService;
+
     public final static class Builder {
 
         private Builder() {
@@ -157,7 +161,14 @@ public class LogService {
             userId = findBotUser().getId();
         }
         logEntity.setField(LogFields.USER, userId);
-        return logDD.save(logEntity);
+
+        logEntity = logDD.save(logEntity);
+
+        if (LogLevel.ACTIVITY.equals(builder.logLevel) && logEntity.isValid()) {
+            activityStreamService.addActivity(builder.type, builder.message, logEntity.getDateField(LogFields.CREATE_TIME));
+        }
+
+        return logEntity;
     }
 
     private DataDefinition getLogDD() {
@@ -200,10 +211,17 @@ public class LogService {
 
         String sql = "DELETE FROM basic_log WHERE createtime < (now() - interval '1 month');";
 
+        String sqlForViewedActivities = "DELETE FROM basic_viewedactivity "
+                + "WHERE activity_id IN (SELECT id FROM basic_activity WHERE createtime < (now() - interval '1 month'))";
+
+        String sqlForActivities = "DELETE FROM basic_activity WHERE createtime < (now() - interval '1 month');";
+
         Map<String, Object> params = Maps.newHashMap();
 
         jdbcTemplate.update(sqlForViewed, params);
         jdbcTemplate.update(sql, params);
+        jdbcTemplate.update(sqlForViewedActivities, params);
+        jdbcTemplate.update(sqlForActivities, params);
     }
 
 }
@@ -1,27 +1,39 @@
 package com.qcadoo.mes.basic;
 
 import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
+import com.qcadoo.mes.basic.GridPagingCache.PageBoundary;
 
 @Service
 public class LookupUtils {
 
+    private static final String L_SEEK_VALUE = "gridSeekValue";
+
+    private static final String L_SEEK_ID = "gridSeekId";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private GridPagingCache gridPagingCache;
+
     public <R> GridResponse<R> getGridResponse(String query, String sidx, String sord, Integer page, int perPage, R recordExample) {
         return getGridResponse(query, sidx, sord, page, perPage, recordExample, new HashMap<>());
     }
@@ -46,6 +58,88 @@ public class LookupUtils {
         return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords, records);
     }
 
+    public <R> GridResponse<R> getGridResponse(GridQuery gridQuery, String sidx, String sord, Integer page, int perPage, R recordExample, Map<String, Object> parameters) {
+        sidx = sidx != null ? sidx.toLowerCase() : "";
+        sord = sord != null ? sord.toLowerCase() : "";
+
+        Preconditions.checkState(Arrays.asList("asc", "desc", "").contains(sord));
+        Preconditions.checkState(Arrays.asList(recordExample.getClass().getDeclaredFields()).stream().map(Field::getName).map(String::toLowerCase).collect(Collectors.toList()).contains(sidx));
+        Preconditions.checkState(!gridQuery.isPageColumn(sidx), "Page column %s can't be used for sorting", sidx);
+
+        String where = addQueryWhereForObject(recordExample);
+
+        parameters.putAll(getParametersForObject(recordExample));
+
+        String queryCount = String.format(gridQuery.getQuery(), "COUNT(*)", "") + where;
+        String queryFiltered = String.format(gridQuery.getQuery(), "*", "") + where;
+        String orderBy = String.format(" ORDER BY %s %s, %s %s", sidx, sord, gridQuery.getIdColumn(), sord);
+
+        Map<String, Object> recordsParameters = new HashMap<>(parameters);
+        String queryRecords = queryFiltered;
+        String pagingKey = queryFiltered + orderBy;
+        boolean keyset = gridQuery.isKeysetColumn(sidx);
+
+        Optional<PageBoundary> previousPageBoundary = Optional.empty();
+        if (keyset && page > 1) {
+            previousPageBoundary = gridPagingCache.getBoundary(pagingKey, parameters, page - 1);
+        }
+        if (previousPageBoundary.isPresent()) {
+            PageBoundary boundary = previousPageBoundary.get();
+            queryRecords += (where.isEmpty() ? " WHERE " : " AND ") + buildSeekCondition(sidx, sord, gridQuery.getIdColumn(), boundary.getSortValue());
+            recordsParameters.put(L_SEEK_VALUE, boundary.getSortValue());
+            recordsParameters.put(L_SEEK_ID, boundary.getId());
+            queryRecords += orderBy + String.format(" LIMIT %d", perPage);
+        } else {
+            queryRecords += orderBy + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        }
+        if (gridQuery.hasPageColumns()) {
+            queryRecords = String.format("SELECT page.*, %s FROM (%s) page", gridQuery.getPageColumns(), queryRecords) + orderBy;
+        }
+
+        BoundaryRowMapper<R> rowMapper = new BoundaryRowMapper<>(new BeanPropertyRowMapper(recordExample.getClass()), sidx, gridQuery.getIdColumn());
+        List<R> records = jdbcTemplate.query(queryRecords, recordsParameters, rowMapper);
+
+        if (keyset && records.size() == perPage) {
+            gridPagingCache.putBoundary(pagingKey, parameters, page, rowMapper.getLastRowBoundary());
+        }
+
+        Integer countRecords = getCountRecords(queryCount, parameters, page, perPage, records.size());
+
+        return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords, records);
+    }
+
+    private Integer getCountRecords(String queryCount, Map<String, Object> parameters, int page, int perPage, int pageRecords) {
+        int offset = perPage * (page - 1);
+        if (pageRecords > 0 && pageRecords < perPage || page == 1 && pageRecords == 0) {
+            int countRecords = offset + pageRecords;
+            gridPagingCache.putCount(queryCount, parameters, countRecords);
+            return countRecords;
+        }
+
+        Optional<Integer> cachedCount = gridPagingCache.getCount(queryCount, parameters);
+        if (cachedCount.isPresent() && (pageRecords == 0 ? cachedCount.get() <= offset : cachedCount.get() >= offset + perPage)) {
+            return cachedCount.get();
+        }
+
+        Integer countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
+        gridPagingCache.putCount(queryCount, parameters, countRecords);
+        return countRecords;
+    }
+
+    static String buildSeekCondition(String sidx, String sord, String idColumn, Object sortValue) {
+        // PostgreSQL puts nulls last in ascending and first in descending order
+        if ("desc".equals(sord)) {
+            if (sortValue == null) {
+                return String.format("(%s IS NOT NULL OR %s < :%s)", sidx, idColumn, L_SEEK_ID);
+            }
+            return String.format("(%1$s < :%2$s OR (%1$s = :%2$s AND %3$s < :%4$s))", sidx, L_SEEK_VALUE, idColumn, L_SEEK_ID);
+        }
+        if (sortValue == null) {
+            return String.format("(%s IS NULL AND %s > :%s)", sidx, idColumn, L_SEEK_ID);
+        }
+        return String.format("(%1$s > :%2$s OR (%1$s = :%2$s AND %3$s > :%4$s) OR %1$s IS NULL)", sidx, L_SEEK_VALUE, idColumn, L_SEEK_ID);
+    }
+
     private String addQueryWhereForObject(Object object) {
         List<String> items = new ArrayList<>();
 
@@ -123,4 +217,31 @@ public class LookupUtils {
 
         return parameters;
     }
+
+    private static class BoundaryRowMapper<R> implements RowMapper<R> {
+
+        private final RowMapper<R> rowMapper;
+
+        private final String sortColumn;
+
+        private final String idColumn;
+
+        private PageBoundary lastRowBoundary;
+
+        BoundaryRowMapper(RowMapper<R> rowMapper, String sortColumn, String idColumn) {
+            this.rowMapper = rowMapper;
+            this.sortColumn = sortColumn;
+            this.idColumn = idColumn;
+        }
+
+        @Override
+        public R mapRow(ResultSet rs, int rowNum) throws SQLException {
+            lastRowBoundary = new PageBoundary(rs.getObject(sortColumn), rs.getObject(idColumn));
+            return rowMapper.mapRow(rs, rowNum);
+        }
+
+        PageBoundary getLastRowBoundary() {
+            return lastRowBoundary;
+        }
+    }
 }
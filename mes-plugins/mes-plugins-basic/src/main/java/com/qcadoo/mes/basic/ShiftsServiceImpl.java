@@ -30,6 +30,8 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.ShiftsCalendar;
+import com.qcadoo.mes.basic.shift.ShiftsCalendarCache;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -90,7 +92,9 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     private static final String FROM_DATE_FIELD = "fromDate";
 
-    private static final long STEP = DateTimeConstants.MILLIS_PER_WEEK;
+    private static final String L_ALL_SHIFTS = "allShifts";
+
+    private static final long CALENDAR_HORIZON = 53L * DateTimeConstants.MILLIS_PER_WEEK;
 
     private static final long MAX_TIMESTAMP = new DateTime(2100, 1, 1, 0, 0, 0, 0).toDate().getTime();
 
@@ -105,6 +109,9 @@ public class ShiftsServiceImpl implements ShiftsService {
     @Autowired
     private ShiftExceptionService shiftExceptionService;
 
+    @Autowired
+    private ShiftsCalendarCache shiftsCalendarCache;
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -345,70 +352,89 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForOrder(final Date dateFrom, final long seconds) {
-        if (dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
-                .getTotalNumberOfEntities() == 0) {
-            return null;
-        }
+        long from = dateFrom.getTime();
+        long to = Math.min(from + CALENDAR_HORIZON, MAX_TIMESTAMP);
 
-        long start = dateFrom.getTime();
-        long remaining = seconds;
+        while (true) {
+            Optional<ShiftsCalendar> shiftsCalendar = getShiftsCalendar(from, to);
 
-        while (remaining >= 0) {
-            List<ShiftHour> hours = getHoursForAllShifts(new Date(start), new Date(start + STEP));
+            if (!shiftsCalendar.isPresent()) {
+                return null;
+            }
 
-            for (ShiftHour hour : hours) {
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
+            Optional<Date> dateTo = shiftsCalendar.get().addWorkingTime(dateFrom, seconds);
 
-                if (diff >= remaining) {
-                    return new Date(hour.getDateFrom().getTime() + (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
+            if (dateTo.isPresent()) {
+                return dateTo.get();
             }
 
-            start += STEP;
-
-            if (start > MAX_TIMESTAMP) {
+            if (to >= MAX_TIMESTAMP) {
                 return null;
             }
-        }
 
-        return null;
+            to = Math.min(to + Math.max(CALENDAR_HORIZON, to - from), MAX_TIMESTAMP);
+        }
     }
 
     @Override
     public Date findDateFromForOrder(final Date dateTo, final long seconds) {
-        if (dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find().list()
-                .getTotalNumberOfEntities() == 0) {
+        long to = dateTo.getTime();
+        long from = Math.max(to - CALENDAR_HORIZON, MIN_TIMESTAMP);
+
+        if (to < MIN_TIMESTAMP) {
             return null;
         }
 
-        long stop = dateTo.getTime();
-        long remaining = seconds;
+        while (true) {
+            Optional<ShiftsCalendar> shiftsCalendar = getShiftsCalendar(from, to);
 
-        while (remaining >= 0) {
-            List<ShiftHour> hours = getHoursForAllShifts(new Date(stop - STEP), new Date(stop));
-
-            for (int i = hours.size() - 1; i >= 0; i--) {
-                ShiftHour hour = hours.get(i);
+            if (!shiftsCalendar.isPresent()) {
+                return null;
+            }
 
-                long diff = (hour.getDateTo().getTime() - hour.getDateFrom().getTime()) / 1000;
+            Optional<Date> dateFrom = shiftsCalendar.get().subtractWorkingTime(dateTo, seconds);
 
-                if (diff >= remaining) {
-                    return new Date(hour.getDateTo().getTime() - (remaining * 1000));
-                } else {
-                    remaining -= diff;
-                }
+            if (dateFrom.isPresent()) {
+                return dateFrom.get();
             }
 
-            stop -= STEP;
-
-            if (stop < MIN_TIMESTAMP) {
+            if (from <= MIN_TIMESTAMP) {
                 return null;
             }
+
+            from = Math.max(from - Math.max(CALENDAR_HORIZON, to - from), MIN_TIMESTAMP);
         }
+    }
 
-        return null;
+    private Optional<ShiftsCalendar> getShiftsCalendar(final long from, final long to) {
+        ShiftsCalendar shiftsCalendar = shiftsCalendarCache.get(L_ALL_SHIFTS);
+
+        if (shiftsCalendar != null && shiftsCalendar.covers(from, to)) {
+            return Optional.of(shiftsCalendar);
+        }
+
+        List<Entity> shifts = getShifts();
+
+        if (shifts.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long validFrom = new DateTime(from).withTimeAtStartOfDay().getMillis();
+        long validTo = to;
+
+        if (shiftsCalendar != null) {
+            validFrom = Math.min(validFrom, shiftsCalendar.getValidFrom());
+            validTo = Math.max(validTo, shiftsCalendar.getValidTo());
+        }
+
+        // hours are generated from the day before, so shifts working over midnight are complete from validFrom
+        List<ShiftHour> hours = getHoursForShifts(shifts, new DateTime(validFrom).minusDays(1).toDate(), new Date(validTo));
+
+        shiftsCalendar = new ShiftsCalendar(validFrom, validTo, hours);
+
+        shiftsCalendarCache.put(L_ALL_SHIFTS, shiftsCalendar);
+
+        return Optional.of(shiftsCalendar);
     }
 
     @Override
@@ -416,6 +442,10 @@ public class ShiftsServiceImpl implements ShiftsService {
         List<Entity> shifts = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT).find()
                 .list().getEntities();
 
+        return getHoursForShifts(shifts, dateFrom, dateTo);
+    }
+
+    private List<ShiftHour> getHoursForShifts(final List<Entity> shifts, final Date dateFrom, final Date dateTo) {
         List<ShiftHour> hours = Lists.newArrayList();
 
         for (Entity shift : shifts) {
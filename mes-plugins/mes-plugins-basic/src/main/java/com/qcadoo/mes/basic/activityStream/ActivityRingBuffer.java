@@ -0,0 +1,149 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.activityStream;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.activityStream.model.ActivityDto;
+
+/**
+ * Newest activities ordered by id. Ids are allocated before commit, so an activity may arrive after activities with higher
+ * ids; the time of arrival is kept to hand such activities out even to readers whose cursor is already past their id.
+ */
+final class ActivityRingBuffer {
+
+    private final BufferedActivity[] activities;
+
+    private int start;
+
+    private int size;
+
+    ActivityRingBuffer(final int capacity) {
+        activities = new BufferedActivity[capacity];
+    }
+
+    synchronized void add(final ActivityDto activity) {
+        add(activity, System.currentTimeMillis());
+    }
+
+    synchronized void add(final ActivityDto activity, final long arrivedAt) {
+        BufferedActivity bufferedActivity = new BufferedActivity(activity, arrivedAt);
+
+        if (size > 0 && activity.getId() <= get(size - 1).activity.getId()) {
+            insertOutOfOrder(bufferedActivity);
+
+            return;
+        }
+
+        if (size < activities.length) {
+            activities[(start + size) % activities.length] = bufferedActivity;
+            size++;
+        } else {
+            activities[start] = bufferedActivity;
+            start = (start + 1) % activities.length;
+        }
+    }
+
+    synchronized long getLastId() {
+        return size == 0 ? 0L : get(size - 1).activity.getId();
+    }
+
+    synchronized long getFirstId() {
+        return size == 0 ? 0L : get(0).activity.getId();
+    }
+
+    synchronized List<ActivityDto> getNewerThan(final long cursor, final int limit) {
+        return getNewerThan(cursor, Long.MAX_VALUE, limit);
+    }
+
+    /**
+     * Returns activities with id greater than cursor and activities which arrived after given time, newest first.
+     */
+    synchronized List<ActivityDto> getNewerThan(final long cursor, final long arrivedAfter, final int limit) {
+        List<ActivityDto> newerActivities = Lists.newArrayList();
+
+        for (int index = size - 1; index >= 0 && newerActivities.size() < limit; index--) {
+            BufferedActivity bufferedActivity = get(index);
+
+            if (bufferedActivity.activity.getId() > cursor || bufferedActivity.arrivedAt > arrivedAfter) {
+                newerActivities.add(bufferedActivity.activity);
+            }
+        }
+
+        return newerActivities;
+    }
+
+    private BufferedActivity get(final int index) {
+        return activities[(start + index) % activities.length];
+    }
+
+    private void insertOutOfOrder(final BufferedActivity activity) {
+        List<BufferedActivity> sortedActivities = Lists.newArrayListWithCapacity(size + 1);
+
+        for (int index = 0; index < size; index++) {
+            BufferedActivity bufferedActivity = get(index);
+
+            if (bufferedActivity.activity.getId().equals(activity.activity.getId())) {
+                return;
+            }
+
+            sortedActivities.add(bufferedActivity);
+        }
+
+        int position = sortedActivities.size();
+
+        while (position > 0 && sortedActivities.get(position - 1).activity.getId() > activity.activity.getId()) {
+            position--;
+        }
+
+        if (position == 0 && size == activities.length) {
+            return;
+        }
+
+        sortedActivities.add(position, activity);
+
+        start = 0;
+        size = 0;
+
+        for (BufferedActivity sortedActivity : sortedActivities.subList(
+                Math.max(0, sortedActivities.size() - activities.length), sortedActivities.size())) {
+            activities[size++] = sortedActivity;
+        }
+    }
+
+    private static final class BufferedActivity {
+
+        private final ActivityDto activity;
+
+        private final long arrivedAt;
+
+        private BufferedActivity(final ActivityDto activity, final long arrivedAt) {
+            this.activity = activity;
+            this.arrivedAt = arrivedAt;
+        }
+
+    }
+
+}
@@ -1,7 +1,11 @@
 package com.qcadoo.mes.basic.activityStream;
 
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,71 +13,250 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.activityStream.model.ActivityDto;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.security.api.UserService;
+import com.qcadoo.mes.basic.activityStream.model.ActivityFeedDto;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.tenant.api.MultiTenantService;
 
+/**
+ * Serves the newest activities of the current tenant from a ring buffer. Activity ids come from a sequence inside the writing
+ * transaction, so activities may commit out of id order. The buffer re-reads activities created within
+ * {@link #L_LATE_COMMIT_LOOKBACK_MILLIS} on every synchronization and the feed hands out activities which arrived within that
+ * time again, even when their id is not greater than the cursor; clients de-duplicate them by id.
+ */
 @Service
 public class ActivityStreamService {
 
+    private static final long L_SYNC_INTERVAL_MILLIS = 30 * 1000L;
+
+    private static final long L_LATE_COMMIT_LOOKBACK_MILLIS = 5 * 60 * 1000L;
+
+    private static final String L_INSERT_ACTIVITY = "INSERT INTO basic_activity (id, createtime, logtype, message) "
+            + "VALUES (nextval('basic_activity_id_seq'), :createTime, :type, :message) RETURNING id";
+
+    private static final String L_SELECT_ACTIVITIES = "SELECT id, logtype AS type, createtime AS \"date\", message "
+            + "FROM basic_activity WHERE id > :cursor OR createtime > :createdAfter ORDER BY id DESC LIMIT :limit";
+
+    private static final String L_SELECT_VIEWED_ACTIVITIES = "SELECT activity_id FROM basic_viewedactivity "
+            + "WHERE user_id = :userId AND activity_id >= :firstId";
+
     @Value("${activityStreamLimit:20}")
     private int activityStreamLimit;
 
+    @Value("${activityStreamBufferSize:200}")
+    private int activityStreamBufferSize;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Autowired
-    private UserService userService;
+    private SecurityService securityService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, TenantActivities> activitiesByTenant = new ConcurrentHashMap<>();
 
     public List<ActivityDto> getActivityStream() {
-        Entity currentUser = userService.getCurrentUserEntity();
+        return getActivityFeed(0L).getActivities();
+    }
 
-        StringBuilder sql = new StringBuilder();
+    /**
+     * Returns activities newer than the cursor and activities which arrived within the late commit lookback, which may repeat
+     * activities returned by previous calls.
+     */
+    public ActivityFeedDto getActivityFeed(final long cursor) {
+        Long userId = securityService.getCurrentUserId();
+
+        TenantActivities tenantActivities = getTenantActivities();
+        ActivityRingBuffer buffer = getActivityRingBuffer(tenantActivities);
 
-        sql.append("WITH viewed_activities(user_id, log_id) AS ( ");
-        sql.append("    SELECT user_id, log_id FROM basic_viewedactivity ");
-        sql.append("    WHERE user_id = :userId) ");
-        sql.append(
-                "SELECT log.id, log.logType AS type, log.createTime AS \"date\", log.message, (va.user_id IS NOT NULL) as viewed ");
-        sql.append("FROM basic_log log ");
-        sql.append("LEFT JOIN viewed_activities va ON log.id = va.log_id ");
-        sql.append("WHERE log.logLevel = '07activity' ");
-        sql.append("ORDER BY createtime DESC ");
-        sql.append("LIMIT :activityStreamLimit");
+        Set<Long> viewedActivityIds = tenantActivities.viewedActivityIdsByUser.computeIfAbsent(userId,
+                id -> loadViewedActivityIds(id, buffer.getFirstId()));
+
+        long arrivedAfter = System.currentTimeMillis() - L_LATE_COMMIT_LOOKBACK_MILLIS;
+
+        List<ActivityDto> activities = buffer.getNewerThan(cursor, arrivedAfter, activityStreamLimit).stream()
+                .map(activity -> copyActivity(activity, viewedActivityIds.contains(activity.getId())))
+                .collect(Collectors.toList());
+
+        return new ActivityFeedDto(Math.max(cursor, buffer.getLastId()), activities);
+    }
 
+    public void addActivity(final String type, final String message, final Date createTime) {
         Map<String, Object> params = Maps.newHashMap();
 
-        params.put("userId", currentUser.getId());
-        params.put("activityStreamLimit", activityStreamLimit);
+        params.put("createTime", createTime);
+        params.put("type", type);
+        params.put("message", message);
 
-        List<ActivityDto> activities = jdbcTemplate.query(sql.toString(), params,
-                BeanPropertyRowMapper.newInstance(ActivityDto.class));
+        ActivityDto activity = new ActivityDto();
 
-        return activities;
+        activity.setId(jdbcTemplate.queryForObject(L_INSERT_ACTIVITY, params, Long.class));
+        activity.setType(type);
+        activity.setMessage(message);
+        activity.setDate(createTime);
+
+        TenantActivities tenantActivities = getTenantActivities();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    addToActivityRingBuffer(tenantActivities, activity);
+                }
+            });
+        } else {
+            addToActivityRingBuffer(tenantActivities, activity);
+        }
     }
 
     public void markActivityAsViewed(final List<Integer> viewedActivities) {
-        Entity currentUser = userService.getCurrentUserEntity();
+        if (viewedActivities.isEmpty()) {
+            return;
+        }
 
-        Long currentUserId = currentUser.getId();
+        Long currentUserId = securityService.getCurrentUserId();
 
         String values = viewedActivities.stream().map(va -> "(" + currentUserId.toString() + "," + va.toString() + ")")
-                .collect(Collectors.toList()).stream().collect(Collectors.joining(","));
+                .collect(Collectors.joining(","));
 
         StringBuilder sql = new StringBuilder();
 
-        sql.append("WITH data(user_id, log_id) AS ( ");
+        sql.append("WITH data(user_id, activity_id) AS ( ");
         sql.append("VALUES ").append(values).append(" ) ");
-        sql.append("INSERT INTO basic_viewedactivity (user_id, log_id) ");
-        sql.append("SELECT d.user_id, d.log_id FROM data d ");
-        sql.append(
-                "WHERE NOT EXISTS (SELECT 1 FROM basic_viewedactivity va WHERE va.user_id = d.user_id AND va.log_id = d.log_id) ");
+        sql.append("INSERT INTO basic_viewedactivity (user_id, activity_id) ");
+        sql.append("SELECT d.user_id, d.activity_id FROM data d ");
+        sql.append("WHERE NOT EXISTS (SELECT 1 FROM basic_viewedactivity va ");
+        sql.append("WHERE va.user_id = d.user_id AND va.activity_id = d.activity_id) ");
+
+        jdbcTemplate.update(sql.toString(), Collections.emptyMap());
+
+        TenantActivities tenantActivities = getTenantActivities();
+        Set<Long> viewedActivityIds = tenantActivities.viewedActivityIdsByUser.get(currentUserId);
+
+        if (viewedActivityIds != null) {
+            long firstId = getActivityRingBuffer(tenantActivities).getFirstId();
+
+            viewedActivityIds.removeIf(id -> id < firstId);
+            viewedActivities.forEach(id -> viewedActivityIds.add(id.longValue()));
+        }
+    }
+
+    public void migrateActivitiesFromLog() {
+        StringBuilder sql = new StringBuilder();
+
+        sql.append("INSERT INTO basic_activity (id, createtime, logtype, message) ");
+        sql.append("SELECT id, createtime, logtype, message FROM basic_log ");
+        sql.append("WHERE loglevel = '07activity' AND NOT EXISTS (SELECT 1 FROM basic_activity)");
+
+        int migratedActivities = jdbcTemplate.update(sql.toString(), Collections.emptyMap());
+
+        if (migratedActivities > 0) {
+            jdbcTemplate.update("UPDATE basic_viewedactivity SET activity_id = log_id "
+                    + "WHERE activity_id IS NULL AND log_id IN (SELECT id FROM basic_activity)", Collections.emptyMap());
+            jdbcTemplate.queryForObject("SELECT setval('basic_activity_id_seq', GREATEST((SELECT MAX(id) FROM basic_activity), "
+                    + "(SELECT last_value FROM basic_activity_id_seq)))", Collections.emptyMap(), Long.class);
+        }
+    }
+
+    private TenantActivities getTenantActivities() {
+        return activitiesByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new TenantActivities());
+    }
 
+    private ActivityRingBuffer getActivityRingBuffer(final TenantActivities tenantActivities) {
+        ActivityRingBuffer buffer = tenantActivities.activityRingBuffer;
+
+        if (buffer == null || System.currentTimeMillis() - tenantActivities.syncedAt > L_SYNC_INTERVAL_MILLIS) {
+            buffer = synchronizeActivityRingBuffer(tenantActivities);
+        }
+
+        return buffer;
+    }
+
+    private ActivityRingBuffer synchronizeActivityRingBuffer(final TenantActivities tenantActivities) {
+        synchronized (tenantActivities) {
+            ActivityRingBuffer buffer = tenantActivities.activityRingBuffer;
+            long syncedAt = tenantActivities.syncedAt;
+            long now = System.currentTimeMillis();
+
+            if (buffer != null && now - syncedAt <= L_SYNC_INTERVAL_MILLIS) {
+                return buffer;
+            }
+
+            boolean initialLoad = buffer == null;
+
+            if (initialLoad) {
+                buffer = new ActivityRingBuffer(Math.max(activityStreamBufferSize, activityStreamLimit));
+            }
+
+            Map<String, Object> params = Maps.newHashMap();
+
+            params.put("cursor", buffer.getLastId());
+            params.put("createdAfter", new Date(syncedAt - L_LATE_COMMIT_LOOKBACK_MILLIS));
+            params.put("limit", Math.max(activityStreamBufferSize, activityStreamLimit));
+
+            List<ActivityDto> activities = jdbcTemplate.query(L_SELECT_ACTIVITIES, params,
+                    BeanPropertyRowMapper.newInstance(ActivityDto.class));
+
+            for (ActivityDto activity : Lists.reverse(activities)) {
+                buffer.add(activity, initialLoad ? 0L : now);
+            }
+
+            tenantActivities.syncedAt = now;
+            tenantActivities.activityRingBuffer = buffer;
+
+            return buffer;
+        }
+    }
+
+    private void addToActivityRingBuffer(final TenantActivities tenantActivities, final ActivityDto activity) {
+        ActivityRingBuffer buffer = tenantActivities.activityRingBuffer;
+
+        if (buffer != null) {
+            buffer.add(activity);
+        }
+    }
+
+    private Set<Long> loadViewedActivityIds(final Long userId, final long firstId) {
         Map<String, Object> params = Maps.newHashMap();
 
-        jdbcTemplate.update(sql.toString(), params);
+        params.put("userId", userId);
+        params.put("firstId", firstId);
+
+        Set<Long> viewedActivityIds = ConcurrentHashMap.newKeySet();
+
+        viewedActivityIds.addAll(jdbcTemplate.queryForList(L_SELECT_VIEWED_ACTIVITIES, params, Long.class));
+
+        return viewedActivityIds;
+    }
+
+    private ActivityDto copyActivity(final ActivityDto activity, final boolean viewed) {
+        ActivityDto activityCopy = new ActivityDto();
+
+        activityCopy.setId(activity.getId());
+        activityCopy.setMessage(activity.getMessage());
+        activityCopy.setType(activity.getType());
+        activityCopy.setDate(activity.getDate());
+        activityCopy.setViewed(viewed);
+
+        return activityCopy;
+    }
+
+    private static final class TenantActivities {
+
+        private final Map<Long, Set<Long>> viewedActivityIdsByUser = new ConcurrentHashMap<>();
+
+        private volatile ActivityRingBuffer activityRingBuffer;
+
+        private volatile long syncedAt;
+
     }
 
 }
@@ -8,10 +8,12 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import com.qcadoo.mes.basic.activityStream.ActivityStreamService;
 import com.qcadoo.mes.basic.activityStream.model.ActivityDto;
+import com.qcadoo.mes.basic.activityStream.model.ActivityFeedDto;
 
 @Controller
 @RequestMapping("/activityStream")
@@ -26,6 +28,12 @@ public class ActivityStreamController {
         return activityStreamService.getActivityStream();
     }
 
+    @ResponseBody
+    @RequestMapping(value = "/feed", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ActivityFeedDto getActivityFeed(@RequestParam(value = "cursor", defaultValue = "0") final long cursor) {
+        return activityStreamService.getActivityFeed(cursor);
+    }
+
     @ResponseBody
     @RequestMapping(value = "/markAsViewed", method = RequestMethod.POST)
     public void markActivityAsViewed(@RequestBody final List<Integer> viewedActivities) {
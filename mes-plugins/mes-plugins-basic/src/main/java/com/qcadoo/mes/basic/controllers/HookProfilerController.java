@@ -0,0 +1,96 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.controllers;
+
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.logging.profiler.HookProfiler;
+import com.qcadoo.mes.basic.logging.profiler.HookProfilerReport;
+
+@Controller
+public class HookProfilerController {
+
+    @Autowired
+    private HookProfiler hookProfiler;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Value("${useCompressedStaticResources}")
+    private boolean useCompressedStaticResources;
+
+    @RequestMapping(value = "hookProfiler", method = RequestMethod.GET)
+    public ModelAndView getHookProfilerView(final Locale locale) {
+        ModelAndView mav = new ModelAndView();
+
+        mav.addObject("report", hookProfiler.getReport());
+        mav.addObject("translationsMap", translationService.getMessagesGroup("hookProfiler", locale));
+        mav.addObject("useCompressedStaticResources", useCompressedStaticResources);
+
+        mav.setViewName("basic/hookProfiler");
+
+        return mav;
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "hookProfiler/statistics", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public HookProfilerReport getStatistics() {
+        return hookProfiler.getReport();
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "hookProfiler/enable", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public HookProfilerReport enable() {
+        hookProfiler.enable();
+
+        return hookProfiler.getReport();
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "hookProfiler/disable", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public HookProfilerReport disable() {
+        hookProfiler.disable();
+
+        return hookProfiler.getReport();
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "hookProfiler/reset", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public HookProfilerReport reset() {
+        hookProfiler.reset();
+
+        return hookProfiler.getReport();
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+@Service
+public class MaterializedDtoHooks {
+
+    @Autowired
+    private MaterializedDtoService materializedDtoService;
+
+    public void addStalenessInfo(final ViewDefinitionState view, final String pluginIdentifier, final String modelName) {
+        if (materializedDtoService.isStale(pluginIdentifier, modelName)) {
+            view.addMessage("basic.materializedDto.stale", MessageType.INFO, false);
+        }
+    }
+
+    public void refreshDependents(final DataDefinition dataDefinition, final Entity entity) {
+        materializedDtoService.refreshDependentsAfterCommit(dataDefinition.getPluginIdentifier(), dataDefinition.getName(),
+                entity.getId());
+    }
+
+}
@@ -33,14 +33,13 @@ import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Comparator;
@@ -93,18 +92,27 @@ public class ProductImportListeners {
         } else if (!Files.getFileExtension(filePath).equalsIgnoreCase("xlsx")) {
             state.addMessage(translatedErrorMessage("basic.productsImport.error.file.invalid"));
         } else {
-            try (FileInputStream fis = new FileInputStream(filePath)) {
-                final ImportStatus importStatus = xlsxImportService.importFrom(new XSSFWorkbook(fis));
+            try {
+                final ImportStatus importStatus = xlsxImportService.importFrom(new File(filePath));
                 if (importStatus.hasErrors()) {
                     // TODO Find out how to present more detailed error messages to the user
                     prepareMessages(importStatus, view);
+                    if (0 < importStatus.getRowsImported()) {
+                        view.addMessage("basic.productsImport.partialSuccess.message",
+                                ComponentState.MessageType.INFO,
+                                false,
+                                String.valueOf(importStatus.getRowsImported()),
+                                String.valueOf(importStatus.getRowsProcessed()),
+                                String.valueOf(importStatus.getBatchesCommitted()),
+                                String.valueOf(importStatus.getBatchesRolledBack()));
+                    }
                 } else if (0 == importStatus.getRowsProcessed()) {
                     view.addMessage(translatedErrorMessage("basic.productsImport.error.file.empty"));
                 } else {
                     view.addMessage("basic.productsImport.success.message",
                             ComponentState.MessageType.SUCCESS,
                             false,
-                            String.valueOf(importStatus.getRowsProcessed()));
+                            String.valueOf(importStatus.getRowsImported()));
                 }
             } catch (Throwable throwable) {
                 // There is not much we can do about these IO exceptions except rethrowing them
@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.logging.aspects;
+
+import java.util.Objects;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.logging.profiler.HookProfiler;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+@Aspect
+@Configurable
+@RunIfEnabled(BasicConstants.PLUGIN_IDENTIFIER)
+public class HookProfilingAspect {
+
+    private static final String L_VIEW = "view";
+
+    @Autowired
+    private HookProfiler hookProfiler;
+
+    @Pointcut("execution(public * com.qcadoo.mes..*.*(com.qcadoo.model.api.DataDefinition, com.qcadoo.model.api.Entity)) "
+            + "&& args(dataDefinition, entity) && !within(com.qcadoo.mes.basic.logging..*)")
+    public void modelHookExecution(final DataDefinition dataDefinition, final Entity entity) {
+    }
+
+    @Pointcut("execution(public void com.qcadoo.mes..*.*(com.qcadoo.view.api.ViewDefinitionState, com.qcadoo.view.api.ComponentState, String[])) "
+            + "&& !within(com.qcadoo.mes.basic.logging..*)")
+    public void viewListenerExecution() {
+    }
+
+    @Pointcut("within(com.qcadoo.mes..*) && !within(com.qcadoo.mes.basic.logging..*) "
+            + "&& (call(* com.qcadoo.model.api.DataDefinition.get(..)) || call(* com.qcadoo.model.api.DataDefinition.save(..)) "
+            + "|| call(* com.qcadoo.model.api.DataDefinition.fastSave(..)) || call(* com.qcadoo.model.api.DataDefinition.delete(..)) "
+            + "|| call(* com.qcadoo.model.api.search.SearchCriteriaBuilder.list(..)) "
+            + "|| call(* com.qcadoo.model.api.search.SearchCriteriaBuilder.uniqueResult(..)) "
+            + "|| call(* com.qcadoo.model.api.search.SearchQueryBuilder.list(..)) "
+            + "|| call(* com.qcadoo.model.api.search.SearchQueryBuilder.uniqueResult(..)) "
+            + "|| call(* org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate.query*(..)) "
+            + "|| call(* org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate.*update(..)) "
+            + "|| call(* org.springframework.jdbc.core.JdbcTemplate.query*(..)) "
+            + "|| call(* org.springframework.jdbc.core.JdbcTemplate.*update(..)) "
+            + "|| call(* org.springframework.jdbc.core.JdbcTemplate.execute(..)))")
+    public void dataAccessCall() {
+    }
+
+    @Around("modelHookExecution(dataDefinition, entity)")
+    public Object profileModelHook(final ProceedingJoinPoint pjp, final DataDefinition dataDefinition, final Entity entity)
+            throws Throwable {
+        if (!hookProfiler.isEnabled() || Objects.isNull(dataDefinition)) {
+            return pjp.proceed();
+        }
+
+        return profile(pjp, dataDefinition.getPluginIdentifier() + "." + dataDefinition.getName());
+    }
+
+    @Around("viewListenerExecution()")
+    public Object profileViewListener(final ProceedingJoinPoint pjp) throws Throwable {
+        if (!hookProfiler.isEnabled()) {
+            return pjp.proceed();
+        }
+
+        return profile(pjp, L_VIEW);
+    }
+
+    @Before("dataAccessCall()")
+    public void countDataAccess() {
+        hookProfiler.countQuery();
+    }
+
+    private Object profile(final ProceedingJoinPoint pjp, final String model) throws Throwable {
+        Signature signature = pjp.getSignature();
+
+        long queries = hookProfiler.getQueryCount();
+        long start = System.nanoTime();
+
+        try {
+            return pjp.proceed();
+        } finally {
+            hookProfiler.record(model, signature.getDeclaringType().getSimpleName() + "." + signature.getName(),
+                    System.nanoTime() - start, hookProfiler.getQueryCount() - queries);
+        }
+    }
+
+}
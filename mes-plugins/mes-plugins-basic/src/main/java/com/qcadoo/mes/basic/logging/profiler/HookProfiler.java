@@ -0,0 +1,102 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.logging.profiler;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Collects call count, latency and data access count of model hooks and view listeners. Statistics are gathered only when the
+ * profiler is enabled, see {@link com.qcadoo.mes.basic.logging.aspects.HookProfilingAspect}.
+ */
+@Service
+public class HookProfiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HookProfiler.class);
+
+    private final ConcurrentMap<String, HookStatistics> statistics = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<long[]> queryCounter = ThreadLocal.withInitial(() -> new long[1]);
+
+    private volatile boolean enabled;
+
+    private volatile Date enabledSince;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void enable() {
+        if (!enabled) {
+            enabledSince = new Date();
+            enabled = true;
+
+            LOG.info("Hook profiler enabled");
+        }
+    }
+
+    public void disable() {
+        if (enabled) {
+            enabled = false;
+
+            LOG.info("Hook profiler disabled");
+        }
+    }
+
+    public void reset() {
+        statistics.clear();
+
+        enabledSince = enabled ? new Date() : null;
+    }
+
+    public void countQuery() {
+        if (enabled) {
+            queryCounter.get()[0]++;
+        }
+    }
+
+    public long getQueryCount() {
+        return queryCounter.get()[0];
+    }
+
+    public void record(final String model, final String hook, final long nanos, final long queries) {
+        statistics.computeIfAbsent(model + "#" + hook, key -> new HookStatistics(model, hook)).add(nanos, queries);
+    }
+
+    public HookProfilerReport getReport() {
+        List<HookStatisticsDto> hookStatistics = statistics.values().stream().map(HookStatistics::toDto)
+                .sorted(Comparator.comparing(HookStatisticsDto::getTotalMillis).reversed()).collect(Collectors.toList());
+
+        return new HookProfilerReport(enabled, enabledSince, hookStatistics);
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.logging.profiler;
+
+import java.util.Arrays;
+
+final class HookStatistics {
+
+    private static final int L_SAMPLES_SIZE = 1024;
+
+    private final String model;
+
+    private final String hook;
+
+    private final long[] samples = new long[L_SAMPLES_SIZE];
+
+    private long count;
+
+    private long totalNanos;
+
+    private long maxNanos;
+
+    private long queries;
+
+    HookStatistics(final String model, final String hook) {
+        this.model = model;
+        this.hook = hook;
+    }
+
+    synchronized void add(final long nanos, final long queryCount) {
+        samples[(int) (count % L_SAMPLES_SIZE)] = nanos;
+
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        queries += queryCount;
+    }
+
+    synchronized HookStatisticsDto toDto() {
+        long[] sortedSamples = Arrays.copyOf(samples, (int) Math.min(count, L_SAMPLES_SIZE));
+
+        Arrays.sort(sortedSamples);
+
+        HookStatisticsDto hookStatistics = new HookStatisticsDto();
+
+        hookStatistics.setModel(model);
+        hookStatistics.setHook(hook);
+        hookStatistics.setCount(count);
+        hookStatistics.setTotalMillis(toMillis(totalNanos));
+        hookStatistics.setP50Millis(toMillis(percentile(sortedSamples, 50)));
+        hookStatistics.setP99Millis(toMillis(percentile(sortedSamples, 99)));
+        hookStatistics.setMaxMillis(toMillis(maxNanos));
+        hookStatistics.setQueries(queries);
+
+        return hookStatistics;
+    }
+
+    private long percentile(final long[] sortedSamples, final int percent) {
+        if (sortedSamples.length == 0) {
+            return 0L;
+        }
+
+        int index = (int) Math.ceil(percent / 100.0 * sortedSamples.length) - 1;
+
+        return sortedSamples[Math.max(index, 0)];
+    }
+
+    private double toMillis(final long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+}
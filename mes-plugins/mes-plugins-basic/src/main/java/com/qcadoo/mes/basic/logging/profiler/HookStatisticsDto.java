@@ -0,0 +1,112 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.logging.profiler;
+
+public class HookStatisticsDto {
+
+    private String model;
+
+    private String hook;
+
+    private long count;
+
+    private double totalMillis;
+
+    private double p50Millis;
+
+    private double p99Millis;
+
+    private double maxMillis;
+
+    private long queries;
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(final String model) {
+        this.model = model;
+    }
+
+    public String getHook() {
+        return hook;
+    }
+
+    public void setHook(final String hook) {
+        this.hook = hook;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(final long count) {
+        this.count = count;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public void setTotalMillis(final double totalMillis) {
+        this.totalMillis = totalMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public void setP50Millis(final double p50Millis) {
+        this.p50Millis = p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public void setP99Millis(final double p99Millis) {
+        this.p99Millis = p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public void setMaxMillis(final double maxMillis) {
+        this.maxMillis = maxMillis;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public void setQueries(final long queries) {
+        this.queries = queries;
+    }
+
+    public double getQueriesPerCall() {
+        return count == 0 ? 0 : Math.round(queries * 100.0 / count) / 100.0;
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.materializedDto;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Describes a list DTO model which is kept in a real, indexed table instead of being computed by its view on every grid request.
+ * The table has the name the model is mapped to, the join itself lives in the source view with exactly the same columns.
+ */
+public final class MaterializedDtoDefinition {
+
+    private final String pluginIdentifier;
+
+    private final String modelName;
+
+    private final String tableName;
+
+    private final String sourceViewName;
+
+    private final Set<String> keyColumns;
+
+    private final boolean generatedId;
+
+    private final List<MaterializedDtoDependency> dependencies;
+
+    private MaterializedDtoDefinition(final String pluginIdentifier, final String modelName, final String tableName,
+            final String sourceViewName, final Set<String> keyColumns, final boolean generatedId,
+            final List<MaterializedDtoDependency> dependencies) {
+        this.pluginIdentifier = pluginIdentifier;
+        this.modelName = modelName;
+        this.tableName = tableName;
+        this.sourceViewName = sourceViewName;
+        this.keyColumns = keyColumns;
+        this.generatedId = generatedId;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @param keyColumns
+     *            columns of the source view rows can be refreshed by, the "id" column is always among them
+     */
+    public static MaterializedDtoDefinition of(final String pluginIdentifier, final String modelName, final String tableName,
+            final String sourceViewName, final String... keyColumns) {
+        return new MaterializedDtoDefinition(pluginIdentifier, modelName, tableName, sourceViewName,
+                ImmutableSet.<String> builder().add("id").add(keyColumns).build(), false, ImmutableList.of());
+    }
+
+    /**
+     * For aggregating source views, which have no id column of their own. Ids of such tables come from the column default, so
+     * they stay stable between refreshes of other rows.
+     */
+    public MaterializedDtoDefinition withGeneratedId() {
+        return new MaterializedDtoDefinition(pluginIdentifier, modelName, tableName, sourceViewName, keyColumns, true,
+                dependencies);
+    }
+
+    /**
+     * Rows showing fields of another model are refreshed after an entity of that model is saved. The model has to call
+     * {@link MaterializedDtoService#refreshDependentsAfterCommit(String, String, Long)} from its save hook.
+     *
+     * @param keysQuery
+     *            selects values of the key column of rows showing entities with given :ids
+     */
+    public MaterializedDtoDefinition dependsOn(final String dependencyPluginIdentifier, final String dependencyModelName,
+            final String keyColumn, final String keysQuery) {
+        Preconditions.checkArgument(keyColumns.contains(keyColumn), "Unknown key column %s of %s", keyColumn, getName());
+
+        return new MaterializedDtoDefinition(pluginIdentifier, modelName, tableName, sourceViewName, keyColumns, generatedId,
+                ImmutableList.<MaterializedDtoDependency> builder().addAll(dependencies)
+                        .add(new MaterializedDtoDependency(dependencyPluginIdentifier, dependencyModelName, keyColumn, keysQuery))
+                        .build());
+    }
+
+    public String getName() {
+        return pluginIdentifier + "." + modelName;
+    }
+
+    public String getPluginIdentifier() {
+        return pluginIdentifier;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getSourceViewName() {
+        return sourceViewName;
+    }
+
+    public Set<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    public boolean isGeneratedId() {
+        return generatedId;
+    }
+
+    public List<MaterializedDtoDependency> getDependencies() {
+        return dependencies;
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.materializedDto;
+
+/**
+ * Another model whose fields are shown in materialized DTO rows, e.g. product number in the order list.
+ */
+public final class MaterializedDtoDependency {
+
+    private final String pluginIdentifier;
+
+    private final String modelName;
+
+    private final String keyColumn;
+
+    private final String keysQuery;
+
+    MaterializedDtoDependency(final String pluginIdentifier, final String modelName, final String keyColumn,
+            final String keysQuery) {
+        this.pluginIdentifier = pluginIdentifier;
+        this.modelName = modelName;
+        this.keyColumn = keyColumn;
+        this.keysQuery = keysQuery;
+    }
+
+    public String getName() {
+        return pluginIdentifier + "." + modelName;
+    }
+
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * @return query selecting values of the key column of rows showing entities with given :ids
+     */
+    public String getKeysQuery() {
+        return keysQuery;
+    }
+
+}
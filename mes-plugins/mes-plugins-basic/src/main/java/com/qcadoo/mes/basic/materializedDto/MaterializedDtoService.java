@@ -0,0 +1,355 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.materializedDto;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps materialized DTO tables in line with their source views. Owning model hooks ask for a refresh of the rows they affect,
+ * those rows are recomputed from the source view right after the transaction commits. A failed refresh marks the table as stale
+ * until it is rebuilt.
+ * <p>
+ * Rows are replaced by DELETE and INSERT, which isn't safe for concurrent refreshes of the same key under READ COMMITTED - none
+ * of them would see the other one's uncommitted rows, so both sets would stay. Refreshes take a transaction level advisory
+ * lock per table and key first, rebuilds lock the whole table.
+ * <p>
+ * Rows showing fields of other models (e.g. product number) are refreshed after those models are saved, see
+ * {@link MaterializedDtoDefinition#dependsOn(String, String, String, String)}.
+ */
+@Service
+public class MaterializedDtoService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MaterializedDtoService.class);
+
+    private static final int L_KEYS_PER_STATEMENT = 1000;
+
+    private static final String L_LOCK_TABLE = "SELECT pg_advisory_xact_lock(hashtext(:tableName))";
+
+    private static final String L_LOCK_TABLE_SHARED = "SELECT pg_advisory_xact_lock_shared(hashtext(:tableName))";
+
+    private static final String L_LOCK_KEY = "SELECT pg_advisory_xact_lock(hashtext(:tableName), hashtext(:lockKey))";
+
+    private final Map<String, MaterializedDtoDefinition> definitions = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Map<String, MaterializedDtoState>> statesByTenant = new ConcurrentHashMap<>();
+
+    private final Map<String, String> insertQueries = new ConcurrentHashMap<>();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public void register(final MaterializedDtoDefinition definition) {
+        definitions.put(definition.getName(), definition);
+    }
+
+    public boolean isMaterialized(final String pluginIdentifier, final String modelName) {
+        return definitions.containsKey(pluginIdentifier + "." + modelName);
+    }
+
+    public MaterializedDtoState getState(final String pluginIdentifier, final String modelName) {
+        MaterializedDtoDefinition definition = definitions.get(pluginIdentifier + "." + modelName);
+
+        return (definition == null) ? null : getState(definition);
+    }
+
+    private MaterializedDtoState getState(final MaterializedDtoDefinition definition) {
+        return statesByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new ConcurrentHashMap<>())
+                .computeIfAbsent(definition.getName(), name -> new MaterializedDtoState());
+    }
+
+    public boolean isStale(final String pluginIdentifier, final String modelName) {
+        MaterializedDtoState state = getState(pluginIdentifier, modelName);
+
+        return (state != null) && state.isStale();
+    }
+
+    /**
+     * Marks the table as stale until it is rebuilt. Meant for changes of rows which can't be addressed by any key column.
+     */
+    public void markStale(final String pluginIdentifier, final String modelName) {
+        MaterializedDtoState state = getState(pluginIdentifier, modelName);
+
+        if (state != null) {
+            state.markStale();
+        }
+    }
+
+    /**
+     * Schedules a refresh of the rows having given key. Keys collected in one transaction are refreshed together after it
+     * commits, nothing happens when the model isn't materialized.
+     */
+    public void refreshAfterCommit(final String pluginIdentifier, final String modelName, final String keyColumn,
+            final Object key) {
+        MaterializedDtoDefinition definition = definitions.get(pluginIdentifier + "." + modelName);
+
+        if ((definition == null) || (key == null)) {
+            return;
+        }
+
+        Preconditions.checkArgument(definition.getKeyColumns().contains(keyColumn), "Unknown key column %s of %s", keyColumn,
+                definition.getName());
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refreshQuietly(definition, keyColumn, Collections.singleton(key));
+
+            return;
+        }
+
+        getPendingKeys().getKeys().computeIfAbsent(definition, pendingDefinition -> HashMultimap.create()).put(keyColumn, key);
+    }
+
+    /**
+     * Schedules a refresh of the rows showing given entity, for every materialized DTO depending on its model. Meant for save
+     * hooks of those models.
+     */
+    public void refreshDependentsAfterCommit(final String pluginIdentifier, final String modelName, final Long id) {
+        if (id == null) {
+            return;
+        }
+
+        String dependencyName = pluginIdentifier + "." + modelName;
+
+        for (MaterializedDtoDefinition definition : definitions.values()) {
+            for (MaterializedDtoDependency dependency : definition.getDependencies()) {
+                if (!dependency.getName().equals(dependencyName)) {
+                    continue;
+                }
+
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                    getPendingKeys().getDependentIds().computeIfAbsent(definition, pendingDefinition -> HashMultimap.create())
+                            .put(dependency, id);
+                } else {
+                    refreshDependentsQuietly(definition, dependency, Collections.singleton(id));
+                }
+            }
+        }
+    }
+
+    private PendingKeys getPendingKeys() {
+        PendingKeys pendingKeys = (PendingKeys) TransactionSynchronizationManager.getResource(this);
+
+        if (pendingKeys == null) {
+            PendingKeys keys = new PendingKeys();
+
+            TransactionSynchronizationManager.bindResource(this, keys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    keys.getKeys().forEach((definition, keysByColumn) -> keysByColumn.asMap().forEach(
+                            (keyColumn, columnKeys) -> refreshQuietly(definition, keyColumn, columnKeys)));
+                    keys.getDependentIds().forEach((definition, idsByDependency) -> idsByDependency.asMap().forEach(
+                            (dependency, ids) -> refreshDependentsQuietly(definition, dependency, ids)));
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MaterializedDtoService.this);
+                }
+            });
+
+            pendingKeys = keys;
+        }
+
+        return pendingKeys;
+    }
+
+    private void refreshQuietly(final MaterializedDtoDefinition definition, final String keyColumn,
+            final Collection<Object> keys) {
+        try {
+            refresh(definition, keyColumn, keys);
+        } catch (RuntimeException e) {
+            LOG.warn(String.format("Couldn't refresh %s rows of %s, the table is stale until rebuilt", keyColumn,
+                    definition.getName()), e);
+
+            getState(definition).markStale();
+        }
+    }
+
+    private void refreshDependentsQuietly(final MaterializedDtoDefinition definition,
+            final MaterializedDtoDependency dependency, final Collection<Long> ids) {
+        try {
+            Set<Object> keys = new LinkedHashSet<>();
+
+            for (List<Long> partition : Iterables.partition(ids, L_KEYS_PER_STATEMENT)) {
+                keys.addAll(jdbcTemplate.queryForList(dependency.getKeysQuery(), Collections.singletonMap("ids", partition),
+                        Object.class));
+            }
+
+            keys.remove(null);
+
+            if (!keys.isEmpty()) {
+                refresh(definition, dependency.getKeyColumn(), keys);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn(String.format("Couldn't refresh rows of %s showing %s, the table is stale until rebuilt",
+                    definition.getName(), dependency.getName()), e);
+
+            getState(definition).markStale();
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void refresh(final MaterializedDtoDefinition definition, final String keyColumn, final Collection<Object> keys) {
+        String deleteQuery = String.format("DELETE FROM %s WHERE %s IN (:keys)", definition.getTableName(), keyColumn);
+        String insertQuery = getInsertQuery(definition, String.format(" WHERE %s IN (:keys)", keyColumn));
+
+        lockKeys(definition, keyColumn, keys);
+
+        for (List<Object> partition : Iterables.partition(keys, L_KEYS_PER_STATEMENT)) {
+            Map<String, Object> params = Collections.singletonMap("keys", partition);
+
+            jdbcTemplate.update(deleteQuery, params);
+            jdbcTemplate.update(insertQuery, params);
+        }
+
+        getState(definition).markRefreshed();
+    }
+
+    /**
+     * Recomputes the whole table. Rows are replaced with DELETE rather than TRUNCATE, so grids keep reading the previous
+     * contents until the rebuild commits.
+     *
+     * @return number of rows in the rebuilt table
+     */
+    @Transactional
+    public int rebuild(final String pluginIdentifier, final String modelName) {
+        MaterializedDtoDefinition definition = definitions.get(pluginIdentifier + "." + modelName);
+
+        Preconditions.checkArgument(definition != null, "%s.%s isn't materialized", pluginIdentifier, modelName);
+
+        jdbcTemplate.queryForList(L_LOCK_TABLE, Collections.singletonMap("tableName", definition.getTableName()));
+
+        jdbcTemplate.getJdbcOperations().update(String.format("DELETE FROM %s", definition.getTableName()));
+
+        int rows = jdbcTemplate.getJdbcOperations().update(getInsertQuery(definition, ""));
+
+        MaterializedDtoState state = getState(definition);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCommit() {
+                    state.markRebuilt();
+                }
+            });
+        } else {
+            state.markRebuilt();
+        }
+
+        return rows;
+    }
+
+    /**
+     * Locks given keys in a fixed order, so refreshes of overlapping keys can't deadlock. Locks are released when the
+     * transaction ends, the shared table lock keeps rebuilds out in the meantime.
+     */
+    private void lockKeys(final MaterializedDtoDefinition definition, final String keyColumn, final Collection<Object> keys) {
+        jdbcTemplate.queryForList(L_LOCK_TABLE_SHARED, Collections.singletonMap("tableName", definition.getTableName()));
+
+        SortedSet<String> lockKeys = new TreeSet<>();
+
+        keys.forEach(key -> lockKeys.add(keyColumn + ":" + key));
+
+        for (String lockKey : lockKeys) {
+            Map<String, Object> params = new HashMap<>();
+
+            params.put("tableName", definition.getTableName());
+            params.put("lockKey", lockKey);
+
+            jdbcTemplate.queryForList(L_LOCK_KEY, params);
+        }
+    }
+
+    /**
+     * Rows of tables with their own ids are inserted with ON CONFLICT, so a row refreshed concurrently by another key column
+     * (e.g. by number and by order) isn't duplicated either - the id index of those tables is unique.
+     */
+    private String getInsertQuery(final MaterializedDtoDefinition definition, final String whereClause) {
+        String insertQuery = insertQueries.computeIfAbsent(definition.getName(), name -> {
+            String columns = String.join(", ", jdbcTemplate.queryForList(
+                    "SELECT column_name FROM information_schema.columns WHERE table_schema = current_schema() "
+                            + "AND table_name = :viewName ORDER BY ordinal_position",
+                    Collections.singletonMap("viewName", definition.getSourceViewName()), String.class));
+
+            return String.format("INSERT INTO %s (%s) SELECT %s FROM %s", definition.getTableName(), columns, columns,
+                    definition.getSourceViewName());
+        }) + whereClause;
+
+        if (definition.isGeneratedId()) {
+            return insertQuery;
+        }
+
+        return insertQuery + " ON CONFLICT (id) DO NOTHING";
+    }
+
+    private static class PendingKeys {
+
+        private final Map<MaterializedDtoDefinition, SetMultimap<String, Object>> keys = new LinkedHashMap<>();
+
+        private final Map<MaterializedDtoDefinition, SetMultimap<MaterializedDtoDependency, Long>> dependentIds = Maps
+                .newLinkedHashMap();
+
+        Map<MaterializedDtoDefinition, SetMultimap<String, Object>> getKeys() {
+            return keys;
+        }
+
+        Map<MaterializedDtoDefinition, SetMultimap<MaterializedDtoDependency, Long>> getDependentIds() {
+            return dependentIds;
+        }
+
+    }
+
+}
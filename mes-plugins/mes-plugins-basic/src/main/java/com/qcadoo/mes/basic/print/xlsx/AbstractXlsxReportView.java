@@ -0,0 +1,72 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.web.servlet.view.AbstractView;
+
+/**
+ * Base of streamed XLSX report views, counterpart of {@link org.springframework.web.servlet.view.document.AbstractExcelView}
+ * for reports written by {@link XlsxReportService}.
+ */
+public abstract class AbstractXlsxReportView extends AbstractView {
+
+    private static final String L_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    @Autowired
+    private XlsxReportService xlsxReportService;
+
+    public AbstractXlsxReportView() {
+        setContentType(L_CONTENT_TYPE);
+    }
+
+    @Override
+    protected boolean generatesDownloadContent() {
+        return true;
+    }
+
+    @Override
+    protected final void renderMergedOutputModel(final Map<String, Object> model, final HttpServletRequest request,
+            final HttpServletResponse response) throws Exception {
+        Locale locale = LocaleContextHolder.getLocale();
+
+        response.setContentType(getContentType());
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + getFilename(model, locale) + ".xlsx\"");
+
+        xlsxReportService.write(buildReportDefinition(model, locale), locale, response.getOutputStream());
+        response.flushBuffer();
+    }
+
+    protected abstract String getFilename(final Map<String, Object> model, final Locale locale);
+
+    protected abstract XlsxReportDefinition buildReportDefinition(final Map<String, Object> model, final Locale locale);
+
+}
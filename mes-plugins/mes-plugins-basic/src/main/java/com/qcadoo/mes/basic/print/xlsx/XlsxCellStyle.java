@@ -0,0 +1,123 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Immutable description of a cell style. Equal descriptions share one workbook style, see {@link XlsxReportStyles}.
+ */
+public final class XlsxCellStyle {
+
+    private static final short L_NO_FILL = -1;
+
+    public static final XlsxCellStyle DEFAULT = new XlsxCellStyle(false, CellStyle.ALIGN_LEFT, L_NO_FILL, false, null);
+
+    public static final XlsxCellStyle HEADER = DEFAULT.withBold().withBorderTop();
+
+    private final boolean bold;
+
+    private final short alignment;
+
+    private final short fillColor;
+
+    private final boolean borderTop;
+
+    private final String dataFormat;
+
+    private XlsxCellStyle(final boolean bold, final short alignment, final short fillColor, final boolean borderTop,
+            final String dataFormat) {
+        this.bold = bold;
+        this.alignment = alignment;
+        this.fillColor = fillColor;
+        this.borderTop = borderTop;
+        this.dataFormat = dataFormat;
+    }
+
+    public XlsxCellStyle withBold() {
+        return new XlsxCellStyle(true, alignment, fillColor, borderTop, dataFormat);
+    }
+
+    public XlsxCellStyle withAlignment(final short alignment) {
+        return new XlsxCellStyle(bold, alignment, fillColor, borderTop, dataFormat);
+    }
+
+    public XlsxCellStyle withFillColor(final short fillColor) {
+        return new XlsxCellStyle(bold, alignment, fillColor, borderTop, dataFormat);
+    }
+
+    public XlsxCellStyle withBorderTop() {
+        return new XlsxCellStyle(bold, alignment, fillColor, true, dataFormat);
+    }
+
+    public XlsxCellStyle withDataFormat(final String dataFormat) {
+        return new XlsxCellStyle(bold, alignment, fillColor, borderTop, dataFormat);
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public short getAlignment() {
+        return alignment;
+    }
+
+    public boolean hasFillColor() {
+        return fillColor != L_NO_FILL;
+    }
+
+    public short getFillColor() {
+        return fillColor;
+    }
+
+    public boolean hasBorderTop() {
+        return borderTop;
+    }
+
+    public String getDataFormat() {
+        return dataFormat;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        XlsxCellStyle that = (XlsxCellStyle) o;
+        return bold == that.bold && alignment == that.alignment && fillColor == that.fillColor && borderTop == that.borderTop
+                && Objects.equals(dataFormat, that.dataFormat);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bold, alignment, fillColor, borderTop, dataFormat);
+    }
+
+}
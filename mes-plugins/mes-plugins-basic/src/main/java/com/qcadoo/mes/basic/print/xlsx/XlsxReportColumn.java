@@ -0,0 +1,117 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+
+/**
+ * Column of a report, filled from the result set column with given label.
+ */
+public final class XlsxReportColumn {
+
+    public enum Type {
+        TEXT, TRANSLATED, NUMBER, DATE, DATE_TIME
+    }
+
+    private static final int L_DEFAULT_WIDTH = 15;
+
+    private final String label;
+
+    private final String headerKey;
+
+    private final Type type;
+
+    private final int width;
+
+    private final XlsxCellStyle style;
+
+    private XlsxReportColumn(final String label, final String headerKey, final Type type, final int width,
+            final XlsxCellStyle style) {
+        this.label = label;
+        this.headerKey = headerKey;
+        this.type = type;
+        this.width = width;
+        this.style = style;
+    }
+
+    public static XlsxReportColumn text(final String label, final String headerKey) {
+        return new XlsxReportColumn(label, headerKey, Type.TEXT, L_DEFAULT_WIDTH, XlsxCellStyle.DEFAULT);
+    }
+
+    /**
+     * Text column holding translation keys, e.g. enum values, written as their translations.
+     */
+    public static XlsxReportColumn translated(final String label, final String headerKey) {
+        return new XlsxReportColumn(label, headerKey, Type.TRANSLATED, L_DEFAULT_WIDTH, XlsxCellStyle.DEFAULT);
+    }
+
+    public static XlsxReportColumn integer(final String label, final String headerKey) {
+        return new XlsxReportColumn(label, headerKey, Type.NUMBER, L_DEFAULT_WIDTH,
+                XlsxCellStyle.DEFAULT.withAlignment(CellStyle.ALIGN_RIGHT).withDataFormat("0"));
+    }
+
+    public static XlsxReportColumn number(final String label, final String headerKey) {
+        return new XlsxReportColumn(label, headerKey, Type.NUMBER, L_DEFAULT_WIDTH,
+                XlsxCellStyle.DEFAULT.withAlignment(CellStyle.ALIGN_RIGHT).withDataFormat("0.00###"));
+    }
+
+    public static XlsxReportColumn date(final String label, final String headerKey) {
+        return new XlsxReportColumn(label, headerKey, Type.DATE, L_DEFAULT_WIDTH,
+                XlsxCellStyle.DEFAULT.withDataFormat("yyyy-mm-dd"));
+    }
+
+    public static XlsxReportColumn dateTime(final String label, final String headerKey) {
+        return new XlsxReportColumn(label, headerKey, Type.DATE_TIME, L_DEFAULT_WIDTH,
+                XlsxCellStyle.DEFAULT.withDataFormat("yyyy-mm-dd hh:mm"));
+    }
+
+    public XlsxReportColumn withWidth(final int width) {
+        return new XlsxReportColumn(label, headerKey, type, width, style);
+    }
+
+    public XlsxReportColumn withStyle(final XlsxCellStyle style) {
+        return new XlsxReportColumn(label, headerKey, type, width, style);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getHeaderKey() {
+        return headerKey;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public XlsxCellStyle getStyle() {
+        return style;
+    }
+
+}
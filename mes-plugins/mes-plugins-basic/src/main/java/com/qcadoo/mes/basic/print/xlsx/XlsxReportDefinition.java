@@ -0,0 +1,102 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public final class XlsxReportDefinition {
+
+    private final String sheetName;
+
+    private final String query;
+
+    private final Map<String, ?> parameters;
+
+    private final List<XlsxReportColumn> columns;
+
+    private final XlsxRowStyler rowStyler;
+
+    private final List<Map<String, String>> titleRows;
+
+    private XlsxReportDefinition(final String sheetName, final String query, final Map<String, ?> parameters,
+            final List<XlsxReportColumn> columns, final XlsxRowStyler rowStyler, final List<Map<String, String>> titleRows) {
+        this.sheetName = sheetName;
+        this.query = query;
+        this.parameters = parameters;
+        this.columns = columns;
+        this.rowStyler = rowStyler;
+        this.titleRows = titleRows;
+    }
+
+    public static XlsxReportDefinition of(final String sheetName, final String query, final Map<String, ?> parameters,
+            final List<XlsxReportColumn> columns) {
+        Preconditions.checkArgument(!columns.isEmpty(), "Report needs at least one column");
+        return new XlsxReportDefinition(sheetName, query, parameters == null ? Collections.emptyMap() : parameters,
+                ImmutableList.copyOf(columns), null, ImmutableList.of());
+    }
+
+    public XlsxReportDefinition withRowStyler(final XlsxRowStyler rowStyler) {
+        return new XlsxReportDefinition(sheetName, query, parameters, columns, rowStyler, titleRows);
+    }
+
+    /**
+     * Adds a row written above the column headers of the first sheet, e.g. with report filters. Labels are written in bold,
+     * each followed by its value.
+     */
+    public XlsxReportDefinition withTitleRow(final Map<String, String> labelsAndValues) {
+        return new XlsxReportDefinition(sheetName, query, parameters, columns, rowStyler, ImmutableList
+                .<Map<String, String>> builder().addAll(titleRows).add(ImmutableMap.copyOf(labelsAndValues)).build());
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public Map<String, ?> getParameters() {
+        return parameters;
+    }
+
+    public List<XlsxReportColumn> getColumns() {
+        return columns;
+    }
+
+    public XlsxRowStyler getRowStyler() {
+        return rowStyler;
+    }
+
+    public List<Map<String, String>> getTitleRows() {
+        return titleRows;
+    }
+
+}
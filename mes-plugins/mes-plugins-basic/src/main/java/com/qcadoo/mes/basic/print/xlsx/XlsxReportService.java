@@ -0,0 +1,246 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+
+/**
+ * Writes reports row by row from a database cursor into a streamed XLSX workbook. Only the last rows of the sheet are kept
+ * in memory, the rest is flushed to a temporary file, so neither the rows nor the workbook grow with the report size.
+ */
+@Service
+public class XlsxReportService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(XlsxReportService.class);
+
+    private static final int L_ROW_ACCESS_WINDOW = 500;
+
+    private static final int L_FETCH_SIZE = 1000;
+
+    private static final int L_MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TranslationService translationService;
+
+    /**
+     * Runs in a read only transaction, as the database cursor is used only with auto commit disabled.
+     *
+     * @return number of written rows
+     */
+    @Transactional(readOnly = true)
+    public int write(final XlsxReportDefinition definition, final Locale locale, final OutputStream outputStream)
+            throws IOException {
+        long startTime = System.currentTimeMillis();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(L_ROW_ACCESS_WINDOW);
+        workbook.setCompressTempFiles(true);
+
+        try {
+            XlsxReportWriter writer = new XlsxReportWriter(workbook, definition, locale);
+
+            PreparedStatementCallback<Void> callback = statement -> {
+                writeRows(statement, writer);
+                return null;
+            };
+            jdbcTemplate.execute(definition.getQuery(), definition.getParameters(), callback);
+
+            workbook.write(outputStream);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Report %s with %d rows written in %d ms", definition.getSheetName(),
+                        writer.getRowCount(), System.currentTimeMillis() - startTime));
+            }
+            return writer.getRowCount();
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    private void writeRows(final PreparedStatement statement, final XlsxReportWriter writer) throws SQLException {
+        statement.setFetchSize(L_FETCH_SIZE);
+
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                writer.writeRow(resultSet);
+            }
+        }
+    }
+
+    private final class XlsxReportWriter {
+
+        private final SXSSFWorkbook workbook;
+
+        private final XlsxReportDefinition definition;
+
+        private final Locale locale;
+
+        private final XlsxReportStyles styles;
+
+        private final Map<String, String> translations = Maps.newHashMap();
+
+        private Sheet sheet;
+
+        private int rowNumber;
+
+        private int rowCount;
+
+        private XlsxReportWriter(final SXSSFWorkbook workbook, final XlsxReportDefinition definition, final Locale locale) {
+            this.workbook = workbook;
+            this.definition = definition;
+            this.locale = locale;
+            this.styles = new XlsxReportStyles(workbook);
+
+            createSheet();
+        }
+
+        private void createSheet() {
+            int sheetNumber = workbook.getNumberOfSheets() + 1;
+            String sheetName = sheetNumber == 1 ? definition.getSheetName() : definition.getSheetName() + " (" + sheetNumber
+                    + ")";
+            sheet = workbook.createSheet(sheetName);
+            rowNumber = 0;
+
+            if (sheetNumber == 1 && !definition.getTitleRows().isEmpty()) {
+                createTitleRows();
+            }
+
+            List<XlsxReportColumn> columns = definition.getColumns();
+            Row header = sheet.createRow(rowNumber++);
+
+            for (int index = 0; index < columns.size(); index++) {
+                XlsxReportColumn column = columns.get(index);
+                Cell cell = header.createCell(index);
+                cell.setCellValue(translationService.translate(column.getHeaderKey(), locale));
+                cell.setCellStyle(styles.get(XlsxCellStyle.HEADER));
+                sheet.setColumnWidth(index, column.getWidth() * 256);
+            }
+            sheet.createFreezePane(0, rowNumber);
+        }
+
+        private void createTitleRows() {
+            for (Map<String, String> labelsAndValues : definition.getTitleRows()) {
+                Row row = sheet.createRow(rowNumber++);
+                int index = 0;
+
+                for (Map.Entry<String, String> labelAndValue : labelsAndValues.entrySet()) {
+                    Cell label = row.createCell(index++);
+                    label.setCellValue(labelAndValue.getKey());
+                    label.setCellStyle(styles.get(XlsxCellStyle.DEFAULT.withBold()));
+
+                    Cell value = row.createCell(index++);
+                    value.setCellValue(labelAndValue.getValue());
+                }
+            }
+            rowNumber++;
+        }
+
+        private void writeRow(final ResultSet resultSet) throws SQLException {
+            if (rowNumber == L_MAX_ROWS) {
+                createSheet();
+            }
+
+            List<XlsxReportColumn> columns = definition.getColumns();
+            Row row = sheet.createRow(rowNumber++);
+
+            for (int index = 0; index < columns.size(); index++) {
+                XlsxReportColumn column = columns.get(index);
+                Cell cell = row.createCell(index);
+                setValue(cell, column, resultSet);
+                cell.setCellStyle(styles.get(getStyle(resultSet, column)));
+            }
+            rowCount++;
+        }
+
+        private XlsxCellStyle getStyle(final ResultSet resultSet, final XlsxReportColumn column) throws SQLException {
+            if (definition.getRowStyler() == null) {
+                return column.getStyle();
+            }
+
+            XlsxCellStyle style = definition.getRowStyler().getStyle(resultSet, column, rowCount);
+            return style == null ? column.getStyle() : style;
+        }
+
+        private void setValue(final Cell cell, final XlsxReportColumn column, final ResultSet resultSet) throws SQLException {
+            switch (column.getType()) {
+                case NUMBER:
+                    BigDecimal number = resultSet.getBigDecimal(column.getLabel());
+                    if (number != null) {
+                        cell.setCellValue(number.doubleValue());
+                    }
+                    break;
+                case DATE:
+                case DATE_TIME:
+                    Timestamp date = resultSet.getTimestamp(column.getLabel());
+                    if (date != null) {
+                        cell.setCellValue(date);
+                    }
+                    break;
+                case TRANSLATED:
+                    String key = resultSet.getString(column.getLabel());
+                    if (key != null) {
+                        cell.setCellValue(translations.computeIfAbsent(key, k -> translationService.translate(k, locale)));
+                    }
+                    break;
+                default:
+                    String text = resultSet.getString(column.getLabel());
+                    if (text != null) {
+                        cell.setCellValue(text);
+                    }
+            }
+        }
+
+        private int getRowCount() {
+            return rowCount;
+        }
+
+    }
+
+}
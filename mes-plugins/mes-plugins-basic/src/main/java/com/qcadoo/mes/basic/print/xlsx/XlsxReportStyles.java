@@ -0,0 +1,86 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Cell styles of one workbook. Each distinct {@link XlsxCellStyle} is created once, as workbooks have a limited number
+ * of styles.
+ */
+public class XlsxReportStyles {
+
+    private final Workbook workbook;
+
+    private final Map<XlsxCellStyle, CellStyle> styles = Maps.newHashMap();
+
+    private Font boldFont;
+
+    public XlsxReportStyles(final Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle get(final XlsxCellStyle style) {
+        return styles.computeIfAbsent(style, this::create);
+    }
+
+    public int size() {
+        return styles.size();
+    }
+
+    private CellStyle create(final XlsxCellStyle style) {
+        CellStyle cellStyle = workbook.createCellStyle();
+        cellStyle.setAlignment(style.getAlignment());
+
+        if (style.isBold()) {
+            cellStyle.setFont(getBoldFont());
+        }
+        if (style.hasFillColor()) {
+            cellStyle.setFillForegroundColor(style.getFillColor());
+            cellStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        }
+        if (style.hasBorderTop()) {
+            cellStyle.setBorderTop(CellStyle.BORDER_THIN);
+        }
+        if (style.getDataFormat() != null) {
+            cellStyle.setDataFormat(workbook.createDataFormat().getFormat(style.getDataFormat()));
+        }
+        return cellStyle;
+    }
+
+    private Font getBoldFont() {
+        if (boldFont == null) {
+            boldFont = workbook.createFont();
+            boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
+        }
+        return boldFont;
+    }
+
+}
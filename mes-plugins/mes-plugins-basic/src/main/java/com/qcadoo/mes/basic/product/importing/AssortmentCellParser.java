@@ -31,6 +31,7 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Optional;
 import java.util.function.Consumer;
 
 @Component
@@ -59,4 +60,15 @@ class AssortmentCellParser implements CellParser {
             errorsAccessor.addError("qcadooView.validate.field.error.lookupCodeNotFound");
         }
     }
+
+    @Override
+    public void parse(String cellValue, DictionarySnapshot dictionarySnapshot, BindingErrorsAccessor errorsAccessor,
+                      Consumer<Object> valueConsumer) {
+        Optional<Entity> assortment = dictionarySnapshot.getAssortment(cellValue);
+        if (assortment.isPresent()) {
+            valueConsumer.accept(assortment.get());
+        } else {
+            parse(cellValue, errorsAccessor, valueConsumer);
+        }
+    }
 }
@@ -71,7 +71,12 @@ abstract class CellBinder {
         return cellParser;
     }
 
-    abstract void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor);
+    void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor) {
+        bind(null == cell ? null : formatCell(cell), entity, DictionarySnapshot.EMPTY, errorsAccessor);
+    }
+
+    abstract void bind(String cellValue, Entity entity, DictionarySnapshot dictionarySnapshot,
+                       BindingErrorsAccessor errorsAccessor);
 
     public String getFieldName() {
         return fieldName;
@@ -96,9 +101,10 @@ abstract class CellBinder {
         }
 
         @Override
-        public void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor) {
-            if (cell != null) {
-                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o));
+        void bind(String cellValue, Entity entity, DictionarySnapshot dictionarySnapshot,
+                  BindingErrorsAccessor errorsAccessor) {
+            if (cellValue != null) {
+                getCellParser().parse(cellValue, dictionarySnapshot, errorsAccessor, o -> entity.setField(getFieldName(), o));
             }
         }
     }
@@ -114,11 +120,12 @@ abstract class CellBinder {
         }
 
         @Override
-        public void bind(Cell cell, Entity entity, BindingErrorsAccessor errorsAccessor) {
-            if (cell == null) {
+        void bind(String cellValue, Entity entity, DictionarySnapshot dictionarySnapshot,
+                  BindingErrorsAccessor errorsAccessor) {
+            if (cellValue == null) {
                 errorsAccessor.addError("qcadooView.validate.field.error.missing");
             } else {
-                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o));
+                getCellParser().parse(cellValue, dictionarySnapshot, errorsAccessor, o -> entity.setField(getFieldName(), o));
             }
         }
     }
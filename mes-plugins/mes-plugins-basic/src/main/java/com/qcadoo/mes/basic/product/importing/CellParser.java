@@ -27,4 +27,9 @@ import java.util.function.Consumer;
 
 interface CellParser {
     void parse(String cellValue, BindingErrorsAccessor errorsAccessor, Consumer<Object> valueConsumer);
+
+    default void parse(String cellValue, DictionarySnapshot dictionarySnapshot, BindingErrorsAccessor errorsAccessor,
+                       Consumer<Object> valueConsumer) {
+        parse(cellValue, errorsAccessor, valueConsumer);
+    }
 }
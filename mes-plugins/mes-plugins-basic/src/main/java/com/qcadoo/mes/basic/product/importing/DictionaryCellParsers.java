@@ -28,6 +28,7 @@ import com.qcadoo.model.api.Entity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Optional;
 import java.util.function.Consumer;
 
 import static com.qcadoo.model.api.search.SearchRestrictions.*;
@@ -65,6 +66,22 @@ class DictionaryCellParsers {
                     .find()
                     .add(and(eq("name", cellValue), belongsTo("dictionary", getProductCategoryDictionary())))
                     .uniqueResult();
+            accept(categoryItem, cellValue, errorsAccessor, valueConsumer);
+        }
+
+        @Override
+        public void parse(String cellValue, DictionarySnapshot dictionarySnapshot, BindingErrorsAccessor errorsAccessor,
+                          Consumer<Object> valueConsumer) {
+            Optional<Entity> categoryItem = dictionarySnapshot.getDictionaryItem(dictionaryName, cellValue);
+            if (categoryItem.isPresent()) {
+                accept(categoryItem.get(), cellValue, errorsAccessor, valueConsumer);
+            } else {
+                parse(cellValue, errorsAccessor, valueConsumer);
+            }
+        }
+
+        private void accept(Entity categoryItem, String cellValue, BindingErrorsAccessor errorsAccessor,
+                            Consumer<Object> valueConsumer) {
             if (null == categoryItem) {
                 errorsAccessor.addError("qcadooView.validate.field.error.invalidDictionaryItem");
             } else if (!categoryItem.isActive()) {
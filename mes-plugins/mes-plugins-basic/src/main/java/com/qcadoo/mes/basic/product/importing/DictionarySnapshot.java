@@ -0,0 +1,139 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.CompanyFields;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.qcadoo.mes.basic.constants.ProductFamilyElementType.PRODUCTS_FAMILY;
+
+/**
+ * Lookup values preloaded once per import, so the parsers don't have to query the database for every row. Each map is loaded
+ * lazily, when the first cell referring to it is parsed. A miss means the parser has to fall back to its regular query, which
+ * also produces the exact validation error.
+ */
+class DictionarySnapshot {
+
+    static final DictionarySnapshot EMPTY = new DictionarySnapshot(null);
+
+    private final DataDefinitionService dataDefinitionService;
+
+    private final Map<String, Map<String, Entity>> dictionaryItems = new HashMap<>();
+
+    private Map<String, Entity> companies;
+
+    private Map<String, Entity> assortments;
+
+    private Map<String, Entity> productFamilies;
+
+    DictionarySnapshot(final DataDefinitionService dataDefinitionService) {
+        this.dataDefinitionService = dataDefinitionService;
+    }
+
+    Optional<Entity> getDictionaryItem(final String dictionaryName, final String name) {
+        if (dataDefinitionService == null) {
+            return Optional.empty();
+        }
+        Map<String, Entity> items = dictionaryItems.computeIfAbsent(dictionaryName,
+                dictionary -> index(dataDefinitionService.get("qcadooModel", "dictionaryItem").find()
+                        .createAlias("dictionary", "dictionary")
+                        .add(SearchRestrictions.eq("dictionary.name", dictionary)), "name"));
+        return Optional.ofNullable(items.get(name));
+    }
+
+    Optional<Entity> getCompany(final String number) {
+        if (dataDefinitionService == null) {
+            return Optional.empty();
+        }
+        if (companies == null) {
+            companies = index(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_COMPANY).find(),
+                    CompanyFields.NUMBER);
+        }
+        return Optional.ofNullable(companies.get(number));
+    }
+
+    Optional<Entity> getAssortment(final String name) {
+        if (dataDefinitionService == null) {
+            return Optional.empty();
+        }
+        if (assortments == null) {
+            assortments = index(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_ASSORTMENT)
+                    .find(), "name");
+        }
+        return Optional.ofNullable(assortments.get(name));
+    }
+
+    Optional<Entity> getProductFamily(final String number) {
+        if (dataDefinitionService == null) {
+            return Optional.empty();
+        }
+        if (productFamilies == null) {
+            productFamilies = index(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)
+                    .find().add(SearchRestrictions.eq(ProductFields.ENTITY_TYPE, PRODUCTS_FAMILY.getStringValue())),
+                    ProductFields.NUMBER);
+        }
+        return Optional.ofNullable(productFamilies.get(number));
+    }
+
+    private Map<String, Entity> index(final SearchCriteriaBuilder searchCriteriaBuilder, final String keyField) {
+        Map<String, Entity> entities = new HashMap<>();
+        for (Entity entity : searchCriteriaBuilder.list().getEntities()) {
+            entities.putIfAbsent(entity.getStringField(keyField), entity);
+        }
+        return entities;
+    }
+
+}
@@ -33,6 +33,9 @@ import java.util.Set;
 public class ImportStatus {
 
     private int rowsProcessed;
+    private int rowsImported;
+    private int batchesCommitted;
+    private int batchesRolledBack;
     private Set<ImportError> errors = new HashSet<>();
 
     public int getRowsProcessed() {
@@ -43,6 +46,31 @@ public class ImportStatus {
         rowsProcessed++;
     }
 
+    public int getRowsImported() {
+        return rowsImported;
+    }
+
+    public int getBatchesCommitted() {
+        return batchesCommitted;
+    }
+
+    public int getBatchesRolledBack() {
+        return batchesRolledBack;
+    }
+
+    void batchCommitted(int rows) {
+        batchesCommitted++;
+        rowsImported += rows;
+    }
+
+    void batchRolledBack() {
+        batchesRolledBack++;
+    }
+
+    int getErrorsCount() {
+        return errors.size();
+    }
+
     public boolean hasErrors() {
         return !CollectionUtils.isEmpty(errors);
     }
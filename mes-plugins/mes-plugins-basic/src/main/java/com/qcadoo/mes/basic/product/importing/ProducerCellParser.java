@@ -32,6 +32,7 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Optional;
 import java.util.function.Consumer;
 
 @Component
@@ -60,4 +61,15 @@ class ProducerCellParser implements CellParser {
             errorsAccessor.addError("qcadooView.validate.field.error.lookupCodeNotFound");
         }
     }
+
+    @Override
+    public void parse(String cellValue, DictionarySnapshot dictionarySnapshot, BindingErrorsAccessor errorsAccessor,
+                      Consumer<Object> valueConsumer) {
+        Optional<Entity> companyCandidate = dictionarySnapshot.getCompany(cellValue);
+        if (companyCandidate.isPresent()) {
+            valueConsumer.accept(companyCandidate.get());
+        } else {
+            parse(cellValue, errorsAccessor, valueConsumer);
+        }
+    }
 }
@@ -32,6 +32,7 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Optional;
 import java.util.function.Consumer;
 
 import static com.qcadoo.mes.basic.constants.ProductFamilyElementType.PRODUCTS_FAMILY;
@@ -66,4 +67,15 @@ class ProductFamilyCellParser implements CellParser {
             valueConsumer.accept(familyProductCandidate);
         }
     }
+
+    @Override
+    public void parse(String cellValue, DictionarySnapshot dictionarySnapshot, BindingErrorsAccessor errorsAccessor,
+                      Consumer<Object> valueConsumer) {
+        Optional<Entity> familyProductCandidate = dictionarySnapshot.getProductFamily(cellValue);
+        if (familyProductCandidate.isPresent()) {
+            valueConsumer.accept(familyProductCandidate.get());
+        } else {
+            parse(cellValue, errorsAccessor, valueConsumer);
+        }
+    }
 }
@@ -31,5 +31,7 @@ public interface RowProcessor {
 
     void append(Cell cell);
 
+    void append(String cellValue);
+
     void process();
 }
@@ -66,7 +66,11 @@ class RowProcessorFactory {
     }
 
     RowProcessor create(final ImportStatus importStatus, int rowIndex) {
-        return new RowProcessorImpl(importStatus, createEntityWithDefaultValues(), rowIndex);
+        return create(importStatus, rowIndex, DictionarySnapshot.EMPTY);
+    }
+
+    RowProcessor create(final ImportStatus importStatus, int rowIndex, final DictionarySnapshot dictionarySnapshot) {
+        return new RowProcessorImpl(importStatus, createEntityWithDefaultValues(), rowIndex, dictionarySnapshot);
     }
 
     private class RowProcessorImpl implements RowProcessor {
@@ -74,15 +78,18 @@ class RowProcessorFactory {
         private final ImportStatus importStatus;
         private final Entity entity;
         private final int currentRow;
+        private final DictionarySnapshot dictionarySnapshot;
         private boolean finished;
         private int index;
         private boolean empty = true;
         private List<ImportError> rowErrors = new ArrayList<>();
+        private final List<String> cellValues = new ArrayList<>();
 
-        RowProcessorImpl(ImportStatus importStatus, Entity entity, int rowIndx) {
+        RowProcessorImpl(ImportStatus importStatus, Entity entity, int rowIndx, DictionarySnapshot dictionarySnapshot) {
             this.importStatus = importStatus;
             this.entity = entity;
             this.currentRow = rowIndx;
+            this.dictionarySnapshot = dictionarySnapshot;
         }
 
         @Override
@@ -104,6 +111,32 @@ class RowProcessorFactory {
             );
         }
 
+        /**
+         * Keeps the raw value, which is bound just before the row is saved. Rows of a batch are appended before any of them is
+         * processed, so binding earlier would not see products (e.g. families) saved by preceding rows of the same batch.
+         */
+        @Override
+        public void append(final String cellValue) {
+            assureNotProcessedYet();
+            if (null != cellValue) {
+                empty = false;
+            }
+            cellValues.add(cellValue);
+        }
+
+        private void bindCellValues() {
+            for (String cellValue : cellValues) {
+                final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+                binder.bind(
+                        cellValue,
+                        entity,
+                        dictionarySnapshot,
+                        errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode))
+                );
+            }
+            cellValues.clear();
+        }
+
         private void assureNotProcessedYet() {
             if (finished) {
                 throw new IllegalStateException("Row already processed");
@@ -113,6 +146,7 @@ class RowProcessorFactory {
         @Override
         public void process() {
             assureNotProcessedYet();
+            bindCellValues();
             finished = true;
             importStatus.incrementRowsProcessedCounter();
             final Entity savedEntity = getProductDataDefinition().save(entity);
@@ -23,22 +23,46 @@
  */
 package com.qcadoo.mes.basic.product.importing;
 
+import com.qcadoo.model.api.DataDefinitionService;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 @Service
 public class XlsxImportService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(XlsxImportService.class);
+
     private final RowProcessorFactory rowProcessorFactory;
 
+    private final ImportBatchWriter importBatchWriter;
+
+    private final DataDefinitionService dataDefinitionService;
+
+    // 0 means that the whole file is written in a single transaction
+    @Value("${productsImport.batchSize:500}")
+    private int batchSize;
+
     @Autowired
-    public XlsxImportService(RowProcessorFactory rowProcessorFactory) {
+    public XlsxImportService(RowProcessorFactory rowProcessorFactory, ImportBatchWriter importBatchWriter,
+                             DataDefinitionService dataDefinitionService) {
         this.rowProcessorFactory = rowProcessorFactory;
+        this.importBatchWriter = importBatchWriter;
+        this.dataDefinitionService = dataDefinitionService;
     }
 
     @Transactional
@@ -65,8 +89,79 @@ public class XlsxImportService {
 
         if (importStatus.hasErrors()) { // We have to rollback transaction here
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            importStatus.batchRolledBack();
+        } else {
+            importStatus.batchCommitted(importStatus.getRowsProcessed());
         }
         return importStatus;
     }
 
+    /**
+     * Streams the first sheet of given file row by row instead of loading the whole workbook. Lookups are resolved from a
+     * dictionary snapshot taken at the beginning of the import and products are written in batches of configured size, each
+     * in its own transaction.
+     */
+    public ImportStatus importFrom(final File file) throws IOException {
+        Locale locale = LocaleContextHolder.getLocale();
+        StreamingImport streamingImport = new StreamingImport();
+
+        new XlsxSaxRowReader(SpreadsheetSchemaInfo.COLUMN_NUMBER, null == locale ? Locale.getDefault() : locale)
+                .read(file, streamingImport);
+        streamingImport.flush();
+
+        return streamingImport.importStatus;
+    }
+
+    private class StreamingImport implements XlsxSaxRowReader.RowHandler {
+
+        private final ImportStatus importStatus = new ImportStatus();
+
+        private final DictionarySnapshot dictionarySnapshot = new DictionarySnapshot(dataDefinitionService);
+
+        private final List<RowProcessor> batch = new ArrayList<>();
+
+        private int expectedRowIndex = SpreadsheetSchemaInfo.START_ROW_INDEX;
+
+        private boolean finished;
+
+        @Override
+        public void handle(final int rowIndex, final String[] cellValues) {
+            if (finished || rowIndex < SpreadsheetSchemaInfo.START_ROW_INDEX) {
+                return;
+            }
+            if (rowIndex != expectedRowIndex) { // There was a whole empty row in between
+                finished = true;
+                return;
+            }
+            expectedRowIndex++;
+
+            final RowProcessor rowProcessor = rowProcessorFactory.create(importStatus, rowIndex, dictionarySnapshot);
+            for (String cellValue : cellValues) {
+                rowProcessor.append(cellValue);
+            }
+            if (rowProcessor.isEmpty()) {
+                finished = true; // We are done. The whole row was empty so stop processing
+                return;
+            }
+            batch.add(rowProcessor);
+            if (batchSize > 0 && batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            importBatchWriter.write(batch, importStatus);
+            batch.clear();
+
+            if (LOG.isInfoEnabled()) {
+                LOG.info(String.format("Products import: %d rows processed, %d imported, %d batches rolled back",
+                        importStatus.getRowsProcessed(), importStatus.getRowsImported(), importStatus.getBatchesRolledBack()));
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,216 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads the first sheet of a xlsx file using SAX events, so only the current row is kept in memory. Cells are formatted the
+ * same way as {@link DataFormatter} formats them for the user model, blank cells are reported as null.
+ */
+class XlsxSaxRowReader {
+
+    interface RowHandler {
+
+        void handle(int rowIndex, String[] cellValues);
+    }
+
+    private final int columnNumber;
+
+    private final DataFormatter dataFormatter;
+
+    XlsxSaxRowReader(final int columnNumber, final Locale locale) {
+        this.columnNumber = columnNumber;
+        this.dataFormatter = new DataFormatter(locale);
+    }
+
+    void read(final File file, final RowHandler rowHandler) throws IOException {
+        try (OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            StylesTable styles = xssfReader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            if (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    read(sheet, new SheetHandler(sharedStrings, styles, rowHandler));
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Couldn't read spreadsheet " + file.getName(), e);
+        }
+    }
+
+    void read(final InputStream sheet, final DefaultHandler handler)
+            throws IOException, SAXException, ParserConfigurationException {
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        XMLReader xmlReader = parserFactory.newSAXParser().getXMLReader();
+        xmlReader.setContentHandler(handler);
+        xmlReader.parse(new InputSource(sheet));
+    }
+
+    class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStrings;
+
+        private final StylesTable styles;
+
+        private final RowHandler rowHandler;
+
+        private final StringBuilder contents = new StringBuilder();
+
+        private String[] cellValues;
+
+        private int rowIndex;
+
+        private int columnIndex;
+
+        private String cellType;
+
+        private String cellStyle;
+
+        private boolean collectContents;
+
+        SheetHandler(final ReadOnlySharedStringsTable sharedStrings, final StylesTable styles, final RowHandler rowHandler) {
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) {
+            if ("row".equals(localName)) {
+                rowIndex = Integer.parseInt(attributes.getValue("r")) - 1;
+                cellValues = new String[columnNumber];
+                columnIndex = 0;
+            } else if ("c".equals(localName)) {
+                String reference = attributes.getValue("r");
+                if (reference != null) {
+                    columnIndex = new CellReference(reference).getCol();
+                }
+                cellType = attributes.getValue("t");
+                cellStyle = attributes.getValue("s");
+                contents.setLength(0);
+            } else if ("v".equals(localName) || "t".equals(localName)) {
+                collectContents = true;
+            }
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) {
+            if (collectContents) {
+                contents.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) {
+            if ("v".equals(localName) || "t".equals(localName)) {
+                collectContents = false;
+            } else if ("c".equals(localName)) {
+                if (columnIndex < columnNumber) {
+                    cellValues[columnIndex] = StringUtils.trimToNull(formatCellValue(contents.toString()));
+                }
+                columnIndex++;
+            } else if ("row".equals(localName)) {
+                rowHandler.handle(rowIndex, Arrays.copyOf(cellValues, columnNumber));
+            }
+        }
+
+        private String formatCellValue(final String rawValue) {
+            if (rawValue.isEmpty()) {
+                return null;
+            }
+            if ("s".equals(cellType)) {
+                return sharedStrings.getEntryAt(Integer.parseInt(rawValue));
+            } else if ("b".equals(cellType)) {
+                return "1".equals(rawValue) ? "TRUE" : "FALSE";
+            } else if ("inlineStr".equals(cellType) || "str".equals(cellType) || "e".equals(cellType)) {
+                return rawValue;
+            }
+            return formatNumber(rawValue);
+        }
+
+        private String formatNumber(final String rawValue) {
+            if (cellStyle == null || styles == null) {
+                return dataFormatter.formatRawCellContents(Double.parseDouble(rawValue), 0, BuiltinFormats.getBuiltinFormat(0));
+            }
+            XSSFCellStyle style = styles.getStyleAt(Integer.parseInt(cellStyle));
+            short formatIndex = style.getDataFormat();
+            String formatString = style.getDataFormatString();
+            if (formatString == null) {
+                formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+            }
+            return dataFormatter.formatRawCellContents(Double.parseDouble(rawValue), formatIndex, formatString);
+        }
+    }
+
+}
@@ -0,0 +1,204 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+
+/**
+ * Immutable, precompiled timeline of working intervals of a set of shifts.
+ *
+ * Intervals are kept sorted and disjoint, together with the amount of working time preceding each of them, so adding or
+ * subtracting working time is a binary search instead of walking the shifts week by week.
+ */
+public final class ShiftsCalendar {
+
+    private final long validFrom;
+
+    private final long validTo;
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final long[] workingTimeBefore;
+
+    /**
+     * @param validFrom
+     *            beginning of period for which given hours are complete
+     * @param validTo
+     *            end of period for which given hours are complete
+     * @param hours
+     *            sorted and merged working hours
+     */
+    public ShiftsCalendar(final long validFrom, final long validTo, final List<ShiftHour> hours) {
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+
+        int size = hours.size();
+
+        starts = new long[size];
+        ends = new long[size];
+        workingTimeBefore = new long[size];
+
+        long workingTime = 0;
+
+        for (int i = 0; i < size; i++) {
+            ShiftHour hour = hours.get(i);
+
+            starts[i] = hour.getDateFrom().getTime();
+            ends[i] = hour.getDateTo().getTime();
+            workingTimeBefore[i] = workingTime;
+
+            workingTime += ends[i] - starts[i];
+        }
+    }
+
+    public long getValidFrom() {
+        return validFrom;
+    }
+
+    public long getValidTo() {
+        return validTo;
+    }
+
+    public boolean covers(final long from, final long to) {
+        return validFrom <= from && to <= validTo;
+    }
+
+    /**
+     * Finds date, at which given amount of working time started at dateFrom ends.
+     *
+     * @return date or empty, if there is not enough working time in this calendar
+     */
+    public Optional<Date> addWorkingTime(final Date dateFrom, final long seconds) {
+        long time = dateFrom.getTime();
+
+        if (time < validFrom || time > validTo) {
+            return Optional.empty();
+        }
+
+        int index = findFirstIndexEndingAfter(time);
+
+        if (index == starts.length) {
+            return Optional.empty();
+        }
+
+        long target = workingTimeBefore[index] + Math.max(0, time - starts[index]) + seconds * 1000;
+
+        int low = index;
+        int high = starts.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (getWorkingTimeAfter(middle) < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (low == starts.length) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Date(starts[low] + target - workingTimeBefore[low]));
+    }
+
+    /**
+     * Finds date, at which given amount of working time ending at dateTo has to start.
+     *
+     * @return date or empty, if there is not enough working time in this calendar
+     */
+    public Optional<Date> subtractWorkingTime(final Date dateTo, final long seconds) {
+        long time = dateTo.getTime();
+
+        if (time < validFrom || time > validTo) {
+            return Optional.empty();
+        }
+
+        int index = findFirstIndexEndingAfter(time);
+
+        if (index == starts.length || starts[index] >= time) {
+            index--;
+        }
+
+        if (index < 0) {
+            return Optional.empty();
+        }
+
+        long target = workingTimeBefore[index] + Math.min(time, ends[index]) - starts[index] - seconds * 1000;
+
+        if (target < 0) {
+            return Optional.empty();
+        }
+
+        int low = 0;
+        int high = index;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (workingTimeBefore[middle] <= target) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        long result = starts[low] + target - workingTimeBefore[low];
+
+        if (result < validFrom) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new Date(result));
+    }
+
+    private int findFirstIndexEndingAfter(final long time) {
+        int low = 0;
+        int high = ends.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (ends[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private long getWorkingTimeAfter(final int index) {
+        return workingTimeBefore[index] + ends[index] - starts[index];
+    }
+
+}
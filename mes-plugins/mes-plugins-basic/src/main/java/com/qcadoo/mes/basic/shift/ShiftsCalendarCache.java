@@ -0,0 +1,77 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps compiled {@link ShiftsCalendar}s per tenant. Calendars of a tenant are dropped whenever its shifts or their timetable
+ * exceptions change.
+ */
+@Service
+public class ShiftsCalendarCache {
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, Map<String, ShiftsCalendar>> shiftsCalendarsByTenant = new ConcurrentHashMap<>();
+
+    public ShiftsCalendar get(final String key) {
+        return getShiftsCalendars().get(key);
+    }
+
+    public void put(final String key, final ShiftsCalendar shiftsCalendar) {
+        getShiftsCalendars().put(key, shiftsCalendar);
+    }
+
+    public void invalidate() {
+        Map<String, ShiftsCalendar> shiftsCalendars = getShiftsCalendars();
+
+        shiftsCalendars.clear();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    shiftsCalendars.clear();
+                }
+            });
+        }
+    }
+
+    private Map<String, ShiftsCalendar> getShiftsCalendars() {
+        return shiftsCalendarsByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(),
+                tenantId -> new ConcurrentHashMap<>());
+    }
+
+}
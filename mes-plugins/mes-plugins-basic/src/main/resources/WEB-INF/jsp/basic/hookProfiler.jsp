@@ -0,0 +1,111 @@
+<%--
+
+    ***************************************************************************
+    Copyright (c) 2010 Qcadoo Limited
+    Project: Qcadoo MES
+    Version: 1.4
+
+    This file is part of Qcadoo.
+
+    Qcadoo is free software; you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as published
+    by the Free Software Foundation; either version 3 of the License,
+    or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty
+    of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+    See the GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+    ***************************************************************************
+
+--%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jstl/core_rt" %>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jstl/fmt_rt" %>
+<!DOCTYPE html PUBLIC "-//W3C//DTD HTML 4.01 Transitional//EN" "http://www.w3.org/TR/html4/loose.dtd">
+
+<html>
+<head>
+
+	<c:choose>
+		<c:when test="${useCompressedStaticResources}">
+			<link rel="stylesheet" href="${pageContext.request.contextPath}/qcadooView/public/qcadoo-min.css?ver=${buildNumber}" type="text/css" />
+			<script type="text/javascript" src="${pageContext.request.contextPath}/qcadooView/public/js/core/lib/_jquery-1.4.2.min.js?ver=${buildNumber}"></script>
+		</c:when>
+		<c:otherwise>
+			<link rel="stylesheet" href="${pageContext.request.contextPath}/qcadooView/public/css/core/dashboard.css?ver=${buildNumber}" type="text/css" />
+			<script type="text/javascript" src="${pageContext.request.contextPath}/qcadooView/public/js/core/lib/_jquery-1.4.2.min.js?ver=${buildNumber}"></script>
+		</c:otherwise>
+	</c:choose>
+
+	<style type="text/css">
+		#hookProfilerContent { padding: 10px; }
+		#hookProfilerContent table { border-collapse: collapse; margin-top: 10px; }
+		#hookProfilerContent th, #hookProfilerContent td { border: 1px solid #ccc; padding: 3px 6px; font-size: 12px; }
+		#hookProfilerContent td.number { text-align: right; }
+	</style>
+
+	<script type="text/javascript">
+
+		function hookProfilerAction(action) {
+			$.post("${pageContext.request.contextPath}/hookProfiler/" + action, function() {
+				window.location.reload();
+			});
+		}
+
+	</script>
+</head>
+<body>
+
+	<div id="hookProfilerContent">
+		<div>
+			<c:choose>
+				<c:when test="${report.enabled}">
+					${translationsMap['basic.hookProfiler.enabled']}
+					<fmt:formatDate value="${report.enabledSince}" pattern="yyyy-MM-dd HH:mm:ss" />
+					<button onclick="hookProfilerAction('disable')">${translationsMap['basic.hookProfiler.disable']}</button>
+				</c:when>
+				<c:otherwise>
+					${translationsMap['basic.hookProfiler.disabled']}
+					<button onclick="hookProfilerAction('enable')">${translationsMap['basic.hookProfiler.enable']}</button>
+				</c:otherwise>
+			</c:choose>
+			<button onclick="hookProfilerAction('reset')">${translationsMap['basic.hookProfiler.reset']}</button>
+			<button onclick="window.location.reload()">${translationsMap['basic.hookProfiler.refresh']}</button>
+			<a href="${pageContext.request.contextPath}/hookProfiler/statistics">JSON</a>
+		</div>
+
+		<table>
+			<tr>
+				<th>${translationsMap['basic.hookProfiler.column.model']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.hook']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.count']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.totalMillis']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.p50Millis']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.p99Millis']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.maxMillis']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.queries']}</th>
+				<th>${translationsMap['basic.hookProfiler.column.queriesPerCall']}</th>
+			</tr>
+			<c:forEach items="${report.statistics}" var="hookStatistics">
+				<tr>
+					<td><c:out value="${hookStatistics.model}" /></td>
+					<td><c:out value="${hookStatistics.hook}" /></td>
+					<td class="number">${hookStatistics.count}</td>
+					<td class="number">${hookStatistics.totalMillis}</td>
+					<td class="number">${hookStatistics.p50Millis}</td>
+					<td class="number">${hookStatistics.p99Millis}</td>
+					<td class="number">${hookStatistics.maxMillis}</td>
+					<td class="number">${hookStatistics.queries}</td>
+					<td class="number">${hookStatistics.queriesPerCall}</td>
+				</tr>
+			</c:forEach>
+		</table>
+	</div>
+
+</body>
+</html>
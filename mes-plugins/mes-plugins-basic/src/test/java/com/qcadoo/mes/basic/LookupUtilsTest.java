@@ -0,0 +1,184 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class LookupUtilsTest {
+
+    private static final String L_QUERY = "SELECT %s FROM ( SELECT p.id, p.number FROM position p %s) q ";
+
+    private LookupUtils lookupUtils;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+        lookupUtils = new LookupUtils();
+        ReflectionTestUtils.setField(lookupUtils, "jdbcTemplate", jdbcTemplate);
+        GridPagingCache gridPagingCache = new GridPagingCache();
+        ReflectionTestUtils.setField(gridPagingCache, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(lookupUtils, "gridPagingCache", gridPagingCache);
+    }
+
+    @Test
+    public void shouldNotCountRecordsWhenPageIsNotFull() {
+        // given
+        givenPageRecords(3);
+
+        // when
+        GridResponse<RecordExample> response = lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 2, 10,
+                new RecordExample(), new HashMap<>());
+
+        // then
+        assertEquals(13, response.getRecords());
+        assertEquals(2, response.getTotal());
+        verify(jdbcTemplate, never()).queryForObject(anyString(), anyMap(), eq(Long.class));
+    }
+
+    @Test
+    public void shouldReuseCachedCountForNextFullPage() {
+        // given
+        givenPageRecords(10);
+        given(jdbcTemplate.queryForObject(anyString(), anyMap(), eq(Long.class))).willReturn(25L);
+
+        // when
+        lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 1, 10, new RecordExample(), new HashMap<>());
+        GridResponse<RecordExample> response = lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 2, 10,
+                new RecordExample(), new HashMap<>());
+
+        // then
+        assertEquals(25, response.getRecords());
+        assertEquals(3, response.getTotal());
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), anyMap(), eq(Long.class));
+    }
+
+    @Test
+    public void shouldRecountWhenCachedCountIsInconsistentWithPage() {
+        // given
+        givenPageRecords(10);
+        given(jdbcTemplate.queryForObject(anyString(), anyMap(), eq(Long.class))).willReturn(15L, 40L);
+
+        // when
+        lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 1, 10, new RecordExample(), new HashMap<>());
+        GridResponse<RecordExample> response = lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 2, 10,
+                new RecordExample(), new HashMap<>());
+
+        // then
+        assertEquals(40, response.getRecords());
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), anyMap(), eq(Long.class));
+    }
+
+    @Test
+    public void shouldNotReuseCachedCountOfOtherTenant() {
+        // given
+        givenPageRecords(10);
+        given(jdbcTemplate.queryForObject(anyString(), anyMap(), eq(Long.class))).willReturn(25L);
+        given(multiTenantService.getCurrentTenantId()).willReturn(1, 1, 2);
+
+        // when
+        lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 1, 10, new RecordExample(), new HashMap<>());
+        lookupUtils.getGridResponse(GridQuery.of(L_QUERY), "number", "asc", 2, 10, new RecordExample(), new HashMap<>());
+
+        // then
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), anyMap(), eq(Long.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectSortingByPageColumn() {
+        // given
+        GridQuery gridQuery = GridQuery.of(L_QUERY).withPageColumn("number", "page.id * 2");
+
+        // when
+        lookupUtils.getGridResponse(gridQuery, "number", "asc", 1, 10, new RecordExample(), new HashMap<>());
+    }
+
+    @Test
+    public void shouldBuildSeekConditionsKeepingPostgresNullsOrdering() {
+        // when & then
+        assertEquals("(number > :gridSeekValue OR (number = :gridSeekValue AND id > :gridSeekId) OR number IS NULL)",
+                LookupUtils.buildSeekCondition("number", "asc", "id", 5));
+        assertEquals("(number IS NULL AND id > :gridSeekId)", LookupUtils.buildSeekCondition("number", "", "id", null));
+        assertEquals("(number < :gridSeekValue OR (number = :gridSeekValue AND id < :gridSeekId))",
+                LookupUtils.buildSeekCondition("number", "desc", "id", 5));
+        assertEquals("(number IS NOT NULL OR id < :gridSeekId)", LookupUtils.buildSeekCondition("number", "desc", "id", null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenPageRecords(final int size) {
+        List<RecordExample> records = Collections.nCopies(size, new RecordExample());
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(records);
+    }
+
+    public static class RecordExample {
+
+        private Long id;
+
+        private Integer number;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public Integer getNumber() {
+            return number;
+        }
+
+        public void setNumber(final Integer number) {
+            this.number = number;
+        }
+    }
+
+}
@@ -39,12 +39,14 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.qcadoo.mes.basic.shift.ShiftsCalendarCache;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 public class ShiftsServiceTest {
 
@@ -56,6 +58,9 @@ public class ShiftsServiceTest {
     @Mock
     private DataDefinition dataDefinition;
 
+    @Mock
+    private MultiTenantService multiTenantService;
+
     @Mock
     private Entity entity, shift, exception;
 
@@ -69,6 +74,9 @@ public class ShiftsServiceTest {
         MockitoAnnotations.initMocks(this);
 
         ReflectionTestUtils.setField(shiftsService, "dataDefinitionService", dataDefinitionService);
+        ShiftsCalendarCache shiftsCalendarCache = new ShiftsCalendarCache();
+        ReflectionTestUtils.setField(shiftsCalendarCache, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(shiftsService, "shiftsCalendarCache", shiftsCalendarCache);
     }
 
     private EntityList mockEntityList(List<Entity> list) {
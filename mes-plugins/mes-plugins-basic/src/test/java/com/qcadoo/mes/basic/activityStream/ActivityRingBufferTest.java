@@ -0,0 +1,121 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.activityStream;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.activityStream.model.ActivityDto;
+
+public class ActivityRingBufferTest {
+
+    @Test
+    public final void shouldReturnNewestActivitiesAfterCursor() {
+        // given
+        ActivityRingBuffer activityRingBuffer = new ActivityRingBuffer(3);
+
+        for (long id = 1; id <= 5; id++) {
+            activityRingBuffer.add(activity(id));
+        }
+
+        // when
+        List<Long> all = ids(activityRingBuffer.getNewerThan(0L, 10));
+        List<Long> newerThanFour = ids(activityRingBuffer.getNewerThan(4L, 10));
+
+        // then
+        assertEquals(Lists.newArrayList(5L, 4L, 3L), all);
+        assertEquals(Lists.newArrayList(5L), newerThanFour);
+        assertEquals(3L, activityRingBuffer.getFirstId());
+        assertEquals(5L, activityRingBuffer.getLastId());
+    }
+
+    @Test
+    public final void shouldKeepActivitiesOrderedWhenAddedOutOfOrder() {
+        // given
+        ActivityRingBuffer activityRingBuffer = new ActivityRingBuffer(3);
+
+        activityRingBuffer.add(activity(1L));
+        activityRingBuffer.add(activity(3L));
+        activityRingBuffer.add(activity(4L));
+
+        // when
+        activityRingBuffer.add(activity(2L));
+        activityRingBuffer.add(activity(4L));
+
+        // then
+        assertEquals(Lists.newArrayList(4L, 3L, 2L), ids(activityRingBuffer.getNewerThan(0L, 10)));
+    }
+
+    @Test
+    public final void shouldLimitReturnedActivities() {
+        // given
+        ActivityRingBuffer activityRingBuffer = new ActivityRingBuffer(10);
+
+        for (long id = 1; id <= 5; id++) {
+            activityRingBuffer.add(activity(id));
+        }
+
+        // when
+        List<Long> ids = ids(activityRingBuffer.getNewerThan(0L, 2));
+
+        // then
+        assertEquals(Lists.newArrayList(5L, 4L), ids);
+    }
+
+    @Test
+    public final void shouldReturnActivitiesCommittedLateBelowCursor() {
+        // given
+        ActivityRingBuffer activityRingBuffer = new ActivityRingBuffer(10);
+
+        activityRingBuffer.add(activity(1L), 100L);
+        activityRingBuffer.add(activity(3L), 100L);
+        activityRingBuffer.add(activity(2L), 200L);
+        activityRingBuffer.add(activity(3L), 300L);
+
+        // when
+        List<Long> ids = ids(activityRingBuffer.getNewerThan(3L, 150L, 10));
+
+        // then
+        assertEquals(Lists.newArrayList(2L), ids);
+        assertEquals(3L, activityRingBuffer.getLastId());
+    }
+
+    private ActivityDto activity(final Long id) {
+        ActivityDto activity = new ActivityDto();
+
+        activity.setId(id);
+
+        return activity;
+    }
+
+    private List<Long> ids(final List<ActivityDto> activities) {
+        return activities.stream().map(ActivityDto::getId).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.logging.profiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HookProfilerTest {
+
+    private HookProfiler hookProfiler;
+
+    @Before
+    public final void init() {
+        hookProfiler = new HookProfiler();
+    }
+
+    @Test
+    public final void shouldComputeLatencyPercentilesPerHook() {
+        // given
+        hookProfiler.enable();
+
+        for (int i = 1; i <= 100; i++) {
+            hookProfiler.record("orders.order", "OrderHooks.onSave", i * 1000000L, 2);
+        }
+
+        hookProfiler.record("basic.product", "ProductHooks.onSave", 1000000L, 1);
+
+        // when
+        List<HookStatisticsDto> statistics = hookProfiler.getReport().getStatistics();
+
+        // then
+        assertEquals(2, statistics.size());
+
+        HookStatisticsDto orderHooks = statistics.get(0);
+
+        assertEquals("orders.order", orderHooks.getModel());
+        assertEquals("OrderHooks.onSave", orderHooks.getHook());
+        assertEquals(100L, orderHooks.getCount());
+        assertEquals(5050.0, orderHooks.getTotalMillis(), 0.0);
+        assertEquals(50.0, orderHooks.getP50Millis(), 0.0);
+        assertEquals(99.0, orderHooks.getP99Millis(), 0.0);
+        assertEquals(100.0, orderHooks.getMaxMillis(), 0.0);
+        assertEquals(200L, orderHooks.getQueries());
+        assertEquals(2.0, orderHooks.getQueriesPerCall(), 0.0);
+    }
+
+    @Test
+    public final void shouldCountQueriesOnlyWhenEnabled() {
+        // given
+        hookProfiler.countQuery();
+
+        hookProfiler.enable();
+        hookProfiler.countQuery();
+        hookProfiler.countQuery();
+
+        // when
+        long queryCount = hookProfiler.getQueryCount();
+
+        // then
+        assertEquals(2L, queryCount);
+    }
+
+    @Test
+    public final void shouldClearStatisticsOnReset() {
+        // given
+        hookProfiler.enable();
+        hookProfiler.record("orders.order", "OrderHooks.onSave", 1000000L, 0);
+
+        // when
+        hookProfiler.reset();
+
+        // then
+        assertTrue(hookProfiler.getReport().getStatistics().isEmpty());
+        assertTrue(hookProfiler.getReport().isEnabled());
+    }
+
+}
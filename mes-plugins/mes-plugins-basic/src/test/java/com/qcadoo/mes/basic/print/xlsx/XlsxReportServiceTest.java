@@ -0,0 +1,146 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.localization.api.TranslationService;
+
+public class XlsxReportServiceTest {
+
+    private static final String L_QUERY = "SELECT number, quantity FROM basic_product";
+
+    private static final int L_ROWS = 1200;
+
+    private static final Locale L_LOCALE = Locale.ENGLISH;
+
+    private XlsxReportService xlsxReportService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TranslationService translationService;
+
+    private final List<XlsxReportColumn> columns = Arrays.asList(XlsxReportColumn.text("number", "basic.product.number"),
+            XlsxReportColumn.number("quantity", "basic.product.quantity"));
+
+    private int rowIndex;
+
+    @Before
+    public void init() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        xlsxReportService = new XlsxReportService();
+
+        ReflectionTestUtils.setField(xlsxReportService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(xlsxReportService, "translationService", translationService);
+
+        given(translationService.translate("basic.product.number", L_LOCALE)).willReturn("Number");
+        given(translationService.translate("basic.product.quantity", L_LOCALE)).willReturn("Quantity");
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        given(statement.executeQuery()).willReturn(resultSet);
+        given(resultSet.next()).willAnswer(invocation -> ++rowIndex <= L_ROWS);
+        given(resultSet.getString("number")).willAnswer(invocation -> "P" + rowIndex);
+        given(resultSet.getBigDecimal("quantity")).willAnswer(invocation -> BigDecimal.valueOf(rowIndex));
+
+        given(jdbcTemplate.execute(eq(L_QUERY), anyMap(), any(PreparedStatementCallback.class))).willAnswer(
+                invocation -> ((PreparedStatementCallback<?>) invocation.getArguments()[2]).doInPreparedStatement(statement));
+    }
+
+    @Test
+    public void shouldWriteRowsFlushedOutOfRowWindow() throws IOException {
+        // given
+        XlsxReportDefinition definition = XlsxReportDefinition.of("Products", L_QUERY, Collections.emptyMap(), columns);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        int rows = xlsxReportService.write(definition, L_LOCALE, outputStream);
+
+        // then
+        Sheet sheet = readSheet(outputStream);
+
+        assertEquals(L_ROWS, rows);
+        assertEquals(L_ROWS, sheet.getLastRowNum());
+        assertEquals("Number", sheet.getRow(0).getCell(0).getStringCellValue());
+        assertEquals("P1", sheet.getRow(1).getCell(0).getStringCellValue());
+        assertEquals("P" + L_ROWS, sheet.getRow(L_ROWS).getCell(0).getStringCellValue());
+        assertEquals(L_ROWS, sheet.getRow(L_ROWS).getCell(1).getNumericCellValue(), 0);
+    }
+
+    @Test
+    public void shouldWriteTitleRowsAboveHeader() throws IOException {
+        // given
+        XlsxReportDefinition definition = XlsxReportDefinition.of("Products", L_QUERY, Collections.emptyMap(), columns)
+                .withTitleRow(ImmutableMap.of("Generated by", "admin"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // when
+        xlsxReportService.write(definition, L_LOCALE, outputStream);
+
+        // then
+        Sheet sheet = readSheet(outputStream);
+
+        assertEquals("Generated by", sheet.getRow(0).getCell(0).getStringCellValue());
+        assertEquals("admin", sheet.getRow(0).getCell(1).getStringCellValue());
+        assertEquals("Number", sheet.getRow(2).getCell(0).getStringCellValue());
+        assertEquals("P1", sheet.getRow(3).getCell(0).getStringCellValue());
+    }
+
+    private Sheet readSheet(final ByteArrayOutputStream outputStream) throws IOException {
+        return new XSSFWorkbook(new ByteArrayInputStream(outputStream.toByteArray())).getSheet("Products");
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class XlsxReportStylesTest {
+
+    private SXSSFWorkbook workbook;
+
+    private XlsxReportStyles styles;
+
+    @Before
+    public void init() {
+        workbook = new SXSSFWorkbook(10);
+        styles = new XlsxReportStyles(workbook);
+    }
+
+    @After
+    public void tearDown() {
+        workbook.dispose();
+    }
+
+    @Test
+    public void shouldCreateEqualStylesOnce() {
+        // given
+        XlsxCellStyle red = XlsxCellStyle.DEFAULT.withFillColor(IndexedColors.RED.getIndex());
+        XlsxCellStyle sameRed = XlsxCellStyle.DEFAULT.withFillColor(IndexedColors.RED.getIndex());
+
+        // when
+        CellStyle first = styles.get(red);
+        CellStyle second = styles.get(sameRed);
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, styles.size());
+    }
+
+    @Test
+    public void shouldCreateDifferentStylesSeparately() {
+        // when
+        CellStyle header = styles.get(XlsxCellStyle.HEADER);
+        CellStyle number = styles.get(XlsxReportColumn.number("quantity", "basic.quantity").getStyle());
+
+        // then
+        assertNotSame(header, number);
+        assertEquals(CellStyle.ALIGN_RIGHT, number.getAlignment());
+        assertEquals(2, styles.size());
+    }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+public class RowProcessorFactoryTest {
+
+    private static final String L_FAMILY_NUMBER = "FAM-1";
+
+    private RowProcessorFactory rowProcessorFactory;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private CellBinderRegistry cellBinderRegistry;
+
+    @Mock
+    private DataDefinition productDD;
+
+    private final Set<String> savedProductNumbers = Sets.newHashSet();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        rowProcessorFactory = new RowProcessorFactory(dataDefinitionService, cellBinderRegistry);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(productDD.create()).willAnswer(invocation -> mockProduct());
+        given(productDD.save(any(Entity.class))).willAnswer(invocation -> {
+            Entity product = (Entity) invocation.getArguments()[0];
+
+            savedProductNumbers.add(product.getStringField(ProductFields.NUMBER));
+
+            return product;
+        });
+
+        CellParser productFamilyCellParser = (cellValue, errorsAccessor, valueConsumer) -> {
+            if (savedProductNumbers.contains(cellValue)) {
+                valueConsumer.accept(cellValue);
+            } else {
+                errorsAccessor.addError("qcadooView.validate.field.error.lookupCodeNotFound");
+            }
+        };
+
+        given(cellBinderRegistry.getCellBinder(0)).willReturn(CellBinder.required(ProductFields.NUMBER));
+        given(cellBinderRegistry.getCellBinder(1)).willReturn(CellBinder.optional(ProductFields.PARENT, productFamilyCellParser));
+    }
+
+    @Test
+    public void shouldBindParentSavedByPrecedingRowOfSameBatch() {
+        // given
+        ImportStatus importStatus = new ImportStatus();
+
+        RowProcessor familyRow = rowProcessorFactory.create(importStatus, 1, DictionarySnapshot.EMPTY);
+        familyRow.append(L_FAMILY_NUMBER);
+        familyRow.append((String) null);
+
+        RowProcessor productRow = rowProcessorFactory.create(importStatus, 2, DictionarySnapshot.EMPTY);
+        productRow.append("PROD-1");
+        productRow.append(L_FAMILY_NUMBER);
+
+        List<RowProcessor> batch = Lists.newArrayList(familyRow, productRow);
+
+        // when
+        batch.forEach(RowProcessor::process);
+
+        // then
+        assertFalse(importStatus.hasErrors());
+        assertEquals(2, importStatus.getRowsProcessed());
+        assertEquals(Sets.newHashSet(L_FAMILY_NUMBER, "PROD-1"), savedProductNumbers);
+    }
+
+    @Test
+    public void shouldReportMissingParent() {
+        // given
+        ImportStatus importStatus = new ImportStatus();
+
+        RowProcessor productRow = rowProcessorFactory.create(importStatus, 1, DictionarySnapshot.EMPTY);
+        productRow.append("PROD-1");
+        productRow.append(L_FAMILY_NUMBER);
+
+        // when
+        productRow.process();
+
+        // then
+        assertEquals(1, importStatus.getErrorsCount());
+    }
+
+    private Entity mockProduct() {
+        Entity product = mock(Entity.class);
+        Map<String, Object> fields = Maps.newHashMap();
+
+        doAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).when(product)
+                .setField(anyString(), any());
+        given(product.getStringField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(product.isValid()).willReturn(true);
+        given(product.getErrors()).willReturn(Collections.emptyMap());
+
+        return product;
+    }
+
+}
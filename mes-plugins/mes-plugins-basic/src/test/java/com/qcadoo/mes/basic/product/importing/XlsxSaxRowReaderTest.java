@@ -0,0 +1,113 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+/*
+ * **************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * **************************************************************************
+ */
+package com.qcadoo.mes.basic.product.importing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class XlsxSaxRowReaderTest {
+
+    private static final String L_SHEET = "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+            + "<sheetData>"
+            + "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c></row>"
+            + "<row r=\"2\"><c r=\"A2\" t=\"s\"><v>1</v></c><c r=\"C2\"><v>12.5</v></c>"
+            + "<c r=\"D2\" t=\"inlineStr\"><is><t> szt </t></is></c><c r=\"E2\"><v>99</v></c></row>"
+            + "<row r=\"4\"><c r=\"B4\" t=\"b\"><v>1</v></c></row>"
+            + "</sheetData></worksheet>";
+
+    private XlsxSaxRowReader xlsxSaxRowReader;
+
+    @Mock
+    private ReadOnlySharedStringsTable sharedStrings;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        xlsxSaxRowReader = new XlsxSaxRowReader(4, Locale.ENGLISH);
+
+        given(sharedStrings.getEntryAt(0)).willReturn("number");
+        given(sharedStrings.getEntryAt(1)).willReturn("PR-1");
+    }
+
+    @Test
+    public final void shouldReadRowsWithBlankCellsAsNulls() throws Exception {
+        // given
+        List<Integer> rowIndexes = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+
+        // when
+        try (InputStream sheet = new ByteArrayInputStream(L_SHEET.getBytes(StandardCharsets.UTF_8))) {
+            xlsxSaxRowReader.read(sheet, xlsxSaxRowReader.new SheetHandler(sharedStrings, null, (rowIndex, cellValues) -> {
+                rowIndexes.add(rowIndex);
+                rows.add(cellValues);
+            }));
+        }
+
+        // then
+        assertEquals(3, rows.size());
+        assertArrayEquals(new Integer[] { 0, 1, 3 }, rowIndexes.toArray());
+        assertArrayEquals(new String[] { "number", null, null, null }, rows.get(0));
+        assertArrayEquals(new String[] { "PR-1", null, "12.5", "szt" }, rows.get(1));
+        assertArrayEquals(new String[] { null, "TRUE", null, null }, rows.get(2));
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsServiceImpl.ShiftHour;
+
+public class ShiftsCalendarTest {
+
+    private static final DateTime DAY = new DateTime(2020, 3, 2, 0, 0, 0, 0);
+
+    private ShiftsCalendar shiftsCalendar;
+
+    @Before
+    public void init() {
+        List<ShiftHour> hours = Lists.newArrayList(hour(DAY.withHourOfDay(6), DAY.withHourOfDay(14)),
+                hour(DAY.withHourOfDay(22), DAY.plusDays(1).withHourOfDay(6)),
+                hour(DAY.plusDays(1).withHourOfDay(22), DAY.plusDays(2).withHourOfDay(6)));
+
+        shiftsCalendar = new ShiftsCalendar(DAY.getMillis(), DAY.plusDays(3).getMillis(), hours);
+    }
+
+    @Test
+    public final void shouldAddWorkingTimeWithinSingleInterval() {
+        // when
+        Date dateTo = shiftsCalendar.addWorkingTime(DAY.withHourOfDay(7).toDate(), 3600L).get();
+
+        // then
+        assertEquals(DAY.withHourOfDay(8).toDate(), dateTo);
+    }
+
+    @Test
+    public final void shouldAddWorkingTimeAcrossIntervals() {
+        // when
+        Date dateTo = shiftsCalendar.addWorkingTime(DAY.withHourOfDay(12).toDate(), 3L * 3600L).get();
+
+        // then
+        assertEquals(DAY.withHourOfDay(23).toDate(), dateTo);
+    }
+
+    @Test
+    public final void shouldStartAtNextIntervalWhenDateIsOutsideOfWorkingTime() {
+        // when
+        Date dateTo = shiftsCalendar.addWorkingTime(DAY.withHourOfDay(15).toDate(), 0L).get();
+
+        // then
+        assertEquals(DAY.withHourOfDay(22).toDate(), dateTo);
+    }
+
+    @Test
+    public final void shouldEndAtIntervalEndWhenWorkingTimeIsExhaustedExactly() {
+        // when
+        Date dateTo = shiftsCalendar.addWorkingTime(DAY.withHourOfDay(6).toDate(), 8L * 3600L).get();
+
+        // then
+        assertEquals(DAY.withHourOfDay(14).toDate(), dateTo);
+    }
+
+    @Test
+    public final void shouldReturnEmptyWhenThereIsNotEnoughWorkingTime() {
+        // when & then
+        assertFalse(shiftsCalendar.addWorkingTime(DAY.withHourOfDay(6).toDate(), 25L * 3600L).isPresent());
+        assertFalse(shiftsCalendar.addWorkingTime(DAY.plusDays(4).toDate(), 0L).isPresent());
+    }
+
+    @Test
+    public final void shouldSubtractWorkingTimeAcrossIntervals() {
+        // when
+        Date dateFrom = shiftsCalendar.subtractWorkingTime(DAY.plusDays(1).withHourOfDay(1).toDate(), 5L * 3600L).get();
+
+        // then
+        assertEquals(DAY.withHourOfDay(12).toDate(), dateFrom);
+    }
+
+    @Test
+    public final void shouldSubtractWorkingTimeFromDateOutsideOfWorkingTime() {
+        // when
+        Date dateFrom = shiftsCalendar.subtractWorkingTime(DAY.plusDays(1).withHourOfDay(12).toDate(), 3600L).get();
+
+        // then
+        assertEquals(DAY.plusDays(1).withHourOfDay(5).toDate(), dateFrom);
+    }
+
+    @Test
+    public final void shouldReturnEmptyWhenThereIsNotEnoughWorkingTimeBefore() {
+        // when & then
+        assertFalse(shiftsCalendar.subtractWorkingTime(DAY.withHourOfDay(8).toDate(), 3L * 3600L).isPresent());
+    }
+
+    private ShiftHour hour(final DateTime from, final DateTime to) {
+        return new ShiftHour(from.toDate(), to.toDate());
+    }
+
+}
@@ -26,15 +26,13 @@ package com.qcadoo.mes.cmmsMachineParts;
 import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
 import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventFields;
 import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventType;
+import com.qcadoo.mes.cmmsMachineParts.notification.MaintenanceEventsCounter;
 import com.qcadoo.mes.cmmsMachineParts.states.constants.MaintenanceEventStateStringValues;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.security.constants.QcadooSecurityConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -47,6 +45,9 @@ public class MaintenanceEventService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private MaintenanceEventsCounter maintenanceEventsCounter;
+
     public boolean existOpenFailrueForObjectFromEvent(final Entity event) {
 
         return !getExistingEventsForEvent(event, MaintenanceEventType.FAILURE.getStringValue()).isEmpty();
@@ -113,25 +114,6 @@ public class MaintenanceEventService {
     }
 
     public boolean existsNewEventsToNotification(Long currentUserId) {
-        Entity user = dataDefinitionService.get(QcadooSecurityConstants.PLUGIN_IDENTIFIER, QcadooSecurityConstants.MODEL_USER)
-                .get(currentUserId);
-        Entity factory = user.getBelongsToField("factory");
-
-       SearchCriteriaBuilder scb = getMaintenanceEventDD()
-                .find()
-                .setProjection(SearchProjections.alias(SearchProjections.rowCount(), "countrows"))
-                .add(SearchRestrictions.eq(MaintenanceEventFields.SOUND_NOTIFICATIONS, true));
-
-        if (factory != null) {
-            scb = scb.add(SearchRestrictions.belongsTo("factory", factory));
-        }
-
-        scb = scb.addOrder(SearchOrders.asc("countrows"));
-
-        Entity entity = scb.setFirstResult(0).setMaxResults(1).uniqueResult();
-        if (entity.getLongField("countrows") > 0) {
-            return true;
-        }
-        return false;
+        return maintenanceEventsCounter.countForUser(currentUserId) > 0;
     }
 }
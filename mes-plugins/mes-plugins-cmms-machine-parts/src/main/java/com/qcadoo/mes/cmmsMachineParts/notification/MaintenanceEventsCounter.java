@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.notification;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps numbers of maintenance events waiting for sound notification grouped by factory, so notification polls are served
+ * from memory. Counts and user factories are kept per tenant. Counts are reloaded with a single query after any event
+ * change and at least every few minutes.
+ */
+@Service
+public class MaintenanceEventsCounter {
+
+    private static final long L_RELOAD_INTERVAL_MILLIS = 5 * 60 * 1000L;
+
+    private static final Long L_NO_FACTORY = 0L;
+
+    private static final String L_COUNT_EVENTS = "SELECT factory_id, COUNT(*) AS events FROM cmmsmachineparts_maintenanceevent "
+            + "WHERE soundnotifications = true GROUP BY factory_id";
+
+    private static final String L_SELECT_USER_FACTORY = "SELECT factory_id FROM qcadoosecurity_user WHERE id = :userId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, TenantCounts> countsByTenant = new ConcurrentHashMap<>();
+
+    public int countForUser(final Long userId) {
+        TenantCounts tenantCounts = getTenantCounts();
+        Map<Long, Integer> currentCounts = getCounts(tenantCounts);
+        Long factoryId = tenantCounts.userFactories.computeIfAbsent(userId, this::loadUserFactory);
+        if (L_NO_FACTORY.equals(factoryId)) {
+            return currentCounts.values().stream().mapToInt(Integer::intValue).sum();
+        }
+        return Optional.ofNullable(currentCounts.get(factoryId)).orElse(0);
+    }
+
+    public void invalidate() {
+        TenantCounts tenantCounts = getTenantCounts();
+        tenantCounts.counts = null;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    tenantCounts.counts = null;
+                }
+            });
+        }
+    }
+
+    private TenantCounts getTenantCounts() {
+        return countsByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new TenantCounts());
+    }
+
+    private Map<Long, Integer> getCounts(final TenantCounts tenantCounts) {
+        Map<Long, Integer> currentCounts = tenantCounts.counts;
+        if (currentCounts == null || System.currentTimeMillis() - tenantCounts.loadedAt > L_RELOAD_INTERVAL_MILLIS) {
+            currentCounts = reload(tenantCounts);
+        }
+        return currentCounts;
+    }
+
+    private Map<Long, Integer> reload(final TenantCounts tenantCounts) {
+        synchronized (tenantCounts) {
+            if (tenantCounts.counts != null && System.currentTimeMillis() - tenantCounts.loadedAt <= L_RELOAD_INTERVAL_MILLIS) {
+                return tenantCounts.counts;
+            }
+            if (System.currentTimeMillis() - tenantCounts.loadedAt > L_RELOAD_INTERVAL_MILLIS) {
+                tenantCounts.userFactories.clear();
+            }
+            Map<Long, Integer> loadedCounts = Maps.newHashMap();
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(L_COUNT_EVENTS, Collections.emptyMap());
+            for (Map<String, Object> row : rows) {
+                loadedCounts.merge(getFactoryId(row.get("factory_id")), ((Number) row.get("events")).intValue(), Integer::sum);
+            }
+            Map<Long, Integer> result = ImmutableMap.copyOf(loadedCounts);
+            tenantCounts.loadedAt = System.currentTimeMillis();
+            tenantCounts.counts = result;
+            return result;
+        }
+    }
+
+    private Long loadUserFactory(final Long userId) {
+        List<Long> factoryIds = jdbcTemplate.queryForList(L_SELECT_USER_FACTORY, Collections.singletonMap("userId", userId),
+                Long.class);
+        return factoryIds.isEmpty() ? L_NO_FACTORY : getFactoryId(factoryIds.get(0));
+    }
+
+    private static Long getFactoryId(final Object value) {
+        return value == null ? L_NO_FACTORY : ((Number) value).longValue();
+    }
+
+    private static final class TenantCounts {
+
+        private final Map<Long, Long> userFactories = new ConcurrentHashMap<>();
+
+        private volatile Map<Long, Integer> counts;
+
+        private volatile long loadedAt;
+
+    }
+
+}
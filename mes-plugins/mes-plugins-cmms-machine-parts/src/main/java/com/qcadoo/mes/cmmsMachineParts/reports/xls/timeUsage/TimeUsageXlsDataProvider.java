@@ -3,21 +3,15 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 import java.util.List;
 import java.util.Map;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.cmmsMachineParts.constants.TimeUsageReportFilterFields;
-import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
 
 @Service
 public class TimeUsageXlsDataProvider {
 
-    @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
-
     private final static String plannedEventQuery = "SELECT staff.surname || ' ' || staff.name AS worker, staff.id AS worker_id, 'planned' AS event_type,\n"
             + "realization.startdate,\n"
             + "event.number,\n"
@@ -60,25 +54,60 @@ public class TimeUsageXlsDataProvider {
             + "LEFT JOIN basic_division division ON event.division_id=division.id\n"
             + "LEFT JOIN basic_factory factory ON event.factory_id=factory.id\n";
 
-    public List<TimeUsageDTO> getUsages(Map<String, Object> filters) {
-        String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new TimeUsageRowMapper());
+    public static final String TYPES_WITHOUT_PARTS = "typesWithoutParts";
+
+    public static final String TYPES_WITHOUT_DESCRIPTION = "typesWithoutDescription";
+
+    public static final String NOT_APPLICABLE = "notApplicable";
+
+    /**
+     * Usages are ordered and grouped by worker and day, durations are rounded to minutes. Sums of a group are given in its
+     * first row only, the one with group_row equal to 1. Parts and description of planned events of types given in
+     * typesWithoutParts and typesWithoutDescription parameters are replaced by the notApplicable parameter.
+     */
+    public String getQuery(final Map<String, Object> parameters) {
+        String usagesQuery = prepareQuery(parameters, plannedEventQuery, maintenanceEventQuery);
+
+        return "SELECT usages.*, ROW_NUMBER() OVER workerday AS group_row,\n"
+                + "CASE WHEN ROW_NUMBER() OVER workerday = 1 THEN SUM(duration) OVER (PARTITION BY worker, startdate) END "
+                + "AS durationsum,\n"
+                + "CASE WHEN ROW_NUMBER() OVER workerday = 1 THEN SUM(registeredtime) OVER (PARTITION BY worker, startdate) END "
+                + "AS registeredtimesum\n"
+                + "FROM (SELECT worker, startdate, number, event_type, type, state, object,\n"
+                + getNotApplicableColumn(parameters, TYPES_WITHOUT_PARTS, "parts") + ",\n"
+                + getNotApplicableColumn(parameters, TYPES_WITHOUT_DESCRIPTION, "description") + ",\n"
+                + "(COALESCE(duration, 0) + 30) / 60 AS duration,\n"
+                + "COALESCE(TRUNC(EXTRACT(EPOCH FROM registeredend - registeredstart + INTERVAL '30 seconds') / 60), 0)::integer "
+                + "AS registeredtime\n"
+                + "FROM (" + usagesQuery + ") AS events) AS usages\n"
+                + "WINDOW workerday AS (PARTITION BY worker, startdate ORDER BY number, event_type)\n"
+                + "ORDER BY worker, startdate, number, event_type";
+    }
+
+    private String getNotApplicableColumn(final Map<String, Object> parameters, final String typesParameter,
+            final String column) {
+        if (!parameters.containsKey(typesParameter)) {
+            return column;
+        }
+
+        return String.format("CASE WHEN event_type = 'planned' AND type IN (:%s) THEN :%s ELSE %s END AS %s", typesParameter,
+                NOT_APPLICABLE, column, column);
     }
 
     private String prepareQuery(Map<String, Object> filters, String plannedEventQueryPart, String maintenanceEventQueryPart) {
         StringBuilder builder = new StringBuilder("SELECT * FROM ( " + plannedEventQueryPart + "UNION ALL "
                 + maintenanceEventQueryPart + " ) AS events");
-        if (!filters.isEmpty()) {
-            List<String> whereFilters = Lists.newLinkedList();
-            if (filters.containsKey(TimeUsageReportFilterFields.FROM_DATE)) {
-                whereFilters.add("startDate >= :fromDate");
-            }
-            if (filters.containsKey(TimeUsageReportFilterFields.TO_DATE)) {
-                whereFilters.add("startDate <= :toDate");
-            }
-            if (filters.containsKey(TimeUsageReportFilterFields.WORKERS)) {
-                whereFilters.add("worker_id in (:workers)");
-            }
+        List<String> whereFilters = Lists.newLinkedList();
+        if (filters.containsKey(TimeUsageReportFilterFields.FROM_DATE)) {
+            whereFilters.add("startDate >= :fromDate");
+        }
+        if (filters.containsKey(TimeUsageReportFilterFields.TO_DATE)) {
+            whereFilters.add("startDate <= :toDate");
+        }
+        if (filters.containsKey(TimeUsageReportFilterFields.WORKERS)) {
+            whereFilters.add("worker_id in (:workers)");
+        }
+        if (!whereFilters.isEmpty()) {
             builder.append(" WHERE ").append(StringUtils.collectionToDelimitedString(whereFilters, " AND "));
         }
         return builder.toString();
@@ -27,31 +27,36 @@ import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.CompanyService;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ParameterFields;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
-import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
 import com.qcadoo.mes.deliveries.DeliveriesService;
-import com.qcadoo.mes.deliveries.constants.CompanyProductFields;
 import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
 import com.qcadoo.mes.deliveries.states.constants.DeliveryState;
 import com.qcadoo.mes.deliveriesMinState.notifications.constants.StaffNotificationFieldsMS;
 import com.qcadoo.mes.deliveriesMinState.notifications.service.MailingService;
+import com.qcadoo.mes.deliveriesMinState.replenishment.ReplenishmentDataProvider;
+import com.qcadoo.mes.deliveriesMinState.replenishment.ReplenishmentPosition;
+import com.qcadoo.mes.deliveriesMinState.replenishment.ReplenishmentReport;
 import com.qcadoo.mes.emailNotifications.constants.EmailNotificationsConstants;
 import com.qcadoo.mes.emailNotifications.constants.StaffNotificationFields;
 import com.qcadoo.mes.materialFlow.MaterialFlowService;
@@ -97,10 +102,13 @@ public class DeliveriesMinStateHelper {
     private MailingService mailingService;
 
     @Autowired
-    private WarehouseMinimalStateHelper warehouseMinimalStateHelper;
+    private UnitConversionService unitConversionService;
 
     @Autowired
-    private UnitConversionService unitConversionService;
+    private ReplenishmentDataProvider replenishmentDataProvider;
+
+    @Autowired
+    private WarehouseMinimalStateHelper warehouseMinimalStateHelper;
 
     private void sendEmailNotifications(final List<String> createdDeliveries) {
         if (!createdDeliveries.isEmpty()) {
@@ -115,7 +123,13 @@ public class DeliveriesMinStateHelper {
 
     }
 
-    private String createDeliveries(final Entity location, final Entity supplier, final List<Entity> warehouseMinimumStates) {
+    /**
+     * Creates draft delivery of given positions, each delivery is saved together with its ordered products in own
+     * transaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public String createDelivery(final Entity location, final Entity supplier, final Collection<ReplenishmentPosition> positions,
+            final Map<Long, Entity> productsById, final Map<Long, BigDecimal> conversionsByProduct) {
         DataDefinition deliveryDataDefinition = deliveriesService.getDeliveryDD();
         Entity delivery = deliveryDataDefinition.create();
 
@@ -127,9 +141,13 @@ public class DeliveriesMinStateHelper {
         delivery.setField(DeliveryFields.CURRENCY, getNewDeliveryCurrency());
         delivery.setField(DeliveryFields.DELIVERY_ADDRESS, deliveriesService.getDeliveryAddressDefaultValue());
         delivery.setField(DeliveryFields.EXTERNAL_SYNCHRONIZED, true);
+        delivery.setField(DeliveryFields.ORDERED_PRODUCTS, createOrderedProducts(positions, productsById, conversionsByProduct));
         delivery = deliveryDataDefinition.save(delivery);
 
-        setDeliveryProducts(delivery, warehouseMinimumStates);
+        if (!delivery.isValid()) {
+            throw new IllegalStateException(String.format("Delivery %s for supplier %s is not valid", generatedNumber,
+                    supplier.getId()));
+        }
 
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("Delivery created with number: %s", delivery.getField(DeliveryFields.NUMBER)));
@@ -137,26 +155,47 @@ public class DeliveriesMinStateHelper {
         return generatedNumber;
     }
 
-    private List<Entity> setDeliveryProducts(final Entity delivery, final List<Entity> warehouseMinimumStates) {
-        List<Entity> products = Lists.newArrayList();
-
-        for (Entity minimumState : warehouseMinimumStates) {
-            Entity deliveredProduct = deliveriesService.getOrderedProductDD().create();
-            Entity product = minimumState.getBelongsToField("product");
-            BigDecimal orderedQuantity = BigDecimalUtils.convertNullToZero(minimumState.getField("optimalOrderQuantity"));
-            BigDecimal conversion = getConversion(product);
-
-            deliveredProduct.setField(OrderedProductFields.DELIVERY, delivery);
-            deliveredProduct.setField(OrderedProductFields.PRODUCT, product);
-            deliveredProduct.setField(OrderedProductFields.ORDERED_QUANTITY, orderedQuantity);
-            deliveredProduct.setField(OrderedProductFields.PRICE_PER_UNIT,
-                    product.getDecimalField(ProductFieldsCNFP.LAST_PURCHASE_COST));
-            deliveredProduct.setField(OrderedProductFields.CONVERSION, conversion);
-            deliveredProduct.setField(OrderedProductFields.ADDITIONAL_QUANTITY,
+    private List<Entity> createOrderedProducts(final Collection<ReplenishmentPosition> positions,
+            final Map<Long, Entity> productsById, final Map<Long, BigDecimal> conversionsByProduct) {
+        List<Entity> orderedProducts = Lists.newArrayList();
+
+        for (ReplenishmentPosition position : positions) {
+            Entity orderedProduct = deliveriesService.getOrderedProductDD().create();
+            BigDecimal orderedQuantity = BigDecimalUtils.convertNullToZero(position.getOrderedQuantity());
+            BigDecimal conversion = conversionsByProduct.get(position.getProductId());
+
+            orderedProduct.setField(OrderedProductFields.PRODUCT, productsById.get(position.getProductId()));
+            orderedProduct.setField(OrderedProductFields.ORDERED_QUANTITY, orderedQuantity);
+            orderedProduct.setField(OrderedProductFields.PRICE_PER_UNIT, position.getLastPurchaseCost());
+            orderedProduct.setField(OrderedProductFields.CONVERSION, conversion);
+            orderedProduct.setField(OrderedProductFields.ADDITIONAL_QUANTITY,
                     orderedQuantity.multiply(conversion, numberService.getMathContext()));
-            products.add(deliveriesService.getOrderedProductDD().save(deliveredProduct));
+            orderedProducts.add(orderedProduct);
         }
-        return products;
+        return orderedProducts;
+    }
+
+    /**
+     * Conversions are the same for all products with equal units unless product has its own conversions, so they are
+     * computed once per product with own conversions and once per pair of units for the rest.
+     */
+    private Map<Long, BigDecimal> getConversions(final Collection<Entity> products) {
+        Set<Long> productsWithOwnConversions = replenishmentDataProvider.findProductsWithOwnConversions(products.stream()
+                .map(Entity::getId).collect(Collectors.toList()));
+        Map<String, BigDecimal> conversionsByUnits = Maps.newHashMap();
+        Map<Long, BigDecimal> conversionsByProduct = Maps.newHashMap();
+
+        for (Entity product : products) {
+            if (productsWithOwnConversions.contains(product.getId())) {
+                conversionsByProduct.put(product.getId(), getConversion(product));
+            } else {
+                String units = product.getStringField(ProductFields.UNIT) + "/"
+                        + product.getStringField(ProductFields.ADDITIONAL_UNIT);
+                conversionsByProduct.put(product.getId(),
+                        conversionsByUnits.computeIfAbsent(units, key -> getConversion(product)));
+            }
+        }
+        return conversionsByProduct;
     }
 
     private BigDecimal getConversion(Entity product) {
@@ -188,77 +227,81 @@ public class DeliveriesMinStateHelper {
         return number;
     }
 
-    public Map<Long, Multimap<Long, Entity>> createDeliveriesFromMinimalState() {
-        Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier = Maps.newHashMap();
+    public ReplenishmentReport createDeliveriesFromMinimalState() {
+        ReplenishmentReport report = planDeliveriesFromMinimalState(false);
 
-        List<Entity> warehouses = getWarehousesFromMinimalState();
-        if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("CreateDeliveriesFromMinimalState invoked with: %d warehouses.", warehouses.size()));
-        }
-        List<String> createdDeliveries = Lists.newArrayList();
-        warehouses.forEach(w -> fillPositions(w, minimalStatePerWarehousesAndSupplier));
-        minimalStatePerWarehousesAndSupplier.keySet().forEach(
-                p -> createdDeliveries.addAll(createDeliveries(p, minimalStatePerWarehousesAndSupplier.get(p))));
+        long startTime = System.currentTimeMillis();
+        createDeliveries(report);
+        report.setCreationTime(System.currentTimeMillis() - startTime);
 
-        sendEmailNotifications(createdDeliveries);
-        return minimalStatePerWarehousesAndSupplier;
-    }
+        sendEmailNotifications(report.getCreatedDeliveries());
 
-    private List<String> createDeliveries(Long warehouse, Multimap<Long, Entity> multiMap) {
-        List<String> deliveriesNumbers = Lists.newArrayList();
-        multiMap.keySet().forEach(p -> deliveriesNumbers.add(createDelivery(warehouse, p, multiMap.get(p))));
-        return deliveriesNumbers;
+        LOG.info(String.format("CreateDeliveriesFromMinimalState finished: %s", report));
+        return report;
     }
 
-    private String createDelivery(Long warehouseId, Long supplierId, Collection<Entity> minimalStates) {
-        Entity warehouse = flowService.getLocationById(warehouseId);
-        Entity supplier = companyService.getCompany(supplierId);
-        return createDeliveries(warehouse, supplier, Lists.newArrayList(minimalStates));
+    /**
+     * Computes deliveries which would be created for minimal states, without creating them.
+     */
+    public ReplenishmentReport previewDeliveriesFromMinimalState() {
+        ReplenishmentReport report = planDeliveriesFromMinimalState(true);
+
+        LOG.info(String.format("PreviewDeliveriesFromMinimalState finished: %s", report));
+        return report;
     }
 
-    private void fillPositions(final Entity warehouse,
-            final Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier) {
-
-        List<Entity> minmialStates = getMinimalStateGreaterThanZeroForWarehouse(warehouse);
-        Map<Long, Entity> minmialStatesByProduct = minmialStates.stream().collect(
-                Collectors.toMap(res -> res.getBelongsToField("product").getId(), (res) -> res));
-        List<Entity> stocks = getWarehouseStockWithTooSmallMinState(warehouse,
-                minmialStates.stream().map(res -> res.getBelongsToField("product")).collect(Collectors.toList()));
-        Map<Long, Entity> stocksByProduct = stocks.stream()
-                .collect(Collectors.toMap(res -> res.getIntegerField("product_id").longValue(), (res) -> res));
-        Multimap<Long, Entity> positions = ArrayListMultimap.create();
-        minmialStatesByProduct.keySet().forEach(
-                productId -> createPositions(positions, warehouse.getId(), productId, minmialStatesByProduct, stocksByProduct));
-        minimalStatePerWarehousesAndSupplier.put(warehouse.getId(), positions);
+    private ReplenishmentReport planDeliveriesFromMinimalState(final boolean dryRun) {
+        long startTime = System.currentTimeMillis();
+        List<ReplenishmentPosition> shortfalls = replenishmentDataProvider
+                .findMinimalStatePositions()
+                .stream()
+                .filter(position -> warehouseMinimalStateHelper.checkIfLowerThanMinimum(position.getProductId(),
+                        position.getQuantity(), position.getMinimumState())).collect(Collectors.toList());
+        ReplenishmentReport report = new ReplenishmentReport(shortfalls, dryRun);
+        report.setPlanningTime(System.currentTimeMillis() - startTime);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("CreateDeliveriesFromMinimalState invoked with: %d warehouses.",
+                    report.getPositionsByWarehouseAndSupplier().size()));
+        }
+        return report;
     }
 
-    private void createPositions(Multimap<Long, Entity> positions, Long warehouseId, Long productId,
-            Map<Long, Entity> minmialStatesByProduct, Map<Long, Entity> stocksByProduct) {
-
-        Entity stock = stocksByProduct.get(productId);
-        Entity minimalState = minmialStatesByProduct.get(productId);
-        if (stock == null) {
-            deliveriesService.getDefaultSupplier(productId).ifPresent(supplier -> {
-                BigDecimal ordered = warehouseMinimalStateHelper.getOrderedQuantityForProductAndLocation(warehouseId, productId);
-                if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, ordered,
-                        minimalState.getDecimalField("minimumState"))) {
-                    positions.put(supplier.getBelongsToField(CompanyProductFields.COMPANY).getId(), minimalState);
+    private void createDeliveries(final ReplenishmentReport report) {
+        Map<Long, Multimap<Long, ReplenishmentPosition>> positionsByWarehouseAndSupplier = report
+                .getPositionsByWarehouseAndSupplier();
+        if (positionsByWarehouseAndSupplier.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Entity> productsById = getProducts(positionsByWarehouseAndSupplier.values().stream()
+                .flatMap(positions -> positions.values().stream()).map(ReplenishmentPosition::getProductId)
+                .collect(Collectors.toSet()));
+        Map<Long, BigDecimal> conversionsByProduct = getConversions(productsById.values());
+
+        for (Map.Entry<Long, Multimap<Long, ReplenishmentPosition>> warehouseEntry : positionsByWarehouseAndSupplier.entrySet()) {
+            Entity warehouse = flowService.getLocationById(warehouseEntry.getKey());
+
+            for (Map.Entry<Long, Collection<ReplenishmentPosition>> supplierEntry : warehouseEntry.getValue().asMap()
+                    .entrySet()) {
+                Entity supplier = companyService.getCompany(supplierEntry.getKey());
+
+                try {
+                    report.addCreatedDelivery(createDelivery(warehouse, supplier, supplierEntry.getValue(), productsById,
+                            conversionsByProduct));
+                } catch (RuntimeException e) {
+                    LOG.warn(String.format("Delivery for warehouse %d and supplier %d not created", warehouseEntry.getKey(),
+                            supplierEntry.getKey()), e);
+                    report.addFailedDelivery();
                 }
-            });
-        } else {
-            BigDecimal statePlusOrder = BigDecimalUtils.convertNullToZero(stock.getDecimalField("orderedQuantity"))
-                    .add(BigDecimalUtils.convertNullToZero(stock.getDecimalField("quantity")), numberService.getMathContext());
-            if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, statePlusOrder,
-                    stock.getDecimalField("minimumState"))) {
-                deliveriesService.getDefaultSupplier(productId).ifPresent(supplier -> positions
-                        .put(supplier.getBelongsToField(CompanyProductFields.COMPANY).getId(), minimalState));
             }
         }
     }
 
-    private List<Entity> getWarehousesFromMinimalState() {
-        String query = "select distinct state.location from #warehouseMinimalState_warehouseMinimumState state";
-        return getWarehouseMinimumStateDD().find(query).list().getEntities();
+    private Map<Long, Entity> getProducts(final Set<Long> productIds) {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).find()
+                .add(SearchRestrictions.in("id", productIds)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, Function.identity()));
     }
 
     public List<Entity> getMinimalStateGreaterThanZeroForWarehouse(final Entity warehouse) {
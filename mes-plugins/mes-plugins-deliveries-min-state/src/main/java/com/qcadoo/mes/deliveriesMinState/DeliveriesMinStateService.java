@@ -28,6 +28,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.deliveriesMinState.constants.DeliveriesMinStateConstants;
+import com.qcadoo.mes.deliveriesMinState.replenishment.ReplenishmentReport;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.tenant.api.MultiTenantCallback;
 import com.qcadoo.tenant.api.MultiTenantService;
@@ -66,4 +67,11 @@ public class DeliveriesMinStateService {
 
     }
 
+    public void previewDeliveriesMinState(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
+        ReplenishmentReport report = deliveriesMinStateHelper.previewDeliveriesFromMinimalState();
+        componentState.addMessage("deliveriesMinState.previewDeliveries.info", ComponentState.MessageType.INFO, false,
+                String.valueOf(report.getNumberOfDeliveries()), String.valueOf(report.getNumberOfPositions()),
+                String.valueOf(report.getPositionsByWarehouseAndSupplier().size()));
+    }
+
 }
@@ -0,0 +1,126 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.replenishment;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.ProductFamilyElementType;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
+
+@Service
+public class ReplenishmentDataProvider {
+
+    private static final String L_MINIMAL_STATES_QUERY = "WITH RECURSIVE stocks AS ( "
+            + "SELECT resource.product_id, resource.location_id, SUM(resource.quantity) AS quantity "
+            + "FROM materialflowresources_resource resource GROUP BY resource.product_id, resource.location_id "
+            + "), ordered_quantities AS ( "
+            + "SELECT orderedproduct.product_id, delivery.location_id, SUM(orderedproduct.orderedquantity) AS quantity "
+            + "FROM deliveries_orderedproduct orderedproduct "
+            + "JOIN deliveries_delivery delivery ON delivery.id = orderedproduct.delivery_id "
+            + "WHERE delivery.active = true AND delivery.state IN (:deliveryStates) "
+            + "GROUP BY orderedproduct.product_id, delivery.location_id "
+            + "), minimal_states AS ( "
+            + "SELECT state.location_id, state.product_id, state.minimumstate, state.optimalorderquantity, "
+            + "COALESCE(stock.quantity, 0) + COALESCE(ordered.quantity, 0) AS quantity "
+            + "FROM warehouseminimalstate_warehouseminimumstate state "
+            + "LEFT JOIN stocks stock ON stock.product_id = state.product_id AND stock.location_id = state.location_id "
+            + "LEFT JOIN ordered_quantities ordered ON ordered.product_id = state.product_id "
+            + "AND ordered.location_id = state.location_id "
+            + "WHERE state.minimumstate > 0 "
+            + "), families AS ( "
+            + "SELECT product.id AS product_id, product.parent_id AS family_id, 1 AS depth FROM basic_product product "
+            + "WHERE product.parent_id IS NOT NULL AND product.id IN (SELECT product_id FROM minimal_states) "
+            + "UNION ALL "
+            + "SELECT family.product_id, parent.parent_id, family.depth + 1 FROM families family "
+            + "JOIN basic_product parent ON parent.id = family.family_id WHERE parent.parent_id IS NOT NULL "
+            + "), family_suppliers AS ( "
+            + "SELECT DISTINCT ON (family.product_id) family.product_id, companyproductsfamily.company_id "
+            + "FROM families family JOIN deliveries_companyproductsfamily companyproductsfamily "
+            + "ON companyproductsfamily.product_id = family.family_id AND companyproductsfamily.isdefault = true "
+            + "ORDER BY family.product_id, family.depth "
+            + "), product_suppliers AS ( "
+            + "SELECT DISTINCT ON (companyproduct.product_id) companyproduct.product_id, companyproduct.company_id "
+            + "FROM deliveries_companyproduct companyproduct "
+            + "WHERE companyproduct.isdefault = true AND companyproduct.product_id IN (SELECT product_id FROM minimal_states) "
+            + "ORDER BY companyproduct.product_id "
+            + ") "
+            + "SELECT state.location_id AS warehouseId, state.product_id AS productId, "
+            + "COALESCE(family_supplier.company_id, product_supplier.company_id) AS supplierId, "
+            + "state.quantity AS quantity, state.minimumstate AS minimumState, "
+            + "COALESCE(state.optimalorderquantity, 0) AS orderedQuantity, product.unit AS unit, "
+            + "product.additionalunit AS additionalUnit, product.lastpurchasecost AS lastPurchaseCost "
+            + "FROM minimal_states state JOIN basic_product product ON product.id = state.product_id "
+            + "LEFT JOIN family_suppliers family_supplier ON family_supplier.product_id = state.product_id "
+            + "LEFT JOIN product_suppliers product_supplier ON product_supplier.product_id = state.product_id "
+            + "WHERE product.entitytype = :entityType "
+            + "AND COALESCE(family_supplier.company_id, product_supplier.company_id) IS NOT NULL "
+            + "ORDER BY state.location_id, supplierId, product.number";
+
+    private static final String L_PRODUCTS_WITH_OWN_CONVERSIONS_QUERY = "SELECT DISTINCT unitconversionitem.product_id "
+            + "FROM qcadoomodel_unitconversionitem unitconversionitem WHERE unitconversionitem.product_id IN (:productIds)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Finds (warehouse, product) pairs with minimum state, their stock plus ordered quantity and default supplier of the
+     * product, with one query. Family default supplier wins over product's one, products without any default supplier are
+     * skipped. Whether a position is lower than minimum is left to
+     * {@link com.qcadoo.mes.warehouseMinimalState.WarehouseMinimalStateHelper#checkIfLowerThanMinimum}, which other plugins
+     * extend, e.g. with planned requirements.
+     */
+    public List<ReplenishmentPosition> findMinimalStatePositions() {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("deliveryStates", Lists.newArrayList(DeliveryStateStringValues.DRAFT, DeliveryStateStringValues.PREPARED,
+                DeliveryStateStringValues.DURING_CORRECTION, DeliveryStateStringValues.APPROVED));
+        params.put("entityType", ProductFamilyElementType.PARTICULAR_PRODUCT.getStringValue());
+
+        return jdbcTemplate.query(L_MINIMAL_STATES_QUERY, params,
+                (rs, rowNum) -> new ReplenishmentPosition(rs.getLong("warehouseId"), rs.getLong("productId"),
+                        rs.getLong("supplierId"), rs.getBigDecimal("quantity"), rs.getBigDecimal("minimumState"),
+                        rs.getBigDecimal("orderedQuantity"), rs.getString("unit"),
+                        rs.getString("additionalUnit"), rs.getBigDecimal("lastPurchaseCost")));
+    }
+
+    public Set<Long> findProductsWithOwnConversions(final Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Sets.newHashSet();
+        }
+
+        return Sets.newHashSet(jdbcTemplate.queryForList(L_PRODUCTS_WITH_OWN_CONVERSIONS_QUERY,
+                Collections.singletonMap("productIds", productIds), Long.class));
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.replenishment;
+
+import java.math.BigDecimal;
+
+public class ReplenishmentPosition {
+
+    private final Long warehouseId;
+
+    private final Long productId;
+
+    private final Long supplierId;
+
+    private final BigDecimal quantity;
+
+    private final BigDecimal minimumState;
+
+    private final BigDecimal orderedQuantity;
+
+    private final String unit;
+
+    private final String additionalUnit;
+
+    private final BigDecimal lastPurchaseCost;
+
+    public ReplenishmentPosition(final Long warehouseId, final Long productId, final Long supplierId, final BigDecimal quantity,
+            final BigDecimal minimumState, final BigDecimal orderedQuantity, final String unit, final String additionalUnit,
+            final BigDecimal lastPurchaseCost) {
+        this.warehouseId = warehouseId;
+        this.productId = productId;
+        this.supplierId = supplierId;
+        this.quantity = quantity;
+        this.minimumState = minimumState;
+        this.orderedQuantity = orderedQuantity;
+        this.unit = unit;
+        this.additionalUnit = additionalUnit;
+        this.lastPurchaseCost = lastPurchaseCost;
+    }
+
+    public Long getWarehouseId() {
+        return warehouseId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public Long getSupplierId() {
+        return supplierId;
+    }
+
+    /**
+     * Stock plus quantity ordered in open deliveries.
+     */
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getMinimumState() {
+        return minimumState;
+    }
+
+    public BigDecimal getOrderedQuantity() {
+        return orderedQuantity;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public String getAdditionalUnit() {
+        return additionalUnit;
+    }
+
+    public BigDecimal getLastPurchaseCost() {
+        return lastPurchaseCost;
+    }
+
+}
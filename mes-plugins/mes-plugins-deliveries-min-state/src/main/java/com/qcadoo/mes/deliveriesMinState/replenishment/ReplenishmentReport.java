@@ -0,0 +1,114 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.replenishment;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+public class ReplenishmentReport {
+
+    private final Map<Long, Multimap<Long, ReplenishmentPosition>> positionsByWarehouseAndSupplier = Maps.newLinkedHashMap();
+
+    private final List<String> createdDeliveries = Lists.newArrayList();
+
+    private final boolean dryRun;
+
+    private int failedDeliveries;
+
+    private long planningTime;
+
+    private long creationTime;
+
+    public ReplenishmentReport(final Collection<ReplenishmentPosition> positions, final boolean dryRun) {
+        for (ReplenishmentPosition position : positions) {
+            positionsByWarehouseAndSupplier.computeIfAbsent(position.getWarehouseId(), warehouseId -> ArrayListMultimap.create())
+                    .put(position.getSupplierId(), position);
+        }
+
+        this.dryRun = dryRun;
+    }
+
+    public Map<Long, Multimap<Long, ReplenishmentPosition>> getPositionsByWarehouseAndSupplier() {
+        return positionsByWarehouseAndSupplier;
+    }
+
+    public int getNumberOfDeliveries() {
+        return positionsByWarehouseAndSupplier.values().stream().mapToInt(positions -> positions.keySet().size()).sum();
+    }
+
+    public int getNumberOfPositions() {
+        return positionsByWarehouseAndSupplier.values().stream().mapToInt(Multimap::size).sum();
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public List<String> getCreatedDeliveries() {
+        return createdDeliveries;
+    }
+
+    public void addCreatedDelivery(final String number) {
+        createdDeliveries.add(number);
+    }
+
+    public int getFailedDeliveries() {
+        return failedDeliveries;
+    }
+
+    public void addFailedDelivery() {
+        failedDeliveries++;
+    }
+
+    public long getPlanningTime() {
+        return planningTime;
+    }
+
+    public void setPlanningTime(final long planningTime) {
+        this.planningTime = planningTime;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(final long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplenishmentReport{" + "dryRun=" + dryRun + ", warehouses=" + positionsByWarehouseAndSupplier.size()
+                + ", deliveries=" + getNumberOfDeliveries() + ", positions=" + getNumberOfPositions() + ", created="
+                + createdDeliveries.size() + ", failed=" + failedDeliveries + ", planningTime=" + planningTime + "ms"
+                + ", creationTime=" + creationTime + "ms" + '}';
+    }
+
+}
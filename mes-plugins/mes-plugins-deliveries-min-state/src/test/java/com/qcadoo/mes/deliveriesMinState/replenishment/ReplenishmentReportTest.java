@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.replenishment;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ReplenishmentReportTest {
+
+    @Test
+    public void shouldGroupPositionsByWarehouseAndSupplier() {
+        // given
+        ReplenishmentPosition first = position(1L, 10L, 100L);
+        ReplenishmentPosition second = position(1L, 11L, 100L);
+        ReplenishmentPosition third = position(1L, 12L, 101L);
+        ReplenishmentPosition fourth = position(2L, 10L, 100L);
+
+        // when
+        ReplenishmentReport report = new ReplenishmentReport(Lists.newArrayList(first, second, third, fourth), true);
+
+        // then
+        assertEquals(2, report.getPositionsByWarehouseAndSupplier().size());
+        assertEquals(3, report.getNumberOfDeliveries());
+        assertEquals(4, report.getNumberOfPositions());
+        assertEquals(Lists.newArrayList(first, second), report.getPositionsByWarehouseAndSupplier().get(1L).get(100L));
+    }
+
+    @Test
+    public void shouldReportNothingWithoutShortfalls() {
+        // when
+        ReplenishmentReport report = new ReplenishmentReport(Lists.newArrayList(), false);
+
+        // then
+        assertEquals(0, report.getNumberOfDeliveries());
+        assertEquals(0, report.getNumberOfPositions());
+    }
+
+    private ReplenishmentPosition position(final Long warehouseId, final Long productId, final Long supplierId) {
+        return new ReplenishmentPosition(warehouseId, productId, supplierId, BigDecimal.ONE, BigDecimal.TEN, BigDecimal.TEN,
+                "szt.", null, BigDecimal.ONE);
+    }
+
+}
@@ -45,4 +45,10 @@ public interface LineChangeoverNormsForOrdersService {
 
     Entity getPreviousOrderFromDB(final Entity order);
 
+    /**
+     * Returns durations in seconds of changeovers between each two consecutive orders of given sequence, matched with technology
+     * prototypes of both orders and production line of the latter one.
+     */
+    List<Integer> getChangeoverDurations(final List<Entity> orders);
+
 }
@@ -32,8 +32,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.localization.api.utils.DateUtils;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.states.constants.OrderState;
@@ -68,6 +70,9 @@ public class LineChangeoverNormsForOrdersServiceImpl implements LineChangeoverNo
     @Autowired
     private TranslationService translationService;
 
+    @Autowired
+    private ChangeoverNormsService changeoverNormsService;
+
     @Override
     public void fillOrderForm(final ViewDefinitionState view, final List<String> orderFields) {
         LookupComponent orderLookup = (LookupComponent) view.getComponentByReference(orderFields.get(0));
@@ -224,4 +229,21 @@ public class LineChangeoverNormsForOrdersServiceImpl implements LineChangeoverNo
                 .addOrder(SearchOrders.desc(OrderFields.FINISH_DATE)).setMaxResults(1).uniqueResult();
     }
 
+    @Override
+    public List<Integer> getChangeoverDurations(final List<Entity> orders) {
+        List<Integer> durations = Lists.newArrayList();
+
+        for (int index = 1; index < orders.size(); index++) {
+            Entity previousOrder = orders.get(index - 1);
+            Entity order = orders.get(index);
+
+            durations.add(changeoverNormsService.getChangeoverDuration(
+                    previousOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE),
+                    order.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE),
+                    order.getBelongsToField(OrderFields.PRODUCTION_LINE)));
+        }
+
+        return durations;
+    }
+
 }
@@ -0,0 +1,283 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps all line changeover norms of each tenant in memory, keyed by (from technology or group, to technology or group, production line).
+ * Matching follows the same precedence as the database search: norms for technologies before norms for technology groups,
+ * norms for the given production line before norms without line, newest norm wins.
+ */
+@Service
+public class ChangeoverNormsMatrix {
+
+    private static final long L_RELOAD_INTERVAL_MILLIS = 5 * 60 * 1000L;
+
+    private static final String L_SELECT_CHANGEOVER_NORMS = "SELECT id, changeovertype, fromtechnology_id, totechnology_id, "
+            + "fromtechnologygroup_id, totechnologygroup_id, productionline_id, duration FROM linechangeovernorms_linechangeovernorms";
+
+    private static final Comparator<ChangeoverNorm> L_PRECEDENCE = Comparator
+            .comparing((ChangeoverNorm changeoverNorm) -> changeoverNorm.changeoverType)
+            .thenComparing(changeoverNorm -> Objects.isNull(changeoverNorm.productionLineId))
+            .thenComparing(Comparator.comparing((ChangeoverNorm changeoverNorm) -> changeoverNorm.id).reversed());
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, TenantChangeoverNorms> changeoverNormsByTenant = new ConcurrentHashMap<>();
+
+    public Long findBestMatchingId(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId) {
+        ChangeoverNorm changeoverNorm = findBestMatching(fromTechnologyId, fromTechnologyGroupId, toTechnologyId,
+                toTechnologyGroupId, productionLineId);
+
+        return Objects.isNull(changeoverNorm) ? null : changeoverNorm.id;
+    }
+
+    public Integer findDuration(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId) {
+        ChangeoverNorm changeoverNorm = findBestMatching(fromTechnologyId, fromTechnologyGroupId, toTechnologyId,
+                toTechnologyGroupId, productionLineId);
+
+        return Objects.isNull(changeoverNorm) ? null : changeoverNorm.duration;
+    }
+
+    public void invalidate() {
+        TenantChangeoverNorms tenantChangeoverNorms = getTenantChangeoverNorms();
+
+        tenantChangeoverNorms.changeoverNorms = null;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    tenantChangeoverNorms.changeoverNorms = null;
+                }
+            });
+        }
+    }
+
+    private ChangeoverNorm findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId,
+            final Long toTechnologyId, final Long toTechnologyGroupId, final Long productionLineId) {
+        Map<Key, ChangeoverNorm> currentChangeoverNorms = getChangeoverNorms();
+
+        List<ChangeoverNorm> matchingChangeoverNorms = Lists.newArrayList();
+
+        if (Objects.nonNull(fromTechnologyId) && Objects.nonNull(toTechnologyId)) {
+            addIfPresent(matchingChangeoverNorms, currentChangeoverNorms,
+                    Key.forTechnologies(fromTechnologyId, toTechnologyId, productionLineId));
+            addIfPresent(matchingChangeoverNorms, currentChangeoverNorms,
+                    Key.forTechnologies(fromTechnologyId, toTechnologyId, null));
+        }
+
+        if (Objects.nonNull(fromTechnologyGroupId) && Objects.nonNull(toTechnologyGroupId)) {
+            addIfPresent(matchingChangeoverNorms, currentChangeoverNorms,
+                    Key.forTechnologyGroups(fromTechnologyGroupId, toTechnologyGroupId, productionLineId));
+            addIfPresent(matchingChangeoverNorms, currentChangeoverNorms,
+                    Key.forTechnologyGroups(fromTechnologyGroupId, toTechnologyGroupId, null));
+        }
+
+        return matchingChangeoverNorms.stream().min(L_PRECEDENCE).orElse(null);
+    }
+
+    private void addIfPresent(final List<ChangeoverNorm> matchingChangeoverNorms, final Map<Key, ChangeoverNorm> changeoverNorms,
+            final Key key) {
+        ChangeoverNorm changeoverNorm = changeoverNorms.get(key);
+
+        if (Objects.nonNull(changeoverNorm)) {
+            matchingChangeoverNorms.add(changeoverNorm);
+        }
+    }
+
+    private TenantChangeoverNorms getTenantChangeoverNorms() {
+        return changeoverNormsByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(),
+                tenantId -> new TenantChangeoverNorms());
+    }
+
+    private Map<Key, ChangeoverNorm> getChangeoverNorms() {
+        TenantChangeoverNorms tenantChangeoverNorms = getTenantChangeoverNorms();
+        Map<Key, ChangeoverNorm> currentChangeoverNorms = tenantChangeoverNorms.changeoverNorms;
+
+        if (currentChangeoverNorms == null
+                || System.currentTimeMillis() - tenantChangeoverNorms.loadedAt > L_RELOAD_INTERVAL_MILLIS) {
+            synchronized (tenantChangeoverNorms) {
+                currentChangeoverNorms = reload(tenantChangeoverNorms);
+            }
+        }
+
+        return currentChangeoverNorms;
+    }
+
+    private Map<Key, ChangeoverNorm> reload(final TenantChangeoverNorms tenantChangeoverNorms) {
+        if (tenantChangeoverNorms.changeoverNorms != null
+                && System.currentTimeMillis() - tenantChangeoverNorms.loadedAt <= L_RELOAD_INTERVAL_MILLIS) {
+            return tenantChangeoverNorms.changeoverNorms;
+        }
+
+        List<ChangeoverNorm> loadedChangeoverNorms = jdbcTemplate.query(L_SELECT_CHANGEOVER_NORMS, Collections.emptyMap(),
+                (rs, rowNum) -> new ChangeoverNorm(rs.getLong("id"), rs.getString("changeovertype"),
+                        getLong(rs.getObject("fromtechnology_id")), getLong(rs.getObject("totechnology_id")),
+                        getLong(rs.getObject("fromtechnologygroup_id")), getLong(rs.getObject("totechnologygroup_id")),
+                        getLong(rs.getObject("productionline_id")), rs.getObject("duration", Integer.class)));
+
+        Map<Key, ChangeoverNorm> matrix = Maps.newHashMap();
+
+        for (ChangeoverNorm changeoverNorm : loadedChangeoverNorms) {
+            if (Objects.nonNull(changeoverNorm.fromTechnologyId) && Objects.nonNull(changeoverNorm.toTechnologyId)) {
+                putIfPrecedes(matrix, Key.forTechnologies(changeoverNorm.fromTechnologyId, changeoverNorm.toTechnologyId,
+                        changeoverNorm.productionLineId), changeoverNorm);
+            }
+
+            if (Objects.nonNull(changeoverNorm.fromTechnologyGroupId) && Objects.nonNull(changeoverNorm.toTechnologyGroupId)) {
+                putIfPrecedes(matrix, Key.forTechnologyGroups(changeoverNorm.fromTechnologyGroupId,
+                        changeoverNorm.toTechnologyGroupId, changeoverNorm.productionLineId), changeoverNorm);
+            }
+        }
+
+        Map<Key, ChangeoverNorm> changeoverNorms = ImmutableMap.copyOf(matrix);
+
+        tenantChangeoverNorms.loadedAt = System.currentTimeMillis();
+        tenantChangeoverNorms.changeoverNorms = changeoverNorms;
+
+        return changeoverNorms;
+    }
+
+    private void putIfPrecedes(final Map<Key, ChangeoverNorm> matrix, final Key key, final ChangeoverNorm changeoverNorm) {
+        matrix.merge(key, changeoverNorm, (current, candidate) -> L_PRECEDENCE.compare(candidate, current) < 0 ? candidate
+                : current);
+    }
+
+    private static Long getLong(final Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private static final class TenantChangeoverNorms {
+
+        private volatile Map<Key, ChangeoverNorm> changeoverNorms;
+
+        private volatile long loadedAt;
+
+    }
+
+    private static final class ChangeoverNorm {
+
+        private final Long id;
+
+        private final String changeoverType;
+
+        private final Long fromTechnologyId;
+
+        private final Long toTechnologyId;
+
+        private final Long fromTechnologyGroupId;
+
+        private final Long toTechnologyGroupId;
+
+        private final Long productionLineId;
+
+        private final Integer duration;
+
+        private ChangeoverNorm(final Long id, final String changeoverType, final Long fromTechnologyId, final Long toTechnologyId,
+                final Long fromTechnologyGroupId, final Long toTechnologyGroupId, final Long productionLineId,
+                final Integer duration) {
+            this.id = id;
+            this.changeoverType = changeoverType;
+            this.fromTechnologyId = fromTechnologyId;
+            this.toTechnologyId = toTechnologyId;
+            this.fromTechnologyGroupId = fromTechnologyGroupId;
+            this.toTechnologyGroupId = toTechnologyGroupId;
+            this.productionLineId = productionLineId;
+            this.duration = duration;
+        }
+    }
+
+    private static final class Key {
+
+        private final boolean forTechnologyGroups;
+
+        private final Long fromId;
+
+        private final Long toId;
+
+        private final Long productionLineId;
+
+        private Key(final boolean forTechnologyGroups, final Long fromId, final Long toId, final Long productionLineId) {
+            this.forTechnologyGroups = forTechnologyGroups;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.productionLineId = productionLineId;
+        }
+
+        private static Key forTechnologies(final Long fromTechnologyId, final Long toTechnologyId, final Long productionLineId) {
+            return new Key(false, fromTechnologyId, toTechnologyId, productionLineId);
+        }
+
+        private static Key forTechnologyGroups(final Long fromTechnologyGroupId, final Long toTechnologyGroupId,
+                final Long productionLineId) {
+            return new Key(true, fromTechnologyGroupId, toTechnologyGroupId, productionLineId);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+
+            Key key = (Key) other;
+
+            return forTechnologyGroups == key.forTechnologyGroups && Objects.equals(fromId, key.fromId)
+                    && Objects.equals(toId, key.toId) && Objects.equals(productionLineId, key.productionLineId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(forTechnologyGroups, fromId, toId, productionLineId);
+        }
+    }
+
+}
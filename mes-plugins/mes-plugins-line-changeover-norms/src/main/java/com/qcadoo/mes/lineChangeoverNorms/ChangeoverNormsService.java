@@ -23,6 +23,8 @@
  */
 package com.qcadoo.mes.lineChangeoverNorms;
 
+import java.util.List;
+
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.model.api.Entity;
@@ -31,4 +33,16 @@ import com.qcadoo.model.api.Entity;
 public interface ChangeoverNormsService {
 
     Entity getMatchingChangeoverNorms(final Entity technologyFrom, final Entity toTechnology, final Entity productionLine);
+
+    /**
+     * Returns duration in seconds of the changeover between given technologies, 0 if no norm matches.
+     */
+    int getChangeoverDuration(final Entity fromTechnology, final Entity toTechnology, final Entity productionLine);
+
+    /**
+     * Returns durations in seconds of changeovers between each two consecutive technologies of given sequence on production line,
+     * 0 for pairs without matching norm or without technology.
+     */
+    List<Integer> getChangeoverDurations(final List<Entity> technologies, final Entity productionLine);
+
 }
@@ -23,10 +23,14 @@
  */
 package com.qcadoo.mes.lineChangeoverNorms;
 
+import java.util.List;
+import java.util.Objects;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -40,6 +44,9 @@ public class ChangeoverNormsServiceImpl implements ChangeoverNormsService {
     @Autowired
     private ChangeoverNormsSearchService changeoverNormsSearchService;
 
+    @Autowired
+    private ChangeoverNormsMatrix changeoverNormsMatrix;
+
     @Override
     public Entity getMatchingChangeoverNorms(final Entity fromTechnology, final Entity toTechnology, final Entity productionLine) {
         Preconditions.checkArgument(fromTechnology != null, "fromTechnology must be not null.");
@@ -48,6 +55,29 @@ public class ChangeoverNormsServiceImpl implements ChangeoverNormsService {
                 toTechnology.getId(), extractTechnologyGroupId(toTechnology), getIdOrNull(productionLine));
     }
 
+    @Override
+    public int getChangeoverDuration(final Entity fromTechnology, final Entity toTechnology, final Entity productionLine) {
+        if (fromTechnology == null || toTechnology == null) {
+            return 0;
+        }
+
+        Integer duration = changeoverNormsMatrix.findDuration(fromTechnology.getId(), extractTechnologyGroupId(fromTechnology),
+                toTechnology.getId(), extractTechnologyGroupId(toTechnology), getIdOrNull(productionLine));
+
+        return Objects.isNull(duration) ? 0 : duration;
+    }
+
+    @Override
+    public List<Integer> getChangeoverDurations(final List<Entity> technologies, final Entity productionLine) {
+        List<Integer> durations = Lists.newArrayList();
+
+        for (int index = 1; index < technologies.size(); index++) {
+            durations.add(getChangeoverDuration(technologies.get(index - 1), technologies.get(index), productionLine));
+        }
+
+        return durations;
+    }
+
     private Long extractTechnologyGroupId(final Entity technology) {
         Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
         return getIdOrNull(technologyGroup);
@@ -0,0 +1,225 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.lineChangeoverNorms.constants.ChangeoverType;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ChangeoverNormsMatrixTest {
+
+    private static final Long FROM_TECH_ID = 1L;
+
+    private static final Long TO_TECH_ID = 2L;
+
+    private static final Long FROM_TECH_GROUP_ID = 101L;
+
+    private static final Long TO_TECH_GROUP_ID = 202L;
+
+    private static final Long PRODUCTION_LINE_ID = 1001L;
+
+    private ChangeoverNormsMatrix changeoverNormsMatrix;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private List<ResultSet> changeoverNormRows;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() throws SQLException {
+        MockitoAnnotations.initMocks(this);
+
+        changeoverNormsMatrix = new ChangeoverNormsMatrix();
+        ReflectionTestUtils.setField(changeoverNormsMatrix, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(changeoverNormsMatrix, "multiTenantService", multiTenantService);
+
+        when(multiTenantService.getCurrentTenantId()).thenReturn(1);
+
+        changeoverNormRows = Lists.newArrayList();
+
+        when(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).thenAnswer(invocation -> {
+            RowMapper<?> rowMapper = (RowMapper<?>) invocation.getArguments()[2];
+            List<Object> changeoverNorms = Lists.newArrayList();
+
+            for (ResultSet changeoverNormRow : changeoverNormRows) {
+                changeoverNorms.add(rowMapper.mapRow(changeoverNormRow, changeoverNorms.size()));
+            }
+
+            return changeoverNorms;
+        });
+    }
+
+    @Test
+    public final void shouldPreferNormForTechnologiesOverNormForTechnologyGroupsWithLine() throws SQLException {
+        // given
+        addTechnologyGroupsNorm(10L, PRODUCTION_LINE_ID, 30);
+        addTechnologiesNorm(11L, null, 60);
+
+        // when
+        Long changeoverNormId = changeoverNormsMatrix.findBestMatchingId(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID,
+                TO_TECH_GROUP_ID, PRODUCTION_LINE_ID);
+
+        // then
+        assertEquals(Long.valueOf(11L), changeoverNormId);
+    }
+
+    @Test
+    public final void shouldPreferNormForProductionLineAndThenNewestNorm() throws SQLException {
+        // given
+        addTechnologiesNorm(10L, PRODUCTION_LINE_ID, 30);
+        addTechnologiesNorm(11L, null, 60);
+        addTechnologiesNorm(12L, null, 90);
+
+        // when
+        Integer durationForLine = changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, PRODUCTION_LINE_ID);
+        Integer durationWithoutLine = changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        // then
+        assertEquals(Integer.valueOf(30), durationForLine);
+        assertEquals(Integer.valueOf(90), durationWithoutLine);
+    }
+
+    @Test
+    public final void shouldFallBackToNormForTechnologyGroups() throws SQLException {
+        // given
+        addTechnologyGroupsNorm(10L, null, 30);
+
+        // when
+        Long changeoverNormId = changeoverNormsMatrix.findBestMatchingId(FROM_TECH_ID, FROM_TECH_GROUP_ID, TO_TECH_ID,
+                TO_TECH_GROUP_ID, PRODUCTION_LINE_ID);
+        Long reversedChangeoverNormId = changeoverNormsMatrix.findBestMatchingId(TO_TECH_ID, TO_TECH_GROUP_ID, FROM_TECH_ID,
+                FROM_TECH_GROUP_ID, PRODUCTION_LINE_ID);
+
+        // then
+        assertEquals(Long.valueOf(10L), changeoverNormId);
+        assertNull(reversedChangeoverNormId);
+    }
+
+    @Test
+    public final void shouldKeepMissingDuration() throws SQLException {
+        // given
+        addTechnologiesNorm(10L, null, null);
+
+        // when
+        Long changeoverNormId = changeoverNormsMatrix.findBestMatchingId(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+        Integer duration = changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        // then
+        assertEquals(Long.valueOf(10L), changeoverNormId);
+        assertNull(duration);
+    }
+
+    @Test
+    public final void shouldLoadNormsOnceUntilInvalidated() throws SQLException {
+        // given
+        addTechnologiesNorm(10L, null, 30);
+
+        changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+        changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        addTechnologiesNorm(11L, null, 60);
+
+        // when
+        changeoverNormsMatrix.invalidate();
+
+        Integer duration = changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        // then
+        assertEquals(Integer.valueOf(60), duration);
+        verify(jdbcTemplate, times(2)).query(anyString(), anyMap(), any(RowMapper.class));
+    }
+
+    @Test
+    public final void shouldLoadNormsPerTenant() throws SQLException {
+        // given
+        addTechnologiesNorm(10L, null, 30);
+
+        changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        changeoverNormRows.clear();
+        addTechnologiesNorm(20L, null, 60);
+
+        // when
+        when(multiTenantService.getCurrentTenantId()).thenReturn(2);
+
+        Integer duration = changeoverNormsMatrix.findDuration(FROM_TECH_ID, null, TO_TECH_ID, null, null);
+
+        // then
+        assertEquals(Integer.valueOf(60), duration);
+    }
+
+    private void addTechnologiesNorm(final Long id, final Long productionLineId, final Integer duration) throws SQLException {
+        changeoverNormRows.add(mockRow(id, ChangeoverType.FOR_TECHNOLOGY, FROM_TECH_ID, TO_TECH_ID, null, null, productionLineId,
+                duration));
+    }
+
+    private void addTechnologyGroupsNorm(final Long id, final Long productionLineId, final Integer duration) throws SQLException {
+        changeoverNormRows.add(mockRow(id, ChangeoverType.FOR_TECHNOLOGY_GROUP, null, null, FROM_TECH_GROUP_ID,
+                TO_TECH_GROUP_ID, productionLineId, duration));
+    }
+
+    private ResultSet mockRow(final Long id, final ChangeoverType changeoverType, final Long fromTechnologyId,
+            final Long toTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyGroupId,
+            final Long productionLineId, final Integer duration) throws SQLException {
+        ResultSet row = mock(ResultSet.class);
+
+        when(row.getLong("id")).thenReturn(id);
+        when(row.getString("changeovertype")).thenReturn(changeoverType.getStringValue());
+        when(row.getObject("fromtechnology_id")).thenReturn(fromTechnologyId);
+        when(row.getObject("totechnology_id")).thenReturn(toTechnologyId);
+        when(row.getObject("fromtechnologygroup_id")).thenReturn(fromTechnologyGroupId);
+        when(row.getObject("totechnologygroup_id")).thenReturn(toTechnologyGroupId);
+        when(row.getObject("productionline_id")).thenReturn(productionLineId);
+        when(row.getObject("duration", Integer.class)).thenReturn(duration);
+
+        return row;
+    }
+
+}
@@ -1,8 +1,10 @@
 package com.qcadoo.mes.masterOrders;
 
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
@@ -25,6 +27,10 @@ public class GenerationOrderResult {
 
     private List<String> productsWithoutAcceptedTechnologies = Lists.newArrayList();
 
+    private final Map<String, Long> orderTimes = Maps.newLinkedHashMap();
+
+    private long generationTime;
+
     public void addNotGeneratedProductError(MasterOrderProductErrorContainer err) {
         productOrderErrors.add(err);
     }
@@ -33,10 +39,29 @@ public class GenerationOrderResult {
         generatedOrderNumbers.add(number);
     }
 
-    public void addOrderWithoutPps(String number) {
+    public synchronized void addOrderWithoutPps(String number) {
         ordersWithoutPps.add(number);
     }
 
+    /**
+     * Adds time in milliseconds spent on given order, its sub-orders and their PPS.
+     */
+    public synchronized void addOrderTime(String number, long millis) {
+        orderTimes.merge(number, millis, Long::sum);
+    }
+
+    public synchronized Map<String, Long> getOrderTimes() {
+        return Maps.newLinkedHashMap(orderTimes);
+    }
+
+    public long getGenerationTime() {
+        return generationTime;
+    }
+
+    public void setGenerationTime(long generationTime) {
+        this.generationTime = generationTime;
+    }
+
     public void addOrderWithoutGeneratedSubOrders(String number) {
         ordersWithoutGeneratedSubOrders.add(number);
     }
@@ -51,6 +76,14 @@ public class GenerationOrderResult {
                     false, String.join(", ", generatedOrderNumbers));
         }
 
+        if (!orderTimes.isEmpty()) {
+            Map.Entry<String, Long> slowestOrder = orderTimes.entrySet().stream().max(Map.Entry.comparingByValue()).get();
+
+            view.addMessage("masterOrders.masterOrder.generationOrder.generationTime", ComponentState.MessageType.INFO, false,
+                    String.valueOf(orderTimes.size()), toSeconds(generationTime), slowestOrder.getKey(),
+                    toSeconds(slowestOrder.getValue()));
+        }
+
         if (!ordersWithoutPps.isEmpty()) {
             view.addMessage("masterOrders.masterOrder.generationOrder.ordersWithoutPps", ComponentState.MessageType.INFO, false,
                     String.join(", ", ordersWithoutPps));
@@ -82,4 +115,8 @@ public class GenerationOrderResult {
                     ComponentState.MessageType.INFO, false, String.join(", ", productsWithoutAcceptedTechnologies));
         }
     }
+
+    private String toSeconds(long millis) {
+        return String.format("%.1f", millis / 1000d);
+    }
 }
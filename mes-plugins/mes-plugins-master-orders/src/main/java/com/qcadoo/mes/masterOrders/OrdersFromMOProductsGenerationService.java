@@ -1,13 +1,13 @@
 package com.qcadoo.mes.masterOrders;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ShiftsService;
-import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsService;
-import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
 import com.qcadoo.mes.lineChangeoverNormsForOrders.LineChangeoverNormsForOrdersService;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderFields;
 import com.qcadoo.mes.masterOrders.constants.MasterOrderProductFields;
@@ -26,10 +26,15 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.utils.NumberGeneratorService;
+import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
@@ -40,8 +45,10 @@ import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.qcadoo.mes.orders.constants.OrderFields.PRODUCTION_LINE;
 import static com.qcadoo.model.api.BigDecimalUtils.convertNullToZero;
@@ -49,6 +56,12 @@ import static com.qcadoo.model.api.BigDecimalUtils.convertNullToZero;
 @Service
 public class OrdersFromMOProductsGenerationService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(OrdersFromMOProductsGenerationService.class);
+
+    private static final int L_PROGRESS_STEP = 20;
+
+    private static final int L_ORDER_NUMBER_DIGITS = 3;
+
     private static final List<String> L_TECHNOLOGY_FIELD_NAMES = Lists.newArrayList("registerQuantityInProduct",
             "registerQuantityOutProduct", "registerProductionTime", "registerPiecework", "justOne", "allowToClose",
             "autoCloseOrder", "typeOfProductionRecording");
@@ -84,27 +97,67 @@ public class OrdersFromMOProductsGenerationService {
     @Autowired
     private ShiftsService shiftsService;
 
+    @Autowired
+    private OrdersGenerationWorkerPool ordersGenerationWorkerPool;
+
+    /**
+     * Generates orders in two stages. Orders and their sub-orders are created one after another, with order numbers allocated
+     * once per master order. Then PPS are generated, orders sharing a production line one after another and orders on
+     * independent lines in parallel.
+     */
     public GenerationOrderResult generateOrders(List<Entity> masterOrderProducts, boolean generatePPS) {
         GenerationOrderResult result = new GenerationOrderResult(translationService);
-        boolean automaticPps = parameterService.getParameter().getBooleanField("ppsIsAutomatic");
-        masterOrderProducts.forEach(masterOrderProduct -> {
+        Entity parameter = parameterService.getParameter();
+        boolean automaticPps = parameter.getBooleanField("ppsIsAutomatic");
+        boolean generatePpsForOrders = generatePPS && automaticPps
+                && !parameter.getBooleanField(ORDERS_GENERATION_NOT_COMPLETE_DATES);
+
+        Map<Long, OrderNumberSequence> orderNumberSequences = Maps.newHashMap();
+        List<Entity> ordersForPps = Lists.newArrayList();
+        long start = System.currentTimeMillis();
+        int processed = 0;
+
+        for (Entity masterOrderProduct : masterOrderProducts) {
             Optional<Entity> dtoEntity = Optional.ofNullable(masterOrderProduct.getDataDefinition().getMasterModelEntity(
                     masterOrderProduct.getId()));
-            if (dtoEntity.isPresent()) {
-                generateOrder(generatePPS, automaticPps, result, dtoEntity.get());
-            } else {
-                generateOrder(generatePPS, automaticPps, result, masterOrderProduct);
+
+            Entity order = generateOrder(parameter, orderNumberSequences, result, dtoEntity.orElse(masterOrderProduct));
+
+            if (order.isValid() && generatePpsForOrders) {
+                ordersForPps.add(order);
             }
-        });
+
+            processed++;
+
+            if (processed % L_PROGRESS_STEP == 0) {
+                LOG.info(String.format("Orders generation from master order products: %d of %d processed",
+                        processed, masterOrderProducts.size()));
+            }
+        }
+
+        generatePpsForOrders(result, ordersForPps);
+
+        result.setGenerationTime(System.currentTimeMillis() - start);
+
+        LOG.info(String.format("Orders generation from master order products: %d orders generated in %d ms",
+                result.getOrderTimes().size(), result.getGenerationTime()));
 
         return result;
 
     }
 
-    private void generateOrder(boolean generatePPS, boolean automaticPps, GenerationOrderResult result, Entity masterOrderProduct) {
-        Entity order = createOrder(masterOrderProduct);
+    private Entity generateOrder(final Entity parameter, final Map<Long, OrderNumberSequence> orderNumberSequences,
+            final GenerationOrderResult result, final Entity masterOrderProduct) {
+        long start = System.currentTimeMillis();
+
+        Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
+        String number = generateOrderNumber(parameter, masterOrder, orderNumberSequences);
+
+        Entity order = createOrder(masterOrderProduct, parameter, number);
         order = getOrderDD().save(order);
         if (!order.isValid()) {
+            orderNumberSequences.get(masterOrder.getId()).giveBack(number);
+
             MasterOrderProductErrorContainer productErrorContainer = new MasterOrderProductErrorContainer();
             productErrorContainer.setProduct(masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT)
                     .getStringField(ProductFields.NUMBER));
@@ -116,70 +169,152 @@ public class OrdersFromMOProductsGenerationService {
         } else {
             result.addGeneratedOrderNumber(order.getStringField(OrderFields.NUMBER));
         }
-        Entity parameter = parameterService.getParameter();
 
         generateSubOrders(result, order);
 
-        if (order.isValid() && generatePPS && automaticPps && !parameter.getBooleanField(ORDERS_GENERATION_NOT_COMPLETE_DATES)) {
-            List<Entity> orders = getOrderAndSubOrders(order.getId());
-            Collections.reverse(orders);
-            Integer lastLevel = null;
-            Date lastDate = null;
-            for (Entity ord : orders) {
-
-                Date calculatedOrderStartDate = null;
-                if (Objects.isNull(ord.getDateField(OrderFields.DATE_FROM))) {
-                    Optional<Entity> maybeOrder = findLastOrder(ord);
-                    if (maybeOrder.isPresent()) {
-                        calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
-                    } else {
-                        calculatedOrderStartDate = new DateTime().toDate();
-                    }
-                } else {
-                    Optional<Entity> maybeOrder = findPreviousOrder(ord);
-                    if (maybeOrder.isPresent()) {
-                        calculatedOrderStartDate = maybeOrder.get().getDateField(OrderFields.FINISH_DATE);
+        if (order.isValid()) {
+            result.addOrderTime(order.getStringField(OrderFields.NUMBER), System.currentTimeMillis() - start);
+        }
+
+        return order;
+    }
 
-                    } else {
-                        calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
-                    }
+    private void generatePpsForOrders(final GenerationOrderResult result, final List<Entity> orders) {
+        List<List<Entity>> ordersWithSubOrders = Lists.newArrayList();
+
+        for (Entity order : orders) {
+            List<Entity> orderAndSubOrders = getOrderAndSubOrders(order.getId());
+            Collections.reverse(orderAndSubOrders);
+
+            ordersWithSubOrders.add(orderAndSubOrders);
+        }
+
+        List<Runnable> tasks = Lists.newArrayList();
+
+        for (List<Integer> indexes : groupByProductionLines(ordersWithSubOrders)) {
+            tasks.add(() -> {
+                Set<Long> notPlannedOrderIds = Sets.newHashSet();
+
+                for (Integer index : indexes) {
+                    ordersWithSubOrders.get(index).forEach(order -> notPlannedOrderIds.add(order.getId()));
                 }
 
-                if(Objects.isNull(calculatedOrderStartDate)) {
+                for (Integer index : indexes) {
+                    List<Entity> orderAndSubOrders = ordersWithSubOrders.get(index);
+                    long start = System.currentTimeMillis();
+
+                    orderAndSubOrders.forEach(order -> notPlannedOrderIds.remove(order.getId()));
+
+                    generatePps(result, orderAndSubOrders, notPlannedOrderIds);
+
+                    result.addOrderTime(orders.get(index).getStringField(OrderFields.NUMBER), System.currentTimeMillis()
+                            - start);
+                }
+            });
+        }
+
+        ordersGenerationWorkerPool.runAll(tasks);
+    }
+
+    /**
+     * Groups orders (given with their sub-orders) into lanes which share no production line. Indexes in each lane keep the
+     * generation order.
+     */
+    List<List<Integer>> groupByProductionLines(final List<List<Entity>> ordersWithSubOrders) {
+        List<Set<Long>> laneProductionLineIds = Lists.newArrayList();
+        List<List<Integer>> lanes = Lists.newArrayList();
+
+        for (int index = 0; index < ordersWithSubOrders.size(); index++) {
+            Set<Long> productionLineIds = Sets.newHashSet();
+
+            for (Entity order : ordersWithSubOrders.get(index)) {
+                Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+
+                productionLineIds.add(Objects.isNull(productionLine) ? 0L : productionLine.getId());
+            }
+
+            List<Integer> lane = Lists.newArrayList();
+
+            for (int laneIndex = lanes.size() - 1; laneIndex >= 0; laneIndex--) {
+                if (!Sets.intersection(laneProductionLineIds.get(laneIndex), productionLineIds).isEmpty()) {
+                    productionLineIds.addAll(laneProductionLineIds.remove(laneIndex));
+                    lane.addAll(lanes.remove(laneIndex));
+                }
+            }
+
+            lane.add(index);
+            Collections.sort(lane);
+
+            laneProductionLineIds.add(productionLineIds);
+            lanes.add(lane);
+        }
+
+        return lanes;
+    }
+
+    private void generatePps(final GenerationOrderResult result, final List<Entity> orders, final Set<Long> notPlannedOrderIds) {
+        Integer lastLevel = null;
+        Date lastDate = null;
+        for (Entity ord : orders) {
+
+            Date calculatedOrderStartDate = null;
+            if (Objects.isNull(ord.getDateField(OrderFields.DATE_FROM))) {
+                Optional<Entity> maybeOrder = findLastOrder(ord, notPlannedOrderIds);
+                if (maybeOrder.isPresent()) {
+                    calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
+                } else {
                     calculatedOrderStartDate = new DateTime().toDate();
                 }
+            } else {
+                Optional<Entity> maybeOrder = findPreviousOrder(ord, notPlannedOrderIds);
+                if (maybeOrder.isPresent()) {
+                    calculatedOrderStartDate = maybeOrder.get().getDateField(OrderFields.FINISH_DATE);
 
-                if (Objects.nonNull(lastLevel) && !Objects.equals(lastLevel, ord.getIntegerField("level"))) {
-                    if (Objects.nonNull(lastDate) && calculatedOrderStartDate.before(lastDate)) {
-                        calculatedOrderStartDate = lastDate;
-                    }
+                } else {
+                    calculatedOrderStartDate = ord.getDateField(OrderFields.FINISH_DATE);
                 }
+            }
+
+            if(Objects.isNull(calculatedOrderStartDate)) {
+                calculatedOrderStartDate = new DateTime().toDate();
+            }
 
-                try {
-                    Date finishDate = tryGeneratePPS(ord, calculatedOrderStartDate);
-                    if (Objects.nonNull(lastDate) && finishDate.after(lastDate)) {
-                        lastDate = finishDate;
-                    } else if (Objects.isNull(lastDate)) {
-                        lastDate = finishDate;
-                    }
-                } catch (Exception ex) {
-                    result.addOrderWithoutPps(ord.getStringField(OrderFields.NUMBER));
-                    break;
+            if (Objects.nonNull(lastLevel) && !Objects.equals(lastLevel, ord.getIntegerField("level"))) {
+                if (Objects.nonNull(lastDate) && calculatedOrderStartDate.before(lastDate)) {
+                    calculatedOrderStartDate = lastDate;
                 }
-                lastLevel = ord.getIntegerField("level");
+            }
 
+            try {
+                Date finishDate = tryGeneratePPS(ord, calculatedOrderStartDate, notPlannedOrderIds);
+                if (Objects.nonNull(lastDate) && finishDate.after(lastDate)) {
+                    lastDate = finishDate;
+                } else if (Objects.isNull(lastDate)) {
+                    lastDate = finishDate;
+                }
+            } catch (Exception ex) {
+                result.addOrderWithoutPps(ord.getStringField(OrderFields.NUMBER));
+                break;
             }
+            lastLevel = ord.getIntegerField("level");
 
         }
     }
 
     public Optional<Entity> findLastOrder(final Entity order) {
+        return findLastOrder(order, Collections.emptySet());
+    }
+
+    private Optional<Entity> findLastOrder(final Entity order, final Set<Long> excludedOrderIds) {
         Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
-        Entity lastOrder = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
+        SearchCriteriaBuilder searchCriteriaBuilder = dataDefinitionService
+                .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
                 .add(SearchRestrictions.isNotNull(OrderFields.FINISH_DATE))
                 .add(SearchRestrictions.belongsTo(OrderFields.PRODUCTION_LINE, productionLine))
-                .add(SearchRestrictions.ne(OrderFields.STATE, OrderState.ABANDONED.getStringValue()))
-                .addOrder(SearchOrders.desc(OrderFields.FINISH_DATE)).setMaxResults(1).uniqueResult();
+                .add(SearchRestrictions.ne(OrderFields.STATE, OrderState.ABANDONED.getStringValue()));
+        excludeOrders(searchCriteriaBuilder, excludedOrderIds);
+        Entity lastOrder = searchCriteriaBuilder.addOrder(SearchOrders.desc(OrderFields.FINISH_DATE)).setMaxResults(1)
+                .uniqueResult();
         return Optional.ofNullable(lastOrder);
     }
 
@@ -218,8 +353,8 @@ public class OrdersFromMOProductsGenerationService {
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    private Date tryGeneratePPS(final Entity order, Date date) {
-        Date startDate = findStartDate(order, date);
+    private Date tryGeneratePPS(final Entity order, Date date, final Set<Long> excludedOrderIds) {
+        Date startDate = findStartDate(order, date, excludedOrderIds);
         generateEmptyPpsForOrder(order);
         order.setField("generatePPS", true);
         order.setField(OrderFields.START_DATE, startDate);
@@ -267,9 +402,9 @@ public class OrdersFromMOProductsGenerationService {
         return DateTime.now().toDate();
     }
 
-    private Date findStartDate(final Entity order, Date startDate) {
+    private Date findStartDate(final Entity order, Date startDate, final Set<Long> excludedOrderIds) {
 
-        Optional<Entity> previousOrder = findPreviousOrder(order);
+        Optional<Entity> previousOrder = findPreviousOrder(order, excludedOrderIds);
         if (previousOrder.isPresent()) {
             Integer changeoverDurationInMillis = getChangeoverDurationInMillis(previousOrder.get(), order);
             Optional<DateTime> maybeDate = shiftsService.getNearestWorkingDate(new DateTime(startDate),
@@ -289,32 +424,43 @@ public class OrdersFromMOProductsGenerationService {
     }
 
     public Optional<Entity> findPreviousOrder(final Entity order) {
+        return findPreviousOrder(order, Collections.emptySet());
+    }
+
+    private Optional<Entity> findPreviousOrder(final Entity order, final Set<Long> excludedOrderIds) {
         Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
-        Entity nextOrder = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
+        SearchCriteriaBuilder searchCriteriaBuilder = dataDefinitionService
+                .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER).find()
                 .add(SearchRestrictions.belongsTo(OrderFields.PRODUCTION_LINE, productionLine))
-                .add(SearchRestrictions.isNotNull(OrderFields.START_DATE)).addOrder(SearchOrders.desc(OrderFields.START_DATE))
-                .setMaxResults(1).uniqueResult();
+                .add(SearchRestrictions.isNotNull(OrderFields.START_DATE));
+        excludeOrders(searchCriteriaBuilder, excludedOrderIds);
+        Entity nextOrder = searchCriteriaBuilder.addOrder(SearchOrders.desc(OrderFields.START_DATE)).setMaxResults(1)
+                .uniqueResult();
         return Optional.ofNullable(nextOrder);
     }
 
+    private void excludeOrders(final SearchCriteriaBuilder searchCriteriaBuilder, final Set<Long> excludedOrderIds) {
+        if (!excludedOrderIds.isEmpty()) {
+            searchCriteriaBuilder.add(SearchRestrictions.not(SearchRestrictions.in("id", excludedOrderIds)));
+        }
+    }
+
     public Integer getChangeoverDurationInMillis(Entity previousOrder, final Entity nextOrder) {
         Entity fromTechnology = previousOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
         Entity toTechnology = nextOrder.getBelongsToField(OrderFields.TECHNOLOGY_PROTOTYPE);
         Entity productionLine = nextOrder.getBelongsToField(PRODUCTION_LINE);
-        Entity changeover = changeoverNormsService.getMatchingChangeoverNorms(fromTechnology, toTechnology, productionLine);
-        if (changeover != null) {
-            Integer duration = changeover.getIntegerField(LineChangeoverNormsFields.DURATION);
-            if (duration == null) {
-                return 0;
-            }
-            return duration * 1000;
-        }
-        return 0;
+        return changeoverNormsService.getChangeoverDuration(fromTechnology, toTechnology, productionLine) * 1000;
     }
 
     public Entity createOrder(final Entity masterOrderProduct) {
         Entity parameter = parameterService.getParameter();
         Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
+
+        return createOrder(masterOrderProduct, parameter, generateOrderNumber(parameter, masterOrder));
+    }
+
+    private Entity createOrder(final Entity masterOrderProduct, final Entity parameter, final String number) {
+        Entity masterOrder = masterOrderProduct.getBelongsToField(MasterOrderProductFields.MASTER_ORDER);
         Entity product = masterOrderProduct.getBelongsToField(MasterOrderProductFields.PRODUCT);
         Entity technology = getTechnology(masterOrderProduct);
         Date masterOrderDeadline = masterOrder.getDateField(MasterOrderFields.DEADLINE);
@@ -322,7 +468,7 @@ public class OrdersFromMOProductsGenerationService {
         Date masterOrderFinishDate = masterOrder.getDateField(MasterOrderFields.FINISH_DATE);
 
         Entity order = getOrderDD().create();
-        order.setField(OrderFields.NUMBER, generateOrderNumber(parameter, masterOrder));
+        order.setField(OrderFields.NUMBER, number);
         order.setField(OrderFields.NAME, generateOrderName(product, technology));
         order.setField(OrderFields.COMPANY, masterOrder.getBelongsToField(MasterOrderFields.COMPANY));
         order.setField(OrderFields.ADDRESS, masterOrder.getBelongsToField(MasterOrderFields.ADDRESS));
@@ -343,8 +489,7 @@ public class OrdersFromMOProductsGenerationService {
 
         order.setField("ignoreMissingComponents", parameter.getBooleanField("ignoreMissingComponents"));
 
-        boolean fillOrderDescriptionBasedOnTechnology = dataDefinitionService
-                .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PARAMETER).find().setMaxResults(1).uniqueResult()
+        boolean fillOrderDescriptionBasedOnTechnology = parameter
                 .getBooleanField(ParameterFieldsO.FILL_ORDER_DESCRIPTION_BASED_ON_TECHNOLOGY_DESCRIPTION);
         String orderDescription;
         if (parameter.getBooleanField(ParameterFieldsMO.COPY_DESCRIPTION)) {
@@ -372,8 +517,36 @@ public class OrdersFromMOProductsGenerationService {
     }
 
     private String generateOrderNumber(final Entity parameter, final Entity masterOrder) {
-        return numberGeneratorService.generateNumberWithPrefix(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER, 3,
-                masterOrder.getStringField(MasterOrderFields.NUMBER) + "-");
+        return numberGeneratorService.generateNumberWithPrefix(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER,
+                L_ORDER_NUMBER_DIGITS, masterOrder.getStringField(MasterOrderFields.NUMBER) + "-");
+    }
+
+    private String generateOrderNumber(final Entity parameter, final Entity masterOrder,
+            final Map<Long, OrderNumberSequence> orderNumberSequences) {
+        OrderNumberSequence orderNumberSequence = orderNumberSequences.get(masterOrder.getId());
+
+        if (Objects.isNull(orderNumberSequence)) {
+            String prefix = masterOrder.getStringField(MasterOrderFields.NUMBER) + "-";
+
+            orderNumberSequence = new OrderNumberSequence(prefix, getOrderNumbersWithPrefix(prefix));
+            orderNumberSequences.put(masterOrder.getId(), orderNumberSequence);
+
+            return orderNumberSequence.take(generateOrderNumber(parameter, masterOrder));
+        }
+
+        return orderNumberSequence.next();
+    }
+
+    private Set<String> getOrderNumbersWithPrefix(final String prefix) {
+        List<Entity> numbers = getOrderDD().find().add(SearchRestrictions.like(OrderFields.NUMBER, prefix + "%"))
+                .setProjection(SearchProjections.alias(SearchProjections.field(OrderFields.NUMBER), OrderFields.NUMBER)).list()
+                .getEntities();
+
+        Set<String> orderNumbers = Sets.newHashSet();
+
+        numbers.forEach(number -> orderNumbers.add(number.getStringField(OrderFields.NUMBER)));
+
+        return orderNumbers;
     }
 
     public Entity getProductionLine(final Entity technology) {
@@ -419,6 +592,55 @@ public class OrdersFromMOProductsGenerationService {
         return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
     }
 
+    /**
+     * Order numbers of one master order, allocated locally after the first one is taken from the number generator.
+     */
+    private static class OrderNumberSequence {
+
+        private final String prefix;
+
+        private final Set<String> takenNumbers;
+
+        private long lastNumber;
+
+        private OrderNumberSequence(final String prefix, final Set<String> takenNumbers) {
+            this.prefix = prefix;
+            this.takenNumbers = takenNumbers;
+        }
+
+        private String take(final String number) {
+            takenNumbers.add(number);
+
+            String suffix = number.substring(Math.min(prefix.length(), number.length()));
+
+            lastNumber = StringUtils.isNumeric(suffix) && !suffix.isEmpty() ? Long.parseLong(suffix) : 0L;
+
+            return number;
+        }
+
+        private String next() {
+            String number;
+
+            do {
+                lastNumber++;
+                number = prefix + StringUtils.leftPad(String.valueOf(lastNumber), L_ORDER_NUMBER_DIGITS, '0');
+            } while (takenNumbers.contains(number));
+
+            takenNumbers.add(number);
+
+            return number;
+        }
+
+        private void giveBack(final String number) {
+            takenNumbers.remove(number);
+
+            if (number.equals(prefix + StringUtils.leftPad(String.valueOf(lastNumber), L_ORDER_NUMBER_DIGITS, '0'))) {
+                lastNumber--;
+            }
+        }
+
+    }
+
     private DataDefinition getMasterOrderProductDtoDD() {
         return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
                 MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO);
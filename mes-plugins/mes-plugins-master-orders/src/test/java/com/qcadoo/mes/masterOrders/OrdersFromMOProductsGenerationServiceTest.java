@@ -0,0 +1,95 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders;
+
+import static com.qcadoo.testing.model.EntityTestUtils.mockEntity;
+import static com.qcadoo.testing.model.EntityTestUtils.stubBelongsToField;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.model.api.Entity;
+
+public class OrdersFromMOProductsGenerationServiceTest {
+
+    private OrdersFromMOProductsGenerationService ordersFromMOProductsGenerationService;
+
+    private Entity firstLine, secondLine, thirdLine;
+
+    @Before
+    public final void init() {
+        ordersFromMOProductsGenerationService = new OrdersFromMOProductsGenerationService();
+
+        firstLine = mockEntity(1L);
+        secondLine = mockEntity(2L);
+        thirdLine = mockEntity(3L);
+    }
+
+    @Test
+    public final void shouldPutOrdersOnDifferentProductionLinesIntoSeparateLanes() {
+        // given
+        List<List<Entity>> ordersWithSubOrders = Lists.newArrayList(orders(firstLine), orders(secondLine), orders(firstLine));
+
+        // when
+        List<List<Integer>> lanes = ordersFromMOProductsGenerationService.groupByProductionLines(ordersWithSubOrders);
+
+        // then
+        assertEquals(2, lanes.size());
+        assertEquals(Lists.newArrayList(1), lanes.get(0));
+        assertEquals(Lists.newArrayList(0, 2), lanes.get(1));
+    }
+
+    @Test
+    public final void shouldJoinLanesWhenSubOrderSharesProductionLine() {
+        // given
+        List<List<Entity>> ordersWithSubOrders = Lists.newArrayList(orders(firstLine), orders(secondLine),
+                orders(thirdLine, firstLine, secondLine), orders(thirdLine));
+
+        // when
+        List<List<Integer>> lanes = ordersFromMOProductsGenerationService.groupByProductionLines(ordersWithSubOrders);
+
+        // then
+        assertEquals(1, lanes.size());
+        assertEquals(Lists.newArrayList(0, 1, 2, 3), lanes.get(0));
+    }
+
+    private List<Entity> orders(final Entity... productionLines) {
+        List<Entity> orders = Lists.newArrayList();
+
+        for (Entity productionLine : productionLines) {
+            Entity order = mockEntity();
+            stubBelongsToField(order, OrderFields.PRODUCTION_LINE, productionLine);
+
+            orders.add(order);
+        }
+
+        return orders;
+    }
+
+}
@@ -19,6 +19,7 @@ import org.springframework.util.StringUtils;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.GridQuery;
 import com.qcadoo.mes.basic.GridResponse;
 import com.qcadoo.mes.basic.LookupUtils;
 import com.qcadoo.mes.basic.controllers.dataProvider.DataProvider;
@@ -67,7 +68,32 @@ public class DocumentPositionService {
 
         parameters.put("documentId", documentId);
 
-        return lookupUtils.getGridResponse(query, _sidx, _sord, page, perPage, position, parameters);
+        GridQuery gridQuery = buildPositionsGridQuery();
+
+        // lastResource is computed for returned page only, filtering or sorting by it needs the value for every position
+        if (position.getLastResource() != null || _sidx != null && gridQuery.isPageColumn(_sidx)) {
+            return lookupUtils.getGridResponse(query, _sidx, _sord, page, perPage, position, parameters);
+        }
+
+        return lookupUtils.getGridResponse(gridQuery, _sidx, _sord, page, perPage, position, parameters);
+    }
+
+    private GridQuery buildPositionsGridQuery() {
+        String query = "SELECT %s FROM ( SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
+                + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, \n"
+                + "resource.palletnumber_id AS resourcepalletnumber_id, resource.quantity AS resourcequantity "
+                + "	FROM materialflowresources_position p\n"
+                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
+                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
+                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
+                + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
+                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId %s) q ";
+
+        // resources count on pallet is computed only for positions of returned page
+        String lastResource = "(coalesce((SELECT count(r.id) FROM materialflowresources_resource r WHERE r.palletnumber_id = page.resourcepalletnumber_id),0) < 2 "
+                + "AND page.quantity >= coalesce(page.resourcequantity,0))";
+
+        return GridQuery.of(query).withKeysetColumns("id", "number").withPageColumn("lastResource", lastResource);
     }
 
     public void delete(final Long id) {
@@ -35,16 +35,38 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.CostNormsDao;
 import com.qcadoo.mes.materialFlowResources.costNorms.dao.model.CostNorm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Repository
 public class CostNormsDaoImpl implements CostNormsDao {
 
+    private static final String L_ID = "id";
+
+    private static final String L_LAST_PURCHASE_COST = "lastPurchaseCost";
+
+    private static final String L_AVERAGE_COST = "averageCost";
+
+    private static final String L_COST_FOR_NUMBER = "costForNumber";
+
+    private static final String L_NOMINAL_COST = "nominalCost";
+
+    private static final int L_PRODUCTS_PER_QUERY = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
     @Override
     public List<CostNorm> getLastPurchaseCostsForProducts(List<Long> productIds, List<Long> warehousesIds) {
         StringBuilder queryBuilder = new StringBuilder();
@@ -113,49 +135,39 @@ public class CostNormsDaoImpl implements CostNormsDao {
         return averageCosts;
     }
 
+    /**
+     * Products are kept in the second level cache, so costs are written through the data definition - an SQL update would leave
+     * cached and session products with the old costs. Costs being the only change, hooks and validation are skipped, like the
+     * update used to.
+     */
     @Override
     public void updateCostNormsForProducts(Collection<CostNorm> costNorms) {
+        DataDefinition productDD = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
 
-        for (CostNorm costNorm : costNorms) {
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append("UPDATE basic_product SET ");
-            queryBuilder.append(prepareValuesToUpdate(costNorm));
-            queryBuilder.append(" WHERE id = :productId");
-            SqlParameterSource namedParameters = new MapSqlParameterSource("productId", costNorm.getProductId())
-                    .addValue("lastPurchaseCost", costNorm.getLastPurchaseCost())
-                    .addValue("averageCost", costNorm.getAverageCost()).addValue("nominalCost", costNorm.getNominalCost())
-                    .addValue("costForNumber", costNorm.getCostForNumber());
-
-            jdbcTemplate.update(queryBuilder.toString(), namedParameters);
-        }
-    }
+        Map<Long, CostNorm> costNormsByProduct = Maps.newHashMap();
 
-    private String prepareValuesToUpdate(CostNorm costNorm) {
-        StringBuilder values = new StringBuilder();
-        if (costNorm.getLastPurchaseCost() != null) {
-            values.append("lastpurchasecost = :lastPurchaseCost");
-        }
-        if (costNorm.getAverageCost() != null) {
-            if (values.length() > 0) {
-                values.append(", ");
-            }
-            values.append("averagecost = :averageCost");
-        }
+        costNorms.forEach(costNorm -> costNormsByProduct.put(costNorm.getProductId(), costNorm));
+
+        for (List<Long> productIds : Iterables.partition(costNormsByProduct.keySet(), L_PRODUCTS_PER_QUERY)) {
+            List<Entity> products = productDD.find().add(SearchRestrictions.in(L_ID, productIds)).list().getEntities();
 
-        if (costNorm.getCostForNumber() != null) {
-            if (values.length() > 0) {
-                values.append(", ");
+            for (Entity product : products) {
+                CostNorm costNorm = costNormsByProduct.get(product.getId());
+
+                setCostIfNotNull(product, L_LAST_PURCHASE_COST, costNorm.getLastPurchaseCost());
+                setCostIfNotNull(product, L_AVERAGE_COST, costNorm.getAverageCost());
+                setCostIfNotNull(product, L_COST_FOR_NUMBER, costNorm.getCostForNumber());
+                setCostIfNotNull(product, L_NOMINAL_COST, costNorm.getNominalCost());
+
+                productDD.fastSave(product);
             }
-            values.append("costfornumber = :costForNumber");
         }
+    }
 
-        if (costNorm.getNominalCost() != null) {
-            if (values.length() > 0) {
-                values.append(", ");
-            }
-            values.append("nominalcost = :nominalCost");
+    private void setCostIfNotNull(final Entity product, final String fieldName, final BigDecimal cost) {
+        if (cost != null) {
+            product.setField(fieldName, cost);
         }
-        return values.toString();
     }
 
 }
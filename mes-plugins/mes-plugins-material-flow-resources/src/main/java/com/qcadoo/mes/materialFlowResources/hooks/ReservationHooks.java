@@ -7,6 +7,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.service.ResourceReservationsService;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 
@@ -16,6 +17,9 @@ public class ReservationHooks {
     @Autowired
     private ResourceReservationsService resourceReservationsService;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     public void onSave(DataDefinition reservationDD, Entity reservation) {
         Entity newResource = reservation.getBelongsToField(ReservationFields.RESOURCE);
         Entity oldResource = null;
@@ -29,6 +33,11 @@ public class ReservationHooks {
         }
         BigDecimal quantityToAdd = newQuantity.subtract(oldQuantity);
 
+        if (oldReservation != null) {
+            addToResourceStockLedger(oldReservation, oldQuantity.negate());
+        }
+        addToResourceStockLedger(reservation, newQuantity);
+
         if (oldResource != null && newResource != null) {
             if (oldResource.getId().compareTo(newResource.getId()) != 0) {
                 resourceReservationsService.updateResourceQuantites(reservation, newQuantity);
@@ -46,4 +55,20 @@ public class ReservationHooks {
     public void onCopy(DataDefinition reservationDD, Entity reservation) {
         reservation.setField(ReservationFields.RESOURCE, null);
     }
+
+    public boolean onDelete(DataDefinition reservationDD, Entity reservation) {
+        Entity existingReservation = reservationDD.get(reservation.getId());
+        if (existingReservation != null) {
+            addToResourceStockLedger(existingReservation, existingReservation.getDecimalField(ReservationFields.QUANTITY).negate());
+        }
+        return true;
+    }
+
+    private void addToResourceStockLedger(Entity reservation, BigDecimal quantity) {
+        Entity location = reservation.getBelongsToField(ReservationFields.LOCATION);
+        Entity product = reservation.getBelongsToField(ReservationFields.PRODUCT);
+        if (location != null && product != null) {
+            resourceStockLedgerService.addReservedQuantity(location.getId(), product.getId(), quantity);
+        }
+    }
 }
@@ -25,6 +25,7 @@ package com.qcadoo.mes.materialFlowResources.hooks;
 
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockLedgerService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -39,6 +40,7 @@ import java.math.BigDecimal;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import static com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants.MODEL_RESOURCE;
 import static com.qcadoo.mes.materialFlowResources.constants.ResourceFields.BATCH;
@@ -52,7 +54,11 @@ public class ResourceModelHooks {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     public void onSave(final DataDefinition resourceDD, final Entity resource) {
+        updateResourceStockLedger(resourceDD, resource);
         if (StringUtils.isEmpty(resource.getStringField(ResourceFields.NUMBER))) {
             Date time = resource.getDateField(ResourceFields.TIME);
             if (time == null) {
@@ -66,6 +72,46 @@ public class ResourceModelHooks {
         }
     }
 
+    public boolean onDelete(final DataDefinition resourceDD, final Entity resource) {
+        Entity existingResource = resourceDD.get(resource.getId());
+        if (existingResource != null) {
+            addToResourceStockLedger(existingResource, existingResource.getDecimalField(ResourceFields.QUANTITY).negate());
+        }
+        return true;
+    }
+
+    private void updateResourceStockLedger(final DataDefinition resourceDD, final Entity resource) {
+        BigDecimal quantity = resource.getDecimalField(ResourceFields.QUANTITY);
+        if (resource.getId() != null) {
+            Entity existingResource = resourceDD.get(resource.getId());
+            BigDecimal existingQuantity = existingResource.getDecimalField(ResourceFields.QUANTITY);
+            if (isSameStock(existingResource, resource)) {
+                addToResourceStockLedger(resource, quantity.subtract(existingQuantity));
+                return;
+            }
+            addToResourceStockLedger(existingResource, existingQuantity.negate());
+        }
+        addToResourceStockLedger(resource, quantity);
+    }
+
+    private boolean isSameStock(final Entity resource, final Entity otherResource) {
+        return Objects.equals(getBelongsToId(resource, ResourceFields.LOCATION), getBelongsToId(otherResource, ResourceFields.LOCATION))
+                && Objects.equals(getBelongsToId(resource, ResourceFields.PRODUCT), getBelongsToId(otherResource, ResourceFields.PRODUCT));
+    }
+
+    private Long getBelongsToId(final Entity entity, final String fieldName) {
+        Entity belongsTo = entity.getBelongsToField(fieldName);
+        return belongsTo == null ? null : belongsTo.getId();
+    }
+
+    private void addToResourceStockLedger(final Entity resource, final BigDecimal quantity) {
+        Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
+        Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
+        if (location != null && product != null) {
+            resourceStockLedgerService.addQuantity(location.getId(), product.getId(), quantity);
+        }
+    }
+
     public void onCreate(final DataDefinition resourceDD, final Entity resource) {
         resource.setField(ResourceFields.IS_CORRECTED, false);
         if (resource.getField(ResourceFields.WASTE) == null) {
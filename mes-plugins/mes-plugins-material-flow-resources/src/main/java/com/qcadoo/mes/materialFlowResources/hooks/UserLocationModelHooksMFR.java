@@ -0,0 +1,68 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.hooks;
+
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.materialFlow.constants.UserLocationFields;
+import com.qcadoo.mes.materialFlowResources.service.DraftDocumentsCounter;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class UserLocationModelHooksMFR {
+
+    @Autowired
+    private DraftDocumentsCounter draftDocumentsCounter;
+
+    public void onSave(final DataDefinition userLocationDD, final Entity userLocation) {
+        if (Objects.nonNull(userLocation.getId())) {
+            Entity userLocationDB = userLocationDD.get(userLocation.getId());
+
+            if (Objects.nonNull(userLocationDB)) {
+                invalidateUserLocations(userLocationDB);
+            }
+        }
+
+        invalidateUserLocations(userLocation);
+    }
+
+    public boolean onDelete(final DataDefinition userLocationDD, final Entity userLocation) {
+        invalidateUserLocations(userLocation);
+
+        return true;
+    }
+
+    private void invalidateUserLocations(final Entity userLocation) {
+        Entity user = userLocation.getBelongsToField(UserLocationFields.USER);
+
+        if (Objects.nonNull(user)) {
+            draftDocumentsCounter.invalidateUserLocations(user.getId());
+        }
+    }
+
+}
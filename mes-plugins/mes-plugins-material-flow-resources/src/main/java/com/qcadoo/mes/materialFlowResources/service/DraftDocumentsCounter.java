@@ -0,0 +1,182 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableList;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps numbers of active draft documents (not bound to orders) grouped by their locations, so notification polls are served
+ * from memory. Counts and user locations are kept per tenant. Counts are reloaded with a single query after any document
+ * change and at least every few minutes, locations of a user are reloaded after any change of their user locations.
+ */
+@Service
+public class DraftDocumentsCounter {
+
+    private static final long L_RELOAD_INTERVAL_MILLIS = 5 * 60 * 1000L;
+
+    private static final String L_COUNT_DRAFT_DOCUMENTS = "SELECT locationfrom_id AS locationFromId, locationto_id AS locationToId, "
+            + "COUNT(*) AS documents FROM materialflowresources_document WHERE state = :state AND active = true "
+            + "AND order_id IS NULL GROUP BY locationfrom_id, locationto_id";
+
+    private static final String L_SELECT_USER_LOCATIONS = "SELECT location_id FROM materialflow_userlocation WHERE user_id = :userId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, TenantCounts> countsByTenant = new ConcurrentHashMap<>();
+
+    public int countForUser(final Long userId) {
+        TenantCounts tenantCounts = getTenantCounts();
+        List<DraftDocumentsCount> currentCounts = getCounts(tenantCounts);
+        Set<Long> locationIds = tenantCounts.userLocations.computeIfAbsent(userId, this::loadUserLocations);
+        if (locationIds.isEmpty()) {
+            return currentCounts.stream().mapToInt(DraftDocumentsCount::getDocuments).sum();
+        }
+        return currentCounts.stream().filter(count -> count.concerns(locationIds)).mapToInt(DraftDocumentsCount::getDocuments)
+                .sum();
+    }
+
+    public void invalidate() {
+        TenantCounts tenantCounts = getTenantCounts();
+        tenantCounts.counts = null;
+
+        afterCompletion(() -> tenantCounts.counts = null);
+    }
+
+    public void invalidateUserLocations(final Long userId) {
+        if (userId == null) {
+            return;
+        }
+        TenantCounts tenantCounts = getTenantCounts();
+        tenantCounts.userLocations.remove(userId);
+
+        afterCompletion(() -> tenantCounts.userLocations.remove(userId));
+    }
+
+    private void afterCompletion(final Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private TenantCounts getTenantCounts() {
+        return countsByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new TenantCounts());
+    }
+
+    private List<DraftDocumentsCount> getCounts(final TenantCounts tenantCounts) {
+        List<DraftDocumentsCount> currentCounts = tenantCounts.counts;
+        if (currentCounts == null || System.currentTimeMillis() - tenantCounts.loadedAt > L_RELOAD_INTERVAL_MILLIS) {
+            currentCounts = reload(tenantCounts);
+        }
+        return currentCounts;
+    }
+
+    private List<DraftDocumentsCount> reload(final TenantCounts tenantCounts) {
+        synchronized (tenantCounts) {
+            if (tenantCounts.counts != null && System.currentTimeMillis() - tenantCounts.loadedAt <= L_RELOAD_INTERVAL_MILLIS) {
+                return tenantCounts.counts;
+            }
+            if (System.currentTimeMillis() - tenantCounts.loadedAt > L_RELOAD_INTERVAL_MILLIS) {
+                tenantCounts.userLocations.clear();
+            }
+            List<DraftDocumentsCount> loadedCounts = ImmutableList.copyOf(jdbcTemplate.query(L_COUNT_DRAFT_DOCUMENTS,
+                    Collections.singletonMap("state", DocumentState.DRAFT.getStringValue()),
+                    (rs, rowNum) -> new DraftDocumentsCount(getLong(rs.getObject("locationFromId")),
+                            getLong(rs.getObject("locationToId")), rs.getInt("documents"))));
+            tenantCounts.loadedAt = System.currentTimeMillis();
+            tenantCounts.counts = loadedCounts;
+            return loadedCounts;
+        }
+    }
+
+    private Set<Long> loadUserLocations(final Long userId) {
+        List<Long> locationIds = jdbcTemplate.queryForList(L_SELECT_USER_LOCATIONS, Collections.singletonMap("userId", userId),
+                Long.class);
+        return locationIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    private static Long getLong(final Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private static final class TenantCounts {
+
+        private final Map<Long, Set<Long>> userLocations = new ConcurrentHashMap<>();
+
+        private volatile List<DraftDocumentsCount> counts;
+
+        private volatile long loadedAt;
+
+    }
+
+    private static final class DraftDocumentsCount {
+
+        private final Long locationFromId;
+
+        private final Long locationToId;
+
+        private final int documents;
+
+        private DraftDocumentsCount(final Long locationFromId, final Long locationToId, final int documents) {
+            this.locationFromId = locationFromId;
+            this.locationToId = locationToId;
+            this.documents = documents;
+        }
+
+        private boolean concerns(final Collection<Long> locationIds) {
+            return locationIds.contains(locationFromId) || locationIds.contains(locationToId);
+        }
+
+        private int getDocuments() {
+            return documents;
+        }
+    }
+
+}
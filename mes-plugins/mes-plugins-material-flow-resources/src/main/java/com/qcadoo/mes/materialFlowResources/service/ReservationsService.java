@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,6 +44,9 @@ public class ReservationsService {
     @Autowired
     private MultiTenantService multiTenantService;
 
+    @Autowired
+    private ResourceStockLedgerService resourceStockLedgerService;
+
     private final static String L_QUANTITY = "quantity";
 
     public void cleanReservationsTrigger() {
@@ -87,6 +91,8 @@ public class ReservationsService {
 
         jdbcTemplate.update(query, params);
         resourceReservationsService.updateResourceQuantites(params, BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)));
+        resourceStockLedgerService.addReservedQuantityForDocument(getLongParameter(params, "document_id"),
+                getLongParameter(params, "product_id"), BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)));
     }
 
     /**
@@ -162,7 +168,12 @@ public class ReservationsService {
                     + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id), "
                     + "product_id = :product_id, quantity = :quantity, resource_id = :resource_id WHERE position_id = :id";
 
-            jdbcTemplate.update(query, params);
+            List<Map<String, Object>> oldReservations = getReservationsForPosition(params);
+            if (jdbcTemplate.update(query, params) > 0) {
+                removeFromResourceStockLedger(oldReservations);
+                resourceStockLedgerService.addReservedQuantityForDocument(getLongParameter(params, "document_id"),
+                        getLongParameter(params, "product_id"), newQuantity);
+            }
 
             if (oldResourceId != null && newResourceId != null) {
                 if (oldResourceId.compareTo(newResourceId) != 0) {
@@ -233,7 +244,9 @@ public class ReservationsService {
             return;
         }
         String query = "DELETE FROM materialflowresources_reservation WHERE position_id = :id";
+        List<Map<String, Object>> oldReservations = getReservationsForPosition(params);
         jdbcTemplate.update(query, params);
+        removeFromResourceStockLedger(oldReservations);
         resourceReservationsService.updateResourceQuantites(params,
                 BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)).negate());
     }
@@ -270,6 +283,24 @@ public class ReservationsService {
         }
     }
 
+    private List<Map<String, Object>> getReservationsForPosition(Map<String, Object> params) {
+        String query = "SELECT location_id, product_id, quantity FROM materialflowresources_reservation WHERE position_id = :id";
+        return jdbcTemplate.queryForList(query, params);
+    }
+
+    private void removeFromResourceStockLedger(List<Map<String, Object>> reservations) {
+        for (Map<String, Object> reservation : reservations) {
+            resourceStockLedgerService.addReservedQuantity(((Number) reservation.get("location_id")).longValue(),
+                    ((Number) reservation.get("product_id")).longValue(),
+                    BigDecimalUtils.convertNullToZero(reservation.get(L_QUANTITY)).negate());
+        }
+    }
+
+    private Long getLongParameter(Map<String, Object> params, String key) {
+        Object value = params.get(key);
+        return value == null ? null : ((Number) value).longValue();
+    }
+
     public Entity getReservationForPosition(final Entity position) {
         if (position.getId() == null) {
             return null;
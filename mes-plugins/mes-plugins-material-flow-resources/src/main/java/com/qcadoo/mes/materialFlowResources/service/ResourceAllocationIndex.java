@@ -0,0 +1,237 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * In-memory index of the resources of a single warehouse, loaded once for all products of a document.
+ *
+ * Resource entities kept in the index are shared between positions, so quantities taken by one position are visible to the
+ * next ones without re-reading the database. Changes are only recorded here - it's up to the caller to write them back (see
+ * {@link #getUpdatedResources()}, {@link #getDeletedResources()} and {@link #getQuantityDelta(Entity, String)}).
+ */
+public class ResourceAllocationIndex {
+
+    private final Map<Long, Entity> resourcesById = new LinkedHashMap<>();
+
+    private final Map<Long, List<Entity>> resourcesByProduct = Maps.newHashMap();
+
+    private final Map<Long, Map<String, BigDecimal>> initialQuantities = Maps.newHashMap();
+
+    private final Set<Long> updatedResourceIds = new LinkedHashSet<>();
+
+    private final Map<Long, Entity> deletedResources = new LinkedHashMap<>();
+
+    /**
+     * @param resources
+     *            resources of warehouse, which can be allocated using warehouse algorithm
+     * @param positionResources
+     *            resources chosen directly in positions, they are only available for those positions
+     */
+    public ResourceAllocationIndex(final Collection<Entity> resources, final Collection<Entity> positionResources) {
+        for (Entity resource : resources) {
+            if (add(resource)) {
+                resourcesByProduct.computeIfAbsent(getProductId(resource), productId -> Lists.newArrayList()).add(resource);
+            }
+        }
+
+        positionResources.forEach(this::add);
+    }
+
+    private boolean add(final Entity resource) {
+        if (resourcesById.containsKey(resource.getId())) {
+            return false;
+        }
+
+        resourcesById.put(resource.getId(), resource);
+
+        Map<String, BigDecimal> quantities = Maps.newHashMap();
+
+        quantities.put(ResourceFields.QUANTITY, getQuantity(resource, ResourceFields.QUANTITY));
+        quantities.put(ResourceFields.AVAILABLE_QUANTITY, getQuantity(resource, ResourceFields.AVAILABLE_QUANTITY));
+        quantities.put(ResourceFields.RESERVED_QUANTITY, getQuantity(resource, ResourceFields.RESERVED_QUANTITY));
+
+        initialQuantities.put(resource.getId(), quantities);
+
+        return true;
+    }
+
+    /**
+     * Returns resource with given id or null, if it doesn't exist or was already used up.
+     */
+    public Entity getResource(final Long resourceId) {
+        if (deletedResources.containsKey(resourceId)) {
+            return null;
+        }
+
+        return resourcesById.get(resourceId);
+    }
+
+    /**
+     * Returns resources of given product, which still have available quantity, in the order used by the old per position
+     * queries: first resources with given additional code, then the remaining ones (or all of them, when there is no
+     * additional code or no resource with this code), sorted according to warehouse algorithm.
+     *
+     * @param product
+     *            product
+     * @param additionalCode
+     *            additional code of position, may be null
+     * @param conversion
+     *            conversion which resources have to match
+     * @param matchingConversion
+     *            if false, resources with conversion other than given one are returned instead
+     * @param warehouseAlgorithm
+     *            algorithm of warehouse
+     * @return ordered list of resources
+     */
+    public List<Entity> getResources(final Entity product, final Entity additionalCode, final BigDecimal conversion,
+            final boolean matchingConversion, final WarehouseAlgorithm warehouseAlgorithm) {
+        List<Entity> candidates = resourcesByProduct.getOrDefault(product.getId(), Lists.newArrayList()).stream()
+                .filter(resource -> !deletedResources.containsKey(resource.getId()))
+                .filter(resource -> BigDecimal.ZERO.compareTo(getQuantity(resource, ResourceFields.AVAILABLE_QUANTITY)) < 0)
+                .filter(resource -> matchingConversion == hasConversion(resource, conversion)).collect(Collectors.toList());
+
+        Comparator<Entity> comparator = getComparator(warehouseAlgorithm);
+
+        List<Entity> resources = Lists.newArrayList();
+
+        if (additionalCode != null) {
+            resources.addAll(filterAndSort(candidates, resource -> hasAdditionalCode(resource, additionalCode), comparator));
+            resources.addAll(filterAndSort(candidates, resource -> !hasAdditionalCode(resource, additionalCode), comparator));
+        }
+
+        if (resources.isEmpty()) {
+            resources.addAll(filterAndSort(candidates, resource -> true, comparator));
+        }
+
+        return resources;
+    }
+
+    /**
+     * Returns sum of available quantities of given product resources with given conversion.
+     */
+    public BigDecimal getAvailableQuantity(final Entity product, final BigDecimal conversion) {
+        return resourcesByProduct.getOrDefault(product.getId(), Lists.newArrayList()).stream()
+                .filter(resource -> !deletedResources.containsKey(resource.getId()))
+                .filter(resource -> hasConversion(resource, conversion))
+                .map(resource -> getQuantity(resource, ResourceFields.AVAILABLE_QUANTITY))
+                .filter(quantity -> BigDecimal.ZERO.compareTo(quantity) < 0).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    public void markAsUpdated(final Entity resource) {
+        updatedResourceIds.add(resource.getId());
+    }
+
+    public void markAsDeleted(final Entity resource) {
+        updatedResourceIds.remove(resource.getId());
+        deletedResources.put(resource.getId(), resource);
+    }
+
+    public List<Entity> getUpdatedResources() {
+        return updatedResourceIds.stream().map(resourcesById::get).collect(Collectors.toList());
+    }
+
+    public List<Entity> getDeletedResources() {
+        return Lists.newArrayList(deletedResources.values());
+    }
+
+    /**
+     * Returns difference between current and loaded value of given quantity field of resource.
+     */
+    public BigDecimal getQuantityDelta(final Entity resource, final String quantityField) {
+        BigDecimal initialQuantity = initialQuantities.get(resource.getId()).get(quantityField);
+
+        return getQuantity(resource, quantityField).subtract(initialQuantity);
+    }
+
+    private List<Entity> filterAndSort(final List<Entity> resources, final Predicate<Entity> predicate,
+            final Comparator<Entity> comparator) {
+        return resources.stream().filter(predicate).sorted(comparator).collect(Collectors.toList());
+    }
+
+    static Comparator<Entity> getComparator(final WarehouseAlgorithm warehouseAlgorithm) {
+        Comparator<Entity> byTime = Comparator.comparing(resource -> resource.getDateField(ResourceFields.TIME),
+                Comparator.nullsLast(Comparator.<Date> naturalOrder()));
+        Comparator<Entity> byExpirationDate = Comparator.comparing(
+                resource -> resource.getDateField(ResourceFields.EXPIRATION_DATE),
+                Comparator.nullsLast(Comparator.<Date> naturalOrder()));
+        Comparator<Entity> byAvailableQuantity = Comparator.comparing(
+                resource -> getQuantity(resource, ResourceFields.AVAILABLE_QUANTITY));
+        Comparator<Entity> byId = Comparator.comparing(Entity::getId);
+
+        Comparator<Entity> comparator;
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            comparator = byTime.reversed();
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            comparator = byExpirationDate.thenComparing(byAvailableQuantity);
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            comparator = byExpirationDate.reversed().thenComparing(byAvailableQuantity);
+        } else {
+            comparator = byTime;
+        }
+
+        return comparator.thenComparing(byId);
+    }
+
+    private static boolean hasConversion(final Entity resource, final BigDecimal conversion) {
+        BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+
+        return resourceConversion != null && conversion != null && resourceConversion.compareTo(conversion) == 0;
+    }
+
+    private static boolean hasAdditionalCode(final Entity resource, final Entity additionalCode) {
+        Entity resourceAdditionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+        return resourceAdditionalCode != null && Objects.equals(resourceAdditionalCode.getId(), additionalCode.getId());
+    }
+
+    private static Long getProductId(final Entity resource) {
+        return resource.getBelongsToField(ResourceFields.PRODUCT).getId();
+    }
+
+    private static BigDecimal getQuantity(final Entity resource, final String quantityField) {
+        return BigDecimalUtils.convertNullToZero(resource.getDecimalField(quantityField));
+    }
+
+}
@@ -30,6 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.exception.LockAcquisitionException;
@@ -41,6 +43,7 @@ import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.basic.CalculationQuantityService;
@@ -82,6 +85,10 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
     private static final String L_LAST_NAME = "lastName";
 
+    private static final String L_ID = "id";
+
+    private static final String L_DOT_ID = ".id";
+
     private static final Logger logger = LoggerFactory.getLogger(ResourceManagementServiceImpl.class);
 
     @Autowired
@@ -333,16 +340,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return result;
     }
 
-    private Multimap<Entity, Entity> getProductsAndPositionsFromDocument(final Entity document) {
-        Multimap<Entity, Entity> map = ArrayListMultimap.create();
-
-        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
-
-        positions.forEach(position -> map.put(position.getBelongsToField(PositionFields.PRODUCT), position));
-
-        return map;
-    }
-
     private BigDecimal getQuantityOfProductFromMultimap(final Multimap<Long, BigDecimal> quantitiesForWarehouse,
             final Entity product) {
         List<BigDecimal> quantities = Lists.newArrayList(quantitiesForWarehouse.get(product.getId()));
@@ -360,13 +357,21 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
 
-        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouse,
-                getProductsAndPositionsFromDocument(document));
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        ResourceAllocationIndex resourceAllocationIndex = createResourceAllocationIndex(warehouse, positions);
+
+        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(resourceAllocationIndex, positions);
+
+        boolean fillResourceIrrespectiveOfConversion = isFillResourceIrrespectiveOfConversion();
+
+        List<Runnable> positionsToSave = Lists.newArrayList();
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm);
+            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm, resourceAllocationIndex,
+                    fillResourceIrrespectiveOfConversion);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -377,28 +382,40 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
                 errorMessageHolder.addErrorEntry(product, quantity.subtract(quantityInWarehouse, numberService.getMathContext()));
             } else {
-                if (generatedPositions.size() > 1) {
-                    if (Objects.nonNull(position.getId())) {
-                        position.getDataDefinition().delete(position.getId());
-                    }
-                    for (Entity newPosition : generatedPositions) {
-                        newPosition.setField(PositionFields.DOCUMENT, document);
-                        Entity saved = newPosition.getDataDefinition().save(newPosition);
-                        addPositionErrors(document, saved);
-                    }
-                } else {
-                    copyPositionValues(position, generatedPositions.get(0));
-                    Entity saved = position.getDataDefinition().save(position);
-                    addPositionErrors(document, saved);
-                }
+                positionsToSave.add(() -> savePositions(document, position, generatedPositions, false));
             }
         }
 
+        saveResources(resourceAllocationIndex);
+
+        positionsToSave.forEach(Runnable::run);
+
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouse, errorMessageHolder);
         }
     }
 
+    private void savePositions(final Entity document, final Entity position, final List<Entity> generatedPositions,
+            final boolean copyPositionErrors) {
+        if (generatedPositions.size() > 1) {
+            if (Objects.nonNull(position.getId())) {
+                position.getDataDefinition().delete(position.getId());
+            }
+            for (Entity newPosition : generatedPositions) {
+                newPosition.setField(PositionFields.DOCUMENT, document);
+                Entity saved = newPosition.getDataDefinition().save(newPosition);
+                addPositionErrors(document, saved);
+            }
+        } else {
+            copyPositionValues(position, generatedPositions.get(0));
+            if (copyPositionErrors) {
+                copyPositionErrors(position, generatedPositions.get(0));
+            }
+            Entity saved = position.getDataDefinition().save(position);
+            addPositionErrors(document, saved);
+        }
+    }
+
     private void addPositionErrors(final Entity document, final Entity saved) {
         if (!saved.isValid()) {
             document.setNotValid();
@@ -430,12 +447,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private List<Entity> updateResources(final Entity warehouse, final Entity position,
-            final WarehouseAlgorithm warehouseAlgorithm) {
+            final WarehouseAlgorithm warehouseAlgorithm, final ResourceAllocationIndex resourceAllocationIndex,
+            final boolean fillResourceIrrespectiveOfConversion) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForPositionFromIndex(resourceAllocationIndex, product, position,
+                warehouseAlgorithm, fillResourceIrrespectiveOfConversion);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -468,11 +487,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
 
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-
-                    resource.getDataDefinition().delete(resource.getId());
-
-                    palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+                    resourceAllocationIndex.markAsDeleted(resource);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal quantityInAdditionalUnit = calculationQuantityService.calculateAdditionalQuantity(
@@ -482,11 +497,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-                    Entity savedResource = resource.getDataDefinition().save(resource);
-
-                    if (!savedResource.isValid()) {
-                        throw new InvalidResourceException(savedResource);
-                    }
+                    resourceAllocationIndex.markAsUpdated(resource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceAvailableQuantity));
@@ -511,11 +522,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                Entity savedResource = resource.getDataDefinition().save(resource);
-
-                if (!savedResource.isValid()) {
-                    throw new InvalidResourceException(savedResource);
-                }
+                resourceAllocationIndex.markAsUpdated(resource);
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
 
@@ -546,13 +553,21 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
 
-        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouseFrom,
-                getProductsAndPositionsFromDocument(document));
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        ResourceAllocationIndex resourceAllocationIndex = createResourceAllocationIndex(warehouseFrom, positions);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(resourceAllocationIndex, positions);
+
+        boolean fillResourceIrrespectiveOfConversion = isFillResourceIrrespectiveOfConversion();
+
+        List<Runnable> positionsToSave = Lists.newArrayList();
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            List<Entity> generatedPositions = moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm);
+            List<Entity> generatedPositions = moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm,
+                    resourceAllocationIndex, fillResourceIrrespectiveOfConversion);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -563,24 +578,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
                 errorMessageHolder.addErrorEntry(product, quantity.subtract(quantityInWarehouse, numberService.getMathContext()));
             } else {
-                if (generatedPositions.size() > 1) {
-                    if (Objects.nonNull(position.getId())) {
-                        position.getDataDefinition().delete(position.getId());
-                    }
-                    for (Entity newPosition : generatedPositions) {
-                        newPosition.setField(PositionFields.DOCUMENT, document);
-                        Entity saved = newPosition.getDataDefinition().save(newPosition);
-                        addPositionErrors(document, saved);
-                    }
-                } else {
-                    copyPositionValues(position, generatedPositions.get(0));
-                    copyPositionErrors(position, generatedPositions.get(0));
-                    Entity saved = position.getDataDefinition().save(position);
-                    addPositionErrors(document, saved);
-                }
+                positionsToSave.add(() -> savePositions(document, position, generatedPositions, true));
             }
         }
 
+        saveResources(resourceAllocationIndex);
+
+        positionsToSave.forEach(Runnable::run);
+
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouseFrom, errorMessageHolder);
         }
@@ -593,12 +598,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private List<Entity> moveResources(final Entity warehouseFrom, final Entity warehouseTo, final Entity position,
-            final Object date, final WarehouseAlgorithm warehouseAlgorithm) {
+            final Object date, final WarehouseAlgorithm warehouseAlgorithm, final ResourceAllocationIndex resourceAllocationIndex,
+            final boolean fillResourceIrrespectiveOfConversion) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForPositionFromIndex(resourceAllocationIndex, product, position,
+                warehouseAlgorithm, fillResourceIrrespectiveOfConversion);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -631,11 +638,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
 
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-
-                    resource.getDataDefinition().delete(resource.getId());
-
-                    palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+                    resourceAllocationIndex.markAsDeleted(resource);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
 
@@ -646,11 +649,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-                    Entity savedResource = resource.getDataDefinition().save(resource);
-
-                    if (!savedResource.isValid()) {
-                        throw new InvalidResourceException(savedResource);
-                    }
+                    resourceAllocationIndex.markAsUpdated(resource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date);
@@ -681,11 +680,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                Entity savedResource = resource.getDataDefinition().save(resource);
-
-                if (!savedResource.isValid()) {
-                    throw new InvalidResourceException(savedResource);
-                }
+                resourceAllocationIndex.markAsUpdated(resource);
 
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date);
 
@@ -753,6 +748,122 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return resources;
     }
 
+    private ResourceAllocationIndex createResourceAllocationIndex(final Entity warehouse, final List<Entity> positions) {
+        DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+
+        Set<Long> productIds = positions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
+        Set<Long> positionResourceIds = positions.stream()
+                .map(position -> position.getBelongsToField(PositionFields.RESOURCE)).filter(Objects::nonNull)
+                .map(Entity::getId).filter(Objects::nonNull).collect(Collectors.toSet());
+
+        List<Entity> resources = Lists.newArrayList();
+        List<Entity> positionResources = Lists.newArrayList();
+
+        if (!productIds.isEmpty()) {
+            resources = resourceDD.find().add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                    .add(SearchRestrictions.in(ResourceFields.PRODUCT + L_DOT_ID, productIds))
+                    .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO)).list().getEntities();
+        }
+
+        if (!positionResourceIds.isEmpty()) {
+            positionResources = resourceDD.find().add(SearchRestrictions.in(L_ID, positionResourceIds)).list().getEntities();
+        }
+
+        return new ResourceAllocationIndex(resources, positionResources);
+    }
+
+    private Multimap<Long, BigDecimal> getQuantitiesInWarehouse(final ResourceAllocationIndex resourceAllocationIndex,
+            final List<Entity> positions) {
+        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
+        Multimap<Long, BigDecimal> conversionsForProducts = HashMultimap.create();
+
+        for (Entity position : positions) {
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            BigDecimal conversion = getConversionForResources(product, position);
+
+            if (conversion != null && conversionsForProducts.put(product.getId(), conversion.stripTrailingZeros())) {
+                result.put(product.getId(), resourceAllocationIndex.getAvailableQuantity(product, conversion));
+            }
+        }
+
+        return result;
+    }
+
+    private List<Entity> getResourcesForPositionFromIndex(final ResourceAllocationIndex resourceAllocationIndex,
+            final Entity product, final Entity position, final WarehouseAlgorithm warehouseAlgorithm,
+            final boolean fillResourceIrrespectiveOfConversion) {
+        Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+        if (resource != null && resource.getId() != null) {
+            resource = resourceAllocationIndex.getResource(resource.getId());
+        }
+
+        if (resource != null) {
+            Entity reservation = reservationsService.getReservationForPosition(position);
+
+            if (reservation != null) {
+                BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
+                BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
+            }
+
+            return Lists.newArrayList(resource);
+        }
+
+        Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+        BigDecimal conversion = getConversionForResources(product, position);
+
+        List<Entity> resources = resourceAllocationIndex.getResources(product, additionalCode, conversion, true,
+                warehouseAlgorithm);
+
+        if (fillResourceIrrespectiveOfConversion) {
+            resources.addAll(resourceAllocationIndex.getResources(product, additionalCode, conversion, false,
+                    warehouseAlgorithm));
+        }
+
+        return resources;
+    }
+
+    private BigDecimal getConversionForResources(final Entity product, final Entity position) {
+        if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            return BigDecimal.ONE;
+        } else {
+            return position.getDecimalField(PositionFields.CONVERSION);
+        }
+    }
+
+    private boolean isFillResourceIrrespectiveOfConversion() {
+        Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
+                ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
+
+        return documentPositionParameters.getBooleanField("fillResourceIrrespectiveOfConversion");
+    }
+
+    private void saveResources(final ResourceAllocationIndex resourceAllocationIndex) {
+        for (Entity resource : resourceAllocationIndex.getDeletedResources()) {
+            Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
+
+            resource.getDataDefinition().delete(resource.getId());
+
+            palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+        }
+
+        for (Entity resource : resourceAllocationIndex.getUpdatedResources()) {
+            saveResource(resource);
+        }
+    }
+
+    private void saveResource(final Entity resource) {
+        Entity savedResource = resource.getDataDefinition().save(resource);
+
+        if (!savedResource.isValid()) {
+            throw new InvalidResourceException(savedResource);
+        }
+    }
+
     private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity warehouse, final Entity product,
             final Entity additionalCode, final Entity position, boolean resourceIrrespectiveOfConversion,
             SearchOrder... searchOrders) {
@@ -0,0 +1,178 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps quantity, reserved quantity and available quantity of materialflowresources_resourcestock rows up to date, so stock
+ * checks don't have to aggregate resources and reservations through materialflowresources_resourcestockdto view.
+ * <p>
+ * Ledger is changed by deltas from resource and reservation hooks and from jdbc methods of {@link ReservationsService},
+ * within the transaction making the change. Each change is a single upsert on the unique (location_id, product_id) key, so
+ * concurrent first changes of a stock don't create duplicates.
+ * <p>
+ * Nightly reconciliation job compares the ledger with the view and fixes any drift. It isn't run when the plugin is enabled,
+ * ledger of an existing database is filled by the resource stock ledger migration script.
+ */
+@Service
+public class ResourceStockLedgerService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceStockLedgerService.class);
+
+    private static final String L_INSERT_STOCK = "INSERT INTO materialflowresources_resourcestock "
+            + "(id, location_id, product_id, quantity, reservedquantity, availablequantity) "
+            + "VALUES (nextval('materialflowresources_resourcestock_id_seq'), :locationId, :productId, "
+            + ":quantity, :reservedQuantity, :quantity - :reservedQuantity) ON CONFLICT (location_id, product_id) ";
+
+    private static final String L_UPSERT_STOCK = L_INSERT_STOCK + "DO UPDATE SET "
+            + "quantity = COALESCE(materialflowresources_resourcestock.quantity, 0) + EXCLUDED.quantity, "
+            + "reservedquantity = COALESCE(materialflowresources_resourcestock.reservedquantity, 0) + EXCLUDED.reservedquantity, "
+            + "availablequantity = COALESCE(materialflowresources_resourcestock.availablequantity, 0) + EXCLUDED.availablequantity";
+
+    private static final String L_CREATE_STOCK = L_INSERT_STOCK + "DO NOTHING";
+
+    private static final String L_SELECT_STOCKS = "SELECT product_id AS productId, COALESCE(SUM(quantity), 0) AS quantity, "
+            + "COALESCE(SUM(availablequantity), 0) AS availableQuantity FROM materialflowresources_resourcestock "
+            + "WHERE location_id = :locationId AND product_id IN (:productIds) GROUP BY product_id";
+
+    private static final String L_RECONCILE_STOCKS = "UPDATE materialflowresources_resourcestock rs SET "
+            + "quantity = dto.quantity, reservedquantity = dto.reservedquantity, availablequantity = dto.availablequantity "
+            + "FROM materialflowresources_resourcestockdto dto WHERE dto.id = rs.id AND ("
+            + "rs.quantity IS DISTINCT FROM dto.quantity OR rs.reservedquantity IS DISTINCT FROM dto.reservedquantity "
+            + "OR rs.availablequantity IS DISTINCT FROM dto.availablequantity)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public void addQuantity(final Long locationId, final Long productId, final BigDecimal quantity) {
+        applyChange(locationId, productId, BigDecimalUtils.convertNullToZero(quantity), BigDecimal.ZERO);
+    }
+
+    /**
+     * Creates an empty ledger row for given location and product, unless it already exists.
+     */
+    public void createStock(final Long locationId, final Long productId) {
+        jdbcTemplate.update(L_CREATE_STOCK, createParams(locationId, productId, BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    public void addReservedQuantity(final Long locationId, final Long productId, final BigDecimal reservedQuantity) {
+        applyChange(locationId, productId, BigDecimal.ZERO, BigDecimalUtils.convertNullToZero(reservedQuantity));
+    }
+
+    public void addReservedQuantityForDocument(final Long documentId, final Long productId, final BigDecimal reservedQuantity) {
+        Long locationId = jdbcTemplate.queryForObject(
+                "SELECT locationfrom_id FROM materialflowresources_document WHERE id = :documentId",
+                Collections.singletonMap("documentId", documentId), Long.class);
+        addReservedQuantity(locationId, productId, reservedQuantity);
+    }
+
+    private void applyChange(final Long locationId, final Long productId, final BigDecimal quantity,
+            final BigDecimal reservedQuantity) {
+        if (locationId == null || productId == null || BigDecimalUtils.valueEquals(quantity, BigDecimal.ZERO)
+                && BigDecimalUtils.valueEquals(reservedQuantity, BigDecimal.ZERO)) {
+            return;
+        }
+
+        jdbcTemplate.update(L_UPSERT_STOCK, createParams(locationId, productId, quantity, reservedQuantity));
+    }
+
+    private Map<String, Object> createParams(final Long locationId, final Long productId, final BigDecimal quantity,
+            final BigDecimal reservedQuantity) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", locationId);
+        params.put("productId", productId);
+        params.put("quantity", quantity);
+        params.put("reservedQuantity", reservedQuantity);
+        return params;
+    }
+
+    /**
+     * Returns stock of given products in given location, using one query for all of them.
+     *
+     * @return stocks by product id, products without stock in location are omitted
+     */
+    public Map<Long, ResourceStockDto> getStocks(final Long locationId, final Collection<Long> productIds) {
+        Map<Long, ResourceStockDto> stocks = Maps.newHashMap();
+        if (locationId == null || productIds.isEmpty()) {
+            return stocks;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", locationId);
+        params.put("productIds", productIds);
+
+        List<ResourceStockDto> resourceStocks = jdbcTemplate.query(L_SELECT_STOCKS, params,
+                BeanPropertyRowMapper.newInstance(ResourceStockDto.class));
+        for (ResourceStockDto resourceStock : resourceStocks) {
+            stocks.put(resourceStock.getProductId(), resourceStock);
+        }
+        return stocks;
+    }
+
+    public void reconcileTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                reconcile();
+            }
+
+        });
+    }
+
+    /**
+     * Compares the ledger with materialflowresources_resourcestockdto view and overwrites rows which differ.
+     *
+     * @return number of corrected rows
+     */
+    public int reconcile() {
+        int corrected = jdbcTemplate.update(L_RECONCILE_STOCKS, Collections.emptyMap());
+        if (corrected > 0) {
+            LOG.warn(String.format("Resource stock ledger was out of sync, corrected %d rows", corrected));
+        }
+        return corrected;
+    }
+
+}
@@ -17,37 +17,25 @@ import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
-import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
-import com.qcadoo.mes.materialFlowResources.constants.ResourceStockFields;
 import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
-import com.qcadoo.model.api.DataDefinition;
-import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
     @Autowired
-    private DataDefinitionService dataDefinitionService;
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private ResourceStockLedgerService resourceStockLedgerService;
 
     @Override
     public void createResourceStock(final Entity resource) {
         Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
         Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
-        Optional<ResourceStockDto> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (!maybeStock.isPresent()) {
-            DataDefinition resourceStockDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                    MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK);
-            Entity stock = resourceStockDD.create();
-            stock.setField(ResourceStockFields.LOCATION, location);
-            stock.setField(ResourceStockFields.PRODUCT, product);
-            resourceStockDD.save(stock);
-        }
+        resourceStockLedgerService.createStock(location.getId(), product.getId());
     }
 
     @Override
@@ -72,14 +60,14 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     private Optional<ResourceStockDto> getResourceStockForProductAndLocation(Entity product, Entity location) {
         StringBuilder query = new StringBuilder();
-        query.append("SELECT rs.* ");
-        query.append("FROM materialflowresources_resourcestockdto rs ");
+        query.append("SELECT rs.product_id AS productId, rs.quantity, rs.availableQuantity ");
+        query.append("FROM materialflowresources_resourcestock rs ");
         query.append("WHERE rs.location_id = :locationId AND rs.product_id = :productId ");
         query.append("LIMIT 1");
 
         Map<String, Object> params = Maps.newHashMap();
-        params.put("locationId", location.getId().intValue());
-        params.put("productId", product.getId().intValue());
+        params.put("locationId", location.getId());
+        params.put("productId", product.getId());
         List<ResourceStockDto> resourceStock = jdbcTemplate.query(query.toString(), params,
                 BeanPropertyRowMapper.newInstance(ResourceStockDto.class));
         if (resourceStock.isEmpty()) {
@@ -93,11 +81,15 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     public void checkResourcesStock(Entity document) {
         List<String> invalidProducts = new ArrayList<>();
         List<Entity> mergedPositions = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS));
+        Entity locationFrom = document.getBelongsToField(DocumentFields.LOCATION_FROM);
+        Map<Long, ResourceStockDto> stocks = resourceStockLedgerService.getStocks(locationFrom == null ? null
+                : locationFrom.getId(), mergedPositions.stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toList()));
         for (Entity position : mergedPositions) {
-            if ((position.getDecimalField(PositionFields.QUANTITY)
-                    .compareTo(getResourceStockAvailableQuantity(position.getBelongsToField(PositionFields.PRODUCT),
-                            document.getBelongsToField(DocumentFields.LOCATION_FROM))) > 0)) {
-                Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            ResourceStockDto stock = stocks.get(product.getId());
+            BigDecimal availableQuantity = stock == null ? BigDecimal.ZERO : stock.getAvailableQuantity();
+            if (position.getDecimalField(PositionFields.QUANTITY).compareTo(availableQuantity) > 0) {
                 invalidProducts.add(product.getStringField(ProductFields.NUMBER));
             }
         }
@@ -107,20 +99,18 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     }
 
     private List<Entity> mergePositionsBeforeValidation(final List<Entity> positions) {
-        List<Entity> mergedPositions = Lists.newArrayList();
+        Map<Long, Entity> mergedPositions = Maps.newLinkedHashMap();
         for (Entity position : positions) {
-            Optional<Entity> mergedPosition = mergedPositions.stream()
-                    .filter(merged -> merged.getBelongsToField(PositionFields.PRODUCT).getId()
-                            .equals(position.getBelongsToField(PositionFields.PRODUCT).getId()))
-                    .findAny();
-            if (mergedPosition.isPresent()) {
-                mergedPosition.get().setField(PositionFields.QUANTITY, mergedPosition.get()
-                        .getDecimalField(PositionFields.QUANTITY).add(position.getDecimalField(PositionFields.QUANTITY)));
+            Long productId = position.getBelongsToField(PositionFields.PRODUCT).getId();
+            Entity mergedPosition = mergedPositions.get(productId);
+            if (mergedPosition != null) {
+                mergedPosition.setField(PositionFields.QUANTITY, mergedPosition.getDecimalField(PositionFields.QUANTITY)
+                        .add(position.getDecimalField(PositionFields.QUANTITY)));
             } else {
-                mergedPositions.add(position.copy());
+                mergedPositions.put(productId, position.copy());
             }
         }
-        return mergedPositions;
+        return Lists.newArrayList(mergedPositions.values());
     }
 
     private void addDocumentErrors(Entity document, List<String> invalidProducts) {
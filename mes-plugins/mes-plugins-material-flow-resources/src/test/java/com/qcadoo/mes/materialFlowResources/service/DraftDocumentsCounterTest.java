@@ -0,0 +1,151 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class DraftDocumentsCounterTest {
+
+    private static final Long L_USER_ID = 1L;
+
+    private DraftDocumentsCounter draftDocumentsCounter;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, List<ResultSet>> countRowsByTenant = Maps.newHashMap();
+
+    private final Map<Integer, List<Long>> userLocationsByTenant = Maps.newHashMap();
+
+    private int currentTenantId;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        draftDocumentsCounter = new DraftDocumentsCounter();
+
+        ReflectionTestUtils.setField(draftDocumentsCounter, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(draftDocumentsCounter, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> currentTenantId);
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willAnswer(invocation -> {
+            RowMapper<?> rowMapper = (RowMapper<?>) invocation.getArguments()[2];
+            List<Object> counts = Lists.newArrayList();
+
+            for (ResultSet row : countRowsByTenant.getOrDefault(currentTenantId, Lists.newArrayList())) {
+                counts.add(rowMapper.mapRow(row, counts.size()));
+            }
+
+            return counts;
+        });
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(Long.class))).willAnswer(
+                invocation -> Lists.newArrayList(userLocationsByTenant.getOrDefault(currentTenantId, Lists.newArrayList())));
+    }
+
+    @Test
+    public void shouldKeepCountsAndLocationsPerTenant() throws Exception {
+        // given
+        addCount(1, 10L, null, 2);
+        addCount(1, 20L, null, 3);
+        userLocationsByTenant.put(1, Lists.newArrayList(10L));
+
+        addCount(2, 10L, null, 7);
+        userLocationsByTenant.put(2, Lists.newArrayList(20L));
+
+        // when
+        currentTenantId = 1;
+        int firstTenantCount = draftDocumentsCounter.countForUser(L_USER_ID);
+
+        currentTenantId = 2;
+        int secondTenantCount = draftDocumentsCounter.countForUser(L_USER_ID);
+
+        // then
+        assertEquals(2, firstTenantCount);
+        assertEquals(0, secondTenantCount);
+    }
+
+    @Test
+    public void shouldReloadUserLocationsAfterTheyChange() throws Exception {
+        // given
+        currentTenantId = 1;
+        addCount(1, 10L, null, 2);
+        addCount(1, 20L, null, 3);
+        userLocationsByTenant.put(1, Lists.newArrayList(10L));
+
+        int countBefore = draftDocumentsCounter.countForUser(L_USER_ID);
+
+        userLocationsByTenant.put(1, Lists.newArrayList(20L));
+
+        // when
+        int cachedCount = draftDocumentsCounter.countForUser(L_USER_ID);
+
+        draftDocumentsCounter.invalidateUserLocations(L_USER_ID);
+
+        int countAfter = draftDocumentsCounter.countForUser(L_USER_ID);
+
+        // then
+        assertEquals(2, countBefore);
+        assertEquals(2, cachedCount);
+        assertEquals(3, countAfter);
+    }
+
+    private void addCount(final int tenantId, final Long locationFromId, final Long locationToId, final int documents)
+            throws Exception {
+        ResultSet row = mock(ResultSet.class);
+
+        given(row.getObject("locationFromId")).willReturn(locationFromId);
+        given(row.getObject("locationToId")).willReturn(locationToId);
+        given(row.getInt("documents")).willReturn(documents);
+
+        countRowsByTenant.computeIfAbsent(tenantId, id -> Lists.newArrayList()).add(row);
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import static com.qcadoo.mes.materialFlowResources.service.DraftDocumentsNotificationService.ROLE_DOCUMENTS_NOTIFICATION;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
@@ -17,7 +18,6 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 
-import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.security.api.SecurityService;
 
@@ -30,7 +30,7 @@ public class DraftDocumentsNotificationServiceTest {
     private DraftDocumentsNotificationService draftDocumentsNotificationService;
 
     @Mock
-    private DataDefinitionService dataDefinitionService;
+    private DraftDocumentsCounter draftDocumentsCounter;
 
     @Mock
     private SecurityService securityService;
@@ -38,7 +38,7 @@ public class DraftDocumentsNotificationServiceTest {
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
-        draftDocumentsNotificationService = new DraftDocumentsNotificationService(securityService, dataDefinitionService);
+        draftDocumentsNotificationService = new DraftDocumentsNotificationService(securityService, draftDocumentsCounter);
     }
 
     @Test
@@ -106,4 +106,17 @@ public class DraftDocumentsNotificationServiceTest {
         assertTrue(result);
     }
 
+    @Test
+    public void shouldCountDraftDocumentsWithCounter() {
+        // given
+        given(draftDocumentsCounter.countForUser(CURRENT_USER_ID)).willReturn(3);
+
+        // when
+        int result = draftDocumentsNotificationService.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(draftDocumentsCounter).countForUser(CURRENT_USER_ID);
+        assertEquals(3, result);
+    }
+
 }
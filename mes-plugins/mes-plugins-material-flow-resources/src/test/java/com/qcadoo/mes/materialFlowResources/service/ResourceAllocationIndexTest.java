@@ -0,0 +1,177 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.Entity;
+
+public class ResourceAllocationIndexTest {
+
+    private Entity product;
+
+    private Entity additionalCode;
+
+    private Entity older;
+
+    private Entity newer;
+
+    private Entity withAdditionalCode;
+
+    private Entity otherConversion;
+
+    private ResourceAllocationIndex resourceAllocationIndex;
+
+    @Before
+    public void init() {
+        product = mockEntity(1L);
+        additionalCode = mockEntity(2L);
+
+        older = mockResource(10L, new Date(1000L), null, BigDecimal.ONE, BigDecimal.valueOf(5L));
+        newer = mockResource(11L, new Date(2000L), null, BigDecimal.ONE, BigDecimal.valueOf(3L));
+        withAdditionalCode = mockResource(12L, new Date(3000L), additionalCode, BigDecimal.ONE, BigDecimal.valueOf(2L));
+        otherConversion = mockResource(13L, new Date(500L), null, BigDecimal.TEN, BigDecimal.valueOf(7L));
+
+        resourceAllocationIndex = new ResourceAllocationIndex(Lists.newArrayList(newer, older, withAdditionalCode,
+                otherConversion), Collections.emptyList());
+    }
+
+    @Test
+    public void shouldReturnResourcesInFifoOrder() {
+        // when
+        List<Entity> resources = resourceAllocationIndex.getResources(product, null, BigDecimal.ONE, true,
+                WarehouseAlgorithm.FIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(older, newer, withAdditionalCode), resources);
+    }
+
+    @Test
+    public void shouldReturnResourcesInLifoOrder() {
+        // when
+        List<Entity> resources = resourceAllocationIndex.getResources(product, null, BigDecimal.ONE, true,
+                WarehouseAlgorithm.LIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(withAdditionalCode, newer, older), resources);
+    }
+
+    @Test
+    public void shouldReturnResourcesWithAdditionalCodeFirst() {
+        // when
+        List<Entity> resources = resourceAllocationIndex.getResources(product, additionalCode, BigDecimal.ONE, true,
+                WarehouseAlgorithm.FIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(withAdditionalCode, older, newer), resources);
+    }
+
+    @Test
+    public void shouldReturnResourcesWithOtherConversion() {
+        // when
+        List<Entity> resources = resourceAllocationIndex.getResources(product, null, new BigDecimal("1.000"), false,
+                WarehouseAlgorithm.FIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(otherConversion), resources);
+    }
+
+    @Test
+    public void shouldSkipUsedUpResources() {
+        // given
+        given(older.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(BigDecimal.ZERO);
+        resourceAllocationIndex.markAsDeleted(newer);
+
+        // when
+        List<Entity> resources = resourceAllocationIndex.getResources(product, null, BigDecimal.ONE, true,
+                WarehouseAlgorithm.FIFO);
+
+        // then
+        assertEquals(Lists.newArrayList(withAdditionalCode), resources);
+        assertNull(resourceAllocationIndex.getResource(newer.getId()));
+        assertEquals(Lists.newArrayList(newer), resourceAllocationIndex.getDeletedResources());
+    }
+
+    @Test
+    public void shouldSumAvailableQuantityForConversion() {
+        // when
+        BigDecimal availableQuantity = resourceAllocationIndex.getAvailableQuantity(product, BigDecimal.ONE);
+
+        // then
+        assertEquals(0, BigDecimal.valueOf(10L).compareTo(availableQuantity));
+    }
+
+    @Test
+    public void shouldCalculateQuantityDeltaForUpdatedResource() {
+        // given
+        given(older.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(BigDecimal.valueOf(2L));
+        resourceAllocationIndex.markAsUpdated(older);
+
+        // when
+        BigDecimal delta = resourceAllocationIndex.getQuantityDelta(older, ResourceFields.AVAILABLE_QUANTITY);
+
+        // then
+        assertEquals(0, BigDecimal.valueOf(-3L).compareTo(delta));
+        assertTrue(resourceAllocationIndex.getUpdatedResources().contains(older));
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+    private Entity mockResource(final Long id, final Date time, final Entity additionalCode, final BigDecimal conversion,
+            final BigDecimal availableQuantity) {
+        Entity resource = mockEntity(id);
+
+        given(resource.getBelongsToField(ResourceFields.PRODUCT)).willReturn(product);
+        given(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+        given(resource.getDateField(ResourceFields.TIME)).willReturn(time);
+        given(resource.getDecimalField(ResourceFields.CONVERSION)).willReturn(conversion);
+        given(resource.getDecimalField(ResourceFields.QUANTITY)).willReturn(availableQuantity);
+        given(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(availableQuantity);
+        given(resource.getDecimalField(ResourceFields.RESERVED_QUANTITY)).willReturn(BigDecimal.ZERO);
+
+        return resource;
+    }
+
+}
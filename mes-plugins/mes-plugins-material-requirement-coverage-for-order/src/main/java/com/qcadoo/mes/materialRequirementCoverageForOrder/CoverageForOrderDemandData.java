@@ -0,0 +1,100 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirementCoverageForOrder;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Table;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.Entity;
+
+public class CoverageForOrderDemandData {
+
+    private final List<Entity> coveredOperationProductInComponents;
+
+    private final Map<Long, Set<Long>> technologiesInputProductIds;
+
+    private final Set<Long> intermediateProductIds;
+
+    private final Table<Long, Long, BigDecimal> basicUsedQuantities;
+
+    private final Table<Long, Long, BigDecimal> trackingUsedQuantities;
+
+    private final Map<Long, Table<Long, Long, BigDecimal>> trackingUsedQuantitiesForOperations;
+
+    public CoverageForOrderDemandData(final List<Entity> coveredOperationProductInComponents,
+            final Map<Long, Set<Long>> technologiesInputProductIds, final Set<Long> intermediateProductIds,
+            final Table<Long, Long, BigDecimal> basicUsedQuantities, final Table<Long, Long, BigDecimal> trackingUsedQuantities,
+            final Map<Long, Table<Long, Long, BigDecimal>> trackingUsedQuantitiesForOperations) {
+        this.coveredOperationProductInComponents = coveredOperationProductInComponents;
+        this.technologiesInputProductIds = technologiesInputProductIds;
+        this.intermediateProductIds = intermediateProductIds;
+        this.basicUsedQuantities = basicUsedQuantities;
+        this.trackingUsedQuantities = trackingUsedQuantities;
+        this.trackingUsedQuantitiesForOperations = trackingUsedQuantitiesForOperations;
+    }
+
+    public List<Entity> getCoveredOperationProductInComponents(final Entity order) {
+        Set<Long> inputProductIds = technologiesInputProductIds.get(order.getBelongsToField(OrderFields.TECHNOLOGY).getId());
+
+        if (inputProductIds == null) {
+            return Collections.emptyList();
+        }
+
+        return coveredOperationProductInComponents.stream()
+                .filter(opic -> inputProductIds.contains(opic.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId()))
+                .collect(Collectors.toList());
+    }
+
+    public boolean isIntermediate(final Long productId) {
+        return intermediateProductIds.contains(productId);
+    }
+
+    public BigDecimal getUsedQuantity(final Long orderId, final Long technologyOperationComponentId, final Long productId,
+            final String typeOfProductionRecording) {
+        BigDecimal usedQuantity;
+
+        if (TypeOfProductionRecording.BASIC.getStringValue().equals(typeOfProductionRecording)) {
+            usedQuantity = basicUsedQuantities.get(orderId, productId);
+        } else if (TypeOfProductionRecording.FOR_EACH.getStringValue().equals(typeOfProductionRecording)) {
+            Table<Long, Long, BigDecimal> usedQuantities = trackingUsedQuantitiesForOperations
+                    .get(technologyOperationComponentId);
+
+            usedQuantity = (usedQuantities == null) ? null : usedQuantities.get(orderId, productId);
+        } else {
+            usedQuantity = trackingUsedQuantities.get(orderId, productId);
+        }
+
+        return BigDecimalUtils.convertNullToZero(usedQuantity);
+    }
+
+}
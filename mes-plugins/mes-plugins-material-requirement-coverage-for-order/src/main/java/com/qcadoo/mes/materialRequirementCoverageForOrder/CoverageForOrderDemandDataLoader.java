@@ -0,0 +1,284 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirementCoverageForOrder;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
+import com.qcadoo.mes.deliveries.constants.DeliveryFields;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
+import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyState;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Loads everything the demand explosion of a coverage for order needs in a fixed number of queries, whatever the number of
+ * orders in the coverage horizon.
+ */
+@Service
+public class CoverageForOrderDemandDataLoader {
+
+    private static final String L_ID = "id";
+
+    private static final String L_TECHNOLOGY_OPERATION_COMPONENT = "technologyOperationComponent";
+
+    private static final String L_TECHNOLOGY_ID = "technologyid";
+
+    private static final String L_TECHNOLOGY_OPERATION_COMPONENT_ID = "technologyoperationcomponentid";
+
+    private static final String L_ORDER_ID = "orderid";
+
+    private static final String L_PRODUCT_ID = "productid";
+
+    private static final String L_USED_QUANTITY = "usedquantity";
+
+    private static final String L_TECHNOLOGIES_INPUT_PRODUCTS_QUERY = "SELECT DISTINCT toc.technology_id AS technologyid, "
+            + "opic.product_id AS productid FROM technologies_operationproductincomponent opic "
+            + "JOIN technologies_technologyoperationcomponent toc ON toc.id = opic.operationcomponent_id "
+            + "WHERE toc.technology_id IN (:technologyIds) AND opic.product_id IN (:productIds)";
+
+    private static final String L_INTERMEDIATE_PRODUCTS_QUERY = "SELECT DISTINCT technology.product_id AS productid "
+            + "FROM technologies_technology technology WHERE technology.product_id IN (:productIds) "
+            + "AND technology.technologytype IS NULL AND technology.state IN (:states)";
+
+    private static final String L_BASIC_USED_QUANTITIES_QUERY = "SELECT bpc.order_id AS orderid, bpc.product_id AS productid, "
+            + "bpc.usedquantity AS usedquantity FROM basicproductioncounting_basicproductioncounting bpc "
+            + "WHERE bpc.order_id IN (:orderIds) AND bpc.product_id IN (:productIds) ORDER BY bpc.id";
+
+    private static final String L_TRACKING_USED_QUANTITIES_QUERY = "SELECT pt.order_id AS orderid, "
+            + "pt.technologyoperationcomponent_id AS technologyoperationcomponentid, topic.product_id AS productid, "
+            + "SUM(topic.usedquantity) AS usedquantity FROM productioncounting_trackingoperationproductincomponent topic "
+            + "JOIN productioncounting_productiontracking pt ON pt.id = topic.productiontracking_id "
+            + "WHERE pt.order_id IN (:orderIds) AND topic.product_id IN (:productIds) "
+            + "GROUP BY pt.order_id, pt.technologyoperationcomponent_id, topic.product_id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public CoverageForOrderDemandData load(final List<Entity> orders, final Entity coveredOrder) {
+        List<Entity> coveredOperationProductInComponents = getOperationProductInComponents(coveredOrder
+                .getBelongsToField(OrderFields.TECHNOLOGY));
+
+        Set<Long> productIds = coveredOperationProductInComponents.stream()
+                .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
+
+        Map<Long, Set<Long>> technologiesInputProductIds = Maps.newHashMap();
+        Set<Long> intermediateProductIds = Sets.newHashSet();
+        Table<Long, Long, BigDecimal> basicUsedQuantities = HashBasedTable.create();
+        Table<Long, Long, BigDecimal> trackingUsedQuantities = HashBasedTable.create();
+        Map<Long, Table<Long, Long, BigDecimal>> trackingUsedQuantitiesForOperations = Maps.newHashMap();
+
+        if (!productIds.isEmpty() && !orders.isEmpty()) {
+            technologiesInputProductIds = getTechnologiesInputProductIds(orders, productIds);
+            intermediateProductIds = getIntermediateProductIds(productIds);
+
+            List<Long> basicOrderIds = Lists.newArrayList();
+            List<Long> trackingOrderIds = Lists.newArrayList();
+
+            for (Entity order : orders) {
+                if (technologiesInputProductIds.containsKey(order.getBelongsToField(OrderFields.TECHNOLOGY).getId())) {
+                    if (TypeOfProductionRecording.BASIC.getStringValue().equals(
+                            order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING))) {
+                        basicOrderIds.add(order.getId());
+                    } else {
+                        trackingOrderIds.add(order.getId());
+                    }
+                }
+            }
+
+            fillBasicUsedQuantities(basicUsedQuantities, basicOrderIds, productIds);
+            fillTrackingUsedQuantities(trackingUsedQuantities, trackingUsedQuantitiesForOperations, trackingOrderIds,
+                    productIds);
+        }
+
+        return new CoverageForOrderDemandData(coveredOperationProductInComponents, technologiesInputProductIds,
+                intermediateProductIds, basicUsedQuantities, trackingUsedQuantities, trackingUsedQuantitiesForOperations);
+    }
+
+    public ListMultimap<Long, Entity> getDeliveriesProducts(final List<Entity> deliveries) {
+        ListMultimap<Long, Entity> deliveriesProducts = ArrayListMultimap.create();
+
+        List<Long> receiveConfirmWaitingDeliveryIds = Lists.newArrayList();
+        List<Long> otherDeliveryIds = Lists.newArrayList();
+
+        for (Entity delivery : deliveries) {
+            if (DeliveryStateStringValues.RECEIVE_CONFIRM_WAITING.equals(delivery.getStringField(DeliveryFields.STATE))) {
+                receiveConfirmWaitingDeliveryIds.add(delivery.getId());
+            } else {
+                otherDeliveryIds.add(delivery.getId());
+            }
+        }
+
+        fillDeliveriesProducts(deliveriesProducts, DeliveriesConstants.MODEL_DELIVERED_PRODUCT,
+                receiveConfirmWaitingDeliveryIds);
+        fillDeliveriesProducts(deliveriesProducts, DeliveriesConstants.MODEL_ORDERED_PRODUCT, otherDeliveryIds);
+
+        return deliveriesProducts;
+    }
+
+    private void fillDeliveriesProducts(final ListMultimap<Long, Entity> deliveriesProducts, final String modelName,
+            final List<Long> deliveryIds) {
+        if (deliveryIds.isEmpty()) {
+            return;
+        }
+
+        List<Entity> deliveryProducts = dataDefinitionService.get(DeliveriesConstants.PLUGIN_IDENTIFIER, modelName).find()
+                .createAlias(DeliveryFields.DELIVERY, DeliveryFields.DELIVERY, JoinType.INNER)
+                .add(SearchRestrictions.in(DeliveryFields.DELIVERY + "." + L_ID, deliveryIds))
+                .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+
+        for (Entity deliveryProduct : deliveryProducts) {
+            deliveriesProducts.put(deliveryProduct.getBelongsToField(DeliveryFields.DELIVERY).getId(), deliveryProduct);
+        }
+    }
+
+    private List<Entity> getOperationProductInComponents(final Entity technology) {
+        return dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT)
+                .find()
+                .createAlias(OperationProductInComponentFields.OPERATION_COMPONENT, L_TECHNOLOGY_OPERATION_COMPONENT,
+                        JoinType.INNER)
+                .add(SearchRestrictions.belongsTo(L_TECHNOLOGY_OPERATION_COMPONENT + "."
+                        + TechnologyOperationComponentFields.TECHNOLOGY, technology))
+                .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+    }
+
+    private Map<Long, Set<Long>> getTechnologiesInputProductIds(final List<Entity> orders, final Set<Long> productIds) {
+        Set<Long> technologyIds = orders.stream().map(order -> order.getBelongsToField(OrderFields.TECHNOLOGY).getId())
+                .collect(Collectors.toSet());
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("technologyIds", technologyIds);
+        params.put("productIds", productIds);
+
+        Map<Long, Set<Long>> technologiesInputProductIds = Maps.newHashMap();
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_TECHNOLOGIES_INPUT_PRODUCTS_QUERY, params)) {
+            technologiesInputProductIds.computeIfAbsent(getLong(row, L_TECHNOLOGY_ID), technologyId -> Sets.newHashSet()).add(
+                    getLong(row, L_PRODUCT_ID));
+        }
+
+        return technologiesInputProductIds;
+    }
+
+    private Set<Long> getIntermediateProductIds(final Set<Long> productIds) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("productIds", productIds);
+        params.put("states", Lists.newArrayList(TechnologyState.ACCEPTED.getStringValue(),
+                TechnologyState.CHECKED.getStringValue()));
+
+        return jdbcTemplate.queryForList(L_INTERMEDIATE_PRODUCTS_QUERY, params).stream().map(row -> getLong(row, L_PRODUCT_ID))
+                .collect(Collectors.toSet());
+    }
+
+    private void fillBasicUsedQuantities(final Table<Long, Long, BigDecimal> basicUsedQuantities, final List<Long> orderIds,
+            final Set<Long> productIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("orderIds", orderIds);
+        params.put("productIds", productIds);
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_BASIC_USED_QUANTITIES_QUERY, params)) {
+            Long orderId = getLong(row, L_ORDER_ID);
+            Long productId = getLong(row, L_PRODUCT_ID);
+            BigDecimal usedQuantity = (BigDecimal) row.get(L_USED_QUANTITY);
+
+            if (!basicUsedQuantities.contains(orderId, productId)) {
+                basicUsedQuantities.put(orderId, productId, (usedQuantity == null) ? BigDecimal.ZERO : usedQuantity);
+            }
+        }
+    }
+
+    private void fillTrackingUsedQuantities(final Table<Long, Long, BigDecimal> trackingUsedQuantities,
+            final Map<Long, Table<Long, Long, BigDecimal>> trackingUsedQuantitiesForOperations, final List<Long> orderIds,
+            final Set<Long> productIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("orderIds", orderIds);
+        params.put("productIds", productIds);
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_TRACKING_USED_QUANTITIES_QUERY, params)) {
+            BigDecimal usedQuantity = (BigDecimal) row.get(L_USED_QUANTITY);
+
+            if (usedQuantity == null) {
+                continue;
+            }
+
+            Long orderId = getLong(row, L_ORDER_ID);
+            Long productId = getLong(row, L_PRODUCT_ID);
+            Long technologyOperationComponentId = getLong(row, L_TECHNOLOGY_OPERATION_COMPONENT_ID);
+
+            BigDecimal orderUsedQuantity = trackingUsedQuantities.get(orderId, productId);
+
+            trackingUsedQuantities.put(orderId, productId, (orderUsedQuantity == null) ? usedQuantity : orderUsedQuantity
+                    .add(usedQuantity));
+
+            if (technologyOperationComponentId != null) {
+                trackingUsedQuantitiesForOperations.computeIfAbsent(technologyOperationComponentId,
+                        tocId -> HashBasedTable.create()).put(orderId, productId, usedQuantity);
+            }
+        }
+    }
+
+    private Long getLong(final Map<String, Object> row, final String column) {
+        Number value = (Number) row.get(column);
+
+        return (value == null) ? null : value.longValue();
+    }
+
+}
@@ -24,13 +24,12 @@
 package com.qcadoo.mes.materialRequirementCoverageForOrder;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.tree.ProductNumberingServiceImpl;
-import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
-import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
 import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
 import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
@@ -50,11 +49,7 @@ import com.qcadoo.mes.materialRequirementCoverageForOrder.constans.ProductExtrac
 import com.qcadoo.mes.materialRequirements.MaterialRequirementService;
 import com.qcadoo.mes.materialRequirements.constants.InputProductsRequiredForType;
 import com.qcadoo.mes.materialRequirements.constants.OrderFieldsMR;
-import com.qcadoo.mes.operationalTasks.constants.OperationalTaskFields;
-import com.qcadoo.mes.operationalTasks.constants.OperationalTasksConstants;
 import com.qcadoo.mes.operationalTasksForOrders.constants.InputProductsRequiredForTypeOTFO;
-import com.qcadoo.mes.operationalTasksForOrders.constants.OperationalTaskFieldsOTFO;
-import com.qcadoo.mes.operationalTasksForOrders.constants.TechOperCompOperationalTasksFields;
 import com.qcadoo.mes.orderSupplies.constants.MaterialRequirementCoverageFields;
 import com.qcadoo.mes.orderSupplies.constants.OrderSuppliesConstants;
 import com.qcadoo.mes.orderSupplies.constants.ParameterFieldsOS;
@@ -64,16 +59,11 @@ import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
 import com.qcadoo.mes.productFlowThruDivision.ProductFlowThruDivisionService;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
-import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
-import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
-import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
 import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
 import com.qcadoo.mes.technologies.ProductQuantitiesService;
 import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
-import com.qcadoo.mes.technologies.states.constants.TechnologyState;
 import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -123,6 +113,9 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private CoverageForOrderDemandDataLoader coverageForOrderDemandDataLoader;
+
     @Transactional
     @Override
     public void estimateProductCoverageInTime(Entity coverageForOrder, Boolean automatic) {
@@ -166,18 +159,12 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
 
     private void estimateProductDeliveriesInTime(final Map<Long, Entity> productAndCoverageProducts,
             final List<Entity> includedDeliveries, final Date actualDate, final Entity belongsToFamily, final boolean automatic) {
+        ListMultimap<Long, Entity> deliveriesProducts = coverageForOrderDemandDataLoader.getDeliveriesProducts(includedDeliveries);
+
         for (Entity delivery : includedDeliveries) {
             Date coverageDate = getCoverageProductLoggingDateForDelivery(delivery, actualDate);
 
-            List<Entity> deliveryProducts = Lists.newArrayList();
-
-            if (DeliveryStateStringValues.RECEIVE_CONFIRM_WAITING.equals(delivery.getStringField(DeliveryFields.STATE))) {
-                deliveryProducts = delivery.getHasManyField(DeliveryFields.DELIVERED_PRODUCTS);
-            } else {
-                deliveryProducts = delivery.getHasManyField(DeliveryFields.ORDERED_PRODUCTS);
-            }
-
-            for (Entity deliveryProduct : deliveryProducts) {
+            for (Entity deliveryProduct : deliveriesProducts.get(delivery.getId())) {
                 estimateProductDelivery(productAndCoverageProducts, new CoverageProductForDelivery(coverageDate, delivery,
                         deliveryProduct), belongsToFamily, automatic);
             }
@@ -274,68 +261,12 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
     private void estimateProductDemandInTime(final Map<Long, Entity> productAndCoverageProducts, final List<Entity> orders,
             final Date coverageToDate, final Date actualDate, final Entity belongsToFamily, final Entity coveredOrder,
             final boolean automatic) {
+        CoverageForOrderDemandData demandData = coverageForOrderDemandDataLoader.load(orders, coveredOrder);
 
         for (Entity order : orders) {
+            List<Entity> coveredOperationProductInComponents = demandData.getCoveredOperationProductInComponents(order);
 
-            String sql_coveredOrdersProducts = "select                                                     \n"
-                    + "            toc.id as tocId,                                                                         \n"
-                    + "            parentToc.id as parentId,                                                                \n"
-                    + "            inputProd.id as prodId,\n"
-                    + "opic.id as opicId,\n"
-
-                    + "            (select count(*) from #technologies_technology t where t.product = inputProd and t.master = true\n"
-                    + ") as prodTechId                                                                     \n"
-                    + "            from  #technologies_operationProductInComponent opic                                           \n"
-                    + "            left join opic.product as inputProd                                                      \n"
-                    + "            left join opic.operationComponent toc                                                    \n"
-                    + "            left join toc.operation operation                                                        \n"
-                    + "            left join toc.operationProductOutComponents opoc                                      \n"
-                    + "            left join opoc.product outputProd                                                        \n"
-                    + "            left join toc.technology tech                                                            \n"
-                    + "            left join toc.parent as parentToc                                                        \n"
-                    + "            where tech.id = :technologyID ";
-            List<Entity> coveredOrderProducts = dataDefinitionService
-                    .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT)
-                    .find(sql_coveredOrdersProducts)
-                    .setLong("technologyID", order.getBelongsToField(OrderFields.TECHNOLOGY).getId()).list().getEntities();
-
-            StringBuilder coveredOrdersProductsToSql = new StringBuilder(
-                    "select                                                     \n"
-                            + "            toc.id as tocId,                                                                         \n"
-                            + "            parentToc.id as parentId,                                                                \n"
-                            + "            inputProd.id as prodId,\n"
-                            + "opic.id as opicId,\n"
-
-                            + "            (select count(*) from #technologies_technology t where t.product = inputProd and t.master = true\n"
-                            + ") as prodTechId                                                                     \n"
-                            + "            from  #technologies_operationProductInComponent opic                                           \n"
-                            + "            left join opic.product as inputProd                                                      \n"
-                            + "            left join opic.operationComponent toc                                                    \n"
-                            + "            left join toc.operation operation                                                        \n"
-                            + "            left join toc.operationProductOutComponents opoc                                      \n"
-                            + "            left join opoc.product outputProd                                                        \n"
-                            + "            left join toc.technology tech                                                            \n"
-                            + "            left join toc.parent as parentToc                                                        \n"
-                            + "            where tech.id = :technologyID " + " and inputProd.id IN (\n");
-            boolean isFirst = true;
-            for (Entity entity : coveredOrderProducts) {
-                if (isFirst) {
-                    coveredOrdersProductsToSql.append(entity.getField("prodId"));
-                    isFirst = false;
-                } else {
-                    coveredOrdersProductsToSql.append(" ,");
-                    coveredOrdersProductsToSql.append(entity.getField("prodId"));
-                }
-
-            }
-            coveredOrdersProductsToSql.append(")");
-
-            List<Entity> coveredOrderProductsTo = dataDefinitionService
-                    .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT)
-                    .find(coveredOrdersProductsToSql.toString())
-                    .setLong("technologyID", coveredOrder.getBelongsToField(OrderFields.TECHNOLOGY).getId()).list().getEntities();
-
-            if (!coveredOrderProductsTo.isEmpty()) {
+            if (!coveredOperationProductInComponents.isEmpty()) {
                 String typeOfProductionRecording = order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING);
                 String intputProductsRequiredForType = order.getStringField(OrderFieldsMR.INPUT_PRODUCTS_REQUIRED_FOR_TYPE);
 
@@ -360,39 +291,32 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
                 operationProductComponentWithQuantityContainer = operationProductComponentWithQuantityContainer
                         .getAllWithSameEntityType(TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
 
-                for (Entity productE : coveredOrderProductsTo) {
-
-                    Entity technologyOperationComponent = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                            TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).get((Long) productE.getField("tocId"));
-                    Entity operationProductInComponent = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                            TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT).get((Long) productE.getField("opicId"));
+                for (Entity operationProductInComponent : coveredOperationProductInComponents) {
+                    Entity technologyOperationComponent = operationProductInComponent
+                            .getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT);
 
                     estimateProductDemandForOperationInComponent(productAndCoverageProducts, new CoverageProductForOrder(
                             coverageToDate, order, technologyOperationComponent, null, operationProductInComponent,
                             productComponentQuantities, operationProductComponentWithQuantityContainer), belongsToFamily,
-                            coveredOrder, automatic);
-
+                            coveredOrder, demandData, automatic);
                 }
-
             }
         }
     }
 
     private void estimateProductDemandForOperationInComponent(final Map<Long, Entity> productAndCoverageProducts,
             final CoverageProductForOrder coverageProductForOrder, final Entity belongsToFamily, final Entity coveredOrder,
-            final boolean automatic) {
+            final CoverageForOrderDemandData demandData, final boolean automatic) {
         if (checkIfContainsKey(coverageProductForOrder)
                 && checkIfProductShouldBeAdded(belongsToFamily, coverageProductForOrder.getProduct())
                 && checkIfProductWithOrderShouldBeAdded(productAndCoverageProducts, coverageProductForOrder.getProduct(),
                         coverageProductForOrder.getOrder(), coverageProductForOrder.getTypeOfProductionRecording())) {
 
-            fillProductTypeAndOrder(coverageProductForOrder, coveredOrder);
+            fillProductTypeAndOrder(coverageProductForOrder, coveredOrder, demandData);
 
             BigDecimal quantity = getQuantity(coverageProductForOrder);
 
-            quantity = subtractUsedQuantityFromProductionTrackings(quantity, coverageProductForOrder.getOrder(),
-                    coverageProductForOrder.getTechnologyOperationComponent(), coverageProductForOrder.getProduct(),
-                    coverageProductForOrder.getTypeOfProductionRecording());
+            quantity = subtractUsedQuantityFromProductionTrackings(quantity, coverageProductForOrder, demandData);
 
             coverageProductForOrder.setQuantity(quantity);
 
@@ -407,23 +331,11 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
         }
     }
 
-    private void fillProductTypeAndOrder(final CoverageProductForOrder coverageProductForOrder, final Entity coveredOrder) {
+    private void fillProductTypeAndOrder(final CoverageProductForOrder coverageProductForOrder, final Entity coveredOrder,
+            final CoverageForOrderDemandData demandData) {
         if (!coverageProductForOrder.getOrder().getId().equals(coveredOrder.getId())) {
             return;
         }
-        Entity opic = coverageProductForOrder.getOperationProductInComponent();
-
-        Entity product = opic.getBelongsToField(OperationProductInComponentFields.PRODUCT);
-
-        List<Entity> technologiesForProduct = dataDefinitionService
-                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY)
-                .find()
-                .add(SearchRestrictions.belongsTo(TechnologyFields.PRODUCT, product))
-                .add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE))
-                .add(SearchRestrictions.or(
-                        SearchRestrictions.eq(TechnologyFields.STATE, TechnologyState.ACCEPTED.getStringValue()),
-                        SearchRestrictions.eq(TechnologyFields.STATE, TechnologyState.CHECKED.getStringValue()))).list()
-                .getEntities();
 
         if (coverageProductForOrder.getProductComponentQuantities() != null
                 && coverageProductForOrder.getProductComponentQuantities().size() > 0) {
@@ -434,10 +346,10 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
                     .getOperationProductComponentWithQuantityContainer().get(
                             coverageProductForOrder.getOperationProductInComponent()));
         }
-        if (technologiesForProduct.isEmpty()) {
-            coverageProductForOrder.setProductType(ProductType.COMPONENT);
-        } else {
+        if (demandData.isIntermediate(coverageProductForOrder.getProduct().getId())) {
             coverageProductForOrder.setProductType(ProductType.INTERMEDIATE);
+        } else {
+            coverageProductForOrder.setProductType(ProductType.COMPONENT);
         }
 
     }
@@ -823,28 +735,11 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
         }
     }
 
-    private Entity getOperationalTaskFromDB(final Entity order, final Entity technologyOperationComponent) {
-        return dataDefinitionService
-                .get(OperationalTasksConstants.PLUGIN_IDENTIFIER, OperationalTasksConstants.MODEL_OPERATIONAL_TASK)
-                .find()
-                .createAlias(OperationalTaskFieldsOTFO.TECH_OPER_COMP_OPERATIONAL_TASK,
-                        OperationalTaskFieldsOTFO.TECH_OPER_COMP_OPERATIONAL_TASK)
-                .add(SearchRestrictions.belongsTo(OperationalTaskFieldsOTFO.ORDER, order))
-                .add(SearchRestrictions.belongsTo(OperationalTaskFieldsOTFO.TECH_OPER_COMP_OPERATIONAL_TASK + "."
-                        + TechOperCompOperationalTasksFields.TECHNOLOGY_OPERATION_COMPONENT, technologyOperationComponent))
-                .addOrder(SearchOrders.asc(OperationalTaskFields.START_DATE)).setMaxResults(1).uniqueResult();
-    }
-
-    private BigDecimal subtractUsedQuantityFromProductionTrackings(final BigDecimal quantity, final Entity order,
-            final Entity technologyOperationComponent, final Entity product, final String typeOfProductionRecording) {
-        BigDecimal usedQuantity;
-
-        if (TypeOfProductionRecording.BASIC.getStringValue().equals(typeOfProductionRecording)) {
-            usedQuantity = getUsedQuantityForBasic(order, product);
-        } else {
-            usedQuantity = getUsedQuantityForOtherFromProductionTrackings(order, technologyOperationComponent, product,
-                    typeOfProductionRecording);
-        }
+    private BigDecimal subtractUsedQuantityFromProductionTrackings(final BigDecimal quantity,
+            final CoverageProductForOrder coverageProductForOrder, final CoverageForOrderDemandData demandData) {
+        BigDecimal usedQuantity = demandData.getUsedQuantity(coverageProductForOrder.getOrder().getId(),
+                coverageProductForOrder.getTechnologyOperationComponent().getId(), coverageProductForOrder.getProduct().getId(),
+                coverageProductForOrder.getTypeOfProductionRecording());
 
         BigDecimal demandQuantity = quantity.subtract(usedQuantity, numberService.getMathContext());
 
@@ -855,61 +750,6 @@ public class MaterialRequirementCoverageForOrderServiceImpl implements MaterialR
         }
     }
 
-    private BigDecimal getUsedQuantityForBasic(final Entity order, final Entity product) {
-        BigDecimal usedQuantity = BigDecimal.ZERO;
-
-        Entity basicProductionCounting = dataDefinitionService
-                .get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
-                        BasicProductionCountingConstants.MODEL_BASIC_PRODUCTION_COUNTING).find()
-                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.ORDER, order))
-                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-
-        if (basicProductionCounting != null) {
-            BigDecimal quantity = basicProductionCounting.getDecimalField(BasicProductionCountingFields.USED_QUANTITY);
-
-            if (quantity != null) {
-                usedQuantity = usedQuantity.add(quantity, numberService.getMathContext());
-            }
-        }
-
-        return usedQuantity;
-    }
-
-    private BigDecimal getUsedQuantityForOtherFromProductionTrackings(final Entity order,
-            final Entity technologyOperationComponent, final Entity product, final String typeOfProductionRecording) {
-        BigDecimal usedQuantity = BigDecimal.ZERO;
-
-        SearchCriteriaBuilder searchCriteriaBuilder = dataDefinitionService
-                .get(ProductionCountingConstants.PLUGIN_IDENTIFIER, ProductionCountingConstants.MODEL_PRODUCTION_TRACKING).find()
-                .add(SearchRestrictions.belongsTo(ProductionTrackingFields.ORDER, order));
-
-        if (TypeOfProductionRecording.FOR_EACH.getStringValue().equals(typeOfProductionRecording)) {
-            searchCriteriaBuilder.add(SearchRestrictions.belongsTo(ProductionTrackingFields.TECHNOLOGY_OPERATION_COMPONENT,
-                    technologyOperationComponent));
-        }
-
-        List<Entity> productionTrackings = searchCriteriaBuilder.list().getEntities();
-
-        for (Entity productionTracking : productionTrackings) {
-            Entity trackingOperationProductInComponent = productionTracking
-                    .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS).find()
-                    .add(SearchRestrictions.belongsTo(TrackingOperationProductInComponentFields.PRODUCT, product))
-                    .setMaxResults(1).uniqueResult();
-
-            if (trackingOperationProductInComponent != null) {
-                BigDecimal quantity = trackingOperationProductInComponent
-                        .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
-
-                if (quantity != null) {
-                    usedQuantity = usedQuantity.add(quantity, numberService.getMathContext());
-                }
-            }
-        }
-
-        return usedQuantity;
-    }
-
     @Override
     public Entity getMRCForOrder(Long mRCId) {
         return getMRCDD().get(mRCId);
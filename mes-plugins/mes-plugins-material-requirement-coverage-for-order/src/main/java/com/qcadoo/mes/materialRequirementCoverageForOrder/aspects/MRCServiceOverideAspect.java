@@ -40,6 +40,7 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
@@ -199,4 +200,31 @@ public class MRCServiceOverideAspect {
         jdbcTemplate.update(sql, namedParameters);
     }
 
+    @Pointcut("execution(private String com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl.getCoverageProductInsertQuery(..))")
+    public void getCoverageProductInsertQueryA() {
+    }
+
+    @Around("getCoverageProductInsertQueryA()")
+    public String aroundGetCoverageProductInsertQuery(final ProceedingJoinPoint pjp) {
+        return "INSERT INTO ordersupplies_coverageproduct "
+                + "(id, materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
+                + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
+                + "productunit, productType, planedQuantity, produceQuantity,fromSelectedOrder, allProductsType, company_id) "
+                + "VALUES (:id, :materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
+                + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
+                + ":productunit, :productType, :planedQuantity, :produceQuantity,:fromSelectedOrder, :allProductsType, :company_id)";
+    }
+
+    @Pointcut("execution(private java.util.Map<String, Object> com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl.getCoverageProductParameters(..)) "
+            + "&& args(materialRequirementCoverage, covProduct)")
+    public void getCoverageProductParametersA(Entity materialRequirementCoverage, Entity covProduct) {
+    }
+
+    @AfterReturning(value = "getCoverageProductParametersA(materialRequirementCoverage, covProduct)", returning = "parameters")
+    public void afterGetCoverageProductParameters(final Entity materialRequirementCoverage, final Entity covProduct,
+            final Map<String, Object> parameters) {
+        parameters.put(L_PRODUCT_TYPE, covProduct.getStringField(L_PRODUCT_TYPE));
+        parameters.put(L_PLANNED_QUANTITY, covProduct.getDecimalField(L_PLANNED_QUANTITY));
+    }
+
 }
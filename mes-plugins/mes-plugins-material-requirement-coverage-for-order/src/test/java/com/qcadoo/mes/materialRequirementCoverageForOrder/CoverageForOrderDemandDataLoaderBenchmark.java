@@ -0,0 +1,325 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirementCoverageForOrder;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
+import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrder;
+import com.qcadoo.model.api.search.SearchResult;
+
+/**
+ * Times the previous per order demand explosion against {@link CoverageForOrderDemandDataLoader} on a synthetic horizon of
+ * 500 orders. Every statement of both is charged a simulated database round trip. It isn't a test, run its main method
+ * manually; equality of both results is covered by {@link CoverageForOrderDemandDataLoaderTest}.
+ */
+public final class CoverageForOrderDemandDataLoaderBenchmark {
+
+    private static final int L_ORDERS = 500;
+
+    private static final int L_TECHNOLOGIES = 50;
+
+    private static final int L_PRODUCTS = 400;
+
+    private static final int L_PRODUCTS_PER_TECHNOLOGY = 30;
+
+    private static final int L_TRACKINGS_PER_ORDER = 4;
+
+    private static final long L_ROUND_TRIP_MICROS = 100;
+
+    private static final int L_WARM_UP_ROUNDS = 2;
+
+    private static final int L_ROUNDS = 5;
+
+    private final CoverageForOrderDemandDataLoader coverageForOrderDemandDataLoader = new CoverageForOrderDemandDataLoader();
+
+    private final Map<Long, Set<Long>> technologiesProductIds = Maps.newHashMap();
+
+    private final List<Entity> orders = Lists.newArrayList();
+
+    private final List<Entity> coveredOperationProductInComponents = Lists.newArrayList();
+
+    private int roundTrips;
+
+    private CoverageForOrderDemandDataLoaderBenchmark() {
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+
+        ReflectionTestUtils.setField(coverageForOrderDemandDataLoader, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(coverageForOrderDemandDataLoader, "jdbcTemplate", jdbcTemplate);
+
+        Random random = new Random(1);
+
+        for (long technologyId = 1; technologyId <= L_TECHNOLOGIES; technologyId++) {
+            Set<Long> productIds = Sets.newHashSet();
+
+            while (productIds.size() < L_PRODUCTS_PER_TECHNOLOGY) {
+                productIds.add(1L + random.nextInt(L_PRODUCTS));
+            }
+
+            technologiesProductIds.put(technologyId, productIds);
+        }
+
+        for (long orderId = 1; orderId <= L_ORDERS; orderId++) {
+            String typeOfProductionRecording = (orderId % 3 == 0) ? TypeOfProductionRecording.BASIC.getStringValue()
+                    : TypeOfProductionRecording.CUMULATED.getStringValue();
+
+            orders.add(mockOrder(orderId, 1L + random.nextInt(L_TECHNOLOGIES), typeOfProductionRecording));
+        }
+
+        long operationProductInComponentId = 1;
+
+        for (Long productId : getTechnologyProductIds(orders.get(0))) {
+            coveredOperationProductInComponents.add(mockOperationProductInComponent(operationProductInComponentId++,
+                    productId));
+        }
+
+        given(dataDefinitionService.get(anyString(), anyString())).willAnswer(invocation -> mockDataDefinition());
+        given(jdbcTemplate.queryForList(anyString(), anyMap())).willAnswer(new QueryAnswer());
+    }
+
+    public static void main(final String[] args) {
+        CoverageForOrderDemandDataLoaderBenchmark benchmark = new CoverageForOrderDemandDataLoaderBenchmark();
+
+        for (int round = 0; round < L_WARM_UP_ROUNDS; round++) {
+            benchmark.explodePerOrder();
+            benchmark.explodeSetBased();
+        }
+
+        int perOrderComponents = 0;
+        int setBasedComponents = 0;
+        int perOrderRoundTrips = 0;
+        int setBasedRoundTrips = 0;
+        long perOrderNanos = 0;
+        long setBasedNanos = 0;
+
+        for (int round = 0; round < L_ROUNDS; round++) {
+            benchmark.roundTrips = 0;
+
+            long start = System.nanoTime();
+            perOrderComponents = benchmark.explodePerOrder();
+            perOrderNanos += System.nanoTime() - start;
+
+            perOrderRoundTrips = benchmark.roundTrips;
+            benchmark.roundTrips = 0;
+
+            start = System.nanoTime();
+            setBasedComponents = benchmark.explodeSetBased();
+            setBasedNanos += System.nanoTime() - start;
+
+            setBasedRoundTrips = benchmark.roundTrips;
+        }
+
+        if (perOrderComponents != setBasedComponents) {
+            throw new IllegalStateException(String.format("per order explosion covered %d components, loader %d",
+                    perOrderComponents, setBasedComponents));
+        }
+
+        System.out.println(String.format("%d orders, %d covered components, %d us per round trip, per order: %d round trips, "
+                + "%d ms, set based: %d round trips, %d ms (%d rounds)", L_ORDERS, setBasedComponents, L_ROUND_TRIP_MICROS,
+                perOrderRoundTrips, perOrderNanos / 1000000, setBasedRoundTrips, setBasedNanos / 1000000, L_ROUNDS));
+    }
+
+    /**
+     * Replays the statements of the previous explosion: technology products of every order, then for each covered component
+     * its technology operation component, operation product in component and used quantity, the latter read per tracking
+     * unless the order is recorded basically, and finally the technologies of the covered order products.
+     */
+    private int explodePerOrder() {
+        Set<Long> coveredProductIds = getTechnologyProductIds(orders.get(0));
+
+        int components = 0;
+
+        for (Entity order : orders) {
+            simulateRoundTrip();
+            Set<Long> productIds = getTechnologyProductIds(order);
+            simulateRoundTrip();
+
+            for (Long productId : Sets.intersection(coveredProductIds, productIds)) {
+                simulateRoundTrip();
+                simulateRoundTrip();
+
+                if (TypeOfProductionRecording.BASIC.getStringValue().equals(
+                        order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING))) {
+                    simulateRoundTrip();
+                } else {
+                    for (int tracking = 0; tracking <= L_TRACKINGS_PER_ORDER; tracking++) {
+                        simulateRoundTrip();
+                    }
+                }
+
+                components++;
+            }
+        }
+
+        for (int i = 0; i < coveredProductIds.size(); i++) {
+            simulateRoundTrip();
+        }
+
+        return components;
+    }
+
+    private int explodeSetBased() {
+        CoverageForOrderDemandData demandData = coverageForOrderDemandDataLoader.load(orders, orders.get(0));
+
+        int components = 0;
+
+        for (Entity order : orders) {
+            for (Entity operationProductInComponent : demandData.getCoveredOperationProductInComponents(order)) {
+                demandData.getUsedQuantity(order.getId(), 1L,
+                        operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId(),
+                        order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING));
+
+                components++;
+            }
+        }
+
+        return components;
+    }
+
+    private Set<Long> getTechnologyProductIds(final Entity order) {
+        return technologiesProductIds.get(order.getBelongsToField(OrderFields.TECHNOLOGY).getId());
+    }
+
+    private void simulateRoundTrip() {
+        roundTrips++;
+
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(L_ROUND_TRIP_MICROS));
+    }
+
+    private DataDefinition mockDataDefinition() {
+        DataDefinition dataDefinition = mock(DataDefinition.class);
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.createAlias(anyString(), anyString(), any(JoinType.class))).willReturn(
+                searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.addOrder(any(SearchOrder.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willAnswer(invocation -> {
+            simulateRoundTrip();
+
+            return searchResult;
+        });
+        given(searchResult.getEntities()).willReturn(coveredOperationProductInComponents);
+
+        return dataDefinition;
+    }
+
+    private Entity mockOrder(final Long id, final Long technologyId, final String typeOfProductionRecording) {
+        Entity order = mock(Entity.class);
+        Entity technology = mock(Entity.class);
+
+        given(technology.getId()).willReturn(technologyId);
+        given(order.getId()).willReturn(id);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING)).willReturn(typeOfProductionRecording);
+
+        return order;
+    }
+
+    private Entity mockOperationProductInComponent(final Long id, final Long productId) {
+        Entity operationProductInComponent = mock(Entity.class);
+        Entity product = mock(Entity.class);
+
+        given(product.getId()).willReturn(productId);
+        given(operationProductInComponent.getId()).willReturn(id);
+        given(operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)).willReturn(product);
+
+        return operationProductInComponent;
+    }
+
+    private class QueryAnswer implements Answer<List<Map<String, Object>>> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<Map<String, Object>> answer(final InvocationOnMock invocation) throws Throwable {
+            simulateRoundTrip();
+
+            String query = (String) invocation.getArguments()[0];
+            Map<String, Object> params = (Map<String, Object>) invocation.getArguments()[1];
+            Collection<Long> productIds = (Collection<Long>) params.get("productIds");
+
+            List<Map<String, Object>> rows = Lists.newArrayList();
+
+            if (query.contains("technologies_operationproductincomponent")) {
+                for (Long technologyId : (Collection<Long>) params.get("technologyIds")) {
+                    for (Long productId : Sets.intersection(technologiesProductIds.get(technologyId),
+                            Sets.newHashSet(productIds))) {
+                        rows.add(ImmutableMap.<String, Object> of("technologyid", technologyId, "productid", productId));
+                    }
+                }
+            } else if (query.contains("technologies_technology")) {
+                for (Long productId : productIds) {
+                    if (productId % 2 == 0) {
+                        rows.add(ImmutableMap.<String, Object> of("productid", productId));
+                    }
+                }
+            } else {
+                for (Long orderId : (Collection<Long>) params.get("orderIds")) {
+                    for (Long productId : productIds) {
+                        rows.add(ImmutableMap.<String, Object> of("orderid", orderId, "technologyoperationcomponentid", 1L,
+                                "productid", productId, "usedquantity", BigDecimal.ONE));
+                    }
+                }
+            }
+
+            return rows;
+        }
+
+    }
+
+}
@@ -0,0 +1,435 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialRequirementCoverageForOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
+import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrder;
+import com.qcadoo.model.api.search.SearchResult;
+
+/**
+ * Checks {@link CoverageForOrderDemandDataLoader} against the per order demand explosion it replaced. Both read the same
+ * fixture: the loader through its queries, the per order lookups of covered components, intermediate products and used
+ * quantities straight from the fixture rows.
+ */
+public class CoverageForOrderDemandDataLoaderTest {
+
+    private static final Long L_COVERED_TECHNOLOGY_ID = 1L;
+
+    private CoverageForOrderDemandDataLoader coverageForOrderDemandDataLoader;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final Map<Long, Set<Long>> technologiesProductIds = Maps.newHashMap();
+
+    private final List<Entity> coveredOperationProductInComponents = Lists.newArrayList();
+
+    private final List<TechnologyRow> technologies = Lists.newArrayList();
+
+    private final List<BasicProductionCountingRow> basicProductionCountings = Lists.newArrayList();
+
+    private final List<TrackingProductRow> trackingProducts = Lists.newArrayList();
+
+    private final List<Entity> orders = Lists.newArrayList();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        coverageForOrderDemandDataLoader = new CoverageForOrderDemandDataLoader();
+
+        ReflectionTestUtils.setField(coverageForOrderDemandDataLoader, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(coverageForOrderDemandDataLoader, "jdbcTemplate", jdbcTemplate);
+
+        technologiesProductIds.put(L_COVERED_TECHNOLOGY_ID, ImmutableSet.of(1L, 2L, 3L, 4L));
+        technologiesProductIds.put(2L, ImmutableSet.of(2L, 3L, 5L));
+        technologiesProductIds.put(3L, ImmutableSet.of(5L, 6L));
+        technologiesProductIds.put(4L, ImmutableSet.of(1L, 4L));
+
+        coveredOperationProductInComponents.add(mockOperationProductInComponent(101L, 11L, 1L));
+        coveredOperationProductInComponents.add(mockOperationProductInComponent(102L, 11L, 2L));
+        coveredOperationProductInComponents.add(mockOperationProductInComponent(103L, 12L, 3L));
+        coveredOperationProductInComponents.add(mockOperationProductInComponent(104L, 12L, 4L));
+
+        technologies.add(new TechnologyRow(2L, null, TechnologyState.ACCEPTED.getStringValue()));
+        technologies.add(new TechnologyRow(2L, null, TechnologyState.CHECKED.getStringValue()));
+        technologies.add(new TechnologyRow(3L, null, TechnologyState.DRAFT.getStringValue()));
+        technologies.add(new TechnologyRow(4L, "02withPatternTechnology", TechnologyState.CHECKED.getStringValue()));
+        technologies.add(new TechnologyRow(5L, null, TechnologyState.ACCEPTED.getStringValue()));
+
+        orders.add(mockOrder(1L, L_COVERED_TECHNOLOGY_ID, TypeOfProductionRecording.FOR_EACH));
+        orders.add(mockOrder(2L, 2L, TypeOfProductionRecording.BASIC));
+        orders.add(mockOrder(3L, 3L, TypeOfProductionRecording.CUMULATED));
+        orders.add(mockOrder(4L, 4L, TypeOfProductionRecording.CUMULATED));
+        orders.add(mockOrder(5L, 2L, TypeOfProductionRecording.FOR_EACH));
+        orders.add(mockOrder(6L, 4L, TypeOfProductionRecording.BASIC));
+
+        basicProductionCountings.add(new BasicProductionCountingRow(2L, 2L, new BigDecimal("5")));
+        basicProductionCountings.add(new BasicProductionCountingRow(2L, 2L, new BigDecimal("7")));
+        basicProductionCountings.add(new BasicProductionCountingRow(2L, 3L, null));
+        basicProductionCountings.add(new BasicProductionCountingRow(6L, 4L, new BigDecimal("1.5")));
+
+        trackingProducts.add(new TrackingProductRow(1L, 1L, 11L, 1L, new BigDecimal("2")));
+        trackingProducts.add(new TrackingProductRow(1L, 1L, 11L, 2L, new BigDecimal("3")));
+        trackingProducts.add(new TrackingProductRow(2L, 1L, 12L, 3L, new BigDecimal("1")));
+        trackingProducts.add(new TrackingProductRow(3L, 1L, 11L, 1L, new BigDecimal("4")));
+        trackingProducts.add(new TrackingProductRow(4L, 4L, null, 1L, new BigDecimal("2.5")));
+        trackingProducts.add(new TrackingProductRow(4L, 4L, null, 4L, null));
+        trackingProducts.add(new TrackingProductRow(5L, 4L, null, 1L, new BigDecimal("1")));
+        trackingProducts.add(new TrackingProductRow(6L, 5L, 12L, 3L, new BigDecimal("6")));
+
+        given(dataDefinitionService.get(anyString(), anyString())).willAnswer(invocation -> mockDataDefinition());
+        given(jdbcTemplate.queryForList(anyString(), anyMap())).willAnswer(new QueryAnswer());
+    }
+
+    @Test
+    public void shouldTakeSameCoveredComponentsAsPerOrderExplosion() {
+        // when
+        CoverageForOrderDemandData demandData = coverageForOrderDemandDataLoader.load(orders, orders.get(0));
+
+        // then
+        for (Entity order : orders) {
+            assertEquals("covered components of order " + order.getId(), getIds(getCoveredComponentsPerOrder(order)),
+                    getIds(demandData.getCoveredOperationProductInComponents(order)));
+        }
+    }
+
+    @Test
+    public void shouldTakeSameUsedQuantitiesAsPerOrderExplosion() {
+        // when
+        CoverageForOrderDemandData demandData = coverageForOrderDemandDataLoader.load(orders, orders.get(0));
+
+        // then
+        for (Entity order : orders) {
+            String typeOfProductionRecording = order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING);
+
+            for (Entity operationProductInComponent : getCoveredComponentsPerOrder(order)) {
+                Long technologyOperationComponentId = operationProductInComponent.getBelongsToField(
+                        OperationProductInComponentFields.OPERATION_COMPONENT).getId();
+                Long productId = operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)
+                        .getId();
+
+                BigDecimal expected = getUsedQuantityPerOrder(order, technologyOperationComponentId, productId);
+                BigDecimal actual = demandData.getUsedQuantity(order.getId(), technologyOperationComponentId, productId,
+                        typeOfProductionRecording);
+
+                assertEquals(String.format("used quantity of product %d in order %d", productId, order.getId()), 0,
+                        expected.compareTo(actual));
+            }
+        }
+    }
+
+    @Test
+    public void shouldFindSameIntermediateProductsAsPerOrderExplosion() {
+        // when
+        CoverageForOrderDemandData demandData = coverageForOrderDemandDataLoader.load(orders, orders.get(0));
+
+        // then
+        for (Long productId : technologiesProductIds.get(L_COVERED_TECHNOLOGY_ID)) {
+            assertEquals("product " + productId, isIntermediatePerOrder(productId), demandData.isIntermediate(productId));
+        }
+    }
+
+    @Test
+    public void shouldNotQueryPerOrder() {
+        // when
+        coverageForOrderDemandDataLoader.load(orders, orders.get(0));
+
+        // then
+        verify(jdbcTemplate, times(4)).queryForList(anyString(), anyMap());
+    }
+
+    private List<Entity> getCoveredComponentsPerOrder(final Entity order) {
+        Set<Long> productIds = technologiesProductIds.get(order.getBelongsToField(OrderFields.TECHNOLOGY).getId());
+
+        return coveredOperationProductInComponents.stream()
+                .filter(opic -> productIds.contains(opic.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId()))
+                .collect(Collectors.toList());
+    }
+
+    private boolean isIntermediatePerOrder(final Long productId) {
+        return technologies.stream().anyMatch(
+                technology -> technology.productId.equals(productId) && Objects.isNull(technology.technologyType)
+                        && (TechnologyState.ACCEPTED.getStringValue().equals(technology.state) || TechnologyState.CHECKED
+                                .getStringValue().equals(technology.state)));
+    }
+
+    private BigDecimal getUsedQuantityPerOrder(final Entity order, final Long technologyOperationComponentId,
+            final Long productId) {
+        String typeOfProductionRecording = order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING);
+
+        if (TypeOfProductionRecording.BASIC.getStringValue().equals(typeOfProductionRecording)) {
+            Optional<BasicProductionCountingRow> basicProductionCounting = basicProductionCountings.stream()
+                    .filter(row -> row.orderId.equals(order.getId()) && row.productId.equals(productId)).findFirst();
+
+            return basicProductionCounting.map(row -> row.usedQuantity).filter(Objects::nonNull).orElse(BigDecimal.ZERO);
+        }
+
+        BigDecimal usedQuantity = BigDecimal.ZERO;
+
+        Set<Long> trackingIds = trackingProducts.stream()
+                .filter(row -> row.orderId.equals(order.getId()))
+                .filter(row -> !TypeOfProductionRecording.FOR_EACH.getStringValue().equals(typeOfProductionRecording)
+                        || technologyOperationComponentId.equals(row.technologyOperationComponentId))
+                .map(row -> row.trackingId).collect(Collectors.toSet());
+
+        for (Long trackingId : trackingIds) {
+            Optional<TrackingProductRow> trackingProduct = trackingProducts.stream()
+                    .filter(row -> row.trackingId.equals(trackingId) && row.productId.equals(productId)).findFirst();
+
+            if (trackingProduct.isPresent() && trackingProduct.get().usedQuantity != null) {
+                usedQuantity = usedQuantity.add(trackingProduct.get().usedQuantity);
+            }
+        }
+
+        return usedQuantity;
+    }
+
+    private List<Long> getIds(final List<Entity> entities) {
+        return entities.stream().map(Entity::getId).collect(Collectors.toList());
+    }
+
+    private DataDefinition mockDataDefinition() {
+        DataDefinition dataDefinition = mock(DataDefinition.class);
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.createAlias(anyString(), anyString(), any(JoinType.class))).willReturn(
+                searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.addOrder(any(SearchOrder.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(coveredOperationProductInComponents);
+
+        return dataDefinition;
+    }
+
+    private Entity mockOrder(final Long id, final Long technologyId, final TypeOfProductionRecording typeOfProductionRecording) {
+        Entity order = mock(Entity.class);
+        Entity technology = mockEntity(technologyId);
+
+        given(order.getId()).willReturn(id);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getStringField(OrderFieldsPC.TYPE_OF_PRODUCTION_RECORDING)).willReturn(
+                typeOfProductionRecording.getStringValue());
+
+        return order;
+    }
+
+    private Entity mockOperationProductInComponent(final Long id, final Long technologyOperationComponentId,
+            final Long productId) {
+        Entity operationProductInComponent = mockEntity(id);
+        Entity technologyOperationComponent = mockEntity(technologyOperationComponentId);
+        Entity product = mockEntity(productId);
+
+        given(operationProductInComponent.getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT)).willReturn(
+                technologyOperationComponent);
+        given(operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)).willReturn(product);
+
+        return operationProductInComponent;
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+    /**
+     * Answers the loader queries from the fixture rows, the way the database would.
+     */
+    private class QueryAnswer implements Answer<List<Map<String, Object>>> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<Map<String, Object>> answer(final InvocationOnMock invocation) throws Throwable {
+            String query = (String) invocation.getArguments()[0];
+            Map<String, Object> params = (Map<String, Object>) invocation.getArguments()[1];
+            Collection<Long> productIds = (Collection<Long>) params.get("productIds");
+
+            List<Map<String, Object>> rows = Lists.newArrayList();
+
+            if (query.contains("technologies_operationproductincomponent")) {
+                for (Long technologyId : (Collection<Long>) params.get("technologyIds")) {
+                    for (Long productId : technologiesProductIds.get(technologyId)) {
+                        if (productIds.contains(productId)) {
+                            rows.add(ImmutableMap.<String, Object> of("technologyid", technologyId, "productid", productId));
+                        }
+                    }
+                }
+            } else if (query.contains("technologies_technology")) {
+                Collection<String> states = (Collection<String>) params.get("states");
+
+                technologies.stream()
+                        .filter(technology -> productIds.contains(technology.productId)
+                                && Objects.isNull(technology.technologyType) && states.contains(technology.state))
+                        .map(technology -> technology.productId).distinct()
+                        .forEach(productId -> rows.add(ImmutableMap.<String, Object> of("productid", productId)));
+            } else if (query.contains("basicproductioncounting_basicproductioncounting")) {
+                Collection<Long> orderIds = (Collection<Long>) params.get("orderIds");
+
+                for (BasicProductionCountingRow row : basicProductionCountings) {
+                    if (orderIds.contains(row.orderId) && productIds.contains(row.productId)) {
+                        Map<String, Object> resultRow = Maps.newHashMap();
+                        resultRow.put("orderid", row.orderId);
+                        resultRow.put("productid", row.productId);
+                        resultRow.put("usedquantity", row.usedQuantity);
+                        rows.add(resultRow);
+                    }
+                }
+            } else {
+                Collection<Long> orderIds = (Collection<Long>) params.get("orderIds");
+                Map<List<Long>, Map<String, Object>> groups = Maps.newLinkedHashMap();
+
+                for (TrackingProductRow row : trackingProducts) {
+                    if (orderIds.contains(row.orderId) && productIds.contains(row.productId)) {
+                        Map<String, Object> group = groups.computeIfAbsent(
+                                Lists.newArrayList(row.orderId, row.technologyOperationComponentId, row.productId), key -> {
+                                    Map<String, Object> resultRow = Maps.newHashMap();
+                                    resultRow.put("orderid", row.orderId);
+                                    resultRow.put("technologyoperationcomponentid", row.technologyOperationComponentId);
+                                    resultRow.put("productid", row.productId);
+                                    resultRow.put("usedquantity", null);
+                                    return resultRow;
+                                });
+
+                        if (row.usedQuantity != null) {
+                            BigDecimal usedQuantity = (BigDecimal) group.get("usedquantity");
+                            group.put("usedquantity", (usedQuantity == null) ? row.usedQuantity : usedQuantity
+                                    .add(row.usedQuantity));
+                        }
+                    }
+                }
+
+                rows.addAll(groups.values());
+            }
+
+            return rows;
+        }
+
+    }
+
+    private static final class TechnologyRow {
+
+        private final Long productId;
+
+        private final String technologyType;
+
+        private final String state;
+
+        private TechnologyRow(final Long productId, final String technologyType, final String state) {
+            this.productId = productId;
+            this.technologyType = technologyType;
+            this.state = state;
+        }
+
+    }
+
+    private static final class BasicProductionCountingRow {
+
+        private final Long orderId;
+
+        private final Long productId;
+
+        private final BigDecimal usedQuantity;
+
+        private BasicProductionCountingRow(final Long orderId, final Long productId, final BigDecimal usedQuantity) {
+            this.orderId = orderId;
+            this.productId = productId;
+            this.usedQuantity = usedQuantity;
+        }
+
+    }
+
+    private static final class TrackingProductRow {
+
+        private final Long trackingId;
+
+        private final Long orderId;
+
+        private final Long technologyOperationComponentId;
+
+        private final Long productId;
+
+        private final BigDecimal usedQuantity;
+
+        private TrackingProductRow(final Long trackingId, final Long orderId, final Long technologyOperationComponentId,
+                final Long productId, final BigDecimal usedQuantity) {
+            this.trackingId = trackingId;
+            this.orderId = orderId;
+            this.technologyOperationComponentId = technologyOperationComponentId;
+            this.productId = productId;
+            this.usedQuantity = usedQuantity;
+        }
+
+    }
+
+}
@@ -45,6 +45,10 @@ public final class ParameterFieldsOS {
 
     public static final String AUTOMATIC_SAVE_COVERAGE = "automaticSaveCoverage";
 
+    public static final String BATCH_SAVE_COVERAGE = "batchSaveCoverage";
+
+    public static final String INCREMENTAL_COVERAGE = "incrementalCoverage";
+
     public static final String ORDERS_INCLUDE_PERIOD = "ordersIncludePeriod";
 
     public static final String INCLUDE_REQUIREMENTS = "includeRequirements";
@@ -26,6 +26,8 @@ package com.qcadoo.mes.orderSupplies.coverage;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.tree.ProductNumberingServiceImpl;
 import com.qcadoo.mes.deliveries.DeliveriesService;
@@ -46,10 +48,14 @@ import com.qcadoo.mes.orderSupplies.constants.CoverageRegisterFields;
 import com.qcadoo.mes.orderSupplies.constants.CoverageType;
 import com.qcadoo.mes.orderSupplies.constants.MaterialRequirementCoverageFields;
 import com.qcadoo.mes.orderSupplies.constants.OrderSuppliesConstants;
+import com.qcadoo.mes.orderSupplies.constants.ParameterFieldsOS;
 import com.qcadoo.mes.orderSupplies.constants.ProductExtracted;
 import com.qcadoo.mes.orderSupplies.constants.ProductType;
+import com.qcadoo.mes.orderSupplies.register.CoverageRegisterTimeline;
+import com.qcadoo.mes.orderSupplies.register.CoverageRegisterTimelineEntry;
 import com.qcadoo.mes.orderSupplies.register.RegisterService;
 import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.states.constants.TechnologyState;
@@ -109,8 +115,29 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     @Autowired
     private DeliveriesService deliveriesService;
 
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private CoverageRegisterTimeline coverageRegisterTimeline;
+
     private static final String L_PRODUCT_TYPE = "productType";
 
+    private static final int L_BATCH_SIZE = 1000;
+
+    private static final String L_INSERT_COVERAGE_PRODUCT = "INSERT INTO ordersupplies_coverageproduct "
+            + "(id, materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
+            + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
+            + "productunit, produceQuantity, fromSelectedOrder, allProductsType, company_id) "
+            + "VALUES (:id, :materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
+            + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
+            + ":productunit, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id)";
+
+    private static final String L_INSERT_COVERAGE_PRODUCT_LOGGING = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
+            + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
+            + "VALUES (:coverageproduct_id, :date, :order_id, :delivery_id, :operation_id, "
+            + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal)";
+
     private static final String L_PLANNED_QUANTITY = "planedQuantity";
 
     @Transactional
@@ -143,7 +170,16 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             orderStates = Collections.emptyList();
         }
 
-        fillFromRegistry(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        boolean incrementalCoverage = parameterService.getParameter().getBooleanField(ParameterFieldsOS.INCREMENTAL_COVERAGE);
+        List<CoverageRegisterTimelineEntry> registerTimelineEntries = Collections.emptyList();
+
+        if (incrementalCoverage) {
+            registerTimelineEntries = coverageRegisterTimeline.getEntries(coverageToDate, getStates(orderStates));
+
+            fillFromRegisterTimeline(productAndCoverageProducts, registerTimelineEntries, actualDate);
+        } else {
+            fillFromRegistry(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        }
 
         Entity assignedOrder = materialRequirementCoverage.getBelongsToField(L_ORDER);
         if (!orderStates.isEmpty() && Objects.nonNull(assignedOrder)) {
@@ -161,7 +197,11 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         estimateProductDeliveriesInTime(materialRequirementCoverage, productAndCoverageProducts, includedDeliveries, actualDate,
                 coverageToDate, belongsToFamily, includeDraftDeliveries);
 
-        estimateProductProducedInTime(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        if (incrementalCoverage) {
+            estimateProductProducedInTime(productAndCoverageProducts, registerTimelineEntries, actualDate);
+        } else {
+            estimateProductProducedInTime(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        }
 
         additionalProcessProductCoverage(materialRequirementCoverage, productAndCoverageProducts);
 
@@ -171,9 +211,12 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
         materialRequirementCoverage.getDataDefinition().save(materialRequirementCoverage);
 
-        saveCoverage(materialRequirementCoverage,
+        long saveStart = System.currentTimeMillis();
+        int savedRows = saveCoverage(materialRequirementCoverage,
                 filterCoverageProducts(productAndCoverageProducts, productExtracted, coverageType));
-        LOG.info("Finish generation material requirement - id : " + materialRequirementCoverage.getId());
+        long saveTime = Math.max(System.currentTimeMillis() - saveStart, 1L);
+        LOG.info("Finish generation material requirement - id : " + materialRequirementCoverage.getId() + ", saved rows : "
+                + savedRows + " in " + saveTime + " ms (" + (savedRows * 1000L / saveTime) + " rows/s)");
     }
 
     private void estimateProductProducedInTime(final Map<Long, Entity> productAndCoverageProducts, final Date coverageToDate,
@@ -209,6 +252,22 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         }
     }
 
+    private void estimateProductProducedInTime(final Map<Long, Entity> productAndCoverageProducts,
+            final List<CoverageRegisterTimelineEntry> registerTimelineEntries, final Date actualDate) {
+        for (CoverageRegisterTimelineEntry entry : registerTimelineEntries) {
+            if (CoverageProductLoggingEventType.ORDER_OUTPUT.getStringValue().equals(entry.getEventType())
+                    && BigDecimal.ZERO.compareTo(entry.getQuantity()) < 0
+                    && productAndCoverageProducts.containsKey(entry.getProductId())) {
+                Entity product = productAndCoverageProducts.get(entry.getProductId()).getBelongsToField(
+                        CoverageProductFields.PRODUCT);
+                Entity coverageProductLogging = createCoverageProductLoggingForRegisterEntry(entry,
+                        getCoverageProductLoggingDateForOrderProduced(entry.getDate(), actualDate));
+
+                fillCoverageProductForOrderProduced(productAndCoverageProducts, product, coverageProductLogging);
+            }
+        }
+    }
+
     private void fillCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
             final Entity coverageProductLogging) {
         if (coverageProductLogging != null) {
@@ -267,25 +326,73 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageDate;
     }
 
-    private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
+    private int saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
         List<Entity> selectedOrders = materialRequirementCoverage.getHasManyField("coverageOrders");
+        List<Entity> coverageProducts = entities;
         if (!selectedOrders.isEmpty()) {
-            List<Entity> filtredEntities = entities.stream()
+            coverageProducts = entities.stream()
                     .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
-            for (Entity covProduct : filtredEntities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+        }
+
+        if (parameterService.getParameter().getBooleanField(ParameterFieldsOS.BATCH_SAVE_COVERAGE)) {
+            return saveCoverageInBatches(materialRequirementCoverage, coverageProducts);
+        }
+
+        int savedRows = 0;
+        for (Entity covProduct : coverageProducts) {
+            saveCoverageProduct(materialRequirementCoverage, covProduct);
+            savedRows++;
+            for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
+                saveCoverageProductLogging(log);
+                savedRows++;
             }
-        } else {
-            for (Entity covProduct : entities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+        }
+        return savedRows;
+    }
+
+    private int saveCoverageInBatches(final Entity materialRequirementCoverage, final List<Entity> coverageProducts) {
+        if (coverageProducts.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('ordersupplies_coverageproduct_id_seq') FROM generate_series(1, :count)",
+                Collections.singletonMap("count", coverageProducts.size()), Long.class);
+
+        List<Map<String, Object>> productParameters = Lists.newArrayListWithCapacity(coverageProducts.size());
+        List<Map<String, Object>> loggingParameters = Lists.newArrayList();
+
+        for (int i = 0; i < coverageProducts.size(); i++) {
+            Entity covProduct = coverageProducts.get(i);
+            Long coverageProductId = ids.get(i);
+
+            Map<String, Object> parameters = getCoverageProductParameters(materialRequirementCoverage, covProduct);
+            parameters.put("id", coverageProductId);
+            productParameters.add(parameters);
+
+            for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
+                Map<String, Object> parametersLogg = getCoverageProductLoggingParameters(log);
+                parametersLogg.put("coverageproduct_id", coverageProductId);
+                loggingParameters.add(parametersLogg);
             }
         }
+
+        batchUpdate(getCoverageProductInsertQuery(), productParameters);
+        batchUpdate(L_INSERT_COVERAGE_PRODUCT_LOGGING, loggingParameters);
+
+        return productParameters.size() + loggingParameters.size();
+    }
+
+    // Do not remove, around by aspect
+    private String getCoverageProductInsertQuery() {
+        return L_INSERT_COVERAGE_PRODUCT;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void batchUpdate(final String sql, final List<Map<String, Object>> parameters) {
+        for (List<Map<String, Object>> batch : Lists.partition(parameters, L_BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(sql, batch.toArray(new Map[batch.size()]));
+        }
     }
 
     private void saveCoverageProductLogging(Entity log) {
@@ -293,6 +400,11 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
                 + "VALUES (currval('ordersupplies_coverageproduct_id_seq'), :date, :order_id, :delivery_id, :operation_id, "
                 + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal);";
+        SqlParameterSource nParameters = new MapSqlParameterSource(getCoverageProductLoggingParameters(log));
+        jdbcTemplate.update(sqlLog, nParameters);
+    }
+
+    private Map<String, Object> getCoverageProductLoggingParameters(final Entity log) {
         Map<String, Object> parametersLogg = new HashMap<String, Object>();
         parametersLogg.put("date", log.getDateField(CoverageProductLoggingFields.DATE));
 
@@ -321,8 +433,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         parametersLogg.put("state", log.getStringField(CoverageProductLoggingFields.STATE));
         parametersLogg.put("warehouseNumber", log.getStringField(CoverageProductLoggingFields.WAREHOUSE_NUMBER));
         parametersLogg.put("deliveryNumberExternal", log.getStringField("deliveryNumberExternal"));
-        SqlParameterSource nParameters = new MapSqlParameterSource(parametersLogg);
-        jdbcTemplate.update(sqlLog, nParameters);
+        return parametersLogg;
     }
 
     private void saveCoverageProduct(Entity materialRequirementCoverage, Entity covProduct) {
@@ -334,6 +445,13 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
                 + ":productunit, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id)";
 
+        SqlParameterSource namedParameters = new MapSqlParameterSource(
+                getCoverageProductParameters(materialRequirementCoverage, covProduct));
+        jdbcTemplate.update(sql, namedParameters);
+    }
+
+    // Do not remove, around by aspect
+    private Map<String, Object> getCoverageProductParameters(final Entity materialRequirementCoverage, final Entity covProduct) {
         Map<String, Object> parameters = new HashMap<String, Object>();
         parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
         parameters.put("product_id", covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
@@ -359,8 +477,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
         parameters.put("fromSelectedOrder", covProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
         parameters.put("allProductsType", covProduct.getStringField("allProductsType"));
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-        jdbcTemplate.update(sql, namedParameters);
+        return parameters;
     }
 
     // Do not remove, around by aspect
@@ -419,6 +536,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         }
     }
 
+    private List<String> getStates(final List<Entity> orderStates) {
+        return orderStates.stream().map(o -> o.getStringField(CoverageOrderStateFields.STATE)).collect(Collectors.toList());
+    }
+
     private List<Long> getIdsFromCoverageOrders(List<Entity> selectedOrders) {
 
         return selectedOrders.stream().map(order -> order.getId()).collect(Collectors.toList());
@@ -463,6 +584,61 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         }
     }
 
+    private void fillFromRegisterTimeline(final Map<Long, Entity> productAndCoverageProducts,
+            final List<CoverageRegisterTimelineEntry> registerTimelineEntries, final Date actualDate) {
+        Map<Long, Entity> products = Maps.newHashMap();
+
+        for (CoverageRegisterTimelineEntry entry : registerTimelineEntries) {
+            if (!CoverageProductLoggingEventType.ORDER_OUTPUT.getStringValue().equals(entry.getEventType())
+                    && BigDecimal.ZERO.compareTo(entry.getQuantity()) < 0) {
+                Entity coverageProductLogging = createCoverageProductLoggingForRegisterEntry(entry,
+                        getCoverageProductLoggingDateForOrder(entry.getDate(), actualDate));
+
+                fillCoverageProductForOrder(productAndCoverageProducts, getProduct(products, entry), entry.getProductType(),
+                        coverageProductLogging);
+            }
+        }
+    }
+
+    private Entity getProduct(final Map<Long, Entity> products, final CoverageRegisterTimelineEntry entry) {
+        return products.computeIfAbsent(entry.getProductId(), productId -> {
+            Entity product = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).create();
+
+            product.setId(productId);
+            product.setField(ProductFields.NUMBER, entry.getProductNumber());
+            product.setField(ProductFields.NAME, entry.getProductName());
+            product.setField(ProductFields.UNIT, entry.getProductUnit());
+
+            return product;
+        });
+    }
+
+    private Entity createCoverageProductLoggingForRegisterEntry(final CoverageRegisterTimelineEntry entry,
+            final Date coverageDate) {
+        Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
+        coverageProductLogging.setField(CoverageProductLoggingFields.DATE, coverageDate);
+        coverageProductLogging.setField(CoverageProductLoggingFields.ORDER,
+                getEntityWithId(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER, entry.getOrderId()));
+        coverageProductLogging.setField(CoverageProductLoggingFields.OPERATION, getEntityWithId(
+                TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION, entry.getOperationId()));
+        coverageProductLogging.setField(CoverageProductLoggingFields.CHANGES,
+                numberService.setScaleWithDefaultMathContext(entry.getQuantity()));
+        coverageProductLogging.setField(CoverageProductLoggingFields.EVENT_TYPE, entry.getEventType());
+
+        return coverageProductLogging;
+    }
+
+    private Entity getEntityWithId(final String pluginIdentifier, final String modelName, final Long id) {
+        if (id == null) {
+            return null;
+        }
+
+        Entity entity = dataDefinitionService.get(pluginIdentifier, modelName).create();
+        entity.setId(id);
+
+        return entity;
+    }
+
     private void fillFromRegistryAssignedOrder(Map<Long, Entity> productAndCoverageProducts, Entity assignedOrder,
             Date coverageToDate, Date actualDate) {
         StringBuilder query = new StringBuilder();
@@ -493,7 +669,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             final Date coverageToDate) {
         Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
         coverageProductLogging.setField(CoverageProductLoggingFields.DATE,
-                getCoverageProductLoggingDateForOrder(registerEntry, actualDate, coverageToDate));
+                getCoverageProductLoggingDateForOrder(registerEntry.getDateField("date"), actualDate));
         coverageProductLogging.setField(CoverageProductLoggingFields.ORDER, registerEntry.getBelongsToField("order"));
         coverageProductLogging.setField(CoverageProductLoggingFields.OPERATION, registerEntry.getBelongsToField("operation"));
         coverageProductLogging.setField(CoverageProductLoggingFields.CHANGES,
@@ -503,10 +679,8 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageProductLogging;
     }
 
-    private Date getCoverageProductLoggingDateForOrder(final Entity registerEntry, final Date actualDate,
-            final Date coverageToDate) {
+    private Date getCoverageProductLoggingDateForOrder(final Date startDate, final Date actualDate) {
         Date coverageDate = null;
-        Date startDate = registerEntry.getDateField("date");
 
         if (startDate.before(actualDate)) {
             coverageDate = new DateTime(actualDate).plusSeconds(3).toDate();
@@ -0,0 +1,322 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.register;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.tenant.api.MultiTenantService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps order input and output entries of the coverage register grouped by product, so coverage generation doesn't have to
+ * read the whole register on every run. Each tenant has its own timeline, loaded on first use and afterwards only products
+ * touched by register, order or product changes are reloaded. Registers too big to keep in memory are read from the database
+ * on every run.
+ */
+@Service
+public class CoverageRegisterTimeline {
+
+    private static final int L_BATCH_SIZE = 1000;
+
+    private static final int L_MAX_TENANTS = 16;
+
+    private static final int L_MAX_ENTRIES = 500_000;
+
+    private static final String L_SELECT_ENTRIES = "SELECT registry.product_id, product.number AS productnumber, "
+            + "product.name AS productname, product.unit AS productunit, registry.order_id, ord.state AS orderstate, "
+            + "registry.operation_id, registry.date, registry.quantity, registry.eventtype, registry.producttype "
+            + "FROM ordersupplies_coverageregister registry "
+            + "JOIN basic_product product ON product.id = registry.product_id "
+            + "LEFT JOIN orders_order ord ON ord.id = registry.order_id "
+            + "WHERE registry.eventtype IN ('03operationInput', '04orderInput', '05orderOutput') ";
+
+    private static final RowMapper<CoverageRegisterTimelineEntry> L_ENTRY_MAPPER = (rs, rowNum) -> new CoverageRegisterTimelineEntry(
+            rs.getLong(RegisterEntryComponent.product_id), rs.getString(RegisterEntryComponent.productnumber),
+            rs.getString("productname"), rs.getString("productunit"), (Long) rs.getObject(RegisterEntryComponent.order_id),
+            rs.getString("orderstate"), (Long) rs.getObject(RegisterEntryComponent.operation_id),
+            rs.getTimestamp(RegisterEntryComponent.date), rs.getBigDecimal(RegisterEntryComponent.quantity),
+            rs.getString(RegisterEntryComponent.eventtype), rs.getString("producttype"));
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final LoadingCache<Integer, TenantTimeline> timelinesByTenant = CacheBuilder.newBuilder()
+            .maximumSize(L_MAX_TENANTS).build(new CacheLoader<Integer, TenantTimeline>() {
+
+                @Override
+                public TenantTimeline load(final Integer tenantId) {
+                    return new TenantTimeline();
+                }
+            });
+
+    /**
+     * Returns entries dated up to the given date, limited to orders in one of the given states when any state is passed.
+     */
+    public List<CoverageRegisterTimelineEntry> getEntries(final Date dateTo, final Collection<String> orderStates) {
+        TenantTimeline timeline = timelinesByTenant.getUnchecked(multiTenantService.getCurrentTenantId());
+
+        synchronized (timeline) {
+            if (!timeline.loaded) {
+                List<CoverageRegisterTimelineEntry> entries = jdbcTemplate.query(L_SELECT_ENTRIES, L_ENTRY_MAPPER);
+
+                if (entries.size() > L_MAX_ENTRIES) {
+                    return filterEntries(Collections.singletonList(entries), dateTo, orderStates);
+                }
+
+                load(timeline, entries);
+            } else {
+                refresh(timeline);
+            }
+
+            if (timeline.entriesNumber > L_MAX_ENTRIES) {
+                List<CoverageRegisterTimelineEntry> entries = filterEntries(timeline.entriesByProduct.values(), dateTo,
+                        orderStates);
+
+                timeline.clear();
+
+                return entries;
+            }
+
+            return filterEntries(timeline.entriesByProduct.values(), dateTo, orderStates);
+        }
+    }
+
+    public void onRegisterEntryChange(final Long productId) {
+        markAsChanged(productId, false);
+    }
+
+    public void onProductChange(final Long productId) {
+        markAsChanged(productId, false);
+    }
+
+    public void onOrderChange(final Long orderId) {
+        markAsChanged(orderId, true);
+    }
+
+    private void markAsChanged(final Long id, final boolean order) {
+        if (id == null) {
+            return;
+        }
+
+        TenantTimeline timeline = timelinesByTenant.getIfPresent(multiTenantService.getCurrentTenantId());
+
+        if (timeline == null || !timeline.active) {
+            return;
+        }
+
+        Set<Long> changed = order ? timeline.changedOrders : timeline.changedProducts;
+
+        changed.add(id);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    changed.add(id);
+                }
+            });
+        }
+    }
+
+    private List<CoverageRegisterTimelineEntry> filterEntries(final Collection<List<CoverageRegisterTimelineEntry>> entriesLists,
+            final Date dateTo, final Collection<String> orderStates) {
+        List<CoverageRegisterTimelineEntry> entries = Lists.newArrayList();
+
+        for (List<CoverageRegisterTimelineEntry> productEntries : entriesLists) {
+            for (CoverageRegisterTimelineEntry entry : productEntries) {
+                Date date = entry.getDate();
+
+                if (date == null || date.after(dateTo)) {
+                    continue;
+                }
+                if (!orderStates.isEmpty() && !orderStates.contains(entry.getOrderState())) {
+                    continue;
+                }
+
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+
+    private void load(final TenantTimeline timeline, final List<CoverageRegisterTimelineEntry> entries) {
+        timeline.clear();
+        timeline.active = true;
+
+        timeline.addEntries(entries);
+
+        timeline.loaded = true;
+
+        // rows read inside a transaction may include its own uncommitted changes, so they can't outlive its rollback
+        onRollback(() -> {
+            synchronized (timeline) {
+                timeline.clear();
+            }
+        });
+    }
+
+    private void refresh(final TenantTimeline timeline) {
+        Set<Long> productIds = drain(timeline.changedProducts);
+        Set<Long> orderIds = drain(timeline.changedOrders);
+
+        if (!orderIds.isEmpty()) {
+            for (Long orderId : orderIds) {
+                productIds.addAll(timeline.productsByOrder.getOrDefault(orderId, Collections.emptySet()));
+            }
+            for (List<Long> ids : Lists.partition(Lists.newArrayList(orderIds), L_BATCH_SIZE)) {
+                productIds.addAll(jdbcTemplate.queryForList(
+                        "SELECT DISTINCT product_id FROM ordersupplies_coverageregister WHERE order_id IN (:orderIds)",
+                        Collections.singletonMap("orderIds", ids), Long.class));
+            }
+        }
+
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        productIds.forEach(timeline::removeEntries);
+
+        for (List<Long> ids : Lists.partition(Lists.newArrayList(productIds), L_BATCH_SIZE)) {
+            timeline.addEntries(jdbcTemplate.query(L_SELECT_ENTRIES + "AND registry.product_id IN (:productIds)",
+                    Collections.singletonMap("productIds", ids), L_ENTRY_MAPPER));
+        }
+
+        onRollback(() -> timeline.changedProducts.addAll(productIds));
+    }
+
+    private void onRollback(final Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                        runnable.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private Set<Long> drain(final Set<Long> changed) {
+        Set<Long> ids = Sets.newHashSet();
+
+        for (Iterator<Long> iterator = changed.iterator(); iterator.hasNext();) {
+            ids.add(iterator.next());
+            iterator.remove();
+        }
+
+        return ids;
+    }
+
+    private static class TenantTimeline {
+
+        private final Map<Long, List<CoverageRegisterTimelineEntry>> entriesByProduct = Maps.newHashMap();
+
+        private final Map<Long, Set<Long>> productsByOrder = Maps.newHashMap();
+
+        private final Set<Long> changedProducts = ConcurrentHashMap.newKeySet();
+
+        private final Set<Long> changedOrders = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean active = false;
+
+        private boolean loaded = false;
+
+        private int entriesNumber = 0;
+
+        private void clear() {
+            active = false;
+            loaded = false;
+            entriesNumber = 0;
+
+            changedProducts.clear();
+            changedOrders.clear();
+            entriesByProduct.clear();
+            productsByOrder.clear();
+        }
+
+        private void addEntries(final List<CoverageRegisterTimelineEntry> entries) {
+            for (CoverageRegisterTimelineEntry entry : entries) {
+                entriesByProduct.computeIfAbsent(entry.getProductId(), productId -> Lists.newArrayList()).add(entry);
+
+                if (entry.getOrderId() != null) {
+                    productsByOrder.computeIfAbsent(entry.getOrderId(), orderId -> Sets.newHashSet()).add(entry.getProductId());
+                }
+            }
+
+            entriesNumber += entries.size();
+        }
+
+        private void removeEntries(final Long productId) {
+            List<CoverageRegisterTimelineEntry> entries = entriesByProduct.remove(productId);
+
+            if (entries == null) {
+                return;
+            }
+
+            entriesNumber -= entries.size();
+
+            for (CoverageRegisterTimelineEntry entry : entries) {
+                if (entry.getOrderId() != null) {
+                    Set<Long> products = productsByOrder.get(entry.getOrderId());
+
+                    if (products != null) {
+                        products.remove(productId);
+
+                        if (products.isEmpty()) {
+                            productsByOrder.remove(entry.getOrderId());
+                        }
+                    }
+                }
+            }
+        }
+
+    }
+
+}
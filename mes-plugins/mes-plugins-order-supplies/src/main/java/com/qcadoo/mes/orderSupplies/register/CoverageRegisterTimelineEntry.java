@@ -0,0 +1,121 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.register;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+public class CoverageRegisterTimelineEntry {
+
+    private final Long productId;
+
+    private final String productNumber;
+
+    private final String productName;
+
+    private final String productUnit;
+
+    private final Long orderId;
+
+    private final String orderState;
+
+    private final Long operationId;
+
+    private final Date date;
+
+    private final BigDecimal quantity;
+
+    private final String eventType;
+
+    private final String productType;
+
+    public CoverageRegisterTimelineEntry(final Long productId, final String productNumber, final String productName,
+            final String productUnit, final Long orderId, final String orderState, final Long operationId, final Date date,
+            final BigDecimal quantity, final String eventType, final String productType) {
+        this.productId = productId;
+        this.productNumber = productNumber;
+        this.productName = productName;
+        this.productUnit = productUnit;
+        this.orderId = orderId;
+        this.orderState = orderState;
+        this.operationId = operationId;
+        this.date = dateCopy(date);
+        this.quantity = quantity;
+        this.eventType = eventType;
+        this.productType = productType;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public String getProductNumber() {
+        return productNumber;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public String getProductUnit() {
+        return productUnit;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public String getOrderState() {
+        return orderState;
+    }
+
+    public Long getOperationId() {
+        return operationId;
+    }
+
+    public Date getDate() {
+        return dateCopy(date);
+    }
+
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getProductType() {
+        return productType;
+    }
+
+    private Date dateCopy(final Date date) {
+        if (date == null) {
+            return null;
+        } else {
+            return new Date(date.getTime());
+        }
+    }
+
+}
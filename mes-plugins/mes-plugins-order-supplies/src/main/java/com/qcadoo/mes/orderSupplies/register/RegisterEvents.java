@@ -89,7 +89,11 @@ public class RegisterEvents {
     @Autowired
     private OrderHooks orderHooks;
 
+    @Autowired
+    private CoverageRegisterTimeline coverageRegisterTimeline;
+
     public void onSaveOrder(final DataDefinition orderDD, final Entity order) {
+        coverageRegisterTimeline.onOrderChange(order.getId());
 
         Entity orderDB = null;
         if (OrderState.of(order) == OrderState.ABANDONED || OrderState.of(order) == OrderState.COMPLETED
@@ -153,6 +157,7 @@ public class RegisterEvents {
     }
 
     public void onDeleteOrder(final DataDefinition orderDD, final Entity order) {
+        coverageRegisterTimeline.onOrderChange(order.getId());
         registerService.removeEntriesForOrder(order, true);
     }
 
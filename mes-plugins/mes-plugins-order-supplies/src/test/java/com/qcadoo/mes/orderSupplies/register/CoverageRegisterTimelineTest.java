@@ -0,0 +1,199 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.register;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class CoverageRegisterTimelineTest {
+
+    private static final Date L_DATE = new DateTime(2016, 5, 10, 8, 0).toDate();
+
+    private CoverageRegisterTimeline coverageRegisterTimeline;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        coverageRegisterTimeline = new CoverageRegisterTimeline();
+
+        ReflectionTestUtils.setField(coverageRegisterTimeline, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(coverageRegisterTimeline, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReturnEntriesUpToDateForGivenOrderStates() {
+        // given
+        CoverageRegisterTimelineEntry pendingEntry = createEntry(1L, 10L, "01pending", L_DATE);
+        CoverageRegisterTimelineEntry acceptedEntry = createEntry(1L, 11L, "02accepted", L_DATE);
+        CoverageRegisterTimelineEntry lateEntry = createEntry(2L, 10L, "01pending", new DateTime(L_DATE).plusDays(2).toDate());
+
+        given(jdbcTemplate.query(anyString(), any(RowMapper.class))).willReturn(
+                Lists.newArrayList(pendingEntry, acceptedEntry, lateEntry));
+
+        // when
+        List<CoverageRegisterTimelineEntry> entries = coverageRegisterTimeline.getEntries(new DateTime(L_DATE).plusDays(1)
+                .toDate(), Lists.newArrayList("01pending"));
+
+        // then
+        assertEquals(1, entries.size());
+        assertTrue(entries.contains(pendingEntry));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReloadOnlyChangedProducts() {
+        // given
+        CoverageRegisterTimelineEntry firstEntry = createEntry(1L, 10L, "01pending", L_DATE);
+        CoverageRegisterTimelineEntry secondEntry = createEntry(2L, 10L, "01pending", L_DATE);
+        CoverageRegisterTimelineEntry changedEntry = createEntry(1L, 11L, "01pending", L_DATE);
+
+        given(jdbcTemplate.query(anyString(), any(RowMapper.class))).willReturn(Lists.newArrayList(firstEntry, secondEntry));
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(Lists.newArrayList(changedEntry));
+
+        coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // when
+        coverageRegisterTimeline.onRegisterEntryChange(1L);
+
+        List<CoverageRegisterTimelineEntry> entries = coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // then
+        assertEquals(2, entries.size());
+        assertTrue(entries.contains(changedEntry));
+        assertTrue(entries.contains(secondEntry));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldNotQueryRegisterWhenNothingChanged() {
+        // given
+        given(jdbcTemplate.query(anyString(), any(RowMapper.class))).willReturn(
+                Lists.newArrayList(createEntry(1L, 10L, "01pending", L_DATE)));
+
+        coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // when
+        List<CoverageRegisterTimelineEntry> entries = coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // then
+        assertEquals(1, entries.size());
+        verify(jdbcTemplate, never()).query(anyString(), anyMap(), any(RowMapper.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldKeepTimelinePerTenant() {
+        // given
+        CoverageRegisterTimelineEntry firstTenantEntry = createEntry(1L, 10L, "01pending", L_DATE);
+        CoverageRegisterTimelineEntry secondTenantEntry = createEntry(2L, 20L, "01pending", L_DATE);
+
+        given(jdbcTemplate.query(anyString(), any(RowMapper.class))).willReturn(Lists.newArrayList(firstTenantEntry),
+                Lists.newArrayList(secondTenantEntry));
+
+        coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // when
+        given(multiTenantService.getCurrentTenantId()).willReturn(2);
+
+        List<CoverageRegisterTimelineEntry> entries = coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // then
+        assertEquals(1, entries.size());
+        assertTrue(entries.contains(secondTenantEntry));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReloadTimelineLoadedInRolledBackTransaction() {
+        // given
+        CoverageRegisterTimelineEntry uncommittedEntry = createEntry(1L, 10L, "01pending", L_DATE);
+        CoverageRegisterTimelineEntry committedEntry = createEntry(2L, 10L, "01pending", L_DATE);
+
+        given(jdbcTemplate.query(anyString(), any(RowMapper.class))).willReturn(Lists.newArrayList(uncommittedEntry),
+                Lists.newArrayList(committedEntry));
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // when
+        List<CoverageRegisterTimelineEntry> entries = coverageRegisterTimeline.getEntries(L_DATE, Collections.emptyList());
+
+        // then
+        assertEquals(1, entries.size());
+        assertTrue(entries.contains(committedEntry));
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class));
+    }
+
+    private CoverageRegisterTimelineEntry createEntry(final Long productId, final Long orderId, final String orderState,
+            final Date date) {
+        return new CoverageRegisterTimelineEntry(productId, "P" + productId, "Product " + productId, "szt", orderId, orderState,
+                null, date, BigDecimal.TEN, "04orderInput", "01component");
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoDefinition;
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoService;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+
+@Service
+public class OrdersMaterializedDtos {
+
+    // models of plugins depending on orders, they call MaterializedDtoHooks#refreshDependents from their save hooks
+
+    private static final String L_MASTER_ORDERS = "masterOrders";
+
+    private static final String L_MASTER_ORDER = "masterOrder";
+
+    private static final String L_MASTER_ORDER_DEFINITION = "masterOrderDefinition";
+
+    private static final String L_ORDERS_GROUPS = "ordersGroups";
+
+    private static final String L_ORDERS_GROUP = "ordersGroup";
+
+    @Autowired
+    private MaterializedDtoService materializedDtoService;
+
+    @PostConstruct
+    public void register() {
+        materializedDtoService.register(MaterializedDtoDefinition
+                .of(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER_LIST_DTO, "orders_orderlistdto",
+                        "orders_orderlistdtosource", "number")
+                .dependsOn(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT, "id",
+                        "SELECT id FROM orders_order WHERE product_id IN (:ids)")
+                .dependsOn(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_COMPANY, "id",
+                        "SELECT id FROM orders_order WHERE company_id IN (:ids)")
+                .dependsOn(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY, "id",
+                        "SELECT id FROM orders_order WHERE technology_id IN (:ids)")
+                .dependsOn(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_DIVISION, "id",
+                        "SELECT o.id FROM orders_order o JOIN technologies_technology t ON t.id = o.technology_id "
+                                + "WHERE t.division_id IN (:ids)")
+                .dependsOn(L_MASTER_ORDERS, L_MASTER_ORDER, "id", "SELECT id FROM orders_order WHERE masterorder_id IN (:ids)")
+                .dependsOn(L_MASTER_ORDERS, L_MASTER_ORDER_DEFINITION, "id",
+                        "SELECT o.id FROM orders_order o JOIN masterorders_masterorder mo ON mo.id = o.masterorder_id "
+                                + "WHERE mo.masterorderdefinition_id IN (:ids)")
+                .dependsOn(L_ORDERS_GROUPS, L_ORDERS_GROUP, "id", "SELECT id FROM orders_order WHERE ordersgroup_id IN (:ids)"));
+    }
+
+}
@@ -41,6 +41,7 @@ import com.qcadoo.commons.dateTime.DateRange;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ProductService;
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoService;
 import com.qcadoo.mes.orders.OrderService;
 import com.qcadoo.mes.orders.OrderStateChangeReasonService;
 import com.qcadoo.mes.orders.TechnologyServiceO;
@@ -111,6 +112,9 @@ public class OrderHooks {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private MaterializedDtoService materializedDtoService;
+
     public boolean validatesWith(final DataDefinition orderDD, final Entity order) {
         boolean isValid = true;
 
@@ -141,6 +145,17 @@ public class OrderHooks {
         technologyServiceO.createOrUpdateTechnology(orderDD, order);
         setRemainingQuantity(order);
         setAdditionalFields(order);
+        refreshOrderListDto(order);
+    }
+
+    private void refreshOrderListDto(final Entity order) {
+        if (Objects.isNull(order.getId())) {
+            materializedDtoService.refreshAfterCommit(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER_LIST_DTO,
+                    "number", order.getStringField(OrderFields.NUMBER));
+        } else {
+            materializedDtoService.refreshAfterCommit(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER_LIST_DTO,
+                    "id", order.getId());
+        }
     }
 
     private void setAdditionalFields(final Entity order) {
@@ -39,6 +39,7 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 public class OrderMaterialAvailability {
@@ -110,21 +111,7 @@ public class OrderMaterialAvailability {
                 Map<Long, BigDecimal> availableComponentsInLocation = availableComponents.get(location.getId());
 
                 if (availableComponentsInLocation.containsKey(product.getId())) {
-                    BigDecimal availableQuantity = availableComponentsInLocation.get(product.getId());
-
-                    if (availableQuantity
-                            .compareTo(materialAvailability.getDecimalField(MaterialAvailabilityFields.REQUIRED_QUANTITY)) >= 0) {
-                        materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
-                                AvailabilityOfMaterialAvailability.FULL.getStrValue());
-                    } else if (availableQuantity.compareTo(BigDecimal.ZERO) == 0) {
-                        materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
-                                AvailabilityOfMaterialAvailability.NONE.getStrValue());
-                    } else {
-                        materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
-                                AvailabilityOfMaterialAvailability.PARTIAL.getStrValue());
-                    }
-
-                    materialAvailability.setField(MaterialAvailabilityFields.AVAILABLE_QUANTITY, availableQuantity);
+                    setAvailableQuantity(materialAvailability, availableComponentsInLocation.get(product.getId()));
                 } else {
                     materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
                             AvailabilityOfMaterialAvailability.NONE.getStrValue());
@@ -138,7 +125,22 @@ public class OrderMaterialAvailability {
         }
     }
 
-    private Map<Long, Map<Long, BigDecimal>> prepareAvailableComponents(final List<Entity> materialAvailabilities) {
+    void setAvailableQuantity(final Entity materialAvailability, final BigDecimal availableQuantity) {
+        if (availableQuantity.compareTo(materialAvailability.getDecimalField(MaterialAvailabilityFields.REQUIRED_QUANTITY)) >= 0) {
+            materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
+                    AvailabilityOfMaterialAvailability.FULL.getStrValue());
+        } else if (availableQuantity.compareTo(BigDecimal.ZERO) == 0) {
+            materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
+                    AvailabilityOfMaterialAvailability.NONE.getStrValue());
+        } else {
+            materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
+                    AvailabilityOfMaterialAvailability.PARTIAL.getStrValue());
+        }
+
+        materialAvailability.setField(MaterialAvailabilityFields.AVAILABLE_QUANTITY, availableQuantity);
+    }
+
+    Map<Long, Map<Long, BigDecimal>> prepareAvailableComponents(final List<Entity> materialAvailabilities) {
         Map<Entity, Set<Entity>> groupedMaterialAvailabilities = Maps.newHashMap();
 
         materialAvailabilities.forEach(materialAvailability -> {
@@ -181,19 +183,19 @@ public class OrderMaterialAvailability {
     }
 
     private List<Entity> createMaterialAvailability(final Entity order, final Entity technology) {
-        List<Entity> materialsAvailability;
+        List<Entity> materialsAvailability = createRequiredMaterials(order);
 
-        if (OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
-            materialsAvailability = createMaterialAvailabilityFromTechnology(order);
+        order.setField(OrderFieldsPFTD.MATERIAL_AVAILABILITY, materialsAvailability);
 
-            order.setField(OrderFieldsPFTD.MATERIAL_AVAILABILITY, materialsAvailability);
-        } else {
-            materialsAvailability = createMaterialAvailabilityFromProductionCountingQuantities(order);
+        return materialsAvailability;
+    }
 
-            order.setField(OrderFieldsPFTD.MATERIAL_AVAILABILITY, materialsAvailability);
+    List<Entity> createRequiredMaterials(final Entity order) {
+        if (OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
+            return createMaterialAvailabilityFromTechnology(order);
+        } else {
+            return createMaterialAvailabilityFromProductionCountingQuantities(order);
         }
-
-        return materialsAvailability;
     }
 
     private List<Entity> createMaterialAvailabilityFromTechnology(final Entity order) {
@@ -210,6 +212,12 @@ public class OrderMaterialAvailability {
 
         Map<Entity, Map<Entity, BigDecimal>> groupedMaterials = Maps.newHashMap();
 
+        Map<Long, Entity> opics = getOperationProductInComponents(productComponentQuantities.asMap().keySet().stream()
+                .filter(componentHolder -> !nonComponents.contains(componentHolder)
+                        && OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT.equals(componentHolder
+                                .getEntityType()) && (componentHolder.getOperationProductComponentId() != null))
+                .map(OperationProductComponentHolder::getOperationProductComponentId).collect(Collectors.toSet()));
+
         for (Map.Entry<OperationProductComponentHolder, BigDecimal> productComponentQuantity : productComponentQuantities.asMap()
                 .entrySet()) {
             OperationProductComponentHolder componentHolder = productComponentQuantity.getKey();
@@ -217,9 +225,7 @@ public class OrderMaterialAvailability {
             if (!nonComponents.contains(componentHolder)
                     && OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT.equals(componentHolder.getEntityType())
                     && (componentHolder.getOperationProductComponentId() != null)) {
-                Entity opic = dataDefinitionService
-                        .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT)
-                        .get(componentHolder.getOperationProductComponentId());
+                Entity opic = opics.get(componentHolder.getOperationProductComponentId());
 
                 Entity location = opic.getBelongsToField(OperationProductInComponentFieldsPFTD.COMPONENTS_LOCATION);
                 Entity product = opic.getBelongsToField(OperationProductInComponentFields.PRODUCT);
@@ -253,6 +259,17 @@ public class OrderMaterialAvailability {
         return newOrderMaterialAvailability;
     }
 
+    private Map<Long, Entity> getOperationProductInComponents(final Set<Long> opicIds) {
+        if (opicIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT).find()
+                .add(SearchRestrictions.in("id", opicIds)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, opic -> opic));
+    }
+
     private List<Entity> createMaterialAvailabilityFromProductionCountingQuantities(final Entity order) {
         List<Entity> newOrderMaterialAvailability = Lists.newArrayList();
 
@@ -0,0 +1,315 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityTypeOfMaterial;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.mes.productFlowThruDivision.constants.AvailabilityOfMaterialAvailability;
+import com.qcadoo.mes.productFlowThruDivision.constants.MaterialAvailabilityFields;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Material availability of several orders at once. Stock of each location is read once for all products needed by the orders,
+ * then orders take it in order of their start dates. Orders without start date come after all dated orders, by id. An order
+ * can start only when components left by the orders starting before it cover its whole demand.
+ * <p>
+ * Results are cached per tenant for a minute and dropped earlier when stock or production counting quantities of one of their
+ * products, or one of their orders, change. An order rescheduled before another one shows up in the other order's result
+ * when the cached one expires. Callers get copies of the cached material availability entities.
+ */
+@Service
+public class OrdersMaterialAvailability {
+
+    private static final long L_TIME_TO_LIVE_MILLIS = 60 * 1000L;
+
+    private static final int L_MAX_CACHED_RESULTS = 100;
+
+    private static final List<String> L_COMPETING_ORDER_STATES = Lists.newArrayList(OrderStateStringValues.PENDING,
+            OrderStateStringValues.ACCEPTED, OrderStateStringValues.IN_PROGRESS, OrderStateStringValues.INTERRUPTED);
+
+    private static final Comparator<Entity> L_START_DATE_COMPARATOR = Comparator.comparing(
+            OrdersMaterialAvailability::getStartDate, Comparator.nullsLast(Comparator.<Date> naturalOrder())).thenComparing(
+            Entity::getId);
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private OrderMaterialAvailability orderMaterialAvailability;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, Map<List<Long>, CachedMaterialsAvailability>> cacheByTenant = new ConcurrentHashMap<>();
+
+    public Map<Long, List<Entity>> generateMaterialAvailabilityForOrders(final List<Entity> orders) {
+        List<Entity> sortedOrders = orders.stream()
+                .filter(order -> (order.getId() != null) && (order.getBelongsToField(OrderFields.TECHNOLOGY) != null))
+                .sorted(L_START_DATE_COMPARATOR).collect(Collectors.toList());
+        List<Long> orderIds = sortedOrders.stream().map(Entity::getId).collect(Collectors.toList());
+
+        Map<List<Long>, CachedMaterialsAvailability> cache = getCache();
+        CachedMaterialsAvailability cachedMaterialsAvailability = cache.get(orderIds);
+
+        if ((cachedMaterialsAvailability != null) && !cachedMaterialsAvailability.isExpired()) {
+            return copyMaterialsAvailability(cachedMaterialsAvailability.getMaterialsAvailability());
+        }
+
+        Map<Long, List<Entity>> materialsAvailability = allocateAvailableComponents(sortedOrders);
+
+        if (cache.size() >= L_MAX_CACHED_RESULTS) {
+            cache.clear();
+        }
+
+        cache.put(orderIds, new CachedMaterialsAvailability(orderIds, materialsAvailability));
+
+        return copyMaterialsAvailability(materialsAvailability);
+    }
+
+    private Map<Long, List<Entity>> copyMaterialsAvailability(final Map<Long, List<Entity>> materialsAvailability) {
+        Map<Long, List<Entity>> materialsAvailabilityCopy = Maps.newLinkedHashMap();
+
+        for (Map.Entry<Long, List<Entity>> orderMaterialsAvailability : materialsAvailability.entrySet()) {
+            materialsAvailabilityCopy.put(orderMaterialsAvailability.getKey(), orderMaterialsAvailability.getValue().stream()
+                    .map(Entity::copy).collect(Collectors.toList()));
+        }
+
+        return materialsAvailabilityCopy;
+    }
+
+    /**
+     * Checks availability against orders which start before the given one and need at least one of its components. Meant
+     * to be run on demand, it explodes all such orders.
+     */
+    public boolean canStart(final Entity order) {
+        List<Entity> materialsAvailability = generateMaterialAvailabilityForOrders(getCompetingOrders(order)).get(order.getId());
+
+        return (materialsAvailability == null)
+                || materialsAvailability.stream().allMatch(
+                        materialAvailability -> AvailabilityOfMaterialAvailability.FULL.getStrValue().equals(
+                                materialAvailability.getStringField(MaterialAvailabilityFields.AVAILABILITY)));
+    }
+
+    public void invalidateProduct(final Long productId) {
+        invalidate(cachedMaterialsAvailability -> cachedMaterialsAvailability.containsProduct(productId));
+    }
+
+    public void invalidateOrder(final Long orderId) {
+        invalidate(cachedMaterialsAvailability -> cachedMaterialsAvailability.containsOrder(orderId));
+    }
+
+    private void invalidate(final Predicate<CachedMaterialsAvailability> affected) {
+        Map<List<Long>, CachedMaterialsAvailability> cache = getCache();
+
+        cache.values().removeIf(affected);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    cache.values().removeIf(affected);
+                }
+            });
+        }
+    }
+
+    private Map<List<Long>, CachedMaterialsAvailability> getCache() {
+        return cacheByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(), tenantId -> new ConcurrentHashMap<>());
+    }
+
+    private Map<Long, List<Entity>> allocateAvailableComponents(final List<Entity> sortedOrders) {
+        Map<Long, List<Entity>> materialsAvailability = Maps.newLinkedHashMap();
+        List<Entity> allMaterialsAvailability = Lists.newArrayList();
+
+        for (Entity order : sortedOrders) {
+            List<Entity> orderMaterialsAvailability = orderMaterialAvailability.createRequiredMaterials(order);
+
+            materialsAvailability.put(order.getId(), orderMaterialsAvailability);
+            allMaterialsAvailability.addAll(orderMaterialsAvailability);
+        }
+
+        Map<Long, Map<Long, BigDecimal>> remainingComponents = orderMaterialAvailability
+                .prepareAvailableComponents(allMaterialsAvailability);
+
+        for (List<Entity> orderMaterialsAvailability : materialsAvailability.values()) {
+            for (Entity materialAvailability : orderMaterialsAvailability) {
+                allocateAvailableComponent(remainingComponents, materialAvailability);
+            }
+        }
+
+        return materialsAvailability;
+    }
+
+    private void allocateAvailableComponent(final Map<Long, Map<Long, BigDecimal>> remainingComponents,
+            final Entity materialAvailability) {
+        Entity location = materialAvailability.getBelongsToField(MaterialAvailabilityFields.LOCATION);
+        Entity product = materialAvailability.getBelongsToField(MaterialAvailabilityFields.PRODUCT);
+
+        Map<Long, BigDecimal> remainingComponentsInLocation = (location == null) ? null : remainingComponents.get(location
+                .getId());
+        BigDecimal availableQuantity = (remainingComponentsInLocation == null) ? null : remainingComponentsInLocation
+                .get(product.getId());
+
+        if (availableQuantity == null) {
+            materialAvailability.setField(MaterialAvailabilityFields.AVAILABILITY,
+                    AvailabilityOfMaterialAvailability.NONE.getStrValue());
+            materialAvailability.setField(MaterialAvailabilityFields.AVAILABLE_QUANTITY, BigDecimal.ZERO);
+
+            return;
+        }
+
+        orderMaterialAvailability.setAvailableQuantity(materialAvailability, availableQuantity);
+
+        BigDecimal requiredQuantity = materialAvailability.getDecimalField(MaterialAvailabilityFields.REQUIRED_QUANTITY);
+
+        remainingComponentsInLocation.put(product.getId(), availableQuantity.subtract(requiredQuantity).max(BigDecimal.ZERO));
+    }
+
+    private List<Entity> getCompetingOrders(final Entity order) {
+        List<Entity> orders = Lists.newArrayList(order);
+        Set<Long> productIds = getComponentIds(order);
+
+        if (productIds.isEmpty()) {
+            return orders;
+        }
+
+        List<Entity> productionCountingQuantities = getComponentsFind()
+                .createAlias(ProductionCountingQuantityFields.ORDER, ProductionCountingQuantityFields.ORDER)
+                .createAlias(ProductionCountingQuantityFields.PRODUCT, ProductionCountingQuantityFields.PRODUCT)
+                .add(SearchRestrictions.in(ProductionCountingQuantityFields.PRODUCT + ".id", productIds))
+                .add(SearchRestrictions.in(ProductionCountingQuantityFields.ORDER + "." + OrderFields.STATE,
+                        L_COMPETING_ORDER_STATES))
+                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ORDER + "." + OrderFields.ACTIVE, true))
+                .add(SearchRestrictions.isNotNull(ProductionCountingQuantityFields.ORDER + "." + OrderFields.TECHNOLOGY))
+                .add(SearchRestrictions.ne(ProductionCountingQuantityFields.ORDER + ".id", order.getId())).list()
+                .getEntities();
+
+        Set<Long> orderIds = Sets.newHashSet(order.getId());
+
+        for (Entity productionCountingQuantity : productionCountingQuantities) {
+            Entity competingOrder = productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.ORDER);
+
+            if (orderIds.add(competingOrder.getId()) && (L_START_DATE_COMPARATOR.compare(competingOrder, order) < 0)) {
+                orders.add(competingOrder);
+            }
+        }
+
+        return orders;
+    }
+
+    private Set<Long> getComponentIds(final Entity order) {
+        return getComponentsFind().add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.ORDER, order)).list()
+                .getEntities().stream()
+                .map(productionCountingQuantity -> productionCountingQuantity.getBelongsToField(
+                        ProductionCountingQuantityFields.PRODUCT).getId()).collect(Collectors.toSet());
+    }
+
+    private SearchCriteriaBuilder getComponentsFind() {
+        return dataDefinitionService
+                .get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                        BasicProductionCountingConstants.MODEL_PRODUCTION_COUNTING_QUANTITY)
+                .find()
+                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ROLE,
+                        ProductionCountingQuantityRole.USED.getStringValue()))
+                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.TYPE_OF_MATERIAL,
+                        ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue()));
+    }
+
+    private static Date getStartDate(final Entity order) {
+        Date startDate = order.getDateField(OrderFields.START_DATE);
+
+        if (startDate == null) {
+            startDate = order.getDateField(OrderFields.DATE_FROM);
+        }
+
+        return startDate;
+    }
+
+    private static final class CachedMaterialsAvailability {
+
+        private final Set<Long> orderIds;
+
+        private final Set<Long> productIds;
+
+        private final Map<Long, List<Entity>> materialsAvailability;
+
+        private final long createdAt;
+
+        private CachedMaterialsAvailability(final Collection<Long> orderIds, final Map<Long, List<Entity>> materialsAvailability) {
+            this.orderIds = Sets.newHashSet(orderIds);
+            this.productIds = materialsAvailability.values().stream().flatMap(Collection::stream)
+                    .map(materialAvailability -> materialAvailability.getBelongsToField(MaterialAvailabilityFields.PRODUCT))
+                    .filter(product -> product != null).map(Entity::getId).collect(Collectors.toSet());
+            this.materialsAvailability = materialsAvailability;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        private boolean containsOrder(final Long orderId) {
+            return orderIds.contains(orderId);
+        }
+
+        private boolean containsProduct(final Long productId) {
+            return productIds.contains(productId);
+        }
+
+        private Map<Long, List<Entity>> getMaterialsAvailability() {
+            return materialsAvailability;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - createdAt > L_TIME_TO_LIVE_MILLIS;
+        }
+
+    }
+
+}
@@ -47,4 +47,6 @@ public final class ParameterFieldsPFTD {
 
     public static final String PRODUCTS_TO_ISSUE = "productsToIssue";
 
+    public static final String CREATE_WAREHOUSE_DOCUMENTS_ASYNCHRONOUSLY = "createWarehouseDocumentsAsynchronously";
+
 }
@@ -0,0 +1,94 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.productFlowThruDivision.OrdersMaterialAvailability;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Registered on stock, order and production counting quantity models, which all change results of
+ * {@link OrdersMaterialAvailability}. Only results containing the changed product or order are dropped.
+ */
+@Service
+public class OrdersMaterialAvailabilityHooksPFTD {
+
+    @Autowired
+    private OrdersMaterialAvailability ordersMaterialAvailability;
+
+    public void onResourceSave(final DataDefinition resourceDD, final Entity resource) {
+        invalidateProduct(resource.getBelongsToField(ResourceFields.PRODUCT));
+    }
+
+    public boolean onResourceDelete(final DataDefinition resourceDD, final Entity resource) {
+        invalidateProduct(resource.getBelongsToField(ResourceFields.PRODUCT));
+
+        return true;
+    }
+
+    public void onOrderSave(final DataDefinition orderDD, final Entity order) {
+        invalidateOrder(order);
+    }
+
+    public boolean onOrderDelete(final DataDefinition orderDD, final Entity order) {
+        invalidateOrder(order);
+
+        return true;
+    }
+
+    public void onProductionCountingQuantitySave(final DataDefinition productionCountingQuantityDD,
+            final Entity productionCountingQuantity) {
+        invalidateProductionCountingQuantity(productionCountingQuantity);
+    }
+
+    public boolean onProductionCountingQuantityDelete(final DataDefinition productionCountingQuantityDD,
+            final Entity productionCountingQuantity) {
+        invalidateProductionCountingQuantity(productionCountingQuantity);
+
+        return true;
+    }
+
+    private void invalidateProductionCountingQuantity(final Entity productionCountingQuantity) {
+        invalidateProduct(productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.PRODUCT));
+        invalidateOrder(productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.ORDER));
+    }
+
+    private void invalidateProduct(final Entity product) {
+        if (product != null) {
+            ordersMaterialAvailability.invalidateProduct(product.getId());
+        }
+    }
+
+    private void invalidateOrder(final Entity order) {
+        if ((order != null) && (order.getId() != null)) {
+            ordersMaterialAvailability.invalidateOrder(order.getId());
+        }
+    }
+
+}
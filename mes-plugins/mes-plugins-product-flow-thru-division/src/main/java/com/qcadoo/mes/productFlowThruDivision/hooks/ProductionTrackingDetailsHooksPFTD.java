@@ -1,11 +1,17 @@
 package com.qcadoo.mes.productFlowThruDivision.hooks;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestState;
+import com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments.ProductionTrackingDocumentsRequestService;
+import com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments.ProductionTrackingDocumentsRequestService.QueueStatistics;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.WindowComponent;
@@ -23,6 +29,9 @@ public class ProductionTrackingDetailsHooksPFTD {
 
     private static final String L_COMPONENT_AVAILABILITY = "componentAvailability";
 
+    @Autowired
+    private ProductionTrackingDocumentsRequestService productionTrackingDocumentsRequestService;
+
     public void onBeforeRender(final ViewDefinitionState view) {
         WindowComponent window = (WindowComponent) view.getComponentByReference(L_WINDOW);
 
@@ -34,6 +43,8 @@ public class ProductionTrackingDetailsHooksPFTD {
 
         Entity productionTracking = productionTrackingForm.getEntity();
 
+        showDocumentsRequestState(view, productionTracking);
+
         boolean isDraft = ProductionTrackingStateStringValues.DRAFT
                 .equals(productionTracking.getStringField(ProductionTrackingFields.STATE));
 
@@ -50,4 +61,30 @@ public class ProductionTrackingDetailsHooksPFTD {
         componentAvailabilityRibbonActionItem.requestUpdate(true);
     }
 
+    private void showDocumentsRequestState(final ViewDefinitionState view, final Entity productionTracking) {
+        if (productionTracking.getId() == null || !view.isViewAfterRedirect()) {
+            return;
+        }
+
+        Entity request = productionTrackingDocumentsRequestService.getLastRequest(productionTracking);
+
+        if (request == null) {
+            return;
+        }
+
+        String state = request.getStringField(ProductionTrackingDocumentsRequestFields.STATE);
+
+        if (ProductionTrackingDocumentsRequestState.PENDING.getStringValue().equals(state)) {
+            QueueStatistics queueStatistics = productionTrackingDocumentsRequestService.getQueueStatistics();
+
+            view.addMessage("productFlowThruDivision.productionTrackingDetails.info.documentsPending",
+                    ComponentState.MessageType.INFO, false, String.valueOf(queueStatistics.getDepth()),
+                    String.valueOf(queueStatistics.getOldestAgeInSeconds()));
+        } else if (ProductionTrackingDocumentsRequestState.FAILED.getStringValue().equals(state)) {
+            view.addMessage("productFlowThruDivision.productionTrackingDetails.error.documentsFailed",
+                    ComponentState.MessageType.FAILURE, false,
+                    request.getStringField(ProductionTrackingDocumentsRequestFields.ERROR_MESSAGE));
+        }
+    }
+
 }
@@ -2,12 +2,18 @@ package com.qcadoo.mes.productFlowThruDivision.listeners;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.productFlowThruDivision.OrdersMaterialAvailability;
+import com.qcadoo.mes.productFlowThruDivision.constants.AvailabilityOfMaterialAvailability;
 import com.qcadoo.mes.productFlowThruDivision.constants.MaterialAvailabilityFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.OrderFieldsPFTD;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.GridComponent;
 
 @Service
@@ -15,6 +21,11 @@ public class OrderWithMaterialAvailabilityListListeners {
 
     private static final String L_GRID = "grid";
 
+    private static final String L_ORDER = "order";
+
+    @Autowired
+    private OrdersMaterialAvailability ordersMaterialAvailability;
+
     public void showAvailability(final ViewDefinitionState view, final ComponentState state, final String[] args) {
 
         GridComponent grid = (GridComponent) view.getComponentByReference(L_GRID);
@@ -35,4 +46,29 @@ public class OrderWithMaterialAvailabilityListListeners {
         view.redirectTo(url, false, true);
     }
 
+    public void checkEarlierOrders(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        FormComponent orderForm = (FormComponent) view.getComponentByReference(L_ORDER);
+
+        if (orderForm.getEntityId() == null) {
+            return;
+        }
+
+        Entity order = orderForm.getPersistedEntityWithIncludedFormValues();
+
+        boolean availableInStock = order.getHasManyField(OrderFieldsPFTD.MATERIAL_AVAILABILITY).stream()
+                .allMatch(materialAvailability -> AvailabilityOfMaterialAvailability.FULL.getStrValue()
+                        .equals(materialAvailability.getStringField(MaterialAvailabilityFields.AVAILABILITY)));
+
+        if (!availableInStock) {
+            view.addMessage("productFlowThruDivision.orderWithMaterialAvailabilityList.info.componentsNotInStock",
+                    MessageType.INFO, false);
+        } else if (ordersMaterialAvailability.canStart(order)) {
+            view.addMessage("productFlowThruDivision.orderWithMaterialAvailabilityList.info.componentsNotTakenByEarlierOrders",
+                    MessageType.SUCCESS, false);
+        } else {
+            view.addMessage("productFlowThruDivision.orderWithMaterialAvailabilityList.info.componentsTakenByEarlierOrders",
+                    MessageType.INFO, false);
+        }
+    }
+
 }
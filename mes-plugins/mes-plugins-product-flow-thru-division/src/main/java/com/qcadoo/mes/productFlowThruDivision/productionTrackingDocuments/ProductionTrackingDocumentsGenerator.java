@@ -0,0 +1,129 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestFields;
+import com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments.ProductionTrackingDocumentsRequestService.QueueStatistics;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Scheduled worker creating warehouse documents for production trackings accepted in asynchronous mode. Requests of the same
+ * order are coalesced, so their components and products end up in one document per location.
+ */
+@Service
+public class ProductionTrackingDocumentsGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionTrackingDocumentsGenerator.class);
+
+    private static final int L_MAX_REQUESTS_PER_RUN = 500;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private ProductionTrackingDocumentsRequestService productionTrackingDocumentsRequestService;
+
+    @Autowired
+    private ProductionTrackingDocumentsProcessor productionTrackingDocumentsProcessor;
+
+    public void generateDocumentsTrigger() {
+        multiTenantService.doInMultiTenantContext(this::generateDocuments);
+    }
+
+    public void generateDocuments() {
+        List<Entity> requests = productionTrackingDocumentsRequestService.getRequestsToProcess(L_MAX_REQUESTS_PER_RUN);
+
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int failedRequests = 0;
+
+        for (List<Long> requestIds : groupByOrder(requests).values()) {
+            if (requestIds.size() > 1 && process(requestIds, false)) {
+                continue;
+            }
+
+            // one failing tracking should not hold back the other trackings of the order
+            for (Long requestId : requestIds) {
+                if (!process(Collections.singletonList(requestId), true)) {
+                    failedRequests++;
+                }
+            }
+        }
+
+        QueueStatistics queueStatistics = productionTrackingDocumentsRequestService.getQueueStatistics();
+
+        LOG.info(String.format("Processed %d production tracking documents requests in %d ms, %d failed. "
+                + "Queue depth: %d, oldest request waits %d s", requests.size(), System.currentTimeMillis() - start, failedRequests,
+                queueStatistics.getDepth(), queueStatistics.getOldestAgeInSeconds()));
+    }
+
+    private boolean process(final List<Long> requestIds, final boolean markFailed) {
+        try {
+            productionTrackingDocumentsProcessor.process(requestIds);
+
+            return true;
+        } catch (RuntimeException e) {
+            LOG.warn("Warehouse documents for production tracking requests " + requestIds + " were not created", e);
+
+            if (markFailed) {
+                productionTrackingDocumentsProcessor.markFailed(requestIds,
+                        productionTrackingDocumentsProcessor.getErrorMessage(e));
+            }
+
+            return false;
+        }
+    }
+
+    private Map<Long, List<Long>> groupByOrder(final List<Entity> requests) {
+        Map<Long, List<Long>> requestIdsByOrder = Maps.newLinkedHashMap();
+
+        for (Entity request : requests) {
+            Long orderId = request.getBelongsToField(ProductionTrackingDocumentsRequestFields.ORDER).getId();
+
+            if (!requestIdsByOrder.containsKey(orderId)) {
+                requestIdsByOrder.put(orderId, Lists.newArrayList());
+            }
+
+            requestIdsByOrder.get(orderId).add(request.getId());
+        }
+
+        return requestIdsByOrder;
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestState;
+import com.qcadoo.mes.productFlowThruDivision.states.ProductionTrackingListenerServicePFTD;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.exception.EntityRuntimeException;
+import com.qcadoo.model.api.validators.ErrorMessage;
+
+@Service
+public class ProductionTrackingDocumentsProcessor {
+
+    @Autowired
+    private ProductionTrackingDocumentsRequestService productionTrackingDocumentsRequestService;
+
+    @Autowired
+    private ProductionTrackingListenerServicePFTD productionTrackingListenerServicePFTD;
+
+    @Autowired
+    private TranslationService translationService;
+
+    /**
+     * Creates and accepts warehouse documents for requests of one order. Any error rolls back all documents of the group.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void process(final List<Long> requestIds) {
+        List<Entity> requests = getRequests(requestIds);
+
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        List<Entity> productionTrackings = Lists.newArrayList();
+
+        for (Entity request : requests) {
+            productionTrackings.add(request.getBelongsToField(ProductionTrackingDocumentsRequestFields.PRODUCTION_TRACKING));
+        }
+
+        Entity productionTracking = productionTrackings.get(0);
+
+        productionTrackingListenerServicePFTD.createWarehouseDocuments(productionTracking, productionTrackings);
+
+        if (!productionTracking.getGlobalErrors().isEmpty()) {
+            throw new EntityRuntimeException(productionTracking);
+        }
+
+        for (Entity request : requests) {
+            updateRequest(request, ProductionTrackingDocumentsRequestState.DONE, null);
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void markFailed(final List<Long> requestIds, final String errorMessage) {
+        for (Entity request : getRequests(requestIds)) {
+            updateRequest(request, ProductionTrackingDocumentsRequestState.FAILED, errorMessage);
+        }
+    }
+
+    public String getErrorMessage(final RuntimeException exception) {
+        if (exception instanceof EntityRuntimeException) {
+            Entity entity = ((EntityRuntimeException) exception).getEntity();
+
+            List<String> messages = Lists.newArrayList();
+
+            for (ErrorMessage errorMessage : entity.getGlobalErrors()) {
+                messages.add(translate(errorMessage));
+            }
+            for (ErrorMessage errorMessage : entity.getErrors().values()) {
+                messages.add(translate(errorMessage));
+            }
+
+            if (!messages.isEmpty()) {
+                return StringUtils.join(messages, "\n");
+            }
+        }
+
+        return StringUtils.defaultString(exception.getMessage(), exception.getClass().getName());
+    }
+
+    private String translate(final ErrorMessage errorMessage) {
+        return translationService.translate(errorMessage.getMessage(), LocaleContextHolder.getLocale(), errorMessage.getVars());
+    }
+
+    private List<Entity> getRequests(final List<Long> requestIds) {
+        DataDefinition requestDD = productionTrackingDocumentsRequestService.getProductionTrackingDocumentsRequestDD();
+
+        List<Entity> requests = Lists.newArrayList();
+
+        for (Long requestId : requestIds) {
+            Entity request = requestDD.get(requestId);
+
+            if (request != null
+                    && !ProductionTrackingDocumentsRequestState.DONE.getStringValue().equals(
+                            request.getStringField(ProductionTrackingDocumentsRequestFields.STATE))) {
+                requests.add(request);
+            }
+        }
+
+        return requests;
+    }
+
+    private void updateRequest(final Entity request, final ProductionTrackingDocumentsRequestState state,
+            final String errorMessage) {
+        Integer attempts = request.getIntegerField(ProductionTrackingDocumentsRequestFields.ATTEMPTS);
+
+        request.setField(ProductionTrackingDocumentsRequestFields.STATE, state.getStringValue());
+        request.setField(ProductionTrackingDocumentsRequestFields.PROCESSED_DATE, new Date());
+        request.setField(ProductionTrackingDocumentsRequestFields.ATTEMPTS, attempts == null ? 1 : attempts + 1);
+        request.setField(ProductionTrackingDocumentsRequestFields.ERROR_MESSAGE, errorMessage);
+
+        request.getDataDefinition().save(request);
+    }
+
+}
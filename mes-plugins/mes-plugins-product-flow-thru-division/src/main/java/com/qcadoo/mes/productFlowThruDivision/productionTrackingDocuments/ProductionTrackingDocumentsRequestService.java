@@ -0,0 +1,150 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.productFlowThruDivision.constants.ParameterFieldsPFTD;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductFlowThruDivisionConstants;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestState;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Queue of accepted production trackings waiting for their warehouse documents, used when documents are created
+ * asynchronously.
+ */
+@Service
+public class ProductionTrackingDocumentsRequestService {
+
+    public static final int MAX_ATTEMPTS = 5;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public boolean isAsynchronous() {
+        return parameterService.getParameter().getBooleanField(ParameterFieldsPFTD.CREATE_WAREHOUSE_DOCUMENTS_ASYNCHRONOUSLY);
+    }
+
+    public Entity addRequest(final Entity productionTracking) {
+        Entity request = getProductionTrackingDocumentsRequestDD().create();
+
+        request.setField(ProductionTrackingDocumentsRequestFields.PRODUCTION_TRACKING, productionTracking);
+        request.setField(ProductionTrackingDocumentsRequestFields.ORDER,
+                productionTracking.getBelongsToField(ProductionTrackingFields.ORDER));
+        request.setField(ProductionTrackingDocumentsRequestFields.STATE,
+                ProductionTrackingDocumentsRequestState.PENDING.getStringValue());
+        request.setField(ProductionTrackingDocumentsRequestFields.CREATE_DATE, new Date());
+        request.setField(ProductionTrackingDocumentsRequestFields.ATTEMPTS, 0);
+
+        return request.getDataDefinition().save(request);
+    }
+
+    public List<Entity> getRequestsToProcess(final int maxResults) {
+        return getProductionTrackingDocumentsRequestDD()
+                .find()
+                .add(SearchRestrictions.or(SearchRestrictions.eq(ProductionTrackingDocumentsRequestFields.STATE,
+                        ProductionTrackingDocumentsRequestState.PENDING.getStringValue()), SearchRestrictions.and(
+                        SearchRestrictions.eq(ProductionTrackingDocumentsRequestFields.STATE,
+                                ProductionTrackingDocumentsRequestState.FAILED.getStringValue()),
+                        SearchRestrictions.lt(ProductionTrackingDocumentsRequestFields.ATTEMPTS, MAX_ATTEMPTS))))
+                .addOrder(SearchOrders.asc(ProductionTrackingDocumentsRequestFields.CREATE_DATE))
+                .addOrder(SearchOrders.asc("id")).setMaxResults(maxResults).list().getEntities();
+    }
+
+    public Entity getLastRequest(final Entity productionTracking) {
+        return getProductionTrackingDocumentsRequestDD().find()
+                .add(SearchRestrictions.belongsTo(ProductionTrackingDocumentsRequestFields.PRODUCTION_TRACKING, productionTracking))
+                .addOrder(SearchOrders.desc("id")).setMaxResults(1).uniqueResult();
+    }
+
+    /**
+     * Returns the number of requests waiting for documents and the age in seconds of the oldest one.
+     */
+    public QueueStatistics getQueueStatistics() {
+        String query = "SELECT count(*) AS depth, min(createdate) AS oldest "
+                + "FROM productflowthrudivision_productiontrackingdocumentsrequest "
+                + "WHERE state = :pending OR (state = :failed AND attempts < :maxAttempts)";
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("pending", ProductionTrackingDocumentsRequestState.PENDING.getStringValue());
+        parameters.put("failed", ProductionTrackingDocumentsRequestState.FAILED.getStringValue());
+        parameters.put("maxAttempts", MAX_ATTEMPTS);
+
+        Map<String, Object> result = jdbcTemplate.queryForMap(query, parameters);
+
+        long depth = ((Number) result.get("depth")).longValue();
+        Date oldest = (Date) result.get("oldest");
+        long oldestAgeInSeconds = oldest == null ? 0L : (System.currentTimeMillis() - oldest.getTime()) / 1000L;
+
+        return new QueueStatistics(depth, oldestAgeInSeconds);
+    }
+
+    public DataDefinition getProductionTrackingDocumentsRequestDD() {
+        return dataDefinitionService.get(ProductFlowThruDivisionConstants.PLUGIN_IDENTIFIER,
+                ProductFlowThruDivisionConstants.MODEL_PRODUCTION_TRACKING_DOCUMENTS_REQUEST);
+    }
+
+    public static class QueueStatistics {
+
+        private final long depth;
+
+        private final long oldestAgeInSeconds;
+
+        public QueueStatistics(final long depth, final long oldestAgeInSeconds) {
+            this.depth = depth;
+            this.oldestAgeInSeconds = oldestAgeInSeconds;
+        }
+
+        public long getDepth() {
+            return depth;
+        }
+
+        public long getOldestAgeInSeconds() {
+            return oldestAgeInSeconds;
+        }
+
+    }
+
+}
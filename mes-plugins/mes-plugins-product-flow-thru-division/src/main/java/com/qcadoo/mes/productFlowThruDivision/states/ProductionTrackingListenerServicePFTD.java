@@ -28,6 +28,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,8 +37,10 @@ import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
@@ -61,9 +64,11 @@ import com.qcadoo.mes.productFlowThruDivision.constants.DocumentFieldsPFTD;
 import com.qcadoo.mes.productFlowThruDivision.constants.OperationProductInComponentFieldsPFTD;
 import com.qcadoo.mes.productFlowThruDivision.constants.ProductionCountingQuantityFieldsPFTD;
 import com.qcadoo.mes.productFlowThruDivision.constants.ProductionFlowComponent;
+import com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments.ProductionTrackingDocumentsRequestService;
 import com.qcadoo.mes.productFlowThruDivision.validators.ProductionTrackingValidatorsPFTD;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.PriceBasedOn;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
@@ -118,36 +123,78 @@ public final class ProductionTrackingListenerServicePFTD {
     @Autowired
     private ProductionTrackingDocumentsHelper productionTrackingDocumentsHelper;
 
+    @Autowired
+    private ProductionTrackingDocumentsRequestService productionTrackingDocumentsRequestService;
+
     public Entity onAccept(final Entity productionTracking, final String sourceState) {
         boolean isCorrection = productionTracking.getBooleanField(ProductionTrackingFields.IS_CORRECTION);
         if (!isCorrection && !ProductionTrackingStateStringValues.CORRECTED.equals(sourceState)) {
-            createWarehouseDocuments(productionTracking);
+            if (productionTrackingDocumentsRequestService.isAsynchronous()) {
+                productionTrackingDocumentsRequestService.addRequest(productionTracking);
+            } else {
+                createWarehouseDocuments(productionTracking);
+            }
         }
 
         return productionTracking;
     }
 
     public void createWarehouseDocuments(final Entity productionTracking) {
+        createWarehouseDocuments(productionTracking, Lists.newArrayList(productionTracking));
+    }
+
+    /**
+     * Creates one set of warehouse documents for several accepted trackings of the same order. Quantities of the same product
+     * and given unit are summed per location, errors are added to the given productionTracking.
+     */
+    public void createWarehouseDocuments(final Entity productionTracking, final List<Entity> productionTrackings) {
         DataDefinition locationDD = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowConstants.MODEL_LOCATION);
 
         Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
         Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
-        List<Entity> recordOutProducts = productionTracking
-                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
-        Multimap<Long, Entity> groupedRecordOutProducts = productionTrackingDocumentsHelper.groupRecordOutProductsByLocation(
-                recordOutProducts, technology);
+        List<Entity> recordOutProducts = Lists.newArrayList();
+        Multimap<Long, Entity> groupedRecordOutProducts = ArrayListMultimap.create();
+        Multimap<Long, Entity> groupedRecordInProducts = ArrayListMultimap.create();
 
-        productionTrackingDocumentsHelper.fillFromBPCProductOut(groupedRecordOutProducts, recordOutProducts, order);
-        productionTrackingDocumentsHelper.fillProductsOutFromSet(groupedRecordOutProducts);
+        for (Entity tracking : productionTrackings) {
+            List<Entity> trackingRecordOutProducts = tracking
+                    .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
+            Multimap<Long, Entity> trackingGroupedRecordOutProducts = productionTrackingDocumentsHelper
+                    .groupRecordOutProductsByLocation(trackingRecordOutProducts, technology);
 
-        List<Entity> recordInProducts = productionTracking
-                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
-        Multimap<Long, Entity> groupedRecordInProducts = productionTrackingDocumentsHelper.groupRecordInProductsByWarehouse(recordInProducts, technology);
+            productionTrackingDocumentsHelper.fillFromBPCProductOut(trackingGroupedRecordOutProducts,
+                    trackingRecordOutProducts, order);
+            productionTrackingDocumentsHelper.fillProductsOutFromSet(trackingGroupedRecordOutProducts);
 
-        productionTrackingDocumentsHelper.fillFromBPCProductIn(groupedRecordInProducts, recordInProducts, order);
-        productionTrackingDocumentsHelper.fillProductsInFromSet(groupedRecordInProducts);
+            List<Entity> trackingRecordInProducts = tracking
+                    .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
+            Multimap<Long, Entity> trackingGroupedRecordInProducts = productionTrackingDocumentsHelper
+                    .groupRecordInProductsByWarehouse(trackingRecordInProducts, technology);
+
+            productionTrackingDocumentsHelper.fillFromBPCProductIn(trackingGroupedRecordInProducts, trackingRecordInProducts,
+                    order);
+            productionTrackingDocumentsHelper.fillProductsInFromSet(trackingGroupedRecordInProducts);
+
+            recordOutProducts.addAll(trackingRecordOutProducts);
+            groupedRecordOutProducts.putAll(trackingGroupedRecordOutProducts);
+
+            if (productionTrackings.size() > 1) {
+                groupedRecordInProducts.putAll(withoutDuplicatedProducts(trackingGroupedRecordInProducts));
+            } else {
+                groupedRecordInProducts.putAll(trackingGroupedRecordInProducts);
+            }
+        }
+
+        if (productionTrackings.size() > 1) {
+            recordOutProducts = sumRecordsByProduct(recordOutProducts,
+                    ProductionCountingConstants.MODEL_TRACKING_OPERATION_PRODUCT_OUT_COMPONENT);
+            groupedRecordOutProducts = sumRecordsByProduct(groupedRecordOutProducts,
+                    ProductionCountingConstants.MODEL_TRACKING_OPERATION_PRODUCT_OUT_COMPONENT);
+            groupedRecordInProducts = sumRecordsByProduct(groupedRecordInProducts,
+                    ProductionCountingConstants.MODEL_TRACKING_OPERATION_PRODUCT_IN_COMPONENT);
+        }
 
         if (!productionTrackingValidatorsPFTD.checkResources(productionTracking, groupedRecordInProducts, recordOutProducts)) {
             return;
@@ -206,6 +253,79 @@ public final class ProductionTrackingListenerServicePFTD {
 
     }
 
+    private Multimap<Long, Entity> withoutDuplicatedProducts(final Multimap<Long, Entity> groupedRecordProducts) {
+        Multimap<Long, Entity> recordProductsWithoutDuplicates = ArrayListMultimap.create();
+
+        for (Long warehouseId : groupedRecordProducts.keySet()) {
+            HashSet<Long> productIds = Sets.newHashSet();
+
+            for (Entity recordProduct : groupedRecordProducts.get(warehouseId)) {
+                if (productIds.add(recordProduct.getBelongsToField(TrackingOperationProductInComponentFields.PRODUCT).getId())) {
+                    recordProductsWithoutDuplicates.put(warehouseId, recordProduct);
+                }
+            }
+        }
+
+        return recordProductsWithoutDuplicates;
+    }
+
+    private Multimap<Long, Entity> sumRecordsByProduct(final Multimap<Long, Entity> groupedRecordProducts,
+            final String recordModelName) {
+        Multimap<Long, Entity> summedRecordProducts = ArrayListMultimap.create();
+
+        for (Long warehouseId : groupedRecordProducts.keySet()) {
+            summedRecordProducts.putAll(warehouseId, sumRecordsByProduct(groupedRecordProducts.get(warehouseId), recordModelName));
+        }
+
+        return summedRecordProducts;
+    }
+
+    private List<Entity> sumRecordsByProduct(final Collection<Entity> recordProducts, final String recordModelName) {
+        DataDefinition recordDD = dataDefinitionService.get(ProductionCountingConstants.PLUGIN_IDENTIFIER, recordModelName);
+
+        Map<String, Entity> summedRecordProducts = Maps.newLinkedHashMap();
+
+        for (Entity recordProduct : recordProducts) {
+            Entity product = recordProduct.getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCT);
+            String givenUnit = recordProduct.getStringField(TrackingOperationProductOutComponentFields.GIVEN_UNIT);
+            String key = product.getId() + "_" + StringUtils.defaultString(givenUnit);
+
+            Entity summedRecordProduct = summedRecordProducts.get(key);
+
+            if (summedRecordProduct == null) {
+                summedRecordProduct = recordDD.create();
+                summedRecordProduct.setField(TrackingOperationProductOutComponentFields.PRODUCT, product);
+                summedRecordProduct.setField(TrackingOperationProductOutComponentFields.GIVEN_UNIT, givenUnit);
+
+                summedRecordProducts.put(key, summedRecordProduct);
+            }
+
+            summedRecordProduct.setField(TrackingOperationProductOutComponentFields.PRODUCTION_TRACKING,
+                    recordProduct.getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCTION_TRACKING));
+            summedRecordProduct.setField(TrackingOperationProductOutComponentFields.USED_QUANTITY,
+                    sumQuantities(summedRecordProduct, recordProduct, TrackingOperationProductOutComponentFields.USED_QUANTITY));
+            summedRecordProduct.setField(TrackingOperationProductOutComponentFields.GIVEN_QUANTITY,
+                    sumQuantities(summedRecordProduct, recordProduct, TrackingOperationProductOutComponentFields.GIVEN_QUANTITY));
+        }
+
+        return Lists.newArrayList(summedRecordProducts.values());
+    }
+
+    private BigDecimal sumQuantities(final Entity summedRecordProduct, final Entity recordProduct, final String quantityFieldName) {
+        BigDecimal summedQuantity = summedRecordProduct.getDecimalField(quantityFieldName);
+        BigDecimal quantity = recordProduct.getDecimalField(quantityFieldName);
+
+        if (quantity == null) {
+            return summedQuantity;
+        }
+
+        if (summedQuantity == null) {
+            return quantity;
+        }
+
+        return summedQuantity.add(quantity, numberService.getMathContext());
+    }
+
     public Entity createInternalOutboundDocumentForComponents(final Entity locationFrom, final Entity order,
             final Collection<Entity> inProductsRecords, Entity user) {
         DocumentBuilder internalOutboundBuilder = documentManagementService.getDocumentBuilder(user);
@@ -0,0 +1,220 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.AvailabilityOfMaterialAvailability;
+import com.qcadoo.mes.productFlowThruDivision.constants.MaterialAvailabilityFields;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class OrdersMaterialAvailabilityTest {
+
+    private OrdersMaterialAvailability ordersMaterialAvailability;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private OrderMaterialAvailability orderMaterialAvailability;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private Entity earlierOrder, laterOrder, undatedOrder, technology, location, product, earlierMaterial, laterMaterial;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ordersMaterialAvailability = new OrdersMaterialAvailability();
+
+        ReflectionTestUtils.setField(ordersMaterialAvailability, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ordersMaterialAvailability, "orderMaterialAvailability", orderMaterialAvailability);
+        ReflectionTestUtils.setField(ordersMaterialAvailability, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(1);
+
+        given(location.getId()).willReturn(1L);
+        given(product.getId()).willReturn(2L);
+
+        stubOrder(earlierOrder, 10L, new DateTime(2017, 3, 1, 8, 0).toDate());
+        stubOrder(laterOrder, 11L, new DateTime(2017, 3, 2, 8, 0).toDate());
+
+        stubMaterial(earlierMaterial, new BigDecimal(8));
+        stubMaterial(laterMaterial, new BigDecimal(8));
+
+        given(orderMaterialAvailability.createRequiredMaterials(earlierOrder)).willReturn(Lists.newArrayList(earlierMaterial));
+        given(orderMaterialAvailability.createRequiredMaterials(laterOrder)).willReturn(Lists.newArrayList(laterMaterial));
+
+        Map<Long, BigDecimal> availableComponentsInLocation = Maps.newHashMap();
+        availableComponentsInLocation.put(2L, BigDecimal.TEN);
+
+        Map<Long, Map<Long, BigDecimal>> availableComponents = Maps.newHashMap();
+        availableComponents.put(1L, availableComponentsInLocation);
+
+        given(orderMaterialAvailability.prepareAvailableComponents(anyListOf(Entity.class))).willReturn(availableComponents);
+        doCallRealMethod().when(orderMaterialAvailability).setAvailableQuantity(any(Entity.class), any(BigDecimal.class));
+    }
+
+    @Test
+    public void shouldLeaveForLaterOrderOnlyComponentsNotTakenByEarlierOrder() {
+        // given
+
+        // when
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(laterOrder, earlierOrder));
+
+        // then
+        verify(earlierMaterial).setField(MaterialAvailabilityFields.AVAILABILITY,
+                AvailabilityOfMaterialAvailability.FULL.getStrValue());
+        verify(earlierMaterial).setField(MaterialAvailabilityFields.AVAILABLE_QUANTITY, BigDecimal.TEN);
+        verify(laterMaterial).setField(MaterialAvailabilityFields.AVAILABILITY,
+                AvailabilityOfMaterialAvailability.PARTIAL.getStrValue());
+        verify(laterMaterial).setField(MaterialAvailabilityFields.AVAILABLE_QUANTITY, new BigDecimal(2));
+    }
+
+    @Test
+    public void shouldReuseAvailabilityUntilInvalidated() {
+        // given
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // when
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(laterOrder, earlierOrder));
+        ordersMaterialAvailability.invalidateProduct(2L);
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // then
+        verify(orderMaterialAvailability, times(2)).createRequiredMaterials(earlierOrder);
+        verify(orderMaterialAvailability, times(2)).createRequiredMaterials(laterOrder);
+    }
+
+    @Test
+    public void shouldKeepAvailabilityWhenOtherProductOrOrderChanges() {
+        // given
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // when
+        ordersMaterialAvailability.invalidateProduct(3L);
+        ordersMaterialAvailability.invalidateOrder(12L);
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+        ordersMaterialAvailability.invalidateOrder(11L);
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // then
+        verify(orderMaterialAvailability, times(2)).createRequiredMaterials(earlierOrder);
+    }
+
+    @Test
+    public void shouldAllocateComponentsToOrderWithoutStartDateAfterDatedOrders() {
+        // given
+        Entity undatedMaterial = mock(Entity.class);
+
+        stubOrder(undatedOrder, 5L, null);
+        stubMaterial(undatedMaterial, new BigDecimal(8));
+
+        given(orderMaterialAvailability.createRequiredMaterials(undatedOrder)).willReturn(Lists.newArrayList(undatedMaterial));
+
+        // when
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(undatedOrder, earlierOrder));
+
+        // then
+        verify(earlierMaterial).setField(MaterialAvailabilityFields.AVAILABILITY,
+                AvailabilityOfMaterialAvailability.FULL.getStrValue());
+        verify(undatedMaterial).setField(MaterialAvailabilityFields.AVAILABILITY,
+                AvailabilityOfMaterialAvailability.PARTIAL.getStrValue());
+    }
+
+    @Test
+    public void shouldKeepAvailabilityPerTenant() {
+        // given
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // when
+        given(multiTenantService.getCurrentTenantId()).willReturn(2);
+
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // then
+        verify(orderMaterialAvailability, times(2)).createRequiredMaterials(earlierOrder);
+    }
+
+    @Test
+    public void shouldReturnCopiesOfCachedAvailability() {
+        // given
+        Entity earlierMaterialCopy = mock(Entity.class);
+        Entity earlierMaterialSecondCopy = mock(Entity.class);
+
+        given(earlierMaterial.copy()).willReturn(earlierMaterialCopy, earlierMaterialSecondCopy);
+
+        ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists.newArrayList(earlierOrder, laterOrder));
+
+        // when
+        Map<Long, List<Entity>> materialsAvailability = ordersMaterialAvailability.generateMaterialAvailabilityForOrders(Lists
+                .newArrayList(earlierOrder, laterOrder));
+
+        // then
+        assertEquals(1, materialsAvailability.get(10L).size());
+        assertSame(earlierMaterialSecondCopy, materialsAvailability.get(10L).get(0));
+    }
+
+    private void stubOrder(final Entity order, final Long id, final Date startDate) {
+        given(order.getId()).willReturn(id);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(startDate);
+    }
+
+    private void stubMaterial(final Entity material, final BigDecimal requiredQuantity) {
+        given(material.getBelongsToField(MaterialAvailabilityFields.LOCATION)).willReturn(location);
+        given(material.getBelongsToField(MaterialAvailabilityFields.PRODUCT)).willReturn(product);
+        given(material.getDecimalField(MaterialAvailabilityFields.REQUIRED_QUANTITY)).willReturn(requiredQuantity);
+        given(material.copy()).willReturn(material);
+    }
+
+}
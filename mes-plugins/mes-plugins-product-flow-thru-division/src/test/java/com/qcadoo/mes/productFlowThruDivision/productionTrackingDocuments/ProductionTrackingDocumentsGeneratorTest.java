@@ -0,0 +1,119 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsRequestFields;
+import com.qcadoo.mes.productFlowThruDivision.productionTrackingDocuments.ProductionTrackingDocumentsRequestService.QueueStatistics;
+import com.qcadoo.model.api.Entity;
+
+public class ProductionTrackingDocumentsGeneratorTest {
+
+    private ProductionTrackingDocumentsGenerator productionTrackingDocumentsGenerator;
+
+    @Mock
+    private ProductionTrackingDocumentsRequestService productionTrackingDocumentsRequestService;
+
+    @Mock
+    private ProductionTrackingDocumentsProcessor productionTrackingDocumentsProcessor;
+
+    @Mock
+    private Entity firstRequest, secondRequest, otherOrderRequest, order, otherOrder;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionTrackingDocumentsGenerator = new ProductionTrackingDocumentsGenerator();
+
+        ReflectionTestUtils.setField(productionTrackingDocumentsGenerator, "productionTrackingDocumentsRequestService",
+                productionTrackingDocumentsRequestService);
+        ReflectionTestUtils.setField(productionTrackingDocumentsGenerator, "productionTrackingDocumentsProcessor",
+                productionTrackingDocumentsProcessor);
+
+        given(order.getId()).willReturn(1L);
+        given(otherOrder.getId()).willReturn(2L);
+
+        stubRequest(firstRequest, 11L, order);
+        stubRequest(secondRequest, 12L, order);
+        stubRequest(otherOrderRequest, 13L, otherOrder);
+
+        given(productionTrackingDocumentsRequestService.getRequestsToProcess(500)).willReturn(
+                Lists.newArrayList(firstRequest, otherOrderRequest, secondRequest));
+        given(productionTrackingDocumentsRequestService.getQueueStatistics()).willReturn(new QueueStatistics(0L, 0L));
+    }
+
+    @Test
+    public void shouldProcessRequestsOfOneOrderTogether() {
+        // given
+
+        // when
+        productionTrackingDocumentsGenerator.generateDocuments();
+
+        // then
+        verify(productionTrackingDocumentsProcessor).process(Lists.newArrayList(11L, 12L));
+        verify(productionTrackingDocumentsProcessor).process(Lists.newArrayList(13L));
+        verify(productionTrackingDocumentsProcessor, never()).markFailed(anyListOf(Long.class), anyString());
+    }
+
+    @Test
+    public void shouldProcessRequestsSeparatelyWhenCoalescedGroupFails() {
+        // given
+        RuntimeException exception = new IllegalStateException("not enough resources");
+
+        doThrow(exception).when(productionTrackingDocumentsProcessor).process(Lists.newArrayList(11L, 12L));
+        doThrow(exception).when(productionTrackingDocumentsProcessor).process(Collections.singletonList(12L));
+        given(productionTrackingDocumentsProcessor.getErrorMessage(exception)).willReturn("not enough resources");
+
+        // when
+        productionTrackingDocumentsGenerator.generateDocuments();
+
+        // then
+        verify(productionTrackingDocumentsProcessor).process(Collections.singletonList(11L));
+        verify(productionTrackingDocumentsProcessor).markFailed(Collections.singletonList(12L), "not enough resources");
+        verify(productionTrackingDocumentsProcessor, never()).markFailed(Lists.newArrayList(11L, 12L), "not enough resources");
+        verify(productionTrackingDocumentsProcessor, never()).markFailed(Collections.singletonList(11L), "not enough resources");
+    }
+
+    private void stubRequest(final Entity request, final Long id, final Entity requestOrder) {
+        given(request.getId()).willReturn(id);
+        given(request.getBelongsToField(ProductionTrackingDocumentsRequestFields.ORDER)).willReturn(requestOrder);
+    }
+
+}
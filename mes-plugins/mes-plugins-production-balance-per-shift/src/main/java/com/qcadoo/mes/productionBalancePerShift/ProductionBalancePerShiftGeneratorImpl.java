@@ -24,23 +24,19 @@
 package com.qcadoo.mes.productionBalancePerShift;
 
 import java.math.BigDecimal;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.joda.time.Interval;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.google.common.base.Function;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import com.qcadoo.mes.productionBalancePerShift.dataProvider.PlannedProgressDataProvider;
 import com.qcadoo.mes.productionBalancePerShift.dataProvider.RegisteredProgressDataProvider;
-import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgress;
 import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgressScope;
 import com.qcadoo.mes.productionBalancePerShift.domain.QuantitiesBalance;
 import com.qcadoo.mes.productionBalancePerShift.factory.BalanceEntityFactory;
@@ -58,18 +54,27 @@ public class ProductionBalancePerShiftGeneratorImpl implements ProductionBalance
     @Autowired
     private BalanceEntityFactory balanceEntityFactory;
 
+    @Autowired
+    private BalanceGenerationWorkerPool balanceGenerationWorkerPool;
+
+    /**
+     * Quantities are summed up per scope by the data providers, registered and planned ones are fetched in parallel.
+     */
     @Override
     @Transactional
     public List<Entity> generate(final BalanceGenerationStrategy generationParameters) {
-        Collection<ProductionProgress> registered = registeredProgressDataProvider.find(generationParameters.getSearchInterval());
-        Map<ProductionProgressScope, BigDecimal> registeredByScope = sumQuantities(groupByScope(registered));
+        Interval searchInterval = generationParameters.getSearchInterval();
 
-        Collection<ProductionProgress> planned = plannedProgressDataProvider.find(generationParameters.getSearchInterval());
-        Map<ProductionProgressScope, BigDecimal> plannedByScope = sumQuantities(groupByScope(planned));
+        Map<ProductionProgressScope, BigDecimal> registeredByScope = Maps.newHashMap();
+        Map<ProductionProgressScope, BigDecimal> plannedByScope = Maps.newHashMap();
+
+        balanceGenerationWorkerPool.runAll(Lists.<Runnable> newArrayList(
+                () -> registeredByScope.putAll(registeredProgressDataProvider.findQuantitiesByScope(searchInterval)),
+                () -> plannedByScope.putAll(plannedProgressDataProvider.findQuantitiesByScope(searchInterval))));
 
         Set<ProductionProgressScope> combinedScopes = combineScopes(generationParameters, registeredByScope, plannedByScope);
 
-        List<Entity> balanceEntities = Lists.newLinkedList();
+        List<Entity> balanceEntities = Lists.newArrayListWithCapacity(combinedScopes.size());
 
         for (ProductionProgressScope scope : combinedScopes) {
             BigDecimal plannedQuantity = plannedByScope.get(scope);
@@ -91,30 +96,4 @@ public class ProductionBalancePerShiftGeneratorImpl implements ProductionBalance
         return generationParameters.combineScopes(plannedScopes, registeredScopes);
     }
 
-    private Multimap<ProductionProgressScope, BigDecimal> groupByScope(final Collection<ProductionProgress> progresses) {
-        Multimap<ProductionProgressScope, BigDecimal> quantitiesByScope = HashMultimap.create();
-        for (ProductionProgress progress : progresses) {
-            quantitiesByScope.put(progress.getScope(), progress.getQuantity());
-        }
-        return quantitiesByScope;
-    }
-
-    private Map<ProductionProgressScope, BigDecimal> sumQuantities(final Multimap<ProductionProgressScope, BigDecimal> multimap) {
-        return Maps.transformValues(multimap.asMap(), new Function<Collection<BigDecimal>, BigDecimal>() {
-
-            @Override
-            public BigDecimal apply(final Collection<BigDecimal> quantities) {
-                BigDecimal sum = BigDecimal.ZERO;
-                // for sonar's sake..
-                if (quantities != null) {
-                    for (BigDecimal quantity : quantities) {
-                        if (quantity != null) {
-                            sum = sum.add(quantity);
-                        }
-                    }
-                }
-                return sum;
-            }
-        });
-    }
 }
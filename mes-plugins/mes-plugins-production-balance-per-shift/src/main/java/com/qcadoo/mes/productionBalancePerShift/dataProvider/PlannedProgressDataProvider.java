@@ -36,7 +36,7 @@ import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgres
 import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory.SHIFT_NAME_ALIAS;
 import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory.SHIFT_START_DAY_ALIAS;
 
-import java.util.Collection;
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 
@@ -46,9 +46,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgress;
+import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgressScope;
 import com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
@@ -66,21 +65,23 @@ public class PlannedProgressDataProvider implements ProductionProgressDataProvid
 
     // FIXME maku: this query may not work as expected with many main output products.
     public static final String RAW_HQL_QUERY = "select "
-            + "d.id as id,  o.typeOfProductionRecording as typeOfProductionRecording, "
+            + "o.typeOfProductionRecording as typeOfProductionRecording, "
             + "p.actualDateOfDay as ${SHIFT_START_DAY_ALIAS}, " + "sh.id as ${SHIFT_ID_ALIAS}, "
-            + "sh.name as ${SHIFT_NAME_ALIAS}, " + "d.quantity as ${QUANTITY_ALIAS}, "
-            + "toc.operation.number as ${OPERATION_NUMBER_ALIAS}, " + "toc.operation.id as ${OPERATION_ID_ALIAS}, "
+            + "sh.name as ${SHIFT_NAME_ALIAS}, " + "sum(d.quantity) as ${QUANTITY_ALIAS}, "
+            + "op.number as ${OPERATION_NUMBER_ALIAS}, " + "op.id as ${OPERATION_ID_ALIAS}, "
             + "toc.nodeNumber as ${OPERATION_NODE_NUMBER_ALIAS}, " + "o.number as ${ORDER_NUMBER_ALIAS}, "
             + "o.id as ${ORDER_ID_ALIAS}, " + "prod.id as ${PRODUCT_ID_ALIAS}, " + "prod.number as ${PRODUCT_NUMBER_ALIAS}, "
             + "prod.unit as ${PRODUCT_UNIT_ALIAS} " + "" + "from #productionPerShift_progressForDay p "
             + "right join p.dailyProgress d " + "left join d.shift sh " + "left join p.technologyOperationComponent toc "
-            + "left join toc.operationProductOutComponents opoc " + "left join toc.parent tocParent "
+            + "join toc.operation op " + "left join toc.operationProductOutComponents opoc " + "left join toc.parent tocParent "
             + "left join tocParent.operationProductInComponents parentOpic " + "left join opoc.product as prod "
             + "left join toc.technology tech " + "left join tech.orders o " + "" + "where d.quantity > 0 AND "
             + "((tocParent is null and opoc.product = tech.product) or (tocParent is not null and parentOpic.product = opoc.product)) AND "
             + "p.id in (select max(pfd.id) from #productionPerShift_progressForDay pfd "
             + "where pfd.actualDateOfDay >= :DATE_FROM AND pfd.actualDateOfDay <= :DATE_TO "
-            + "group by pfd.technologyOperationComponent, pfd.actualDateOfDay)";
+            + "group by pfd.technologyOperationComponent, pfd.actualDateOfDay) "
+            + "group by o.typeOfProductionRecording, p.actualDateOfDay, sh.id, sh.name, op.number, op.id, toc.nodeNumber, "
+            + "o.number, o.id, prod.id, prod.number, prod.unit";
 
     public static final String HQL_QUERY = getQueryWithFilledPlaceholders();
 
@@ -102,14 +103,9 @@ public class PlannedProgressDataProvider implements ProductionProgressDataProvid
         return substitutor.replace(RAW_HQL_QUERY).toString();
     }
 
-    public Collection<ProductionProgress> find(final Interval searchInterval) {
-        List<Entity> projections = findProjections(searchInterval);
-        List<ProductionProgress> productionProgresses = Lists.newLinkedList();
-        for (Entity projection : projections) {
-            ProductionProgress productionProgress = ProductionProgressDTOFactory.from(projection);
-            productionProgresses.add(productionProgress);
-        }
-        return productionProgresses;
+    @Override
+    public Map<ProductionProgressScope, BigDecimal> findQuantitiesByScope(final Interval searchInterval) {
+        return ProductionProgressDTOFactory.sumByScope(findProjections(searchInterval));
     }
 
     private List<Entity> findProjections(final Interval searchInterval) {
@@ -23,13 +23,14 @@
  */
 package com.qcadoo.mes.productionBalancePerShift.dataProvider;
 
-import java.util.Collection;
+import java.math.BigDecimal;
+import java.util.Map;
 
-import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgress;
+import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgressScope;
 import org.joda.time.Interval;
 
 public interface ProductionProgressDataProvider {
 
-    Collection<ProductionProgress> find(final Interval searchInterval);
+    Map<ProductionProgressScope, BigDecimal> findQuantitiesByScope(final Interval searchInterval);
 
 }
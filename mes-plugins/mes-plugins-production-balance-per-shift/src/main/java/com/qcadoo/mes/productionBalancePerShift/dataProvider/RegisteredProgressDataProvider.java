@@ -36,24 +36,25 @@ import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgres
 import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory.SHIFT_NAME_ALIAS;
 import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory.SHIFT_START_DAY_ALIAS;
 import static com.qcadoo.model.api.search.SearchProjections.alias;
-import static com.qcadoo.model.api.search.SearchProjections.field;
+import static com.qcadoo.model.api.search.SearchProjections.groupField;
+import static com.qcadoo.model.api.search.SearchProjections.sum;
 import static com.qcadoo.model.api.search.SearchRestrictions.and;
 import static com.qcadoo.model.api.search.SearchRestrictions.eq;
 import static com.qcadoo.model.api.search.SearchRestrictions.ge;
 import static com.qcadoo.model.api.search.SearchRestrictions.le;
 
-import java.util.Collection;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.Interval;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
-import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgress;
+import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgressScope;
 import com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory;
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
@@ -96,13 +97,8 @@ public class RegisteredProgressDataProvider implements ProductionProgressDataPro
     private DataDefinitionService dataDefinitionService;
 
     @Override
-    public Collection<ProductionProgress> find(final Interval searchInterval) {
-        List<ProductionProgress> progresses = Lists.newArrayList();
-        for (Entity projection : findProjections(searchInterval)) {
-            ProductionProgress progress = ProductionProgressDTOFactory.from(projection);
-            progresses.add(progress);
-        }
-        return progresses;
+    public Map<ProductionProgressScope, BigDecimal> findQuantitiesByScope(final Interval searchInterval) {
+        return ProductionProgressDTOFactory.sumByScope(findProjections(searchInterval));
     }
 
     private List<Entity> findProjections(final Interval searchInterval) {
@@ -135,25 +131,25 @@ public class RegisteredProgressDataProvider implements ProductionProgressDataPro
     private static SearchProjection buildProjection() {
         SearchProjectionList projection = SearchProjections.list();
 
-        projection.add(alias(field(ORDER_ALIAS + DOT_ID), ORDER_ID_ALIAS));
-        projection.add(alias(field(ORDER_ALIAS + DOT + OrderFields.NUMBER), ORDER_NUMBER_ALIAS));
+        projection.add(alias(groupField(ORDER_ALIAS + DOT_ID), ORDER_ID_ALIAS));
+        projection.add(alias(groupField(ORDER_ALIAS + DOT + OrderFields.NUMBER), ORDER_NUMBER_ALIAS));
 
-        projection.add(alias(field(OPERATION_ALIAS + DOT_ID), OPERATION_ID_ALIAS));
-        projection.add(alias(field(OPERATION_ALIAS + DOT + OperationFields.NUMBER), OPERATION_NUMBER_ALIAS));
+        projection.add(alias(groupField(OPERATION_ALIAS + DOT_ID), OPERATION_ID_ALIAS));
+        projection.add(alias(groupField(OPERATION_ALIAS + DOT + OperationFields.NUMBER), OPERATION_NUMBER_ALIAS));
 
-        projection.add(alias(field(PRODUCT_ALIAS + DOT_ID), PRODUCT_ID_ALIAS));
-        projection.add(alias(field(PRODUCT_ALIAS + DOT + ProductFields.NUMBER), PRODUCT_NUMBER_ALIAS));
-        projection.add(alias(field(PRODUCT_ALIAS + DOT + ProductFields.UNIT), PRODUCT_UNIT_ALIAS));
+        projection.add(alias(groupField(PRODUCT_ALIAS + DOT_ID), PRODUCT_ID_ALIAS));
+        projection.add(alias(groupField(PRODUCT_ALIAS + DOT + ProductFields.NUMBER), PRODUCT_NUMBER_ALIAS));
+        projection.add(alias(groupField(PRODUCT_ALIAS + DOT + ProductFields.UNIT), PRODUCT_UNIT_ALIAS));
 
-        projection
-                .add(alias(field(TOC_ALIAS + DOT + TechnologyOperationComponentFields.NODE_NUMBER), OPERATION_NODE_NUMBER_ALIAS));
+        projection.add(alias(groupField(TOC_ALIAS + DOT + TechnologyOperationComponentFields.NODE_NUMBER),
+                OPERATION_NODE_NUMBER_ALIAS));
 
-        projection.add(alias(field(SHIFT_ALIAS + DOT_ID), SHIFT_ID_ALIAS));
-        projection.add(alias(field(SHIFT_ALIAS + DOT + ShiftFields.NAME), SHIFT_NAME_ALIAS));
+        projection.add(alias(groupField(SHIFT_ALIAS + DOT_ID), SHIFT_ID_ALIAS));
+        projection.add(alias(groupField(SHIFT_ALIAS + DOT + ShiftFields.NAME), SHIFT_NAME_ALIAS));
 
-        projection.add(alias(field(RECORD_ALIAS + DOT + ProductionTrackingFields.SHIFT_START_DAY), SHIFT_START_DAY_ALIAS));
+        projection.add(alias(groupField(RECORD_ALIAS + DOT + ProductionTrackingFields.SHIFT_START_DAY), SHIFT_START_DAY_ALIAS));
 
-        projection.add(alias(field(TrackingOperationProductOutComponentFields.USED_QUANTITY), QUANTITY_ALIAS));
+        projection.add(alias(sum(TrackingOperationProductOutComponentFields.USED_QUANTITY), QUANTITY_ALIAS));
 
         return projection;
     }
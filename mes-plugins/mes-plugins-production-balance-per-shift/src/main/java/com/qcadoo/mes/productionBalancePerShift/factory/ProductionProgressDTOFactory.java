@@ -24,10 +24,13 @@
 package com.qcadoo.mes.productionBalancePerShift.factory;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 import org.joda.time.LocalDate;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.productionBalancePerShift.domain.*;
+import com.qcadoo.model.api.BigDecimalUtils;
 import com.qcadoo.model.api.Entity;
 
 public class ProductionProgressDTOFactory {
@@ -97,4 +100,18 @@ public class ProductionProgressDTOFactory {
         return new ProductionProgress(scope, quantity);
     }
 
+    /**
+     * Sums quantities of given projections by scope. Projections are expected to be already summed up by the database, so
+     * quantities are merged only for rows which fall into the same scope after fetching (e.g. cumulated recording).
+     */
+    public static Map<ProductionProgressScope, BigDecimal> sumByScope(final Iterable<Entity> projections) {
+        Map<ProductionProgressScope, BigDecimal> quantitiesByScope = Maps.newHashMap();
+        for (Entity projection : projections) {
+            ProductionProgress progress = from(projection);
+            quantitiesByScope.merge(progress.getScope(), BigDecimalUtils.convertNullToZero(progress.getQuantity()),
+                    BigDecimal::add);
+        }
+        return quantitiesByScope;
+    }
+
 }
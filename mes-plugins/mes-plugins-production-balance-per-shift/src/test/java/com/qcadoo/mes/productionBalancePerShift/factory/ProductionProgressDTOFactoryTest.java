@@ -0,0 +1,88 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionBalancePerShift.factory;
+
+import static com.qcadoo.mes.productionBalancePerShift.factory.ProductionProgressDTOFactory.*;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productionBalancePerShift.domain.ProductionProgressScope;
+import com.qcadoo.model.api.Entity;
+
+public class ProductionProgressDTOFactoryTest {
+
+    private static final LocalDate DAY = new LocalDate(2015, 3, 2);
+
+    @Test
+    public void shouldMergeQuantitiesOfRowsFallingIntoTheSameScope() {
+        // given
+        Entity first = mockProjection(1L, 1L, null, BigDecimal.valueOf(10L));
+        Entity second = mockProjection(1L, 1L, null, BigDecimal.valueOf(5L));
+        Entity other = mockProjection(2L, 1L, null, BigDecimal.valueOf(7L));
+
+        // when
+        Map<ProductionProgressScope, BigDecimal> quantitiesByScope = sumByScope(Lists.newArrayList(first, second, other));
+
+        // then
+        assertEquals(2, quantitiesByScope.size());
+        assertEquals(BigDecimal.valueOf(15L), quantitiesByScope.get(from(first).getScope()));
+        assertEquals(BigDecimal.valueOf(7L), quantitiesByScope.get(from(other).getScope()));
+    }
+
+    @Test
+    public void shouldTreatMissingQuantityAsZero() {
+        // given
+        Entity withoutQuantity = mockProjection(1L, 3L, 4L, null);
+
+        // when
+        Map<ProductionProgressScope, BigDecimal> quantitiesByScope = sumByScope(Lists.newArrayList(withoutQuantity));
+
+        // then
+        assertEquals(BigDecimal.ZERO, quantitiesByScope.get(from(withoutQuantity).getScope()));
+    }
+
+    private Entity mockProjection(final Long orderId, final Long shiftId, final Long operationId, final BigDecimal quantity) {
+        Entity projection = mock(Entity.class);
+        given(projection.getField(ORDER_ID_ALIAS)).willReturn(orderId);
+        given(projection.getStringField(ORDER_NUMBER_ALIAS)).willReturn("ord-" + orderId);
+        given(projection.getField(OPERATION_ID_ALIAS)).willReturn(operationId);
+        given(projection.getField(SHIFT_ID_ALIAS)).willReturn(shiftId);
+        given(projection.getStringField(SHIFT_NAME_ALIAS)).willReturn("Zmiana " + shiftId);
+        given(projection.getField(PRODUCT_ID_ALIAS)).willReturn(1L);
+        given(projection.getStringField(PRODUCT_NUMBER_ALIAS)).willReturn("prod-1");
+        given(projection.getStringField(PRODUCT_UNIT_ALIAS)).willReturn("kg");
+        given(projection.getDateField(SHIFT_START_DAY_ALIAS)).willReturn(DAY.toDate());
+        given(projection.getDecimalField(QUANTITY_ALIAS)).willReturn(quantity);
+        return projection;
+    }
+
+}
@@ -0,0 +1,152 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoDefinition;
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoService;
+import com.qcadoo.mes.productionCounting.constants.PerformanceAnalysisDtoFields;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ProductionCountingMaterializedDtos {
+
+    private static final String L_ORDERS_GROUPS = "ordersGroups";
+
+    private static final String L_ORDERS_GROUP = "ordersGroup";
+
+    @Autowired
+    private MaterializedDtoService materializedDtoService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void register() {
+        materializedDtoService.register(MaterializedDtoDefinition
+                .of(ProductionCountingConstants.PLUGIN_IDENTIFIER, ProductionCountingConstants.MODEL_PRODUCTION_TRACKING_DTO,
+                        "productioncounting_productiontrackingdto", "productioncounting_productiontrackingdtosource", "number",
+                        "order_id")
+                .dependsOn(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT, "order_id",
+                        "SELECT id FROM orders_order WHERE product_id IN (:ids) UNION SELECT order_id "
+                                + "FROM basicproductioncounting_productioncountingquantity WHERE product_id IN (:ids)")
+                .dependsOn(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_COMPANY, "order_id",
+                        "SELECT id FROM orders_order WHERE company_id IN (:ids) UNION "
+                                + "SELECT order_id FROM productioncounting_productiontracking WHERE subcontractor_id IN (:ids)")
+                .dependsOn(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_DIVISION, "id",
+                        "SELECT id FROM productioncounting_productiontracking WHERE division_id IN (:ids)")
+                .dependsOn(L_ORDERS_GROUPS, L_ORDERS_GROUP, "order_id",
+                        "SELECT id FROM orders_order WHERE ordersgroup_id IN (:ids)"));
+
+        // analysis rollups, one row per analysis dimensions (day, shift, line, order, staff, product)
+        materializedDtoService.register(MaterializedDtoDefinition.of(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_ANALYSIS_DTO, "productioncounting_productionanalysisdto",
+                "productioncounting_productionanalysisdtosource", "order_id").withGeneratedId());
+        materializedDtoService.register(MaterializedDtoDefinition.of(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                PerformanceAnalysisDtoFields.MODEL_PERFORMANCE_ANALYSIS_DTO, "productioncounting_performanceanalysisdto",
+                "productioncounting_performanceanalysisdtosource", "timerangefrom").withGeneratedId());
+    }
+
+    /**
+     * Refreshes list and analysis rows the given production tracking contributes to. Performance analysis is refreshed for the
+     * day the tracking is stored with too, in case it has been moved to another day. Trackings without time range don't belong
+     * to any day, so their performance analysis rows can't be refreshed - the table is marked stale until it is rebuilt.
+     */
+    public void refreshProductionTracking(final Entity productionTracking) {
+        Long productionTrackingId = productionTracking.getId();
+
+        if (productionTrackingId == null) {
+            materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    ProductionCountingConstants.MODEL_PRODUCTION_TRACKING_DTO, "number",
+                    productionTracking.getStringField(ProductionTrackingFields.NUMBER));
+        } else {
+            materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    ProductionCountingConstants.MODEL_PRODUCTION_TRACKING_DTO, "id", productionTrackingId);
+
+            refreshPerformanceAnalysis(getStoredAnalysisDay(productionTrackingId));
+        }
+
+        Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
+
+        if (order != null) {
+            materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    ProductionCountingConstants.MODEL_PRODUCTION_ANALYSIS_DTO, "order_id", order.getId());
+        }
+
+        refreshPerformanceAnalysis(getAnalysisDay(productionTracking));
+    }
+
+    /**
+     * Order's number and production line are shown in the production tracking list and in both analyses.
+     */
+    public void refreshOrder(final Entity order) {
+        materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_TRACKING_DTO, "order_id", order.getId());
+        materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                ProductionCountingConstants.MODEL_PRODUCTION_ANALYSIS_DTO, "order_id", order.getId());
+    }
+
+    private void refreshPerformanceAnalysis(final Date analysisDay) {
+        if (analysisDay == null) {
+            materializedDtoService.markStale(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    PerformanceAnalysisDtoFields.MODEL_PERFORMANCE_ANALYSIS_DTO);
+        } else {
+            materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    PerformanceAnalysisDtoFields.MODEL_PERFORMANCE_ANALYSIS_DTO, "timerangefrom", analysisDay);
+        }
+    }
+
+    private Date getAnalysisDay(final Entity productionTracking) {
+        Date day = productionTracking.getDateField(ProductionTrackingFields.SHIFT_START_DAY);
+
+        if (day == null) {
+            day = productionTracking.getDateField(ProductionTrackingFields.TIME_RANGE_FROM);
+        }
+
+        return (day == null) ? null : new java.sql.Date(DateUtils.truncate(day, Calendar.DATE).getTime());
+    }
+
+    private Date getStoredAnalysisDay(final Long productionTrackingId) {
+        List<java.sql.Date> days = jdbcTemplate.queryForList(
+                "SELECT COALESCE(shiftstartday, timerangefrom::date) FROM productioncounting_productiontracking WHERE id = :id",
+                Collections.singletonMap("id", productionTrackingId), java.sql.Date.class);
+
+        return days.isEmpty() ? null : days.get(0);
+    }
+
+}
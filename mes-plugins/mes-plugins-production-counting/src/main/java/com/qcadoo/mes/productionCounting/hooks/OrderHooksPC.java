@@ -30,6 +30,7 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.productionCounting.ProductionCountingMaterializedDtos;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
@@ -45,10 +46,17 @@ public class OrderHooksPC {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private ProductionCountingMaterializedDtos productionCountingMaterializedDtos;
+
     public void onCreate(final DataDefinition orderDD, final Entity order) {
         setOrderWithDefaultProductionCountingValues(orderDD, order);
     }
 
+    public void onSave(final DataDefinition orderDD, final Entity order) {
+        productionCountingMaterializedDtos.refreshOrder(order);
+    }
+
     public void setOrderWithDefaultProductionCountingValues(final DataDefinition orderDD, final Entity order) {
         for (String fieldName : L_ORDER_FIELD_NAMES) {
             if (order.getField(fieldName) == null) {
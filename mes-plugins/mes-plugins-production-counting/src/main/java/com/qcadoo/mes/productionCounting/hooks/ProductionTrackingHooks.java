@@ -47,6 +47,7 @@ import com.qcadoo.mes.basic.LogService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.productionCounting.ProductionCountingMaterializedDtos;
 import com.qcadoo.mes.productionCounting.ProductionTrackingService;
 import com.qcadoo.mes.productionCounting.SetTechnologyInComponentsService;
 import com.qcadoo.mes.productionCounting.SetTrackingOperationProductsComponentsService;
@@ -107,6 +108,9 @@ public class ProductionTrackingHooks {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ProductionCountingMaterializedDtos productionCountingMaterializedDtos;
+
     public void onCreate(final DataDefinition productionTrackingDD, final Entity productionTracking) {
         setInitialState(productionTracking);
     }
@@ -146,6 +150,8 @@ public class ProductionTrackingHooks {
                                     LocaleContextHolder.getLocale(), worker, number,
                                     generateOrderDetailsUrl(orderNumber, order.getId()))).withCreateTime(createDate));
         }
+
+        productionCountingMaterializedDtos.refreshProductionTracking(productionTracking);
     }
 
     private String generateOrderDetailsUrl(String number, Long id) {
@@ -155,6 +161,7 @@ public class ProductionTrackingHooks {
     public void onDelete(final DataDefinition productionTrackingDD, final Entity productionTracking) {
         productionTrackingService.unCorrect(productionTracking);
         logPerformDelete(productionTracking);
+        productionCountingMaterializedDtos.refreshProductionTracking(productionTracking);
     }
 
     private void logPerformDelete(final Entity productionTracking) {
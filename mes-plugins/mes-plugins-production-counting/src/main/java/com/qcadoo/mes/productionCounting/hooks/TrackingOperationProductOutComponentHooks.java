@@ -37,6 +37,7 @@ import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.util.ProductUnitsConversionService;
 import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionCounting.ProductionCountingMaterializedDtos;
 import com.qcadoo.mes.productionCounting.SetTrackingOperationProductsComponentsService;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ParameterFieldsPC;
@@ -71,9 +72,26 @@ public class TrackingOperationProductOutComponentHooks {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ProductionCountingMaterializedDtos productionCountingMaterializedDtos;
+
     public void onSave(final DataDefinition trackingOperationProductOutComponentDD, Entity trackingOperationProductOutComponent) {
         fillTrackingOperationProductInComponentsQuantities(trackingOperationProductOutComponent);
         fillSetTrackingOperationProductsInComponents(trackingOperationProductOutComponent);
+        refreshProductionTrackingDtos(trackingOperationProductOutComponent);
+    }
+
+    /**
+     * Production tracking list shows used quantity of produced products, and analyses sum it, so rows of the tracking have to
+     * be refreshed also when the component is saved from its own details form.
+     */
+    private void refreshProductionTrackingDtos(final Entity trackingOperationProductOutComponent) {
+        Entity productionTracking = trackingOperationProductOutComponent
+                .getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCTION_TRACKING);
+
+        if (productionTracking != null) {
+            productionCountingMaterializedDtos.refreshProductionTracking(productionTracking);
+        }
     }
 
     private void fillTrackingOperationProductInComponentsQuantities(final Entity trackingOperationProductOutComponent) {
@@ -20,7 +20,7 @@ import com.qcadoo.view.api.components.grid.GridComponentMultiSearchFilter;
 @Service
 public class ProductionAnalysisListeners {
 
-    public static final String MODEL_PRODUCTION_ANALYSIS_DTO = "productionAnalysisDto";
+    public static final String MODEL_PRODUCTION_ANALYSIS_DTO = ProductionCountingConstants.MODEL_PRODUCTION_ANALYSIS_DTO;
 
     private static final String L_GRID = "grid";
 
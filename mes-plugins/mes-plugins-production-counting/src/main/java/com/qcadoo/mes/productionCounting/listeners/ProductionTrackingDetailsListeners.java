@@ -25,8 +25,10 @@ package com.qcadoo.mes.productionCounting.listeners;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -40,6 +42,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.StaffFields;
@@ -56,6 +59,7 @@ import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingForProductDtoFields;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentDtoFields;
 import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductInComponentFields;
+import com.qcadoo.mes.productionCounting.constants.TrackingOperationProductOutComponentFields;
 import com.qcadoo.mes.productionCounting.constants.TypeOfProductionRecording;
 import com.qcadoo.mes.productionCounting.newstates.ProductionTrackingStateServiceMarker;
 import com.qcadoo.mes.productionCounting.utils.ProductionTrackingDocumentsHelper;
@@ -198,10 +202,41 @@ public class ProductionTrackingDetailsListeners {
                 view.openModal(url, parameters);
             }
         } else {
-            stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, view, args);
+            stateExecutorService.changeState(ProductionTrackingStateServiceMarker.class, view, args, this::getTouchedKeys);
         }
     }
 
+    /**
+     * Trackings change their order (e.g. its state and production counting quantities) and stock and warehouse documents of
+     * their used and produced products, so only trackings of different orders without common products are accepted in
+     * parallel.
+     */
+    private Collection<String> getTouchedKeys(final Entity selectedProductionTracking) {
+        Entity productionTracking = selectedProductionTracking.getDataDefinition().getMasterModelEntity(
+                selectedProductionTracking.getId());
+
+        Set<String> touchedKeys = Sets.newHashSet();
+
+        touchedKeys.add(ProductionTrackingFields.ORDER + "_"
+                + productionTracking.getBelongsToField(ProductionTrackingFields.ORDER).getId());
+
+        for (Entity trackingOperationProductInComponent : productionTracking
+                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS)) {
+            touchedKeys.add(TrackingOperationProductInComponentFields.PRODUCT + "_"
+                    + trackingOperationProductInComponent.getBelongsToField(TrackingOperationProductInComponentFields.PRODUCT)
+                            .getId());
+        }
+
+        for (Entity trackingOperationProductOutComponent : productionTracking
+                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS)) {
+            touchedKeys.add(TrackingOperationProductOutComponentFields.PRODUCT + "_"
+                    + trackingOperationProductOutComponent.getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCT)
+                            .getId());
+        }
+
+        return touchedKeys;
+    }
+
     public void calcTotalLaborTime(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         FormComponent productionTrackingForm = (FormComponent) view.getComponentByReference(L_FORM);
 
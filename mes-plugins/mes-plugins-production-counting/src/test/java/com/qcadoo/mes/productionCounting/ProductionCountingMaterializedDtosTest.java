@@ -0,0 +1,140 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.mes.basic.materializedDto.MaterializedDtoService;
+import com.qcadoo.mes.productionCounting.constants.PerformanceAnalysisDtoFields;
+import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ProductionCountingMaterializedDtosTest {
+
+    private static final Date L_DAY = Date.valueOf("2016-05-10");
+
+    private static final String L_TABLE_NAME = "productioncounting_performanceanalysisdto";
+
+    private ProductionCountingMaterializedDtos productionCountingMaterializedDtos;
+
+    private MaterializedDtoService materializedDtoService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        materializedDtoService = new MaterializedDtoService();
+        productionCountingMaterializedDtos = new ProductionCountingMaterializedDtos();
+
+        ReflectionTestUtils.setField(materializedDtoService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(materializedDtoService, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(productionCountingMaterializedDtos, "materializedDtoService", materializedDtoService);
+        ReflectionTestUtils.setField(productionCountingMaterializedDtos, "jdbcTemplate", jdbcTemplate);
+
+        given(jdbcTemplate.queryForList(anyString(), anyMap(), eq(String.class))).willReturn(
+                Arrays.asList("timerangefrom", "shift_id", "productionline_id", "staff_id"));
+
+        productionCountingMaterializedDtos.register();
+    }
+
+    @Test
+    public void shouldLockDayBeforeReplacingPerformanceAnalysisRows() {
+        // when
+        materializedDtoService.refreshAfterCommit(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                PerformanceAnalysisDtoFields.MODEL_PERFORMANCE_ANALYSIS_DTO, "timerangefrom", L_DAY);
+
+        // then
+        InOrder inOrder = inOrder(jdbcTemplate);
+
+        inOrder.verify(jdbcTemplate).queryForList(startsWith("SELECT pg_advisory_xact_lock_shared("),
+                eq(Collections.singletonMap("tableName", L_TABLE_NAME)));
+        inOrder.verify(jdbcTemplate).queryForList(startsWith("SELECT pg_advisory_xact_lock("),
+                eq(ImmutableMap.of("tableName", L_TABLE_NAME, "lockKey", "timerangefrom:" + L_DAY)));
+        inOrder.verify(jdbcTemplate).update(startsWith("DELETE FROM " + L_TABLE_NAME),
+                eq(Collections.singletonMap("keys", Collections.singletonList(L_DAY))));
+        inOrder.verify(jdbcTemplate).update(startsWith("INSERT INTO " + L_TABLE_NAME),
+                eq(Collections.singletonMap("keys", Collections.singletonList(L_DAY))));
+    }
+
+    @Test
+    public void shouldMarkPerformanceAnalysisStaleWhenTrackingHasNoTimeRange() {
+        // given
+        Entity productionTracking = mock(Entity.class);
+
+        given(productionTracking.getStringField(ProductionTrackingFields.NUMBER)).willReturn("000001");
+
+        // when
+        productionCountingMaterializedDtos.refreshProductionTracking(productionTracking);
+
+        // then
+        assertTrue(materializedDtoService.isStale(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                PerformanceAnalysisDtoFields.MODEL_PERFORMANCE_ANALYSIS_DTO));
+    }
+
+    @Test
+    public void shouldNotMarkPerformanceAnalysisStaleWhenTrackingHasTimeRange() {
+        // given
+        Entity productionTracking = mock(Entity.class);
+
+        given(productionTracking.getStringField(ProductionTrackingFields.NUMBER)).willReturn("000001");
+        given(productionTracking.getDateField(ProductionTrackingFields.TIME_RANGE_FROM)).willReturn(L_DAY);
+
+        // when
+        productionCountingMaterializedDtos.refreshProductionTracking(productionTracking);
+
+        // then
+        assertFalse(materializedDtoService.isStale(ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                PerformanceAnalysisDtoFields.MODEL_PERFORMANCE_ANALYSIS_DTO));
+    }
+
+}
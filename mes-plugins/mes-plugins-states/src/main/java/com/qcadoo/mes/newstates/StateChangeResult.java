@@ -0,0 +1,116 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.model.api.validators.GlobalMessage;
+import com.qcadoo.view.api.ComponentMessagesHolder;
+import com.qcadoo.view.api.ComponentState;
+
+/**
+ * Outcome of a single state change together with messages collected during it. Messages are kept here instead of being
+ * written to the view directly, so state changes can run outside of the request thread.
+ */
+public class StateChangeResult {
+
+    private final Long entityId;
+
+    private Entity entity;
+
+    private boolean successful;
+
+    private final List<Object> messages = Lists.newArrayList();
+
+    public StateChangeResult(final Long entityId) {
+        this.entityId = entityId;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public void setEntity(final Entity entity) {
+        this.entity = entity;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public void setSuccessful(final boolean successful) {
+        this.successful = successful;
+    }
+
+    public void addMessage(final String message, final ComponentState.MessageType messageType) {
+        messages.add(new Message(message, messageType));
+    }
+
+    public void addMessage(final ErrorMessage errorMessage) {
+        messages.add(errorMessage);
+    }
+
+    public void addMessage(final GlobalMessage globalMessage) {
+        messages.add(globalMessage);
+    }
+
+    public void addMessages(final StateChangeResult result) {
+        messages.addAll(result.messages);
+    }
+
+    public void copyMessages(final ComponentMessagesHolder componentMessagesHolder) {
+        for (Object message : messages) {
+            if (message instanceof ErrorMessage) {
+                componentMessagesHolder.addMessage((ErrorMessage) message);
+            } else if (message instanceof GlobalMessage) {
+                componentMessagesHolder.addMessage((GlobalMessage) message);
+            } else {
+                Message plainMessage = (Message) message;
+
+                componentMessagesHolder.addMessage(plainMessage.message, plainMessage.messageType);
+            }
+        }
+    }
+
+    private static final class Message {
+
+        private final String message;
+
+        private final ComponentState.MessageType messageType;
+
+        private Message(final String message, final ComponentState.MessageType messageType) {
+            this.message = message;
+            this.messageType = messageType;
+        }
+
+    }
+
+}
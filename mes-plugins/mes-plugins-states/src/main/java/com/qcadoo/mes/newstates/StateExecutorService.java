@@ -5,24 +5,26 @@ import static com.qcadoo.mes.states.constants.StateChangeStatus.PAUSED;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.Scope;
-import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
@@ -39,14 +41,12 @@ import com.qcadoo.model.api.validators.GlobalMessage;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.security.api.SecurityService;
-import com.qcadoo.view.api.ComponentMessagesHolder;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.GridComponent;
 
 @Service
-@Scope(value = "request", proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class StateExecutorService {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(StateExecutorService.class);
@@ -62,26 +62,32 @@ public class StateExecutorService {
     @Autowired
     private SecurityService securityService;
 
-    private ComponentMessagesHolder componentMessagesHolder;
+    @Autowired
+    private StateChangeWorkerPool stateChangeWorkerPool;
+
+    private static final ThreadLocal<StateChangeResult> CURRENT_RESULT = new ThreadLocal<>();
 
     private static final Logger LOGGER = Logger.getLogger(StateExecutorService.class);
 
     public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
-        componentMessagesHolder = view;
+        changeState(serviceMarker, view, args, entity -> Collections.singleton(StringUtils.EMPTY));
+    }
+
+    /**
+     * Changes state of entities selected in grid or of the form entity. Selected entities touching any common key (e.g. a
+     * product whose stock they change) change state one after another, independent groups are processed in parallel.
+     */
+    public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args,
+            Function<Entity, Collection<?>> touchedKeys) {
         Long userId = securityService.getCurrentUserId();
         String userLogin = securityService.getCurrentUserName();
 
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference("grid");
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
-                entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
-                entity.setField(USER_CHANGE_STATE, userId);
-
-                entity = changeState(serviceMarker, entity, userLogin, args[0]);
-
-                copyMessages(entity);
-            });
+            List<Entity> entities = Lists.newArrayList(maybeGridComponent.get().getSelectedEntities());
 
+            changeStates(serviceMarker, entities, touchedKeys, userId, userLogin, args[0]).forEach(
+                    result -> result.copyMessages(view));
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference("form");
             if (maybeForm.isPresent()) {
@@ -89,16 +95,144 @@ public class StateExecutorService {
                 Entity entity = formComponent.getEntity().getDataDefinition().get(formComponent.getEntityId());
                 entity.setField(USER_CHANGE_STATE, userId);
                 if (entity.isValid()) {
-                    entity = changeState(serviceMarker, entity, userLogin, args[0]);
+                    List<M> services = lookupChangeStateServices(serviceMarker);
+                    StateChangeResult result = new StateChangeResult(entity.getId());
+
+                    entity = changeState(services, getChangeEntityDescriber(services), entity, userLogin, args[0], result);
+                    result.copyMessages(view);
                     formComponent.setEntity(entity);
                 }
             }
         }
     }
 
+    /**
+     * Changes state of given entities. State services and describer are looked up once for all entities. Entities touching any
+     * common key change state one after another, in given order, independent groups run on {@link StateChangeWorkerPool}.
+     * Entities without keys are independent of all others. Every state change is performed in its own transaction. Results
+     * are returned in order of given entities.
+     */
+    public <M extends StateService> List<StateChangeResult> changeStates(Class<M> serviceMarker, List<Entity> entities,
+            Function<Entity, Collection<?>> touchedKeys, Long userId, String userLogin, String targetState) {
+        List<M> services = lookupChangeStateServices(serviceMarker);
+        StateChangeEntityDescriber describer = getChangeEntityDescriber(services);
+
+        List<StateChangeResult> results = Lists.newArrayList();
+
+        for (Entity entity : entities) {
+            results.add(new StateChangeResult(entity.getId()));
+        }
+
+        List<Runnable> tasks = Lists.newArrayList();
+
+        for (List<Integer> indexes : groupByTouchedKeys(entities, touchedKeys)) {
+            tasks.add(() -> {
+                for (Integer index : indexes) {
+                    changeSelectedEntityState(services, describer, entities.get(index), userId, userLogin, targetState,
+                            results.get(index));
+                }
+            });
+        }
+
+        stateChangeWorkerPool.runAll(tasks);
+
+        return results;
+    }
+
+    /**
+     * Splits entities into groups which don't share any touched key, merging groups transitively.
+     *
+     * @return indexes of entities by group, groups and indexes in order of given entities
+     */
+    static Collection<List<Integer>> groupByTouchedKeys(final List<Entity> entities,
+            final Function<Entity, Collection<?>> touchedKeys) {
+        int[] parents = new int[entities.size()];
+        Map<Object, Integer> indexesByKey = Maps.newHashMap();
+
+        for (int index = 0; index < entities.size(); index++) {
+            parents[index] = index;
+
+            for (Object key : touchedKeys.apply(entities.get(index))) {
+                Integer otherIndex = indexesByKey.putIfAbsent(key, index);
+
+                if (otherIndex != null) {
+                    parents[findRoot(parents, index)] = findRoot(parents, otherIndex);
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> indexesByRoot = new LinkedHashMap<>();
+
+        for (int index = 0; index < entities.size(); index++) {
+            indexesByRoot.computeIfAbsent(findRoot(parents, index), root -> Lists.newArrayList()).add(index);
+        }
+
+        return indexesByRoot.values();
+    }
+
+    private static int findRoot(final int[] parents, final int index) {
+        int root = index;
+
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+
+        return root;
+    }
+
+    private <M extends StateService> void changeSelectedEntityState(List<M> services, StateChangeEntityDescriber describer,
+            Entity selectedEntity, Long userId, String userLogin, String targetState, StateChangeResult result) {
+        try {
+            Entity entity = selectedEntity.getDataDefinition().getMasterModelEntity(selectedEntity.getId());
+            entity.setField(USER_CHANGE_STATE, userId);
+
+            entity = changeState(services, describer, entity, userLogin, targetState, result);
+
+            copyMessages(entity, result);
+        } catch (Exception exception) {
+            result.setSuccessful(false);
+            result.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            LOG.warn("Can't perform state change", exception);
+        }
+    }
+
     public <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String userLogin, String targetState) {
         List<M> services = lookupChangeStateServices(serviceMarker);
-        StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
+        StateChangeResult result = new StateChangeResult(entity.getId());
+
+        entity = changeState(services, getChangeEntityDescriber(services), entity, userLogin, targetState, result);
+
+        StateChangeResult currentResult = CURRENT_RESULT.get();
+        if (currentResult != null) {
+            currentResult.addMessages(result);
+        }
+
+        return entity;
+    }
+
+    private <M extends StateService> Entity changeState(List<M> services, StateChangeEntityDescriber describer, Entity entity,
+            String userLogin, String targetState, StateChangeResult result) {
+        StateChangeResult previousResult = CURRENT_RESULT.get();
+        CURRENT_RESULT.set(result);
+
+        try {
+            entity = performStateChange(services, describer, entity, userLogin, targetState, result);
+        } finally {
+            if (previousResult == null) {
+                CURRENT_RESULT.remove();
+            } else {
+                CURRENT_RESULT.set(previousResult);
+            }
+        }
+
+        result.setEntity(entity);
+
+        return entity;
+    }
+
+    private <M extends StateService> Entity performStateChange(List<M> services, StateChangeEntityDescriber describer,
+            Entity entity, String userLogin, String targetState, StateChangeResult result) {
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
         Entity stateChangeEntity = buildStateChangeEntity(describer, entity, userLogin, sourceState, targetState);
@@ -111,47 +245,48 @@ public class StateExecutorService {
             entity = performChangeState(services, entity, stateChangeEntity, describer);
 
             if (entity.isValid()) {
-                copyMessages(entity);
+                result.setSuccessful(true);
+                copyMessages(entity, result);
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
-                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+                result.addMessage("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
                 LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
             } else {
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
                 entity = rollbackStateChange(entity, sourceState);
-                message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+                result.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
                 LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
             }
 
         } catch (EntityRuntimeException entityException) {
-            copyMessages(entityException.getEntity(), entity);
+            copyMessages(entityException.getEntity(), entity, result);
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
             return entity;
 
         } catch (AnotherChangeInProgressException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
         } catch (StateTransitionNotAlloweException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
         } catch (Exception exception) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            result.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
             LOG.warn("Can't perform state change", exception);
@@ -282,6 +417,10 @@ public class StateExecutorService {
         return entity.isValid();
     }
 
+    private <M extends StateService> StateChangeEntityDescriber getChangeEntityDescriber(List<M> services) {
+        return services.stream().findFirst().get().getChangeEntityDescriber();
+    }
+
     private <M extends StateService> List<M> lookupChangeStateServices(Class<M> serviceMarker) {
         Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
 
@@ -324,28 +463,25 @@ public class StateExecutorService {
         return true;
     }
 
-    private void copyMessages(Entity entity, Entity mainEntity) {
+    private void copyMessages(Entity entity, Entity mainEntity, StateChangeResult result) {
         if (mainEntity != null && mainEntity.equals(entity) && entity.getGlobalErrors() == mainEntity.getGlobalErrors()) {
             return;
         }
-        if (componentMessagesHolder == null) {
-            return;
-        }
 
         for (ErrorMessage errorMessage : entity.getGlobalErrors()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            result.addMessage(errorMessage);
         }
         for (ErrorMessage errorMessage : entity.getErrors().values()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            result.addMessage(errorMessage);
         }
 
         for (GlobalMessage globalMessage : entity.getGlobalMessages()) {
-            componentMessagesHolder.addMessage(globalMessage);
+            result.addMessage(globalMessage);
         }
     }
 
-    private void copyMessages(Entity entity) {
-        copyMessages(entity, null);
+    private void copyMessages(Entity entity, StateChangeResult result) {
+        copyMessages(entity, null, result);
     }
 
     private Entity saveAndValidate(final Entity entity) {
@@ -360,12 +496,6 @@ public class StateExecutorService {
         return saved;
     }
 
-    private void message(String msg, ComponentState.MessageType messageType) {
-        if (componentMessagesHolder != null) {
-            componentMessagesHolder.addMessage(msg, messageType);
-        }
-    }
-
     private void checkForUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
         final String ownerFieldName = describer.getOwnerFieldName();
         final String statusFieldName = describer.getStatusFieldName();
@@ -0,0 +1,126 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class StateChangeWorkerPoolTest {
+
+    private static final int L_TENANT_ID = 7;
+
+    private StateChangeWorkerPool stateChangeWorkerPool;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private final List<Integer> tenantIds = Collections.synchronizedList(Lists.newArrayList());
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        stateChangeWorkerPool = new StateChangeWorkerPool();
+
+        ReflectionTestUtils.setField(stateChangeWorkerPool, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willReturn(L_TENANT_ID);
+
+        doAnswer(invocation -> {
+            tenantIds.add((Integer) invocation.getArguments()[0]);
+            ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+
+            return null;
+        }).when(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+    }
+
+    @After
+    public void tearDown() {
+        stateChangeWorkerPool.shutdown();
+    }
+
+    @Test
+    public void shouldRunSingleTaskInCallerThread() {
+        // given
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = Lists.newArrayList();
+
+        // when
+        stateChangeWorkerPool.runAll(Collections.singletonList(() -> threads.add(Thread.currentThread())));
+
+        // then
+        assertEquals(1, threads.size());
+        assertSame(caller, threads.get(0));
+    }
+
+    @Test
+    public void shouldRunAllTasks() {
+        // given
+        AtomicInteger counter = new AtomicInteger();
+        List<Runnable> tasks = Lists.newArrayList();
+
+        for (int i = 0; i < 20; i++) {
+            tasks.add(counter::incrementAndGet);
+        }
+
+        // when
+        stateChangeWorkerPool.runAll(tasks);
+
+        // then
+        assertEquals(20, counter.get());
+        assertEquals(Collections.nCopies(20, L_TENANT_ID), tenantIds);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRethrowTaskFailure() {
+        // given
+        List<Runnable> tasks = Lists.newArrayList(() -> {
+        }, () -> {
+            throw new IllegalArgumentException();
+        });
+
+        // when
+        stateChangeWorkerPool.runAll(tasks);
+    }
+
+}
@@ -0,0 +1,244 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.security.api.SecurityService;
+
+public class StateExecutorServiceTest {
+
+    private static final String L_TARGET_STATE = "02accepted";
+
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private StateChangeWorkerPool stateChangeWorkerPool;
+
+    @Mock
+    private TestStateService stateService;
+
+    @Mock
+    private StateChangeEntityDescriber describer;
+
+    @Mock
+    private DataDefinition stateChangeDD;
+
+    private final List<Collection<Runnable>> submittedTasks = Lists.newArrayList();
+
+    private final List<Long> changedEntityIds = Collections.synchronizedList(Lists.newArrayList());
+
+    interface TestStateService extends StateService {
+    }
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        stateExecutorService = new StateExecutorService();
+
+        ReflectionTestUtils.setField(stateExecutorService, "applicationContext", applicationContext);
+        ReflectionTestUtils.setField(stateExecutorService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(stateExecutorService, "securityService", securityService);
+        ReflectionTestUtils.setField(stateExecutorService, "stateChangeWorkerPool", stateChangeWorkerPool);
+
+        Map<String, TestStateService> stateServices = ImmutableMap.of("testStateService", stateService);
+
+        given(applicationContext.getBeansOfType(TestStateService.class)).willReturn(stateServices);
+        given(stateService.getChangeEntityDescriber()).willReturn(describer);
+        given(stateService.onValidate(any(Entity.class), any(), any(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(this::returnOwner);
+        given(stateService.onBeforeSave(any(Entity.class), any(), any(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(this::returnOwner);
+        given(stateService.onAfterSave(any(Entity.class), any(), any(), any(Entity.class),
+                any(StateChangeEntityDescriber.class))).willAnswer(this::returnOwner);
+
+        given(describer.getDataDefinition()).willReturn(stateChangeDD);
+        given(stateChangeDD.find()).willReturn(mock(SearchCriteriaBuilder.class, RETURNS_DEEP_STUBS));
+        given(stateChangeDD.create()).willAnswer(invocation -> mockStateChangeEntity());
+        given(stateChangeDD.save(any(Entity.class))).willAnswer(this::returnOwner);
+
+        doAnswer(invocation -> {
+            Collection<Runnable> tasks = (Collection<Runnable>) invocation.getArguments()[0];
+
+            submittedTasks.add(tasks);
+            tasks.forEach(Runnable::run);
+
+            return null;
+        }).when(stateChangeWorkerPool).runAll(anyCollection());
+    }
+
+    @Test
+    public void shouldChangeStatesOfEntitiesWithCommonKeysInOneGroup() {
+        // given
+        List<Entity> entities = Lists.newArrayList(mockSelectedEntity(1L), mockSelectedEntity(2L), mockSelectedEntity(3L),
+                mockSelectedEntity(4L));
+        Map<Long, Collection<?>> touchedKeys = ImmutableMap.of(1L, Arrays.asList(10L, 11L), 2L, Arrays.asList(20L), 3L,
+                Arrays.asList(11L), 4L, Collections.emptyList());
+
+        // when
+        List<StateChangeResult> results = stateExecutorService.changeStates(TestStateService.class, entities,
+                entity -> touchedKeys.get(entity.getId()), 1L, "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(1, submittedTasks.size());
+        assertEquals(3, submittedTasks.get(0).size());
+        assertEquals(Arrays.asList(1L, 3L, 2L, 4L), changedEntityIds);
+        assertEquals(4, results.size());
+
+        for (int index = 0; index < entities.size(); index++) {
+            assertEquals(entities.get(index).getId(), results.get(index).getEntityId());
+            assertTrue(results.get(index).isSuccessful());
+        }
+    }
+
+    @Test
+    public void shouldChangeStatesSequentiallyWhenAllEntitiesShareKey() {
+        // given
+        List<Entity> entities = Lists.newArrayList(mockSelectedEntity(1L), mockSelectedEntity(2L), mockSelectedEntity(3L));
+
+        // when
+        stateExecutorService.changeStates(TestStateService.class, entities, entity -> Collections.singleton(""), 1L, "admin",
+                L_TARGET_STATE);
+
+        // then
+        assertEquals(1, submittedTasks.get(0).size());
+        assertEquals(Arrays.asList(1L, 2L, 3L), changedEntityIds);
+    }
+
+    @Test
+    public void shouldReportFailureOfOneEntityAndChangeTheOthers() {
+        // given
+        Entity brokenEntity = mock(Entity.class, RETURNS_DEEP_STUBS);
+
+        given(brokenEntity.getId()).willReturn(2L);
+        given(brokenEntity.getDataDefinition().getMasterModelEntity(2L)).willThrow(new IllegalStateException());
+
+        List<Entity> entities = Lists.newArrayList(mockSelectedEntity(1L), brokenEntity, mockSelectedEntity(3L));
+
+        // when
+        List<StateChangeResult> results = stateExecutorService.changeStates(TestStateService.class, entities,
+                entity -> Collections.singleton(entity.getId()), 1L, "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(3, submittedTasks.get(0).size());
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(2).isSuccessful());
+        assertEquals(Arrays.asList(1L, 3L), changedEntityIds);
+    }
+
+    @Test
+    public void shouldMergeGroupsTransitively() {
+        // given
+        List<Entity> entities = Lists.newArrayList(mockEntity(1L), mockEntity(2L), mockEntity(3L), mockEntity(4L));
+        Map<Long, Collection<?>> touchedKeys = ImmutableMap.of(1L, Arrays.asList("a"), 2L, Arrays.asList("b"), 3L,
+                Arrays.asList("c"), 4L, Arrays.asList("a", "c"));
+        Function<Entity, Collection<?>> keys = entity -> touchedKeys.get(entity.getId());
+
+        // when
+        Collection<List<Integer>> groups = StateExecutorService.groupByTouchedKeys(entities, keys);
+
+        // then
+        assertEquals(Lists.newArrayList(Arrays.asList(0, 2, 3), Arrays.asList(1)), Lists.newArrayList(groups));
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+
+        given(entity.getId()).willReturn(id);
+
+        return entity;
+    }
+
+    private Entity mockSelectedEntity(final Long id) {
+        Entity owner = mock(Entity.class);
+        DataDefinition ownerDD = mock(DataDefinition.class);
+
+        given(owner.getId()).willReturn(id);
+        given(owner.getDataDefinition()).willReturn(ownerDD);
+        given(owner.isValid()).willReturn(true);
+        given(ownerDD.getMasterModelEntity(id)).willReturn(owner);
+        given(ownerDD.save(owner)).willAnswer(invocation -> {
+            changedEntityIds.add(id);
+
+            return owner;
+        });
+
+        return owner;
+    }
+
+    private Entity mockStateChangeEntity() {
+        Entity stateChangeEntity = mock(Entity.class);
+
+        given(stateChangeEntity.getDataDefinition()).willReturn(stateChangeDD);
+        given(stateChangeEntity.isValid()).willReturn(true);
+
+        return stateChangeEntity;
+    }
+
+    private Entity returnOwner(final InvocationOnMock invocation) {
+        return (Entity) invocation.getArguments()[0];
+    }
+
+}
@@ -56,5 +56,9 @@ public final class GeneratorContextFields {
 
     public static final String GENERATION_IN_PROGRSS = "generationInProgress";
 
+    public static final String GENERATED_NODES_NUMBER = "generatedNodesNumber";
+
+    public static final String GENERATION_TIME = "generationTime";
+
 
 }
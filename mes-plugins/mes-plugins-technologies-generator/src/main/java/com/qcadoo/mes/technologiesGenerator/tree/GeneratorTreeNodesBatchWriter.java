@@ -0,0 +1,195 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologiesGenerator.tree;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.commons.functional.Either;
+import com.qcadoo.mes.technologies.domain.TechnologyId;
+import com.qcadoo.mes.technologies.tree.domain.TechnologyOperationId;
+import com.qcadoo.mes.technologiesGenerator.domain.ProductInfo;
+import com.qcadoo.mes.technologiesGenerator.domain.TechnologyStructureNode;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Writes whole generator tree in JDBC batches instead of saving each node through the DataDefinition. Node ids are taken
+ * from the sequence up front, so parents are inserted before their children within a single pass over the flattened tree.
+ * Since no model validators run here, values copied from technologies are checked against the generatorTreeNode fields
+ * before anything is inserted.
+ */
+@Service
+public class GeneratorTreeNodesBatchWriter {
+
+    private static final int L_BATCH_SIZE = 1000;
+
+    private static final BigDecimal L_STANDARD_PERFORMANCE_MAX_UNSCALED = BigDecimal.TEN.pow(7);
+
+    private static final int L_STANDARD_PERFORMANCE_MAX_SCALE = 5;
+
+    private static final String L_INSERT_GENERATOR_TREE_NODE = "INSERT INTO technologiesgenerator_generatortreenode "
+            + "(id, parent_id, generatorcontext_id, entitytype, priority, quantity, product_id, operation_id, "
+            + "producttechnology_id, originaltechnology_id, division_id, technologygroup_id, standardperformancetechnology) "
+            + "VALUES (:id, :parent_id, :generatorcontext_id, :entitytype, :priority, :quantity, :product_id, :operation_id, "
+            + ":producttechnology_id, :originaltechnology_id, :division_id, :technologygroup_id, :standardperformancetechnology)";
+
+    private static final String L_SELECT_TOC_DETAILS = "SELECT toc.id, toc.division_id, t.technologygroup_id, "
+            + "t.standardperformancetechnology FROM technologies_technologyoperationcomponent toc "
+            + "JOIN technologies_technology t ON t.id = toc.technology_id WHERE toc.id IN (:ids)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts all nodes of given structure for given generator context.
+     *
+     * @return number of inserted nodes or error message if any node would not pass generatorTreeNode validation
+     */
+    public Either<String, Integer> write(final Entity generatorContext, final TechnologyStructureNode root) {
+        List<FlatNode> nodes = flatten(root);
+        Map<Long, Map<String, Object>> tocDetails = fetchTocDetails(nodes);
+        for (Map<String, Object> toc : tocDetails.values()) {
+            BigDecimal standardPerformance = (BigDecimal) toc.get("standardperformancetechnology");
+            if (!isValidStandardPerformance(standardPerformance)) {
+                return Either.left(String.format(
+                        "Standard performance %s of technology operation component %s is not valid for generator tree node",
+                        standardPerformance.toPlainString(), toc.get("id")));
+            }
+        }
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('technologiesgenerator_generatortreenode_id_seq') FROM generate_series(1, :count)",
+                Collections.singletonMap("count", nodes.size()), Long.class);
+
+        List<Map<String, Object>> parameters = Lists.newArrayListWithCapacity(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            FlatNode flatNode = nodes.get(i);
+            Map<String, Object> nodeParameters = getNodeParameters(generatorContext, flatNode, tocDetails);
+            nodeParameters.put("id", ids.get(i));
+            nodeParameters.put("parent_id", flatNode.parentIndex < 0 ? null : ids.get(flatNode.parentIndex));
+            parameters.add(nodeParameters);
+        }
+        batchUpdate(parameters);
+        return Either.right(parameters.size());
+    }
+
+    static List<FlatNode> flatten(final TechnologyStructureNode root) {
+        List<FlatNode> nodes = Lists.newArrayList(new FlatNode(root, -1, 1));
+        for (int i = 0; i < nodes.size(); i++) {
+            List<TechnologyStructureNode> children = nodes.get(i).node.getChildren();
+            for (int j = 0; j < children.size(); j++) {
+                nodes.add(new FlatNode(children.get(j), i, j + 1));
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Mirrors validators of generatorTreeNode.standardPerformanceTechnology: greater than zero, at most 7 digits before and 5
+     * digits after the decimal point.
+     */
+    static boolean isValidStandardPerformance(final BigDecimal standardPerformance) {
+        if (standardPerformance == null) {
+            return true;
+        }
+        if (standardPerformance.signum() <= 0) {
+            return false;
+        }
+        BigDecimal normalized = standardPerformance.stripTrailingZeros();
+        return normalized.scale() <= L_STANDARD_PERFORMANCE_MAX_SCALE
+                && normalized.compareTo(L_STANDARD_PERFORMANCE_MAX_UNSCALED) < 0;
+    }
+
+    private Map<Long, Map<String, Object>> fetchTocDetails(final List<FlatNode> nodes) {
+        Set<Long> tocIds = nodes.stream().map(flatNode -> flatNode.node.getProductInfo().getTocId()).filter(Objects::nonNull)
+                .map(TechnologyOperationId::get).collect(Collectors.toSet());
+        Map<Long, Map<String, Object>> tocDetails = Maps.newHashMap();
+        for (List<Long> ids : Lists.partition(Lists.newArrayList(tocIds), L_BATCH_SIZE)) {
+            for (Map<String, Object> row : jdbcTemplate.queryForList(L_SELECT_TOC_DETAILS,
+                    Collections.singletonMap("ids", ids))) {
+                tocDetails.put(((Number) row.get("id")).longValue(), row);
+            }
+        }
+        return tocDetails;
+    }
+
+    private Map<String, Object> getNodeParameters(final Entity generatorContext, final FlatNode flatNode,
+            final Map<Long, Map<String, Object>> tocDetails) {
+        ProductInfo productInfo = flatNode.node.getProductInfo();
+        Long productTechnologyId = productInfo.getProductTechnology().map(TechnologyId::get).orElse(null);
+
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put("generatorcontext_id", generatorContext.getId());
+        parameters.put("entitytype", flatNode.node.getType().getStringValue());
+        parameters.put("priority", flatNode.priority);
+        parameters.put("quantity", productInfo.getQuantity());
+        parameters.put("product_id", productInfo.getProduct().get());
+        parameters.put("operation_id", productInfo.getOperation().get());
+        parameters.put("producttechnology_id", productTechnologyId);
+        parameters.put("originaltechnology_id", productInfo.getOriginalTechnology().map(TechnologyId::get)
+                .orElse(productTechnologyId));
+
+        Map<String, Object> toc = null;
+        if (productInfo.getTocId() != null) {
+            toc = tocDetails.get(productInfo.getTocId().get());
+        }
+        parameters.put("division_id", toc == null ? null : toc.get("division_id"));
+        parameters.put("technologygroup_id", toc == null ? null : toc.get("technologygroup_id"));
+        parameters.put("standardperformancetechnology", toc == null ? null : toc.get("standardperformancetechnology"));
+        return parameters;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void batchUpdate(final List<Map<String, Object>> parameters) {
+        for (List<Map<String, Object>> batch : Lists.partition(parameters, L_BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(L_INSERT_GENERATOR_TREE_NODE, batch.toArray(new Map[batch.size()]));
+        }
+    }
+
+    static final class FlatNode {
+
+        final TechnologyStructureNode node;
+
+        final int parentIndex;
+
+        final int priority;
+
+        FlatNode(final TechnologyStructureNode node, final int parentIndex, final int priority) {
+            this.node = node;
+            this.parentIndex = parentIndex;
+            this.priority = priority;
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologiesGenerator.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.commons.functional.Either;
+import com.qcadoo.mes.basic.product.domain.ProductId;
+import com.qcadoo.mes.technologies.domain.OperationId;
+import com.qcadoo.mes.technologies.tree.domain.TechnologyOperationId;
+import com.qcadoo.mes.technologiesGenerator.domain.ProductInfo;
+import com.qcadoo.mes.technologiesGenerator.domain.TechnologyStructureNode;
+import com.qcadoo.mes.technologiesGenerator.domain.TechnologyStructureNodeType;
+import com.qcadoo.mes.technologiesGenerator.tree.GeneratorTreeNodesBatchWriter.FlatNode;
+import com.qcadoo.model.api.Entity;
+
+public class GeneratorTreeNodesBatchWriterTest {
+
+    private GeneratorTreeNodesBatchWriter generatorTreeNodesBatchWriter;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity generatorContext;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        generatorTreeNodesBatchWriter = new GeneratorTreeNodesBatchWriter();
+        ReflectionTestUtils.setField(generatorTreeNodesBatchWriter, "jdbcTemplate", jdbcTemplate);
+
+        given(generatorContext.getId()).willReturn(100L);
+    }
+
+    private TechnologyStructureNode node(final Long productId, final TechnologyStructureNode... children) {
+        ProductInfo productInfo = new ProductInfo(new TechnologyOperationId(productId), Optional.empty(), new ProductId(
+                productId), BigDecimal.ONE, Optional.empty(), Optional.empty(), new OperationId(1L), false);
+        return new TechnologyStructureNode(productInfo, TechnologyStructureNodeType.COMPONENT, Lists.newArrayList(children));
+    }
+
+    private TechnologyStructureNode buildTree() {
+        return node(1L, node(2L, node(4L), node(5L)), node(3L, node(6L)));
+    }
+
+    private void stubTocDetails(final BigDecimal standardPerformance) {
+        List<Map<String, Object>> rows = Lists.newArrayList();
+        for (long tocId = 1L; tocId <= 6L; tocId++) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put("id", tocId);
+            row.put("division_id", null);
+            row.put("technologygroup_id", null);
+            row.put("standardperformancetechnology", standardPerformance);
+            rows.add(row);
+        }
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class))).willReturn(rows);
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(11L, 12L, 13L, 14L, 15L, 16L));
+    }
+
+    @Test
+    public final void shouldFlattenTreeLevelByLevel() {
+        // when
+        List<FlatNode> nodes = GeneratorTreeNodesBatchWriter.flatten(buildTree());
+
+        // then
+        assertEquals(6, nodes.size());
+        long expectedProductId = 1L;
+        for (FlatNode flatNode : nodes) {
+            assertEquals(Long.valueOf(expectedProductId++), flatNode.node.getProductInfo().getProduct().get());
+        }
+    }
+
+    @Test
+    public final void shouldPutParentsBeforeTheirChildren() {
+        // when
+        List<FlatNode> nodes = GeneratorTreeNodesBatchWriter.flatten(buildTree());
+
+        // then
+        assertEquals(-1, nodes.get(0).parentIndex);
+        for (int i = 1; i < nodes.size(); i++) {
+            FlatNode flatNode = nodes.get(i);
+            assertTrue(flatNode.parentIndex < i);
+            assertTrue(nodes.get(flatNode.parentIndex).node.getChildren().contains(flatNode.node));
+        }
+        assertEquals(0, nodes.get(1).parentIndex);
+        assertEquals(0, nodes.get(2).parentIndex);
+        assertEquals(1, nodes.get(3).parentIndex);
+        assertEquals(1, nodes.get(4).parentIndex);
+        assertEquals(2, nodes.get(5).parentIndex);
+    }
+
+    @Test
+    public final void shouldNumberPrioritiesWithinParent() {
+        // when
+        List<FlatNode> nodes = GeneratorTreeNodesBatchWriter.flatten(buildTree());
+
+        // then
+        assertEquals(1, nodes.get(0).priority);
+        assertEquals(1, nodes.get(1).priority);
+        assertEquals(2, nodes.get(2).priority);
+        assertEquals(1, nodes.get(3).priority);
+        assertEquals(2, nodes.get(4).priority);
+        assertEquals(1, nodes.get(5).priority);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public final void shouldInsertNodesWithIdsOfAlreadyInsertedParents() {
+        // given
+        stubTocDetails(new BigDecimal("12.50000"));
+
+        // when
+        Either<String, Integer> result = generatorTreeNodesBatchWriter.write(generatorContext, buildTree());
+
+        // then
+        assertTrue(result.isRight());
+        assertEquals(Integer.valueOf(6), result.getRight());
+
+        ArgumentCaptor<Map[]> batchCaptor = ArgumentCaptor.forClass(Map[].class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batchCaptor.capture());
+        Map<String, Object>[] batch = batchCaptor.getValue();
+        assertEquals(6, batch.length);
+        assertNull(batch[0].get("parent_id"));
+        assertEquals(11L, batch[1].get("parent_id"));
+        assertEquals(11L, batch[2].get("parent_id"));
+        assertEquals(12L, batch[3].get("parent_id"));
+        assertEquals(12L, batch[4].get("parent_id"));
+        assertEquals(13L, batch[5].get("parent_id"));
+        assertEquals(new BigDecimal("12.50000"), batch[5].get("standardperformancetechnology"));
+    }
+
+    @Test
+    public final void shouldNotInsertNodesIfStandardPerformanceIsNotValid() {
+        // given
+        stubTocDetails(BigDecimal.ZERO);
+
+        // when
+        Either<String, Integer> result = generatorTreeNodesBatchWriter.write(generatorContext, buildTree());
+
+        // then
+        assertTrue(result.isLeft());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Map[].class));
+    }
+
+    @Test
+    public final void shouldValidateStandardPerformanceLikeModel() {
+        assertTrue(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(null));
+        assertTrue(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(new BigDecimal("0.00001")));
+        assertTrue(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(new BigDecimal("9999999.99999")));
+        assertTrue(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(new BigDecimal("12.5000000")));
+
+        assertFalse(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(BigDecimal.ZERO));
+        assertFalse(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(new BigDecimal("-1")));
+        assertFalse(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(new BigDecimal("0.000001")));
+        assertFalse(GeneratorTreeNodesBatchWriter.isValidStandardPerformance(new BigDecimal("10000000")));
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree;
+
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps loaded {@link ProductStructureTreeData} per tenant, technology and its last state change, up to
+ * {@value #L_MAX_SIZE} trees. Data of a tenant is dropped whenever its technology, operation component or product component
+ * changes.
+ */
+@Service
+public class ProductStructureTreeCache {
+
+    private static final int L_MAX_SIZE = 1000;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Cache<String, ProductStructureTreeData> productStructureTreeDatas = CacheBuilder.newBuilder()
+            .maximumSize(L_MAX_SIZE).build();
+
+    public ProductStructureTreeData get(final Long technologyId, final Date stateChangeDate) {
+        return productStructureTreeDatas.getIfPresent(buildKey(technologyId, stateChangeDate));
+    }
+
+    public void put(final Long technologyId, final Date stateChangeDate, final ProductStructureTreeData data) {
+        productStructureTreeDatas.put(buildKey(technologyId, stateChangeDate), data);
+    }
+
+    private String buildKey(final Long technologyId, final Date stateChangeDate) {
+        return buildTenantPrefix() + technologyId + "_" + (stateChangeDate == null ? 0L : stateChangeDate.getTime());
+    }
+
+    private String buildTenantPrefix() {
+        return multiTenantService.getCurrentTenantId() + "_";
+    }
+
+    public void invalidate() {
+        String tenantPrefix = buildTenantPrefix();
+
+        invalidate(tenantPrefix);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    invalidate(tenantPrefix);
+                }
+            });
+        }
+    }
+
+    private void invalidate(final String tenantPrefix) {
+        productStructureTreeDatas.asMap().keySet().removeIf(key -> key.startsWith(tenantPrefix));
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Technologies, operation components and their product components reachable from one technology, indexed by ids. Answers
+ * the same questions as the per node queries of {@link ProductStructureTreeService} without touching the database.
+ * 
+ * Entities kept here are shared, they should be only read.
+ */
+public class ProductStructureTreeData {
+
+    private final Long technologyId;
+
+    private final Map<Long, Entity> technologies = Maps.newHashMap();
+
+    private final Map<Long, Entity> technologyForProduct = Maps.newHashMap();
+
+    private final Set<Long> resolvedProducts = Sets.newHashSet();
+
+    private final Map<Long, Entity> operationComponents = Maps.newHashMap();
+
+    private final Map<Long, List<Entity>> inComponentsByOperationComponent = Maps.newHashMap();
+
+    private final Map<Long, List<Entity>> outComponentsByOperationComponent = Maps.newHashMap();
+
+    private final Map<Long, Map<Long, Entity>> operationComponentByParentAndOutProduct = Maps.newHashMap();
+
+    private final Map<Long, Map<Long, Entity>> operationComponentByTechnologyAndOutProduct = Maps.newHashMap();
+
+    private final Map<Long, Date> lastStateChangeDates = Maps.newHashMap();
+
+    public ProductStructureTreeData(final Entity technology) {
+        this.technologyId = technology.getId();
+        technologies.put(technology.getId(), technology);
+    }
+
+    public Long getTechnologyId() {
+        return technologyId;
+    }
+
+    public Set<Long> getTechnologyIds() {
+        return Collections.unmodifiableSet(technologies.keySet());
+    }
+
+    public Set<Long> getOperationComponentIds() {
+        return Collections.unmodifiableSet(operationComponents.keySet());
+    }
+
+    public boolean isProductResolved(final Long productId) {
+        return resolvedProducts.contains(productId);
+    }
+
+    public void addTechnology(final Entity technology) {
+        technologies.put(technology.getId(), technology);
+    }
+
+    public void addTechnologyForProduct(final Long productId, final Entity technology) {
+        resolvedProducts.add(productId);
+
+        if (technology != null) {
+            technologyForProduct.put(productId, technology);
+        }
+    }
+
+    public void addOperationComponent(final Entity operationComponent) {
+        operationComponents.put(operationComponent.getId(), operationComponent);
+    }
+
+    public void addInComponent(final Entity operationProductInComponent) {
+        Long operationComponentId = operationProductInComponent.getBelongsToField(
+                OperationProductInComponentFields.OPERATION_COMPONENT).getId();
+
+        inComponentsByOperationComponent.computeIfAbsent(operationComponentId, id -> Lists.newArrayList()).add(
+                operationProductInComponent);
+    }
+
+    public void addOutComponent(final Entity operationProductOutComponent) {
+        Entity operationComponent = operationComponents.get(operationProductOutComponent.getBelongsToField(
+                OperationProductOutComponentFields.OPERATION_COMPONENT).getId());
+        Long productId = operationProductOutComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT).getId();
+
+        outComponentsByOperationComponent.computeIfAbsent(operationComponent.getId(), id -> Lists.newArrayList()).add(
+                operationProductOutComponent);
+
+        Entity parent = operationComponent.getBelongsToField(TechnologyOperationComponentFields.PARENT);
+        if (parent != null) {
+            operationComponentByParentAndOutProduct.computeIfAbsent(parent.getId(), id -> Maps.newHashMap()).putIfAbsent(
+                    productId, operationComponent);
+        }
+
+        Long operationTechnologyId = operationComponent.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY).getId();
+        operationComponentByTechnologyAndOutProduct.computeIfAbsent(operationTechnologyId, id -> Maps.newHashMap())
+                .putIfAbsent(productId, operationComponent);
+    }
+
+    public void setLastStateChangeDate(final Long technologyId, final Date date) {
+        lastStateChangeDates.put(technologyId, date);
+    }
+
+    public List<Entity> getInComponents(final Entity operationComponent) {
+        return inComponentsByOperationComponent.getOrDefault(operationComponent.getId(), Collections.<Entity> emptyList());
+    }
+
+    public Entity findOperationForProductAndTechnology(final Entity product, final Entity technology) {
+        return operationComponentByTechnologyAndOutProduct.getOrDefault(technology.getId(), Collections.<Long, Entity> emptyMap())
+                .get(product.getId());
+    }
+
+    public Entity findOperationForProductWithinChildren(final Entity product, final Entity operationComponent) {
+        return operationComponentByParentAndOutProduct.getOrDefault(operationComponent.getId(),
+                Collections.<Long, Entity> emptyMap()).get(product.getId());
+    }
+
+    public Entity findTechnologyForProduct(final Entity product) {
+        return technologyForProduct.get(product.getId());
+    }
+
+    public BigDecimal findQuantityOfProductInOperation(final Entity product, final Entity operationComponent) {
+        BigDecimal quantity = findQuantity(outComponentsByOperationComponent.get(operationComponent.getId()),
+                OperationProductOutComponentFields.PRODUCT, OperationProductOutComponentFields.QUANTITY, product);
+        if (quantity == null) {
+            quantity = findQuantity(inComponentsByOperationComponent.get(operationComponent.getId()),
+                    OperationProductInComponentFields.PRODUCT, OperationProductInComponentFields.QUANTITY, product);
+        }
+        return quantity;
+    }
+
+    private BigDecimal findQuantity(final List<Entity> productComponents, final String productFieldName,
+            final String quantityFieldName, final Entity product) {
+        if (productComponents == null) {
+            return null;
+        }
+        for (Entity productComponent : productComponents) {
+            if (product.getId().equals(productComponent.getBelongsToField(productFieldName).getId())) {
+                return productComponent.getDecimalField(quantityFieldName);
+            }
+        }
+        return null;
+    }
+
+    public Date getLastStateChangeDate(final Entity technology) {
+        return lastStateChangeDates.get(technology.getId());
+    }
+
+}
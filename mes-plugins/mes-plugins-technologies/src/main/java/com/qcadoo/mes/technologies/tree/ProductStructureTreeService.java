@@ -24,6 +24,8 @@
 package com.qcadoo.mes.technologies.tree;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
@@ -34,6 +36,7 @@ import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangeFields;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.mes.technologies.tree.dataProvider.ProductStructureTreeDataProvider;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -53,6 +56,8 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class ProductStructureTreeService {
@@ -68,6 +73,12 @@ public class ProductStructureTreeService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ProductStructureTreeDataProvider productStructureTreeDataProvider;
+
+    @Autowired
+    private ProductStructureTreeCache productStructureTreeCache;
+
     private Entity addChild(final List<Entity> tree, final Entity child, final Entity parent, final String entityType) {
         child.setField(ProductStructureTreeNodeFields.PARENT, parent);
         child.setField(ProductStructureTreeNodeFields.NUMBER, (long) tree.size() + 1);
@@ -121,40 +132,21 @@ public class ProductStructureTreeService {
                 .setMaxResults(1).uniqueResult();
     }
 
-    private BigDecimal findQuantityOfProductInOperation(final Entity product, final Entity operation) {
-        EntityList outProducts = operation.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS);
-
-        Entity productComponent = outProducts.find()
-                .add(SearchRestrictions.belongsTo(ProductStructureTreeNodeFields.PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-        if (productComponent != null) {
-            return productComponent.getDecimalField(ProductStructureTreeNodeFields.QUANTITY);
-        }
-        EntityList inProducts = operation.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
-        productComponent = inProducts.find().add(SearchRestrictions.belongsTo(ProductStructureTreeNodeFields.PRODUCT, product))
-                .setMaxResults(1).uniqueResult();
-        if (productComponent != null) {
-            return productComponent.getDecimalField(ProductStructureTreeNodeFields.QUANTITY);
-        }
-        return null;
-    }
-
     private void generateTreeForSubproducts(final Entity operation, final Entity technology, final List<Entity> tree,
-            final Entity parent, final ViewDefinitionState view, final Entity mainTechnology) {
-        EntityList productInComponents = operation
-                .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
+            final Entity parent, final ViewDefinitionState view, final Entity mainTechnology, final ProductStructureTreeData data) {
+        List<Entity> productInComponents = data.getInComponents(operation);
         DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
         for (Entity productInComp : productInComponents) {
             Entity child = treeNodeDD.create();
             Entity product = productInComp.getBelongsToField(OperationProductInComponentFields.PRODUCT);
-            Entity subOperation = findOperationForProductWithinChildren(product, operation);
-            BigDecimal quantity = findQuantityOfProductInOperation(product, operation);
-            Entity subTechnology = findTechnologyForProduct(product);
+            Entity subOperation = data.findOperationForProductWithinChildren(product, operation);
+            BigDecimal quantity = data.findQuantityOfProductInOperation(product, operation);
+            Entity subTechnology = data.findTechnologyForProduct(product);
 
             if (subTechnology != null) {
                 if (subOperation == null) {
-                    Entity operationForTechnology = findOperationForProductAndTechnology(product, subTechnology);
+                    Entity operationForTechnology = data.findOperationForProductAndTechnology(product, subTechnology);
                     Entity technologyGroup = subTechnology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
                     BigDecimal standardPerformanceTechnology = subTechnology
                             .getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
@@ -169,7 +161,7 @@ public class ProductStructureTreeService {
                     child.setField(ProductStructureTreeNodeFields.TECHNOLOGY_GROUP, technologyGroup);
                     child.setField(ProductStructureTreeNodeFields.STANDARD_PERFORMANCE_TECHNOLOGY, standardPerformanceTechnology);
                     child = addChild(tree, child, parent, L_COMPONENT);
-                    generateTreeForSubproducts(operationForTechnology, subTechnology, tree, child, view, mainTechnology);
+                    generateTreeForSubproducts(operationForTechnology, subTechnology, tree, child, view, mainTechnology, data);
                 } else {
                     child.setField(ProductStructureTreeNodeFields.TECHNOLOGY, technology);
                     child.setField(ProductStructureTreeNodeFields.MAIN_TECHNOLOGY, mainTechnology);
@@ -191,7 +183,7 @@ public class ProductStructureTreeService {
                                                     + product.getStringField(ProductFields.NAME));
                         }
                     }
-                    generateTreeForSubproducts(subOperation, technology, tree, child, view, mainTechnology);
+                    generateTreeForSubproducts(subOperation, technology, tree, child, view, mainTechnology, data);
                 }
             } else {
                 Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
@@ -210,7 +202,7 @@ public class ProductStructureTreeService {
                             subOperation.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
 
                     child = addChild(tree, child, parent, L_INTERMEDIATE);
-                    generateTreeForSubproducts(subOperation, technology, tree, child, view, mainTechnology);
+                    generateTreeForSubproducts(subOperation, technology, tree, child, view, mainTechnology, data);
                 } else {
                     child.setField(ProductStructureTreeNodeFields.OPERATION, operation);
                     child.setField(ProductStructureTreeNodeFields.DIVISION,
@@ -224,16 +216,19 @@ public class ProductStructureTreeService {
 
     public EntityTree generateProductStructureTree(final ViewDefinitionState view, final Entity technology) {
         Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
-        Entity operation = findOperationForProductAndTechnology(product, technology);
         Entity technologyFromDB = technology.getDataDefinition().get(technology.getId());
+        Entity technologyStateChange = getLastTechnologyStateChange(technologyFromDB);
+        Date technologyStateChangeDate = technologyStateChange != null ? technologyStateChange
+                .getDateField(TechnologyStateChangeFields.DATE_AND_TIME) : null;
+        ProductStructureTreeData data = getProductStructureTreeData(technologyFromDB, technologyStateChangeDate);
+        Entity operation = data.findOperationForProductAndTechnology(product, technology);
         EntityTree tree = technologyFromDB.getTreeField(TechnologyFields.PRODUCT_STRUCTURE_TREE);
         if (tree.getRoot() != null) {
             Date productStructureCreateDate = tree.getRoot().getDateField(ProductStructureTreeNodeFields.CREATE_DATE);
             List<Entity> treeEntities = tree.find().list().getEntities();
-            Entity technologyStateChange = getLastTechnologyStateChange(technologyFromDB);
-            if (productStructureCreateDate.before(technologyStateChange.getDateField(TechnologyStateChangeFields.DATE_AND_TIME))
-                    || checkSubTechnologiesSubstitution(treeEntities)
-                    || checkIfSubTechnologiesChanged(operation, productStructureCreateDate)) {
+            if (technologyStateChangeDate != null && productStructureCreateDate.before(technologyStateChangeDate)
+                    || checkSubTechnologiesSubstitution(treeEntities, data)
+                    || checkIfSubTechnologiesChanged(operation, productStructureCreateDate, data)) {
                 deleteProductStructureTree(treeEntities);
             } else {
                 return tree;
@@ -242,7 +237,7 @@ public class ProductStructureTreeService {
         DataDefinition treeNodeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_PRODUCT_STRUCTURE_TREE_NODE);
         Entity root = treeNodeDD.create();
-        BigDecimal quantity = findQuantityOfProductInOperation(product, operation);
+        BigDecimal quantity = data.findQuantityOfProductInOperation(product, operation);
         Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
         BigDecimal standardPerformanceTechnology = technology.getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY);
         root.setField(ProductStructureTreeNodeFields.TECHNOLOGY, technology);
@@ -258,25 +253,45 @@ public class ProductStructureTreeService {
         List<Entity> productStructureList = new ArrayList<>();
         root = addChild(productStructureList, root, null, L_FINAL_PRODUCT);
 
-        generateTreeForSubproducts(operation, technology, productStructureList, root, view, technology);
+        generateTreeForSubproducts(operation, technology, productStructureList, root, view, technology, data);
 
         return EntityTreeUtilsService.getDetachedEntityTree(productStructureList);
     }
 
+    private ProductStructureTreeData getProductStructureTreeData(final Entity technology, final Date technologyStateChangeDate) {
+        ProductStructureTreeData data = productStructureTreeCache.get(technology.getId(), technologyStateChangeDate);
+        if (data == null) {
+            data = productStructureTreeDataProvider.load(technology);
+            productStructureTreeCache.put(technology.getId(), technologyStateChangeDate, data);
+        }
+        return data;
+    }
+
     private void deleteProductStructureTree(List<Entity> treeEntities) {
         for (Entity entity : treeEntities) {
             entity.getDataDefinition().delete(entity.getId());
         }
     }
 
-    private boolean checkSubTechnologiesSubstitution(List<Entity> treeEntities) {
+    private boolean checkSubTechnologiesSubstitution(List<Entity> treeEntities, ProductStructureTreeData data) {
+        Set<Long> unresolvedProductIds = Sets.newHashSet();
+        for (Entity entity : treeEntities) {
+            Long productId = entity.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT).getId();
+            if (!data.isProductResolved(productId)) {
+                unresolvedProductIds.add(productId);
+            }
+        }
+        Map<Long, Entity> technologiesForUnresolvedProducts = productStructureTreeDataProvider
+                .findTechnologiesForProducts(unresolvedProductIds);
+
         for (Entity entity : treeEntities) {
             String entityType = entity.getStringField(ProductStructureTreeNodeFields.ENTITY_TYPE);
             if (entityType.equals(L_INTERMEDIATE) || entityType.equals(L_FINAL_PRODUCT)) {
                 continue;
             }
             Entity product = entity.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT);
-            Entity newTechnology = findTechnologyForProduct(product);
+            Entity newTechnology = data.isProductResolved(product.getId()) ? data.findTechnologyForProduct(product)
+                    : technologiesForUnresolvedProducts.get(product.getId());
             if (entityType.equals(L_MATERIAL) && newTechnology != null) {
                 return true;
             } else if (entityType.equals(L_COMPONENT)) {
@@ -290,32 +305,32 @@ public class ProductStructureTreeService {
         return false;
     }
 
-    private boolean checkIfSubTechnologiesChanged(Entity operation, Date productStructureCreateDate) {
-        for (Entity productInComp : operation.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)) {
+    private boolean checkIfSubTechnologiesChanged(Entity operation, Date productStructureCreateDate,
+            ProductStructureTreeData data) {
+        for (Entity productInComp : data.getInComponents(operation)) {
             Entity product = productInComp.getBelongsToField(OperationProductInComponentFields.PRODUCT);
-            Entity subOperation = findOperationForProductWithinChildren(product, operation);
-            Entity subTechnology = findTechnologyForProduct(product);
+            Entity subOperation = data.findOperationForProductWithinChildren(product, operation);
+            Entity subTechnology = data.findTechnologyForProduct(product);
 
             if (subTechnology != null) {
-                Entity technologyStateChange = getLastTechnologyStateChange(subTechnology);
-                if (productStructureCreateDate.before(technologyStateChange
-                        .getDateField(TechnologyStateChangeFields.DATE_AND_TIME))) {
+                Date subTechnologyStateChangeDate = data.getLastStateChangeDate(subTechnology);
+                if (subTechnologyStateChangeDate != null && productStructureCreateDate.before(subTechnologyStateChangeDate)) {
                     return true;
                 }
                 if (subOperation == null) {
-                    Entity operationForTechnology = findOperationForProductAndTechnology(product, subTechnology);
-                    boolean changed = checkIfSubTechnologiesChanged(operationForTechnology, productStructureCreateDate);
+                    Entity operationForTechnology = data.findOperationForProductAndTechnology(product, subTechnology);
+                    boolean changed = checkIfSubTechnologiesChanged(operationForTechnology, productStructureCreateDate, data);
                     if (changed) {
                         return true;
                     }
                 } else {
-                    boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate);
+                    boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate, data);
                     if (changed) {
                         return true;
                     }
                 }
             } else if (subOperation != null) {
-                boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate);
+                boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate, data);
                 if (changed) {
                     return true;
                 }
@@ -337,47 +352,65 @@ public class ProductStructureTreeService {
 
     private EntityTree transformProductStructureTreeToTOCTree(final EntityTree productStructureTree) {
         List<Entity> tocTree = Lists.newArrayList();
-        DataDefinition tocDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT);
+        Map<Long, Entity> tocTreeById = Maps.newHashMap();
         Entity root = productStructureTree.getRoot();
+        Map<Long, Entity> tocs = getOperationComponentsForNodes(root);
         Long rootTocID = root.getBelongsToField(ProductStructureTreeNodeFields.OPERATION).getId();
-        addChildTOC(tocTree, tocDD.get(rootTocID), null, root.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT),
-                L_FINAL_PRODUCT);
-        addTocChildes(tocTree, tocDD, root);
+        addChildTOC(tocTree, tocTreeById, takeOperationComponent(tocs, tocTreeById, rootTocID), null,
+                root.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT), L_FINAL_PRODUCT);
+        addTocChildes(tocTree, tocTreeById, tocs, root);
         return EntityTreeUtilsService.getDetachedEntityTree(tocTree);
     }
 
-    private void addTocChildes(List<Entity> tocTree, DataDefinition tocDD, Entity root) {
+    private Map<Long, Entity> getOperationComponentsForNodes(final Entity root) {
+        Set<Long> tocIds = Sets.newHashSet();
+        collectOperationComponentIds(root, tocIds);
+        Map<Long, Entity> tocs = Maps.newHashMap();
+        List<Entity> tocEntities = dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).find()
+                .add(SearchRestrictions.in("id", tocIds)).list().getEntities();
+        for (Entity toc : tocEntities) {
+            tocs.put(toc.getId(), toc);
+        }
+        return tocs;
+    }
+
+    private void collectOperationComponentIds(final Entity node, final Set<Long> tocIds) {
+        tocIds.add(node.getBelongsToField(ProductStructureTreeNodeFields.OPERATION).getId());
+        for (Entity child : node.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+            collectOperationComponentIds(child, tocIds);
+        }
+    }
+
+    private Entity takeOperationComponent(final Map<Long, Entity> tocs, final Map<Long, Entity> tocTreeById, final Long tocId) {
+        Entity toc = tocs.get(tocId);
+        if (tocTreeById.containsKey(tocId)) {
+            return toc.getDataDefinition().get(tocId);
+        }
+        return toc;
+    }
+
+    private void addTocChildes(List<Entity> tocTree, Map<Long, Entity> tocTreeById, Map<Long, Entity> tocs, Entity root) {
         Entity parent;
         for (Entity node : root.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
             String entityType = node.getStringField(ProductStructureTreeNodeFields.ENTITY_TYPE);
             if (!entityType.equals(L_MATERIAL) && !entityType.equals(L_FINAL_PRODUCT)) {
                 Long tocId = node.getBelongsToField(ProductStructureTreeNodeFields.OPERATION).getId();
-                Entity toc = tocDD.get(tocId);
+                Entity toc = takeOperationComponent(tocs, tocTreeById, tocId);
                 Long parentId = node.getBelongsToField(ProductStructureTreeNodeFields.PARENT) != null ? node
                         .getBelongsToField(ProductStructureTreeNodeFields.PARENT)
                         .getBelongsToField(ProductStructureTreeNodeFields.OPERATION).getId() : node.getBelongsToField(
                         ProductStructureTreeNodeFields.OPERATION).getId();
-                parent = getEntityById(tocTree, parentId);
-                if(parent == null) {
-                    parent.getId();
-                }
-                addChildTOC(tocTree, toc, parent, node.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT), entityType);
-            }
-            addTocChildes(tocTree, tocDD, node);
-        }
-    }
-
-    private Entity getEntityById(final List<Entity> tree, final Long id) {
-        for (Entity entity : tree) {
-            if (entity.getId().equals(id)) {
-                return entity;
+                parent = tocTreeById.get(parentId);
+                addChildTOC(tocTree, tocTreeById, toc, parent, node.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT),
+                        entityType);
             }
+            addTocChildes(tocTree, tocTreeById, tocs, node);
         }
-        return null;
     }
 
-    private void addChildTOC(final List<Entity> tree, final Entity child, final Entity parent, final Entity product, String type) {
+    private void addChildTOC(final List<Entity> tree, final Map<Long, Entity> treeById, final Entity child, final Entity parent,
+            final Entity product, String type) {
         child.setField(TechnologyOperationComponentFields.PARENT, parent);
         child.setField(TechnologyOperationComponentFields.PRIORITY, 1);
         child.setField(TechnologyOperationComponentFields.TYPE_FROM_STRUCTURE_TREE, type);
@@ -394,5 +427,6 @@ public class ProductStructureTreeService {
             parent.setField(TechnologyOperationComponentFields.CHILDREN, children);
         }
         tree.add(child);
+        treeById.putIfAbsent(child.getId(), child);
     }
 }
@@ -0,0 +1,183 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree.dataProvider;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.states.constants.StateChangeStatus;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.mes.technologies.tree.ProductStructureTreeData;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Loads {@link ProductStructureTreeData} level by level. Each level of sub technologies costs four queries (operation
+ * components, their output and input product components, technologies of input products), independently of number of nodes.
+ */
+@Service
+public class ProductStructureTreeDataProvider {
+
+    private static final String L_LAST_STATE_CHANGE_DATES_QUERY = "SELECT technology_id, "
+            + "max(dateandtime) AS dateandtime FROM technologies_technologystatechange "
+            + "WHERE status = :status AND technology_id IN (:technologyIds) GROUP BY technology_id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ProductStructureTreeData load(final Entity technology) {
+        ProductStructureTreeData data = new ProductStructureTreeData(technology);
+
+        Set<Long> technologyIds = Sets.newHashSet(technology.getId());
+
+        while (!technologyIds.isEmpty()) {
+            List<Long> operationComponentIds = Lists.newArrayList();
+
+            for (Entity operationComponent : getOperationComponents(technologyIds)) {
+                data.addOperationComponent(operationComponent);
+                operationComponentIds.add(operationComponent.getId());
+            }
+
+            for (Entity operationProductOutComponent : getProductComponents(
+                    TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT,
+                    OperationProductOutComponentFields.OPERATION_COMPONENT, operationComponentIds)) {
+                data.addOutComponent(operationProductOutComponent);
+            }
+
+            Set<Long> productIds = Sets.newHashSet();
+
+            for (Entity operationProductInComponent : getProductComponents(
+                    TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT,
+                    OperationProductInComponentFields.OPERATION_COMPONENT, operationComponentIds)) {
+                data.addInComponent(operationProductInComponent);
+
+                Long productId = operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId();
+                if (!data.isProductResolved(productId)) {
+                    productIds.add(productId);
+                }
+            }
+
+            Map<Long, Entity> technologiesForProducts = findTechnologiesForProducts(productIds);
+
+            technologyIds = Sets.newHashSet();
+
+            for (Long productId : productIds) {
+                Entity productTechnology = technologiesForProducts.get(productId);
+
+                data.addTechnologyForProduct(productId, productTechnology);
+
+                if (productTechnology != null && !data.getTechnologyIds().contains(productTechnology.getId())) {
+                    data.addTechnology(productTechnology);
+                    technologyIds.add(productTechnology.getId());
+                }
+            }
+        }
+
+        fillLastStateChangeDates(data);
+
+        return data;
+    }
+
+    private List<Entity> getOperationComponents(final Collection<Long> technologyIds) {
+        return getDataDefinition(TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).find()
+                .add(SearchRestrictions.in(TechnologyOperationComponentFields.TECHNOLOGY + ".id", technologyIds))
+                .addOrder(SearchOrders.asc("id")).list().getEntities();
+    }
+
+    private List<Entity> getProductComponents(final String modelName, final String operationComponentFieldName,
+            final Collection<Long> operationComponentIds) {
+        if (operationComponentIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return getDataDefinition(modelName).find()
+                .add(SearchRestrictions.in(operationComponentFieldName + ".id", operationComponentIds))
+                .addOrder(SearchOrders.asc("id")).list().getEntities();
+    }
+
+    /**
+     * Set based version of {@link com.qcadoo.mes.technologies.tree.ProductStructureTreeService#findTechnologyForProduct}: for
+     * every product its first accepted or checked technology, master first, then by number.
+     */
+    public Map<Long, Entity> findTechnologiesForProducts(final Collection<Long> productIds) {
+        Map<Long, Entity> technologiesForProducts = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return technologiesForProducts;
+        }
+
+        List<Entity> technologies = getDataDefinition(TechnologiesConstants.MODEL_TECHNOLOGY)
+                .find()
+                .add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE))
+                .add(SearchRestrictions.in(TechnologyFields.PRODUCT + ".id", productIds))
+                .add(SearchRestrictions.or(SearchRestrictions.eq(TechnologyFields.STATE, TechnologyStateStringValues.ACCEPTED),
+                        SearchRestrictions.eq(TechnologyFields.STATE, TechnologyStateStringValues.CHECKED)))
+                .addOrder(SearchOrders.desc(TechnologyFields.MASTER)).addOrder(SearchOrders.asc(TechnologyFields.NUMBER)).list()
+                .getEntities();
+
+        for (Entity technology : technologies) {
+            technologiesForProducts.putIfAbsent(technology.getBelongsToField(TechnologyFields.PRODUCT).getId(), technology);
+        }
+
+        return technologiesForProducts;
+    }
+
+    private void fillLastStateChangeDates(final ProductStructureTreeData data) {
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("status", StateChangeStatus.SUCCESSFUL.getStringValue());
+        params.put("technologyIds", data.getTechnologyIds());
+
+        for (Map<String, Object> row : jdbcTemplate.queryForList(L_LAST_STATE_CHANGE_DATES_QUERY, params)) {
+            data.setLastStateChangeDate(((Number) row.get("technology_id")).longValue(), (Date) row.get("dateandtime"));
+        }
+    }
+
+    private DataDefinition getDataDefinition(final String modelName) {
+        return dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, modelName);
+    }
+
+}
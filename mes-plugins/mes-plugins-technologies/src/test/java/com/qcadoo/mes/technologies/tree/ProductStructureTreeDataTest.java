@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.model.api.Entity;
+
+public class ProductStructureTreeDataTest {
+
+    private ProductStructureTreeData data;
+
+    private Entity technology;
+
+    private Entity rootOperation;
+
+    private Entity childOperation;
+
+    private Entity finalProduct;
+
+    private Entity intermediate;
+
+    private Entity material;
+
+    @Before
+    public void init() {
+        technology = mockEntity(1L);
+        rootOperation = mockEntity(10L);
+        childOperation = mockEntity(11L);
+        finalProduct = mockEntity(100L);
+        intermediate = mockEntity(101L);
+        material = mockEntity(102L);
+
+        given(rootOperation.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY)).willReturn(technology);
+        given(childOperation.getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY)).willReturn(technology);
+        given(childOperation.getBelongsToField(TechnologyOperationComponentFields.PARENT)).willReturn(rootOperation);
+
+        data = new ProductStructureTreeData(technology);
+        data.addOperationComponent(rootOperation);
+        data.addOperationComponent(childOperation);
+        data.addOutComponent(mockOutComponent(rootOperation, finalProduct, BigDecimal.ONE));
+        data.addOutComponent(mockOutComponent(childOperation, intermediate, BigDecimal.TEN));
+        data.addInComponent(mockInComponent(rootOperation, intermediate, BigDecimal.valueOf(5L)));
+        data.addInComponent(mockInComponent(childOperation, material, BigDecimal.valueOf(2L)));
+        data.addTechnologyForProduct(intermediate.getId(), null);
+        data.addTechnologyForProduct(material.getId(), null);
+    }
+
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+        given(entity.getId()).willReturn(id);
+        return entity;
+    }
+
+    private Entity mockOutComponent(final Entity operationComponent, final Entity product, final BigDecimal quantity) {
+        Entity productComponent = mock(Entity.class);
+        given(productComponent.getBelongsToField(OperationProductOutComponentFields.OPERATION_COMPONENT)).willReturn(
+                operationComponent);
+        given(productComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT)).willReturn(product);
+        given(productComponent.getDecimalField(OperationProductOutComponentFields.QUANTITY)).willReturn(quantity);
+        return productComponent;
+    }
+
+    private Entity mockInComponent(final Entity operationComponent, final Entity product, final BigDecimal quantity) {
+        Entity productComponent = mock(Entity.class);
+        given(productComponent.getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT)).willReturn(
+                operationComponent);
+        given(productComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)).willReturn(product);
+        given(productComponent.getDecimalField(OperationProductInComponentFields.QUANTITY)).willReturn(quantity);
+        return productComponent;
+    }
+
+    @Test
+    public void shouldFindOperationsByProducedProduct() {
+        // when
+        Entity operationForFinalProduct = data.findOperationForProductAndTechnology(finalProduct, technology);
+        Entity operationForIntermediate = data.findOperationForProductWithinChildren(intermediate, rootOperation);
+        Entity operationForMaterial = data.findOperationForProductWithinChildren(material, childOperation);
+
+        // then
+        assertSame(rootOperation, operationForFinalProduct);
+        assertSame(childOperation, operationForIntermediate);
+        assertNull(operationForMaterial);
+    }
+
+    @Test
+    public void shouldPreferOutputQuantityOverInputQuantity() {
+        // when
+        BigDecimal finalProductQuantity = data.findQuantityOfProductInOperation(finalProduct, rootOperation);
+        BigDecimal intermediateQuantity = data.findQuantityOfProductInOperation(intermediate, childOperation);
+        BigDecimal materialQuantity = data.findQuantityOfProductInOperation(material, childOperation);
+
+        // then
+        assertEquals(BigDecimal.ONE, finalProductQuantity);
+        assertEquals(BigDecimal.TEN, intermediateQuantity);
+        assertEquals(BigDecimal.valueOf(2L), materialQuantity);
+    }
+
+    @Test
+    public void shouldReturnInComponentsAndResolvedProducts() {
+        // when & then
+        assertEquals(1, data.getInComponents(rootOperation).size());
+        assertTrue(data.getInComponents(mockEntity(12L)).isEmpty());
+        assertTrue(data.isProductResolved(material.getId()));
+        assertNull(data.findTechnologyForProduct(material));
+        assertEquals(Lists.newArrayList(1L), Lists.newArrayList(data.getTechnologyIds()));
+    }
+
+}
@@ -54,8 +54,7 @@ public class ShiftIntervalsProvider implements IntervalsProvider {
 
     @Override
     public Multimap<Long, Interval> getIntervalsPerProductionLine(final TimeGapsContext context) {
-        Set<Interval> workIntervals = getWorkIntervals(context);
-        Collection<Interval> spareTimeIntervals = invertIntervals(context.getInterval(), workIntervals);
+        Collection<Interval> spareTimeIntervals = getSpareTimeIntervals(context);
         Multimap<Long, Interval> spareTimeMultiMap = HashMultimap.create();
         for (Long productionLne : context.getProductionLines()) {
             spareTimeMultiMap.putAll(productionLne, spareTimeIntervals);
@@ -63,6 +62,14 @@ public class ShiftIntervalsProvider implements IntervalsProvider {
         return spareTimeMultiMap;
     }
 
+    /**
+     * Get time out of shifts, the same for every production line.
+     */
+    public Collection<Interval> getSpareTimeIntervals(final TimeGapsContext context) {
+        Set<Interval> workIntervals = getWorkIntervals(context);
+        return invertIntervals(context.getInterval(), workIntervals);
+    }
+
     private Collection<Interval> invertIntervals(final Interval domainInterval, final Iterable<Interval> intervals) {
         TimeGapsBuilder gapsBuilder = new TimeGapsBuilderImpl(domainInterval);
         gapsBuilder.addOccupiedIntervals(intervals);
@@ -0,0 +1,308 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeGapsPreview.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Sweep line engine searching free intervals of many production lines at once.
+ * 
+ * Occupied intervals are kept as sorted arrays of start and end instants, so merging overlapping or abutting intervals needs
+ * neither copying nor rebalancing of interval sets. Gaps are produced lazily, line by line, in ascending order of start date.
+ */
+public class OccupiedIntervalsSweep {
+
+    private static final int L_INITIAL_CAPACITY = 16;
+
+    private final Interval searchInterval;
+
+    private final Map<Long, Instants> occupiedByLine = Maps.newLinkedHashMap();
+
+    private final Instants occupiedByAllLines = new Instants();
+
+    public OccupiedIntervalsSweep(final Interval searchInterval, final Collection<Long> productionLines) {
+        Preconditions.checkArgument(searchInterval != null, "Search interval have to be provided.");
+        Preconditions.checkArgument(productionLines != null, "Production lines have to be provided.");
+
+        this.searchInterval = searchInterval;
+
+        for (Long productionLine : productionLines) {
+            occupiedByLine.put(productionLine, new Instants());
+        }
+    }
+
+    public void addOccupiedIntervals(final Multimap<Long, Interval> intervalsPerProductionLine) {
+        Preconditions.checkArgument(intervalsPerProductionLine != null, "Given intervals multimap should be not null");
+
+        for (Map.Entry<Long, Interval> lineAndInterval : intervalsPerProductionLine.entries()) {
+            addOccupiedInterval(lineAndInterval.getKey(), lineAndInterval.getValue());
+        }
+    }
+
+    /**
+     * Add interval occupied on given production line. Intervals of lines which are not searched and intervals which do not
+     * overlap search interval are ignored.
+     */
+    public void addOccupiedInterval(final Long productionLine, final Interval interval) {
+        Instants occupied = occupiedByLine.get(productionLine);
+
+        if (occupied != null) {
+            add(occupied, interval);
+        }
+    }
+
+    /**
+     * Add interval occupied on every searched production line, e.g. time out of shifts. It is stored once, not per line.
+     */
+    public void addOccupiedIntervalForAllLines(final Interval interval) {
+        add(occupiedByAllLines, interval);
+    }
+
+    public void addOccupiedIntervalsForAllLines(final Iterable<Interval> intervals) {
+        Preconditions.checkArgument(intervals != null, "Given intervals iterable should be not null");
+
+        for (Interval interval : intervals) {
+            addOccupiedIntervalForAllLines(interval);
+        }
+    }
+
+    private void add(final Instants occupied, final Interval interval) {
+        if (interval != null && searchInterval.overlaps(interval)) {
+            occupied.add(Math.max(interval.getStartMillis(), searchInterval.getStartMillis()),
+                    Math.min(interval.getEndMillis(), searchInterval.getEndMillis()));
+        }
+    }
+
+    /**
+     * Find all gaps lasting at least given duration.
+     * 
+     * @param minDuration
+     *            minimal gap duration
+     * @return gaps per production line
+     */
+    public Multimap<Long, Interval> findGaps(final Duration minDuration) {
+        return findFirstGaps(minDuration, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find first gaps (ordered by start date across all lines) lasting at least given duration. Only gaps which are returned
+     * are created, the rest of the search interval is not examined.
+     * 
+     * @param minDuration
+     *            minimal gap duration
+     * @param limit
+     *            maximal number of returned gaps
+     * @return gaps per production line
+     */
+    public Multimap<Long, Interval> findFirstGaps(final Duration minDuration, final int limit) {
+        Preconditions.checkArgument(minDuration != null, "Minimal gap duration have to be provided.");
+        Preconditions.checkArgument(limit >= 0, "Limit should be not negative.");
+
+        Multimap<Long, Interval> gaps = ArrayListMultimap.create();
+
+        if (limit == 0) {
+            return gaps;
+        }
+
+        occupiedByAllLines.sort();
+
+        PriorityQueue<LineSweep> sweeps = new PriorityQueue<LineSweep>(Math.max(1, occupiedByLine.size()),
+                new Comparator<LineSweep>() {
+
+                    @Override
+                    public int compare(final LineSweep first, final LineSweep second) {
+                        return Long.compare(first.gapStart, second.gapStart);
+                    }
+                });
+
+        for (Map.Entry<Long, Instants> lineAndOccupied : occupiedByLine.entrySet()) {
+            LineSweep sweep = new LineSweep(lineAndOccupied.getKey(), lineAndOccupied.getValue().mergeSorted(occupiedByAllLines));
+
+            if (sweep.nextGap(minDuration.getMillis())) {
+                sweeps.add(sweep);
+            }
+        }
+
+        while (!sweeps.isEmpty() && gaps.size() < limit) {
+            LineSweep sweep = sweeps.poll();
+
+            gaps.put(sweep.productionLine, new Interval(sweep.gapStart, sweep.gapEnd));
+
+            if (sweep.nextGap(minDuration.getMillis())) {
+                sweeps.add(sweep);
+            }
+        }
+
+        return gaps;
+    }
+
+    private class LineSweep {
+
+        private final Long productionLine;
+
+        private final Instants occupied;
+
+        private int startIndex;
+
+        private int endIndex;
+
+        private int depth;
+
+        private long freeFrom = searchInterval.getStartMillis();
+
+        private long gapStart;
+
+        private long gapEnd;
+
+        LineSweep(final Long productionLine, final Instants occupied) {
+            this.productionLine = productionLine;
+            this.occupied = occupied;
+        }
+
+        /**
+         * Move to next gap lasting at least given duration. Starts are visited before equal ends, so abutting intervals are
+         * merged.
+         */
+        boolean nextGap(final long minDuration) {
+            long searchEnd = searchInterval.getEndMillis();
+
+            while (true) {
+                if (depth == 0) {
+                    long freeTo;
+
+                    if (startIndex == occupied.size) {
+                        if (freeFrom >= searchEnd) {
+                            return false;
+                        }
+
+                        freeTo = searchEnd;
+                    } else {
+                        freeTo = occupied.starts[startIndex++];
+                        depth++;
+                    }
+
+                    long from = freeFrom;
+                    freeFrom = freeTo;
+
+                    if (freeTo > from && freeTo - from >= minDuration) {
+                        gapStart = from;
+                        gapEnd = freeTo;
+
+                        return true;
+                    }
+                } else if (startIndex < occupied.size && occupied.starts[startIndex] <= occupied.ends[endIndex]) {
+                    startIndex++;
+                    depth++;
+                } else {
+                    freeFrom = occupied.ends[endIndex++];
+                    depth--;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Start and end instants of intervals. Union of intervals depends only on both instants sorted separately.
+     */
+    private static class Instants {
+
+        private long[] starts = new long[L_INITIAL_CAPACITY];
+
+        private long[] ends = new long[L_INITIAL_CAPACITY];
+
+        private int size;
+
+        private boolean sorted = true;
+
+        void add(final long start, final long end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+            sorted = false;
+        }
+
+        void sort() {
+            if (!sorted) {
+                Arrays.sort(starts, 0, size);
+                Arrays.sort(ends, 0, size);
+                sorted = true;
+            }
+        }
+
+        Instants mergeSorted(final Instants other) {
+            sort();
+            other.sort();
+
+            if (other.size == 0) {
+                return this;
+            }
+
+            Instants merged = new Instants();
+            merged.starts = merge(starts, size, other.starts, other.size);
+            merged.ends = merge(ends, size, other.ends, other.size);
+            merged.size = size + other.size;
+
+            return merged;
+        }
+
+        private static long[] merge(final long[] first, final int firstSize, final long[] second, final int secondSize) {
+            long[] merged = new long[firstSize + secondSize];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+
+            while (i < firstSize && j < secondSize) {
+                merged[k++] = first[i] <= second[j] ? first[i++] : second[j++];
+            }
+            while (i < firstSize) {
+                merged[k++] = first[i++];
+            }
+            while (j < secondSize) {
+                merged[k++] = second[j++];
+            }
+
+            return merged;
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeGapsPreview;
+
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.timeGapsPreview.util.OccupiedIntervalsSweep;
+import com.qcadoo.mes.timeGapsPreview.util.TimeGapsBuilderImpl;
+
+/**
+ * Compares previous per line {@link TimeGapsBuilderImpl} search with {@link OccupiedIntervalsSweep} for a month across 40
+ * production lines. It isn't a test, run its main method manually; equality of both results is covered by
+ * {@link OccupiedIntervalsSweepTest}.
+ */
+public final class OccupiedIntervalsSweepBenchmark {
+
+    private static final DateTime FROM = new DateTime(2013, 1, 1, 0, 0, 0);
+
+    private static final Interval DOMAIN_INTERVAL = new Interval(FROM, FROM.plusMonths(1));
+
+    private static final Duration MIN_DURATION = Duration.standardMinutes(30);
+
+    private static final int L_LINES = 40;
+
+    private static final int L_INTERVALS_PER_LINE = 500;
+
+    private static final int L_WARM_UP_ROUNDS = 5;
+
+    private static final int L_ROUNDS = 20;
+
+    private final List<Long> lines = Lists.newArrayList();
+
+    private final Multimap<Long, Interval> occupiedIntervals = ArrayListMultimap.create();
+
+    private final List<Interval> spareTimeIntervals = Lists.newArrayList();
+
+    private OccupiedIntervalsSweepBenchmark() {
+        Random random = new Random(1);
+
+        for (long line = 1; line <= L_LINES; line++) {
+            lines.add(line);
+
+            for (int i = 0; i < L_INTERVALS_PER_LINE; i++) {
+                DateTime start = FROM.plusMinutes(random.nextInt(31 * 24 * 60));
+                occupiedIntervals.put(line, new Interval(start, start.plusMinutes(1 + random.nextInt(240))));
+            }
+        }
+        for (DateTime day = FROM; day.isBefore(DOMAIN_INTERVAL.getEnd()); day = day.plusDays(1)) {
+            spareTimeIntervals.add(new Interval(day.plusHours(22), day.plusDays(1).plusHours(6)));
+        }
+    }
+
+    public static void main(final String[] args) {
+        OccupiedIntervalsSweepBenchmark benchmark = new OccupiedIntervalsSweepBenchmark();
+
+        for (int round = 0; round < L_WARM_UP_ROUNDS; round++) {
+            benchmark.findGapsWithBuilder();
+            benchmark.findGapsWithSweep();
+        }
+
+        int builderGaps = 0;
+        int sweepGaps = 0;
+        long builderNanos = 0;
+        long sweepNanos = 0;
+
+        for (int round = 0; round < L_ROUNDS; round++) {
+            long start = System.nanoTime();
+            builderGaps = benchmark.findGapsWithBuilder();
+            builderNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sweepGaps = benchmark.findGapsWithSweep();
+            sweepNanos += System.nanoTime() - start;
+        }
+
+        if (builderGaps != sweepGaps) {
+            throw new IllegalStateException(String.format("TimeGapsBuilder found %d gaps, sweep %d", builderGaps, sweepGaps));
+        }
+
+        System.out.println(String.format("%d gaps, TimeGapsBuilder: %d ms, sweep: %d ms (%d rounds)", sweepGaps,
+                builderNanos / 1000000, sweepNanos / 1000000, L_ROUNDS));
+    }
+
+    private int findGapsWithBuilder() {
+        int gaps = 0;
+
+        for (Long line : lines) {
+            TimeGapsBuilderImpl timeGapsBuilder = new TimeGapsBuilderImpl(DOMAIN_INTERVAL);
+            timeGapsBuilder.addOccupiedIntervals(occupiedIntervals.get(line));
+            timeGapsBuilder.addOccupiedIntervals(spareTimeIntervals);
+
+            for (Interval gap : timeGapsBuilder.calculateGaps()) {
+                if (gap.toDuration().compareTo(MIN_DURATION) >= 0) {
+                    gaps++;
+                }
+            }
+        }
+
+        return gaps;
+    }
+
+    private int findGapsWithSweep() {
+        OccupiedIntervalsSweep sweep = new OccupiedIntervalsSweep(DOMAIN_INTERVAL, lines);
+        sweep.addOccupiedIntervals(occupiedIntervals);
+        sweep.addOccupiedIntervalsForAllLines(spareTimeIntervals);
+
+        return sweep.findGaps(MIN_DURATION).size();
+    }
+
+}
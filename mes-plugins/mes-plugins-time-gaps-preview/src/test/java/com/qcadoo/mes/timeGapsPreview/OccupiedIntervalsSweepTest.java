@@ -0,0 +1,170 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.timeGapsPreview;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Interval;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.timeGapsPreview.util.OccupiedIntervalsSweep;
+import com.qcadoo.mes.timeGapsPreview.util.TimeGapsBuilderImpl;
+
+public class OccupiedIntervalsSweepTest {
+
+    private static final DateTime FROM = new DateTime(2013, 1, 8, 0, 0, 0);
+
+    private static final DateTime TO = FROM.plusDays(1);
+
+    private static final Interval DOMAIN_INTERVAL = new Interval(FROM, TO);
+
+    private static final Long LINE_1 = 1L;
+
+    private static final Long LINE_2 = 2L;
+
+    private OccupiedIntervalsSweep sweep;
+
+    @Before
+    public void init() {
+        sweep = new OccupiedIntervalsSweep(DOMAIN_INTERVAL, Lists.newArrayList(LINE_1, LINE_2));
+    }
+
+    @Test
+    public void shouldReturnWholeDomainForFreeLines() {
+        // when
+        Multimap<Long, Interval> gaps = sweep.findGaps(Duration.ZERO);
+
+        // then
+        assertEquals(2, gaps.size());
+        assertEquals(Lists.newArrayList(DOMAIN_INTERVAL), gaps.get(LINE_1));
+        assertEquals(Lists.newArrayList(DOMAIN_INTERVAL), gaps.get(LINE_2));
+    }
+
+    @Test
+    public void shouldMergeOverlappingAndAbuttingIntervals() {
+        // given
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.minusHours(2), FROM.plusHours(1)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(1), FROM.plusHours(2)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(4), FROM.plusHours(6)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(5), FROM.plusHours(7)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(5), FROM.plusHours(6)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(20), TO.plusHours(3)));
+
+        // when
+        Multimap<Long, Interval> gaps = sweep.findGaps(Duration.ZERO);
+
+        // then
+        List<Interval> expectedGaps = Lists.newArrayList(new Interval(FROM.plusHours(2), FROM.plusHours(4)), new Interval(
+                FROM.plusHours(7), FROM.plusHours(20)));
+        assertEquals(expectedGaps, gaps.get(LINE_1));
+        assertEquals(Lists.newArrayList(DOMAIN_INTERVAL), gaps.get(LINE_2));
+    }
+
+    @Test
+    public void shouldNotShortenOccupiedIntervalByZeroLengthInterval() {
+        // given
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(2), FROM.plusHours(5)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(2), FROM.plusHours(2)));
+
+        // when
+        Multimap<Long, Interval> gaps = sweep.findGaps(Duration.ZERO);
+
+        // then
+        List<Interval> expectedGaps = Lists.newArrayList(new Interval(FROM, FROM.plusHours(2)), new Interval(FROM.plusHours(5),
+                TO));
+        assertEquals(expectedGaps, gaps.get(LINE_1));
+    }
+
+    @Test
+    public void shouldApplyIntervalsForAllLinesAndMinimalDuration() {
+        // given
+        sweep.addOccupiedIntervalForAllLines(new Interval(FROM, FROM.plusHours(6)));
+        sweep.addOccupiedIntervalForAllLines(new Interval(FROM.plusHours(22), TO));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(7), FROM.plusHours(21)));
+
+        // when
+        Multimap<Long, Interval> gaps = sweep.findGaps(Duration.standardHours(2));
+
+        // then
+        assertTrue(gaps.get(LINE_1).isEmpty());
+        assertEquals(Lists.newArrayList(new Interval(FROM.plusHours(6), FROM.plusHours(22))), gaps.get(LINE_2));
+    }
+
+    @Test
+    public void shouldFindFirstGapsAcrossLines() {
+        // given
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM, FROM.plusHours(3)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(4), FROM.plusHours(8)));
+        sweep.addOccupiedInterval(LINE_1, new Interval(FROM.plusHours(10), TO));
+        sweep.addOccupiedInterval(LINE_2, new Interval(FROM, FROM.plusHours(5)));
+        sweep.addOccupiedInterval(LINE_2, new Interval(FROM.plusHours(6), TO));
+
+        // when
+        Multimap<Long, Interval> gaps = sweep.findFirstGaps(Duration.standardMinutes(30), 2);
+
+        // then
+        assertEquals(2, gaps.size());
+        assertEquals(Lists.newArrayList(new Interval(FROM.plusHours(3), FROM.plusHours(4))), gaps.get(LINE_1));
+        assertEquals(Lists.newArrayList(new Interval(FROM.plusHours(5), FROM.plusHours(6))), gaps.get(LINE_2));
+    }
+
+    @Test
+    public void shouldFindTheSameGapsAsTimeGapsBuilder() {
+        // given
+        Random random = new Random(7);
+        Multimap<Long, Interval> occupiedIntervals = ArrayListMultimap.create();
+
+        for (int i = 0; i < 200; i++) {
+            DateTime start = FROM.minusHours(2).plusMinutes(random.nextInt(28 * 60));
+            Long line = random.nextBoolean() ? LINE_1 : LINE_2;
+            occupiedIntervals.put(line, new Interval(start, start.plusMinutes(1 + random.nextInt(90))));
+        }
+
+        sweep.addOccupiedIntervals(occupiedIntervals);
+
+        // when
+        Multimap<Long, Interval> gaps = sweep.findGaps(Duration.ZERO);
+
+        // then
+        for (Long line : Lists.newArrayList(LINE_1, LINE_2)) {
+            TimeGapsBuilderImpl timeGapsBuilder = new TimeGapsBuilderImpl(DOMAIN_INTERVAL);
+            timeGapsBuilder.addOccupiedIntervals(occupiedIntervals.get(line));
+            Collection<Interval> expectedGaps = timeGapsBuilder.calculateGaps();
+
+            assertEquals(Lists.newArrayList(expectedGaps), gaps.get(line));
+        }
+    }
+
+}